@@ -0,0 +1,114 @@
+//
+// ContourBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Contour2D;
+import visad.Gridded3DSet;
+import visad.VisADException;
+import visad.VisADGeometryArray;
+
+/**
+ * Contour lines of an n x n grid (Contour2D.contour) and isosurfaces of
+ * an n x n x n grid (Gridded3DSet.makeIsoSurface).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContourBenchmark {
+
+  /** grid points along each axis */
+  @Param({"32", "64", "128"})
+  public int size;
+
+  private float[] grid2D;
+  private Gridded3DSet surface;
+  private float[] levels;
+
+  private Gridded3DSet volume;
+  private float[] grid3D;
+
+  @Setup
+  public void setup() throws VisADException {
+    int n = size * 4;
+    grid2D = new float[n * n];
+    float[][] s = new float[3][n * n];
+    // Contour2D indexes the grid column major: g[ic * nr + ir]
+    for (int ic=0; ic<n; ic++) {
+      for (int ir=0; ir<n; ir++) {
+        int k = ic * n + ir;
+        float x = ir / (float) (n - 1);
+        float y = ic / (float) (n - 1);
+        grid2D[k] = Grids.value(x, y, 0f);
+        s[0][k] = x;
+        s[1][k] = y;
+      }
+    }
+    surface = new Gridded3DSet(Grids.XYZ, s, n, n);
+    levels = new float[21];
+    for (int i=0; i<levels.length; i++) {
+      levels[i] = -1f + 0.1f * i;
+    }
+
+    volume = Grids.warped3D(size);
+    grid3D = new float[size * size * size];
+    float[][] v = volume.getSamples(false);
+    for (int i=0; i<grid3D.length; i++) {
+      grid3D[i] = Grids.value(v[0][i], v[1][i], v[2][i]);
+    }
+  }
+
+  @Benchmark
+  public Object contour2D() throws VisADException {
+    int n = size * 4;
+    return Contour2D.contour(grid2D, n, n, levels, -1f, 1f, 0f, false,
+                             null, new boolean[] {false, false, false}, false,
+                             null, new byte[0][], new double[] {1.0, 1.0, 1.0}, 1.0,
+                             0, 1, 1.0, false, null, null, false, surface);
+  }
+
+  @Benchmark
+  public VisADGeometryArray makeIsoSurface() throws VisADException {
+    return volume.makeIsoSurface(0.2f, grid3D, null, false);
+  }
+}
@@ -0,0 +1,100 @@
+//
+// FieldBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Data;
+import visad.FlatField;
+import visad.Linear2DSet;
+import visad.VisADException;
+
+/**
+ * FlatField math: binary and unary operations and resampling onto a
+ * finer grid, for n x n images.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+
+  @Param({"64", "256", "1024"})
+  public int size;
+
+  private FlatField a;
+  private FlatField b;
+  private Linear2DSet fine;
+
+  @Setup
+  public void setup() throws VisADException, RemoteException {
+    a = Grids.image(size);
+    b = Grids.image(size);
+    int m = size + size / 2;
+    fine = new Linear2DSet(Grids.XY, 0.0, 1.0, m, 0.0, 1.0, m);
+  }
+
+  @Benchmark
+  public Data binaryAdd() throws VisADException, RemoteException {
+    return a.add(b);
+  }
+
+  @Benchmark
+  public Data binaryMultiply() throws VisADException, RemoteException {
+    return a.multiply(b);
+  }
+
+  @Benchmark
+  public Data unarySqrt() throws VisADException, RemoteException {
+    return a.sqrt();
+  }
+
+  @Benchmark
+  public Data resampleNearest() throws VisADException, RemoteException {
+    return a.resample(fine, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+  }
+
+  @Benchmark
+  public Data resampleWeighted() throws VisADException, RemoteException {
+    return a.resample(fine, Data.WEIGHTED_AVERAGE, Data.NO_ERRORS);
+  }
+}
@@ -0,0 +1,94 @@
+//
+// GridBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.Delaunay;
+import visad.Gridded2DSet;
+import visad.Gridded3DSet;
+import visad.VisADException;
+
+/**
+ * Point location in curvilinear grids (valueToGrid) and Delaunay
+ * triangulation of scattered points.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+  /** number of points located or triangulated per call */
+  @Param({"1000", "10000", "100000"})
+  public int points;
+
+  private Gridded2DSet grid2D;
+  private Gridded3DSet grid3D;
+  private float[][] values2D;
+  private float[][] values3D;
+  private float[][] scattered;
+
+  @Setup
+  public void setup() throws VisADException {
+    grid2D = Grids.warped2D(256);
+    grid3D = Grids.warped3D(48);
+    values2D = Grids.points(2, points, 1L);
+    values3D = Grids.points(3, points, 2L);
+    // Delaunay is far slower than point location, so cap its input
+    scattered = Grids.points(2, Math.min(points, 20000), 3L);
+  }
+
+  @Benchmark
+  public float[][] gridded2DValueToGrid() throws VisADException {
+    return grid2D.valueToGrid(values2D);
+  }
+
+  @Benchmark
+  public float[][] gridded3DValueToGrid() throws VisADException {
+    return grid3D.valueToGrid(values3D);
+  }
+
+  @Benchmark
+  public Delaunay delaunayFactory() throws VisADException {
+    return Delaunay.factory(scattered, false);
+  }
+}
@@ -0,0 +1,129 @@
+//
+// Grids.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.rmi.RemoteException;
+import java.util.Random;
+
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Gridded2DSet;
+import visad.Gridded3DSet;
+import visad.Linear2DSet;
+import visad.RealTupleType;
+import visad.RealType;
+import visad.VisADException;
+
+/**
+ * Deterministic test data shared by the benchmarks.
+ */
+final class Grids {
+
+  static final RealType X = RealType.getRealType("bench_x");
+  static final RealType Y = RealType.getRealType("bench_y");
+  static final RealType Z = RealType.getRealType("bench_z");
+  static final RealType V = RealType.getRealType("bench_v");
+  static final RealTupleType XY = makeTuple(new RealType[] {X, Y});
+  static final RealTupleType XYZ = makeTuple(new RealType[] {X, Y, Z});
+
+  private Grids() {
+  }
+
+  private static RealTupleType makeTuple(RealType[] types) {
+    try {
+      return new RealTupleType(types);
+    }
+    catch (VisADException e) {
+      throw new IllegalStateException(e.toString());
+    }
+  }
+
+  /** smooth test function with several maxima and minima */
+  static float value(float x, float y, float z) {
+    return (float) (Math.sin(3.0 * x) * Math.cos(2.0 * y) + 0.5 * z * z);
+  }
+
+  /** n x n image over [0, 1] x [0, 1] */
+  static FlatField image(int n) throws VisADException, RemoteException {
+    Linear2DSet set = new Linear2DSet(XY, 0.0, 1.0, n, 0.0, 1.0, n);
+    FlatField ff = new FlatField(new FunctionType(XY, V), set);
+    float[] v = new float[n * n];
+    for (int j=0; j<n; j++) {
+      for (int i=0; i<n; i++) {
+        v[j * n + i] = value(i / (float) n, j / (float) n, 0f);
+      }
+    }
+    ff.setSamples(new float[][] {v}, false);
+    return ff;
+  }
+
+  /** curvilinear n x n grid: a unit square with a smooth warp */
+  static Gridded2DSet warped2D(int n) throws VisADException {
+    float[][] s = new float[2][n * n];
+    for (int j=0; j<n; j++) {
+      for (int i=0; i<n; i++) {
+        float x = i / (float) (n - 1);
+        float y = j / (float) (n - 1);
+        s[0][j * n + i] = x + 0.05f * (float) Math.sin(Math.PI * y);
+        s[1][j * n + i] = y + 0.05f * (float) Math.sin(Math.PI * x);
+      }
+    }
+    return new Gridded2DSet(XY, s, n, n);
+  }
+
+  /** curvilinear n x n x n grid */
+  static Gridded3DSet warped3D(int n) throws VisADException {
+    float[][] s = new float[3][n * n * n];
+    int k = 0;
+    for (int l=0; l<n; l++) {
+      for (int j=0; j<n; j++) {
+        for (int i=0; i<n; i++) {
+          float x = i / (float) (n - 1);
+          float y = j / (float) (n - 1);
+          float z = l / (float) (n - 1);
+          s[0][k] = x + 0.03f * (float) Math.sin(Math.PI * z);
+          s[1][k] = y + 0.03f * (float) Math.sin(Math.PI * x);
+          s[2][k] = z + 0.03f * (float) Math.sin(Math.PI * y);
+          k++;
+        }
+      }
+    }
+    return new Gridded3DSet(XYZ, s, n, n, n);
+  }
+
+  /** count random points inside [0.05, 0.95]^dim */
+  static float[][] points(int dim, int count, long seed) {
+    Random r = new Random(seed);
+    float[][] p = new float[dim][count];
+    for (int d=0; d<dim; d++) {
+      for (int i=0; i<count; i++) {
+        p[d][i] = 0.05f + 0.9f * r.nextFloat();
+      }
+    }
+    return p;
+  }
+}
@@ -0,0 +1,146 @@
+//
+// IOBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wisc.ssec.mcidas.AreaFile;
+
+import visad.DataImpl;
+import visad.FlatField;
+import visad.data.visad.BinaryReader;
+import visad.data.visad.BinaryWriter;
+
+/**
+ * Reading McIDAS AREA files, and writing and reading the VisAD binary
+ * format.  The AREA file is synthesized (one band of bytes, no
+ * navigation or calibration), so no sample data is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IOBenchmark {
+
+  /** lines and elements of the AREA file and of the binary image */
+  @Param({"256", "1024", "2048"})
+  public int size;
+
+  private File area;
+  private FlatField image;
+  private byte[] binary;
+
+  @Setup
+  public void setup() throws Exception {
+    area = File.createTempFile("visadbench", ".area");
+    writeArea(area, size, size);
+    image = Grids.image(size);
+    binary = write(image);
+  }
+
+  @TearDown
+  public void tearDown() {
+    area.delete();
+  }
+
+  private static void writeArea(File file, int lines, int elems)
+          throws IOException {
+    int[] dir = new int[AreaFile.AD_DIRSIZE];
+    dir[AreaFile.AD_VERSION] = AreaFile.VERSION_NUMBER;
+    dir[AreaFile.AD_NUMLINES] = lines;
+    dir[AreaFile.AD_NUMELEMS] = elems;
+    dir[AreaFile.AD_DATAWIDTH] = 1;
+    dir[AreaFile.AD_LINERES] = 1;
+    dir[AreaFile.AD_ELEMRES] = 1;
+    dir[AreaFile.AD_NUMBANDS] = 1;
+    dir[AreaFile.AD_BANDMAP] = 1;
+    dir[AreaFile.AD_DATAOFFSET] = 4 * AreaFile.AD_DIRSIZE;
+    DataOutputStream out = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      for (int i=0; i<dir.length; i++) {
+        out.writeInt(dir[i]);
+      }
+      for (int l=0; l<lines; l++) {
+        for (int e=0; e<elems; e++) {
+          out.writeByte((l + e) & 0xff);
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static byte[] write(DataImpl data) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryWriter writer = new BinaryWriter(bytes);
+    writer.save(data);
+    writer.close();
+    return bytes.toByteArray();
+  }
+
+  @Benchmark
+  public int[][][] areaFileRead() throws Exception {
+    return new AreaFile(area.getPath()).getData();
+  }
+
+  @Benchmark
+  public byte[] binaryWrite() throws Exception {
+    return write(image);
+  }
+
+  @Benchmark
+  public DataImpl binaryRead() throws Exception {
+    BinaryReader reader = new BinaryReader(new ByteArrayInputStream(binary));
+    DataImpl data = reader.getData();
+    reader.close();
+    return data;
+  }
+}
@@ -0,0 +1,142 @@
+//
+// UnitBenchmark.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import visad.CoordinateSystem;
+import visad.RealTupleType;
+import visad.SphericalCoordinateSystem;
+import visad.Unit;
+import visad.UnitConverter;
+import visad.VisADException;
+import visad.data.units.Parser;
+
+/**
+ * Unit parsing and conversion, and CoordinateSystem transforms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitBenchmark {
+
+  /** number of values converted or transformed per call */
+  @Param({"1000", "100000", "1000000"})
+  public int count;
+
+  private Unit celsius;
+  private Unit kelvin;
+  private Unit decibel;
+  private Unit watt;
+  private float[] temperatures;
+  private double[] powers;
+  private CoordinateSystem spherical;
+  private float[][] polar;
+  private float[][] cartesian;
+
+  @Setup
+  public void setup() throws Exception {
+    celsius = Parser.parse("degC");
+    kelvin = Parser.parse("K");
+    watt = Parser.parse("W");
+    // bels relative to 1 mW
+    decibel = watt.scale(1.0e-3).log(10.0);
+    temperatures = new float[count];
+    powers = new double[count];
+    for (int i=0; i<count; i++) {
+      temperatures[i] = -40f + 80f * i / count;
+      powers[i] = 1.0e-3 * (1 + i % 1000);
+    }
+    spherical = new SphericalCoordinateSystem(RealTupleType.SpatialCartesian3DTuple);
+    polar = new float[3][count];
+    for (int i=0; i<count; i++) {
+      polar[0][i] = -80f + 160f * i / count;
+      polar[1][i] = -180f + 360f * ((i * 7) % count) / count;
+      polar[2][i] = 1f;
+    }
+    cartesian = spherical.toReference(copy(polar));
+  }
+
+  private static float[][] copy(float[][] values) {
+    float[][] c = new float[values.length][];
+    for (int i=0; i<values.length; i++) {
+      c[i] = (float[]) values[i].clone();
+    }
+    return c;
+  }
+
+  @Benchmark
+  public Unit parse() throws Exception {
+    return Parser.parse("m.s-2");
+  }
+
+  @Benchmark
+  public float[] toThisLinear() throws VisADException {
+    return kelvin.toThis(temperatures, celsius);
+  }
+
+  @Benchmark
+  public float[] converterLinear() throws VisADException {
+    return UnitConverter.getInstance(celsius, kelvin).convert(temperatures, true);
+  }
+
+  @Benchmark
+  public double[] toThisLogarithmic() throws VisADException {
+    return decibel.toThis(powers, watt);
+  }
+
+  @Benchmark
+  public double[] converterLogarithmic() throws VisADException {
+    return UnitConverter.getInstance(watt, decibel).convert(powers, true);
+  }
+
+  // the transforms may work in place, so each call gets a copy
+  @Benchmark
+  public float[][] sphericalToReference() throws VisADException {
+    return spherical.toReference(copy(polar));
+  }
+
+  @Benchmark
+  public float[][] sphericalFromReference() throws VisADException {
+    return spherical.fromReference(copy(cartesian));
+  }
+}
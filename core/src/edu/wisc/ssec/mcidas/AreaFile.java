@@ -194,6 +194,9 @@ public class AreaFile implements java.io.Serializable {
   /** VERSION_NUMBER - version number for a valid AREA file (since 1985) */
   public static final int VERSION_NUMBER = 4;
 
+  /** number of values calibrated by one call of the calibrator */
+  private static final int CALIBRATION_BLOCK_SIZE = 1 << 20;
+
   /** flag for whether a handler was loaded */
   private static boolean handlerLoaded = false;
 
@@ -972,39 +975,59 @@ public class AreaFile implements java.io.Serializable {
     // get all bands
     if (subset == null) {
       for (int band_idx = 0; band_idx < inData.length; band_idx++) {
-        for (int line = 0; line < inData[0].length; line++) {
-          for (int elem = 0; elem < inData[0][0].length; elem++) {
-            if (calibrator != null) {
-              outData[band_idx][line][elem] =
-                calibrator.calibrate((float)inData[band_idx][line][elem],
-                                     band_idx + 1, calType);
-            }
-            else {
-              outData[band_idx][line][elem] = inData[band_idx][line][elem];
-            }
-          }
-        }
+        calibrateBand(calibrator, inData[band_idx], outData[band_idx],
+                      band_idx + 1);
       }
 
       // just subsetted band
     }
     else {
-      for (int line = 0; line < inData[0].length; line++) {
-        for (int elem = 0; elem < inData[0][0].length; elem++) {
-          if (!isRemote && calType != Calibrator.CAL_NONE &&
-              calibrator != null) {
-            outData[0][line][elem] =
-              calibrator.calibrate((float)inData[0][line][elem],
-                                   subset.bandNumber, calType);
-          }
-          else {
-            outData[0][line][elem] = inData[0][line][elem];
-          }
+      calibrateBand(calibrator, inData[0], outData[0], subset.bandNumber);
+    }
+
+    return outData;
+  }
+
+  /**
+   * Calibrate the lines of one band, in blocks of lines that are
+   * calibrated by one call of the calibrator, which tabulates the
+   * counts and calibrates the block in parallel.
+   *
+   * @param calibrator the calibrator, or null to just copy the data
+   * @param in data[lines][elements] of the band
+   * @param out calibrated data[lines][elements]
+   * @param band band number
+   */
+  private void calibrateBand(Calibrator calibrator, int[][] in,
+                             float[][] out, int band) {
+    if (in.length == 0) return;
+    int elems = in[0].length;
+    if (calibrator == null || elems == 0) {
+      for (int line = 0; line < in.length; line++) {
+        for (int elem = 0; elem < elems; elem++) {
+          out[line][elem] = in[line][elem];
         }
       }
+      return;
     }
 
-    return outData;
+    int blockLines = Math.max(1, CALIBRATION_BLOCK_SIZE / elems);
+    float[] block = new float[Math.min(blockLines, in.length) * elems];
+    for (int first = 0; first < in.length; first += blockLines) {
+      int lines = Math.min(blockLines, in.length - first);
+      if (block.length != lines * elems) block = new float[lines * elems];
+      for (int line = 0; line < lines; line++) {
+        int[] row = in[first + line];
+        int k = line * elems;
+        for (int elem = 0; elem < elems; elem++) {
+          block[k + elem] = (float) row[elem];
+        }
+      }
+      float[] cal = calibrator.calibrate(block, band, calType);
+      for (int line = 0; line < lines; line++) {
+        System.arraycopy(cal, line * elems, out[first + line], 0, elems);
+      }
+    }
   }
 
   /**
@@ -1240,6 +1263,9 @@ public class AreaFile implements java.io.Serializable {
         position = 0;
         af = df;
       }
+      else if (isRemote && readSplitData(target)) {
+        return;
+      }
     }
     catch (IOException ioe) {
       throw new AreaFileException("Error getting input stream for data", ioe);
@@ -1327,6 +1353,49 @@ public class AreaFile implements java.io.Serializable {
 
   } // end of areaReadData method
 
+  /**
+   * Read the data of a large ADDE image as concurrent sub-requests
+   * with {@link SplitAreaFetcher}.  The original request is closed;
+   * if the sub-requests fail it is made again, to be read as usual.
+   *
+   * @param target data array, [band][line][element]
+   * @return true if the data has been read
+   *
+   * @throws IOException if the original request cannot be made again
+   * @throws AreaFileException if the image of the new request differs
+   *         in size from the one target was made for (as when a newer
+   *         image arrived)
+   */
+  private boolean readSplitData(int[][][] target)
+          throws IOException, AreaFileException {
+    if (!SplitAreaFetcher.shouldSplit(imageSource, dir)) return false;
+    int numLines = dir[AD_NUMLINES];
+    int numEles = dir[AD_NUMELEMS];
+    int numBands = origNumBands;
+    close();
+    if (SplitAreaFetcher.fetch(imageSource, dir, areaDirectory.getBands(),
+                               target)) {
+      hasReadData = true;
+      return true;
+    }
+    af = new DataInputStream(
+      new BufferedInputStream(new URL(imageSource).openStream()));
+    position = 0;
+    try {
+      readMetaData();
+    }
+    catch (AreaFileException e) {
+      throw new IOException("Error reading AreaFile directory", e);
+    }
+    if (dir[AD_NUMLINES] != numLines || dir[AD_NUMELEMS] != numEles ||
+        origNumBands != numBands) {
+      throw new AreaFileException("Image changed while being read: " +
+        numLines + "x" + numEles + "x" + numBands + " became " +
+        dir[AD_NUMLINES] + "x" + dir[AD_NUMELEMS] + "x" + origNumBands);
+    }
+    return false;
+  }
+
   /**
    * Selectively flip the bytes of words in nav block
    *
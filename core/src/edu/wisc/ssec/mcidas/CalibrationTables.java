@@ -0,0 +1,330 @@
+//
+// CalibrationTables.java
+//
+
+/*
+This source file is part of the edu.wisc.ssec.mcidas package and is
+Copyright (C) 1998 - 2017 by Tom Whittaker, Tommy Jasmin, Tom Rink,
+Don Murray, James Kelly, Bill Hibbard, Dave Glowacki, Curtis Rueden
+and others.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package edu.wisc.ssec.mcidas;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Bulk calibration of counts through lookup tables.  The Calibrator
+ * implementations use it for <code>calibrate(float[], int, int)</code>:
+ * the values of a buffer that are integer counts (0 to
+ * {@link #MAX_COUNT}) are calibrated once each, by the single value
+ * <code>calibrate(float, int, int)</code> of the Calibrator, into a
+ * table that is then applied to the buffer in parallel chunks.  Other
+ * values (non-integer, negative or larger input) are calibrated one
+ * by one, so the result is the same as calibrating each value.
+ *
+ * <p>Tables are cached, up to {@link #MAX_TABLES}, by Calibrator class,
+ * calibration state (cal block, sensor and input cal type, as given by
+ * the Calibrator), band and output cal type, so that AreaFiles with the
+ * same calibration block share them.  A table covers the range of
+ * counts seen so far, and is extended when a buffer has counts outside
+ * of it.
+ *
+ * <p>The single value calibrate of some Calibrators keeps state between
+ * calls, so it is only called by one thread at a time.  The number of
+ * threads may be set by the system property
+ * <code>mcidas.calibration.threads</code> (default the number of
+ * processors, 1 turns the parallel lookup off).
+ */
+public final class CalibrationTables {
+
+  /** system property for the number of calibration threads */
+  public static final String THREADS_PROPERTY = "mcidas.calibration.threads";
+
+  /** largest count that is calibrated through a table */
+  public static final int MAX_COUNT = 65535;
+
+  /** largest number of cached tables */
+  public static final int MAX_TABLES = 64;
+
+  /** number of values applied by one task */
+  private static final int CHUNK_SIZE = 65536;
+
+  /** guards the cache and all calls of the single value calibrate */
+  private static final Object LOCK = new Object();
+
+  /** cached tables, least recently used first */
+  private static final Map<Key, Table> tables =
+    new LinkedHashMap<Key, Table>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<Key, Table> eldest) {
+        return size() > MAX_TABLES;
+      }
+    };
+
+  private static int threads = Math.max(1, Integer.getInteger(
+    THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()).intValue());
+
+  private static ExecutorService executor = null;
+
+  private CalibrationTables() {
+  }
+
+  /**
+   * @param n number of threads for the table lookup; 1 turns the
+   *        parallel lookup off
+   */
+  public static synchronized void setThreads(int n) {
+    threads = Math.max(1, n);
+    if (executor != null) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * @return number of threads for the table lookup
+   */
+  public static synchronized int getThreads() {
+    return threads;
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        private int count = 0;
+        public synchronized Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "CalibrationTables-" + (++count));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Discard the cached tables.
+   */
+  public static void clear() {
+    synchronized (LOCK) {
+      tables.clear();
+    }
+  }
+
+  /** cache key; the state arrays are compared by content */
+  private static final class Key {
+    private final Class<?> type;
+    private final Object[] state;
+    private final int band;
+    private final int calTypeOut;
+    private final int hash;
+
+    Key(Class<?> type, Object[] state, int band, int calTypeOut) {
+      this.type = type;
+      this.state = state;
+      this.band = band;
+      this.calTypeOut = calTypeOut;
+      hash = ((type.hashCode() * 31 + Arrays.deepHashCode(state)) * 31 +
+              band) * 31 + calTypeOut;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    /** a key with a copy of the state, for the cache */
+    Key copy() {
+      return new Key(type, (Object[]) copyArray(state), band, calTypeOut);
+    }
+
+    private static Object copyArray(Object o) {
+      if (o == null || !o.getClass().isArray()) return o;
+      int n = Array.getLength(o);
+      Object c = Array.newInstance(o.getClass().getComponentType(), n);
+      if (o instanceof Object[]) {
+        for (int i = 0; i < n; i++) {
+          Array.set(c, i, copyArray(Array.get(o, i)));
+        }
+      }
+      else {
+        System.arraycopy(o, 0, c, 0, n);
+      }
+      return c;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return type == k.type && band == k.band && calTypeOut == k.calTypeOut &&
+             Arrays.deepEquals(state, k.state);
+    }
+  }
+
+  /** calibrated values of the counts first ... first + values.length - 1;
+      never changed once built */
+  private static final class Table {
+    final int first;
+    final float[] values;
+
+    Table(int first, float[] values) {
+      this.first = first;
+      this.values = values;
+    }
+
+    boolean covers(int lo, int hi) {
+      return lo >= first && hi < first + values.length;
+    }
+  }
+
+  /** true if v is a count, i.e. an integer 0 ... MAX_COUNT (not -0) */
+  private static boolean isCount(float v) {
+    return Float.floatToRawIntBits(v) >= 0 && v <= MAX_COUNT && v == (int) v;
+  }
+
+  /**
+   * Calibrate a buffer of values.
+   *
+   * @param calibrator  Calibrator whose single value calibrate is
+   *                    tabulated
+   * @param state       the calibration state of calibrator (arrays
+   *                    are compared by content); tables are only
+   *                    shared between Calibrators of the same class
+   *                    with equal state.  If null, the table is not
+   *                    cached.
+   * @param input       input data buffer
+   * @param band        channel/band number
+   * @param calTypeOut  units to convert input buffer to
+   * @return the calibrated buffer
+   */
+  public static float[] calibrate(final Calibrator calibrator, Object[] state,
+                                  final float[] input, final int band,
+                                  final int calTypeOut) {
+    final float[] output = new float[input.length];
+    int lo = Integer.MAX_VALUE;
+    int hi = -1;
+    for (int i = 0; i < input.length; i++) {
+      float v = input[i];
+      if (isCount(v)) {
+        int c = (int) v;
+        if (c < lo) lo = c;
+        if (c > hi) hi = c;
+      }
+    }
+    final Table table = (hi < 0) ? null :
+      getTable(calibrator, state, band, calTypeOut, lo, hi);
+
+    int nchunks = (input.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    int n = Math.min(getThreads(), nchunks);
+    if (n < 2) {
+      apply(calibrator, table, input, output, 0, input.length, band,
+            calTypeOut);
+      return output;
+    }
+
+    ExecutorService exec = getExecutor();
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(nchunks);
+    for (int k = 0; k < nchunks; k++) {
+      final int start = k * CHUNK_SIZE;
+      final int end = Math.min(start + CHUNK_SIZE, input.length);
+      futures.add(exec.submit(new Callable<Object>() {
+        public Object call() {
+          apply(calibrator, table, input, output, start, end, band,
+                calTypeOut);
+          return null;
+        }
+      }));
+    }
+    RuntimeException failure = null;
+    for (int k = 0; k < futures.size(); k++) {
+      try {
+        futures.get(k).get();
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Error) throw (Error) cause;
+          failure = (cause instanceof RuntimeException) ?
+            (RuntimeException) cause : new RuntimeException(cause);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        for (int j = k; j < futures.size(); j++) futures.get(j).cancel(true);
+        throw new RuntimeException("Calibration interrupted", e);
+      }
+    }
+    if (failure != null) throw failure;
+    return output;
+  }
+
+  private static void apply(Calibrator calibrator, Table table,
+                            float[] input, float[] output, int start,
+                            int end, int band, int calTypeOut) {
+    for (int i = start; i < end; i++) {
+      float v = input[i];
+      if (table != null && isCount(v)) {
+        output[i] = table.values[(int) v - table.first];
+      }
+      else {
+        synchronized (LOCK) {
+          output[i] = calibrator.calibrate(v, band, calTypeOut);
+        }
+      }
+    }
+  }
+
+  /** get the table of calibrator covering counts lo ... hi, building
+      or extending it as needed */
+  private static Table getTable(Calibrator calibrator, Object[] state,
+                                int band, int calTypeOut, int lo, int hi) {
+    Key key = (state == null) ? null :
+      new Key(calibrator.getClass(), state, band, calTypeOut);
+    synchronized (LOCK) {
+      Table old = (key == null) ? null : tables.get(key);
+      if (old != null && old.covers(lo, hi)) return old;
+
+      int first = lo;
+      int last = hi;
+      if (old != null) {
+        first = Math.min(first, old.first);
+        last = Math.max(last, old.first + old.values.length - 1);
+      }
+      float[] values = new float[last - first + 1];
+      for (int c = first; c <= last; c++) {
+        if (old != null && old.covers(c, c)) {
+          values[c - first] = old.values[c - old.first];
+        }
+        else {
+          values[c - first] = calibrator.calibrate((float) c, band, calTypeOut);
+        }
+      }
+      Table table = new Table(first, values);
+      if (key != null) tables.put(key.copy(), table);
+      return table;
+    }
+  }
+}
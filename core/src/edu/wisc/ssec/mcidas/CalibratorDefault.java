@@ -104,17 +104,24 @@ public class CalibratorDefault implements Calibrator {
 
   {
 
-    // create the output data buffer
-    float[] outputData = new float[inputData.length];
+    // calibrate each count once through a lookup table
+    return CalibrationTables.calibrate(this, getCalibrationState(),
+                                       inputData, band, calTypeOut);
 
-    // just call the other calibrate routine for each data point
-    for (int i = 0; i < inputData.length; i++) {
-      outputData[i] = calibrate(inputData[i], band, calTypeOut);
-    }
+  }
 
-    // return the calibrated buffer
-    return outputData;
+  /**
+   *
+   * return the state on which the calibration of a value depends, so
+   * that calibrators with equal state can share lookup tables
+   *
+   * @return the state (arrays are compared by content), or null if
+   *         the lookup tables of this calibrator should not be shared
+   *
+   */
 
+  protected Object[] getCalibrationState() {
+    return new Object[] {Integer.valueOf(curCalType)};
   }
 
   /**
@@ -187,6 +187,14 @@ public class CalibratorFY2 extends CalibratorDefault implements Calibrator {
 		
 	}
 	
+	/* (non-Javadoc)
+	 * @see edu.wisc.ssec.mcidas.CalibratorDefault#getCalibrationState()
+	 */
+	@Override
+	protected Object[] getCalibrationState() {
+		return new Object[] { Integer.valueOf(curCalType), prefix, calBlock };
+	}
+
 	/**
 	 * 
 	 * calibrate from temperature to radiance
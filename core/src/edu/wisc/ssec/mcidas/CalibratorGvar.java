@@ -68,12 +68,17 @@ public abstract class CalibratorGvar implements Calibrator {
   protected float [] sGainCoef = new float [NUM_BANDS_SOUNDER];
   protected float [][] lookupTable;
 
-  // used in calibrator method
-  private static float gain = 0.0f;
-  private static float bias = 0.0f;
-  private static int scale = 1;
-  private static int bandNum = 0;
-  private static int sid = 0;
+  // used in calibrator method; per calibrator, since calibrators of
+  // different satellites may tabulate at the same time
+  private float gain = 0.0f;
+  private float bias = 0.0f;
+  private int scale = 1;
+  private int bandNum = 0;
+  private int sid = 0;
+
+  // sensor id and cal block of this calibrator, for the lookup tables
+  private int sensorId = 0;
+  private int[] calBlock = null;
 
   //
   public boolean isPreCalibrated = false;
@@ -93,6 +98,7 @@ public abstract class CalibratorGvar implements Calibrator {
     AncillaryData ad, 
     int [] calBlock)  throws IOException {
     sid = ad.getSensorId();
+    this.sensorId = sid;
     if(calBlock != null)
       initGvar(ad.getSensorId(), calBlock);
   }
@@ -102,6 +108,7 @@ public abstract class CalibratorGvar implements Calibrator {
           int [] calBlock)
   {
     sid = sensorId;
+    this.sensorId = sensorId;
     if(calBlock != null)
       initGvar(sensorId, calBlock);
     else
@@ -114,6 +121,9 @@ public abstract class CalibratorGvar implements Calibrator {
 
     int calIndex = 0;
     sid = sensorId;
+    this.sensorId = sensorId;
+    this.calBlock = calBlock.clone();
+    bandNum = 0;
 
     // now, correct for satellites starting with G12 (sid = 78)
     int irOffset = 2;
@@ -283,16 +293,11 @@ public abstract class CalibratorGvar implements Calibrator {
 
   {
 
-    // create the output data buffer
-    float[] outputData = new float[inputData.length];
-
-    // just call the other calibrate routine for each data point
-    for (int i = 0; i < inputData.length; i++) {
-      outputData[i] = calibrate(inputData[i], band, calTypeOut);
-    }
-
-    // return the calibrated buffer
-    return outputData;
+    // calibrate each count once through a lookup table
+    return CalibrationTables.calibrate(this,
+      new Object[] {Integer.valueOf(sensorId), Integer.valueOf(curCalType),
+                   calBlock},
+      inputData, band, calTypeOut);
 
   }
 
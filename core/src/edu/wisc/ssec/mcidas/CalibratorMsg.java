@@ -195,13 +195,10 @@ public class CalibratorMsg implements Calibrator {
           return (float[])input.clone();
         }
       
-        float[] output = new float[input.length];
-
-        for (int i = 0; i < input.length; i++) {
-            output[i] = calibrate(input[i], band, calTypeOut);
-        }
-
-        return output;
+        // calibrate each count once through a lookup table
+        return CalibrationTables.calibrate(this,
+            new Object[] {Integer.valueOf(curCalType), planckCoefs},
+            input, band, calTypeOut);
     }
 
     /**
@@ -0,0 +1,466 @@
+//
+// SplitAreaFetcher.java
+//
+
+/*
+This source file is part of the edu.wisc.ssec.mcidas package and is
+Copyright (C) 1998 - 2017 by Tom Whittaker, Tommy Jasmin, Tom Rink,
+Don Murray, James Kelly, Bill Hibbard, Dave Glowacki, Curtis Rueden
+and others.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package edu.wisc.ssec.mcidas;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the data of a large ADDE image request as several concurrent
+ * sub-requests.  AreaFile uses it for remote images whose data is
+ * larger than {@link #getMinSplitBytes()}: the directory, navigation
+ * and calibration come from the original request, and the data is
+ * fetched in slices of lines (and, for multi-band requests, one band
+ * per slice).  Each slice is an ADDE request for its lines placed by
+ * upper left image coordinates, taken from the directory of the
+ * original request, with the same magnification, calibration and
+ * other keywords, so the slices fit together whatever the placement
+ * (lat/lon, centered line/element) of the original request.  Slices
+ * are decoded into the AreaFile data array as their bytes arrive.
+ *
+ * <p>A failed slice is retried up to {@link #getMaxRetries()} times.
+ * The number of concurrent connections to one server, over all
+ * images being read, is limited to
+ * {@link #getMaxConnectionsPerServer()}.  If a slice cannot be read,
+ * or its directory does not match the original one (e.g. a newer
+ * image has arrived for a relative position), the fetch fails and
+ * AreaFile reads the original request instead.
+ *
+ * <p>The defaults may be set by the system properties
+ * <code>adde.split.minbytes</code> (default 8 MB, 0 turns splitting
+ * off), <code>adde.split.connections</code> (default 4) and
+ * <code>adde.split.retries</code> (default 2).
+ */
+public final class SplitAreaFetcher {
+
+  private static final Logger LOGGER =
+    Logger.getLogger(SplitAreaFetcher.class.getName());
+
+  /** system property for the smallest data size that is split */
+  public static final String MIN_BYTES_PROPERTY = "adde.split.minbytes";
+
+  /** system property for the connection limit per server */
+  public static final String CONNECTIONS_PROPERTY = "adde.split.connections";
+
+  /** system property for the number of retries of a slice */
+  public static final String RETRIES_PROPERTY = "adde.split.retries";
+
+  /** number of slices for each allowed connection, to even out
+      the load when slices take different times */
+  private static final int SLICES_PER_CONNECTION = 2;
+
+  private static long minSplitBytes =
+    Long.getLong(MIN_BYTES_PROPERTY, 8L * 1024 * 1024).longValue();
+  private static int maxConnections =
+    Math.max(1, Integer.getInteger(CONNECTIONS_PROPERTY, 4).intValue());
+  private static int maxRetries =
+    Math.max(0, Integer.getInteger(RETRIES_PROPERTY, 2).intValue());
+
+  /** connection permits of each server (host:port) */
+  private static final Map<String, Semaphore> servers =
+    new HashMap<String, Semaphore>();
+
+  private SplitAreaFetcher() {
+  }
+
+  /**
+   * @param bytes smallest image data size, in bytes, that is split;
+   *        0 turns splitting off
+   */
+  public static synchronized void setMinSplitBytes(long bytes) {
+    minSplitBytes = bytes;
+  }
+
+  /**
+   * @return smallest image data size, in bytes, that is split
+   */
+  public static synchronized long getMinSplitBytes() {
+    return minSplitBytes;
+  }
+
+  /**
+   * Set the limit on concurrent connections to one server; it applies
+   * to servers first used after the call.
+   *
+   * @param max the limit, at least 1
+   */
+  public static synchronized void setMaxConnectionsPerServer(int max) {
+    maxConnections = Math.max(1, max);
+    servers.clear();
+  }
+
+  /**
+   * @return the limit on concurrent connections to one server
+   */
+  public static synchronized int getMaxConnectionsPerServer() {
+    return maxConnections;
+  }
+
+  /**
+   * @param retries number of times a failed slice is requested again
+   */
+  public static synchronized void setMaxRetries(int retries) {
+    maxRetries = Math.max(0, retries);
+  }
+
+  /**
+   * @return number of times a failed slice is requested again
+   */
+  public static synchronized int getMaxRetries() {
+    return maxRetries;
+  }
+
+  private static synchronized Semaphore getPermits(String server) {
+    Semaphore permits = servers.get(server);
+    if (permits == null) {
+      permits = new Semaphore(maxConnections, true);
+      servers.put(server, permits);
+    }
+    return permits;
+  }
+
+  /** bytes of data of an image with directory dir */
+  private static long dataBytes(int[] dir) {
+    int prefix = dir[AreaFile.AD_DOCLENGTH] + dir[AreaFile.AD_CALLENGTH] +
+                 dir[AreaFile.AD_LEVLENGTH];
+    if (dir[AreaFile.AD_VALCODE] != 0) prefix += 4;
+    long lineLength = prefix + (long) dir[AreaFile.AD_NUMBANDS] *
+      dir[AreaFile.AD_NUMELEMS] * dir[AreaFile.AD_DATAWIDTH];
+    return lineLength * dir[AreaFile.AD_NUMLINES];
+  }
+
+  /**
+   * Return true if the data of an image from source with directory
+   * dir is read in slices by fetch.
+   *
+   * @param source ADDE URL of the image
+   * @param dir directory of the image
+   * @return true if source is an ADDE image data request whose data
+   *         is large enough to split
+   */
+  public static boolean shouldSplit(String source, int[] dir) {
+    long min = getMinSplitBytes();
+    return min > 0 && source != null &&
+           source.toLowerCase().startsWith("adde://") &&
+           source.indexOf('?') > 0 &&
+           dir[AreaFile.AD_NUMLINES] > 1 &&
+           dataBytes(dir) >= min;
+  }
+
+  /** one sub-request: lines first ... first+count-1 of one band
+      (bandIndex &gt;= 0) or all bands (bandIndex &lt; 0) */
+  private static final class Slice {
+    int first;
+    int count;
+    int bandIndex;
+    String url;
+  }
+
+  /** a slice whose directory does not fit the original request;
+      it is not retried */
+  private static final class SliceMismatchException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    SliceMismatchException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Read the data of the image from source, with directory dir,
+   * into target as concurrent sub-requests.
+   *
+   * @param source ADDE URL of the image
+   * @param dir directory of the image, in native byte order
+   * @param bands band numbers of the image, in the order of the band
+   *        index of target
+   * @param target data array, [band][line][element]
+   * @return true if all of the data has been read; false if it could
+   *         not be, in which case target may be partially filled
+   */
+  public static boolean fetch(String source, int[] dir, int[] bands,
+                              final int[][][] target) {
+    int numLines = dir[AreaFile.AD_NUMLINES];
+    int numBands = dir[AreaFile.AD_NUMBANDS];
+    boolean bandSplit = numBands > 1 && bands != null &&
+                        bands.length == numBands;
+    int connections = getMaxConnectionsPerServer();
+    int bandSlices = bandSplit ? numBands : 1;
+    int lineSlices = Math.min(numLines, Math.max(1,
+      (SLICES_PER_CONNECTION * connections + bandSlices - 1) / bandSlices));
+    int linesPerSlice = (numLines + lineSlices - 1) / lineSlices;
+    lineSlices = (numLines + linesPerSlice - 1) / linesPerSlice;
+
+    URL url;
+    try {
+      url = new URL(source);
+    } catch (IOException e) {
+      return false;
+    }
+    int port = url.getPort();
+    String server = url.getHost().toLowerCase() + ":" + port;
+
+    final List<Slice> slices = new ArrayList<Slice>();
+    for (int b = 0; b < bandSlices; b++) {
+      for (int s = 0; s < lineSlices; s++) {
+        Slice slice = new Slice();
+        slice.first = s * linesPerSlice;
+        slice.count = Math.min(linesPerSlice, numLines - slice.first);
+        slice.bandIndex = bandSplit ? b : -1;
+        slice.url = sliceURL(source, dir, slice.first, slice.count,
+                             bandSplit ? bands[b] : -1);
+        slices.add(slice);
+      }
+    }
+    if (slices.size() < 2) return false;
+
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine("reading " + source + " as " + slices.size() + " slices");
+    }
+
+    final Semaphore permits = getPermits(server);
+    final int[] sourceDir = dir;
+    final int retries = getMaxRetries();
+    final boolean[] failed = new boolean[1];
+    ExecutorService executor = Executors.newFixedThreadPool(
+      Math.min(connections, slices.size()), new ThreadFactory() {
+        private int count = 0;
+        public synchronized Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "SplitAreaFetcher-" + (++count));
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    List<Future<Object>> futures = new ArrayList<Future<Object>>();
+    for (int i = 0; i < slices.size(); i++) {
+      final Slice slice = slices.get(i);
+      futures.add(executor.submit(new Callable<Object>() {
+        public Object call() throws Exception {
+          for (int attempt = 0; ; attempt++) {
+            synchronized (failed) {
+              if (failed[0]) return null;
+            }
+            permits.acquire();
+            try {
+              readSlice(slice, sourceDir, target);
+              return null;
+            } catch (SliceMismatchException e) {
+              throw e;
+            } catch (IOException e) {
+              if (attempt >= retries) throw e;
+              LOGGER.fine("retrying slice " + slice.url + ": " + e);
+            } finally {
+              permits.release();
+            }
+            Thread.sleep(250L * (attempt + 1));
+          }
+        }
+      }));
+    }
+    executor.shutdown();
+
+    boolean ok = true;
+    for (int i = 0; i < futures.size() && ok; i++) {
+      try {
+        futures.get(i).get();
+      } catch (ExecutionException e) {
+        LOGGER.warning("Could not read " + source + " in slices: " +
+                       e.getCause());
+        ok = false;
+      } catch (InterruptedException e) {
+        ok = false;
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (!ok) {
+      // the fetch has failed: stop the slices still queued or reading
+      synchronized (failed) {
+        failed[0] = true;
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        futures.get(i).cancel(true);
+      }
+    }
+    if (!ok) executor.shutdownNow();
+    return ok;
+  }
+
+  /**
+   * Build the URL of a slice: the original request with its placement,
+   * size and (for one band) band keywords replaced.
+   */
+  private static String sliceURL(String source, int[] dir, int first,
+                                 int count, int band) {
+    int q = source.indexOf('?');
+    StringBuffer sb = new StringBuffer(source.substring(0, q + 1));
+    StringTokenizer tokens = new StringTokenizer(source.substring(q + 1), "&");
+    while (tokens.hasMoreTokens()) {
+      String token = tokens.nextToken();
+      String lc = token.toLowerCase();
+      // keywords as matched by AddeURLConnection for image requests
+      if (lc.startsWith("lat") || lc.startsWith("lon") ||
+          lc.startsWith("lin") || lc.startsWith("ele") ||
+          lc.startsWith("pla") || lc.startsWith("size") ||
+          (band >= 0 && lc.startsWith("ban"))) {
+        continue;
+      }
+      sb.append(token);
+      sb.append('&');
+    }
+    int line = dir[AreaFile.AD_STLINE] + first * dir[AreaFile.AD_LINERES];
+    sb.append("linele=" + line + " " + dir[AreaFile.AD_STELEM] + " i");
+    sb.append("&place=ulleft");
+    sb.append("&size=" + count + " " + dir[AreaFile.AD_NUMELEMS]);
+    if (band >= 0) sb.append("&band=" + band);
+    return sb.toString();
+  }
+
+  /** read one slice into target */
+  private static void readSlice(Slice slice, int[] dir, int[][][] target)
+          throws IOException {
+    DataInputStream in = new DataInputStream(
+      new BufferedInputStream(new URL(slice.url).openStream(), 65536));
+    try {
+      int[] sdir = new int[AreaFile.AD_DIRSIZE];
+      for (int i = 0; i < sdir.length; i++) sdir[i] = in.readInt();
+      boolean flip = false;
+      if (sdir[AreaFile.AD_VERSION] != AreaFile.VERSION_NUMBER) {
+        // same as AreaFile.readMetaData
+        McIDASUtil.flip(sdir, 0, 19);
+        if ((sdir[20] & 0xffff) == 0) McIDASUtil.flip(sdir, 20, 20);
+        McIDASUtil.flip(sdir, 21, 23);
+        McIDASUtil.flip(sdir, 32, 50);
+        McIDASUtil.flip(sdir, 53, 55);
+        McIDASUtil.flip(sdir, 57, 63);
+        flip = true;
+        if (sdir[AreaFile.AD_VERSION] != AreaFile.VERSION_NUMBER) {
+          throw new SliceMismatchException("not an AREA file");
+        }
+      }
+      int numBands = (slice.bandIndex >= 0) ? 1 : dir[AreaFile.AD_NUMBANDS];
+      int expectedLine =
+        dir[AreaFile.AD_STLINE] + slice.first * dir[AreaFile.AD_LINERES];
+      if (sdir[AreaFile.AD_SENSORID] != dir[AreaFile.AD_SENSORID] ||
+          sdir[AreaFile.AD_IMGDATE] != dir[AreaFile.AD_IMGDATE] ||
+          sdir[AreaFile.AD_IMGTIME] != dir[AreaFile.AD_IMGTIME] ||
+          sdir[AreaFile.AD_STLINE] != expectedLine ||
+          sdir[AreaFile.AD_STELEM] != dir[AreaFile.AD_STELEM] ||
+          sdir[AreaFile.AD_NUMLINES] != slice.count ||
+          sdir[AreaFile.AD_NUMELEMS] != dir[AreaFile.AD_NUMELEMS] ||
+          sdir[AreaFile.AD_NUMBANDS] != numBands ||
+          sdir[AreaFile.AD_DATAWIDTH] != dir[AreaFile.AD_DATAWIDTH] ||
+          sdir[AreaFile.AD_LINERES] != dir[AreaFile.AD_LINERES] ||
+          sdir[AreaFile.AD_ELEMRES] != dir[AreaFile.AD_ELEMRES]) {
+        throw new SliceMismatchException(
+          "slice directory does not match the image: " + slice.url);
+      }
+
+      int width = sdir[AreaFile.AD_DATAWIDTH];
+      int numEles = sdir[AreaFile.AD_NUMELEMS];
+      int prefix = sdir[AreaFile.AD_DOCLENGTH] + sdir[AreaFile.AD_CALLENGTH] +
+                   sdir[AreaFile.AD_LEVLENGTH];
+      if (sdir[AreaFile.AD_VALCODE] != 0) prefix += 4;
+      if (width != 1 && width != 2 && width != 4) {
+        throw new SliceMismatchException("invalid data width " + width);
+      }
+      skipFully(in, (long) sdir[AreaFile.AD_DATAOFFSET] - 4 * sdir.length);
+
+      byte[] line = new byte[numBands * numEles * width];
+      for (int i = 0; i < slice.count; i++) {
+        skipFully(in, prefix);
+        in.readFully(line);
+        int row = slice.first + i;
+        for (int k = 0; k < numBands; k++) {
+          int[] out = target[(slice.bandIndex >= 0) ? slice.bandIndex : k][row];
+          decode(line, k, numBands, width, flip, out);
+        }
+      }
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  /** decode band k of a line of band interleaved values as AreaFile
+      does: 1- and 2-byte values are unsigned */
+  private static void decode(byte[] line, int k, int numBands, int width,
+                             boolean flip, int[] out) {
+    int stride = numBands * width;
+    int p = k * width;
+    if (width == 1) {
+      for (int j = 0; j < out.length; j++, p += stride) {
+        out[j] = line[p] & 0xff;
+      }
+    } else if (width == 2) {
+      for (int j = 0; j < out.length; j++, p += stride) {
+        int b0 = line[p] & 0xff;
+        int b1 = line[p + 1] & 0xff;
+        out[j] = flip ? (b1 << 8) | b0 : (b0 << 8) | b1;
+      }
+    } else {
+      for (int j = 0; j < out.length; j++, p += stride) {
+        int b0 = line[p] & 0xff;
+        int b1 = line[p + 1] & 0xff;
+        int b2 = line[p + 2] & 0xff;
+        int b3 = line[p + 3] & 0xff;
+        out[j] = flip ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0
+                      : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+      }
+    }
+  }
+
+  private static void skipFully(DataInputStream in, long n)
+          throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        // skip may return 0 before the end of the stream
+        if (in.read() < 0) throw new java.io.EOFException();
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+}
@@ -0,0 +1,493 @@
+//
+// AddeCache.java
+//
+
+/*
+This source file is part of the edu.wisc.ssec.mcidas package and is
+Copyright (C) 1998 - 2017 by Tom Whittaker, Tommy Jasmin, Tom Rink,
+Don Murray, James Kelly, Bill Hibbard, Dave Glowacki, Curtis Rueden
+and others.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package edu.wisc.ssec.mcidas.adde;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent on-disk cache of ADDE responses, used by
+ * AddeURLConnection for image data (AGET), grid data (GGET) and
+ * point data (MDKS) requests.  A response is stored, after
+ * decompression, in a file named by the SHA-1 digest of the
+ * normalized request (host, port, service, user, project and the
+ * request string built from the URL keywords), and a repeated
+ * request is served from that file through the same InputStream API,
+ * without a connection to the server.  All readers of ADDE URLs
+ * (AreaFile, AddeGridReader, AddePointDataReader, ...) therefore
+ * benefit without any change.
+ *
+ * <p>A response is recorded while the client reads it, and is only
+ * entered in the cache once it has been read to its end; responses
+ * reporting an error are never cached.  When the files of the cache
+ * exceed the byte budget, the least recently used ones are deleted.
+ * An optional time to live makes entries older than it misses, for
+ * requests whose answer changes.  Image requests that do not name
+ * their image absolutely (a position of 0, the latest image, or a
+ * negative position, without a day and time) are only cached when a
+ * time to live is set, so that re-polling for the latest image always
+ * reaches the server by default.
+ *
+ * <p>The cache is off unless a directory is given, either by the
+ * system property <code>adde.cache.dir</code> or by
+ * {@link #setDirectory(File)}.  The budget is set by
+ * <code>adde.cache.maxbytes</code> (default 512 MB) and the time to live,
+ * in seconds, by <code>adde.cache.ttl</code> (default 0, no expiry).
+ * Several processes may share one cache directory.
+ */
+public class AddeCache {
+
+  private static final Logger LOGGER =
+    Logger.getLogger(AddeCache.class.getName());
+
+  /** system property naming the cache directory */
+  public static final String DIR_PROPERTY = "adde.cache.dir";
+
+  /** system property for the byte budget of the cache */
+  public static final String MAX_BYTES_PROPERTY = "adde.cache.maxbytes";
+
+  /** system property for the time to live of entries, in seconds */
+  public static final String TTL_PROPERTY = "adde.cache.ttl";
+
+  /** default byte budget */
+  public static final long DEFAULT_MAX_BYTES = 512L * 1024 * 1024;
+
+  /** suffix of the files of cache entries */
+  private static final String SUFFIX = ".adde";
+
+  /** most bytes read to complete a response when its reader
+      closes the stream before its end */
+  private static final int DRAIN_LIMIT = 65536;
+
+  private static File directory = null;
+  private static long maxBytes = DEFAULT_MAX_BYTES;
+  private static long timeToLive = 0;
+
+  static {
+    String dir = System.getProperty(DIR_PROPERTY);
+    if (dir != null && dir.length() > 0) {
+      directory = new File(dir);
+    }
+    try {
+      maxBytes = Long.parseLong(
+        System.getProperty(MAX_BYTES_PROPERTY, "" + DEFAULT_MAX_BYTES));
+    } catch (NumberFormatException e) {
+      LOGGER.warning("Invalid " + MAX_BYTES_PROPERTY + "; using " +
+                     DEFAULT_MAX_BYTES);
+    }
+    try {
+      timeToLive = 1000 * Long.parseLong(System.getProperty(TTL_PROPERTY, "0"));
+    } catch (NumberFormatException e) {
+      LOGGER.warning("Invalid " + TTL_PROPERTY + "; entries do not expire");
+    }
+  }
+
+  private AddeCache() {
+  }
+
+  /**
+   * Set the cache directory; it is created if needed.
+   *
+   * @param dir  the directory, or null to turn the cache off
+   */
+  public static synchronized void setDirectory(File dir) {
+    directory = dir;
+  }
+
+  /**
+   * @return the cache directory, or null if the cache is off
+   */
+  public static synchronized File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return true if responses are cached
+   */
+  public static synchronized boolean isEnabled() {
+    return directory != null && maxBytes > 0;
+  }
+
+  /**
+   * Set the byte budget of the cache; least recently used entries
+   * are deleted to keep to it.
+   *
+   * @param max  the budget in bytes; 0 turns the cache off
+   */
+  public static synchronized void setMaxBytes(long max) {
+    maxBytes = max;
+    trim();
+  }
+
+  /**
+   * @return the byte budget of the cache
+   */
+  public static synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Set the time to live of entries.
+   *
+   * @param millis  time to live in milliseconds; 0 for no expiry
+   */
+  public static synchronized void setTimeToLive(long millis) {
+    timeToLive = millis;
+  }
+
+  /**
+   * @return the time to live of entries in milliseconds; 0 for no expiry
+   */
+  public static synchronized long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * Delete all entries of the cache, and any recordings left behind
+   * by processes that stopped while reading a response.
+   */
+  public static synchronized void clear() {
+    File[] files = (directory == null) ? null : directory.listFiles();
+    if (files == null) return;
+    for (int i = 0; i < files.length; i++) {
+      String name = files[i].getName();
+      if (name.endsWith(SUFFIX) ||
+          (name.startsWith("adde") && name.endsWith(".tmp"))) {
+        files[i].delete();
+      }
+    }
+  }
+
+  /**
+   * @return the total size in bytes of the entries of the cache
+   */
+  public static synchronized long getSize() {
+    File[] files = listEntries();
+    long size = 0;
+    for (int i = 0; i < files.length; i++) {
+      size += files[i].length();
+    }
+    return size;
+  }
+
+  /**
+   * Return the cache key of a request: the hex SHA-1 digest of its
+   * normalized form.
+   *
+   * @param request  normalized request
+   * @param binary   binary data sent with the request, or null
+   * @return the key
+   */
+  static String makeKey(String request, byte[] binary) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-1");
+      md.update(request.getBytes("UTF-8"));
+      if (binary != null) md.update(binary);
+      byte[] digest = md.digest();
+      StringBuffer sb = new StringBuffer(2 * digest.length);
+      for (int i = 0; i < digest.length; i++) {
+        sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+        sb.append(Character.forDigit(digest[i] & 0xf, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-1 not available", e);
+    } catch (java.io.UnsupportedEncodingException e) {
+      throw new RuntimeException("UTF-8 not available", e);
+    }
+  }
+
+  /**
+   * Open the cached response for key.
+   *
+   * @param key  cache key from makeKey
+   * @return the response, positioned as the decompressed server
+   *         stream would be, or null if key is not cached (or its
+   *         entry has expired or cannot be read)
+   */
+  static InputStream get(String key) {
+    File file;
+    long ttl;
+    synchronized (AddeCache.class) {
+      if (!isEnabled()) return null;
+      file = new File(directory, key + SUFFIX);
+      ttl = timeToLive;
+    }
+    if (!file.exists()) return null;
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)));
+      long created = in.readLong();
+      long now = System.currentTimeMillis();
+      if (ttl > 0 && now - created > ttl) {
+        in.close();
+        file.delete();
+        return null;
+      }
+      // last modified time orders the entries for eviction
+      file.setLastModified(now);
+      if (LOGGER.isLoggable(Level.FINEST)) {
+        LOGGER.finest("ADDE cache hit " + key);
+      }
+      return in;
+    } catch (IOException e) {
+      LOGGER.warning("Cannot read ADDE cache entry " + file + ": " + e);
+      if (in != null) {
+        try { in.close(); } catch (IOException ignore) {}
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Return a stream that reads in and records what it reads as the
+   * response for key, entering it in the cache when in has been
+   * read to its end.
+   *
+   * @param key  cache key from makeKey
+   * @param in   the decompressed server stream
+   * @return the recording stream, or in if it cannot be recorded
+   */
+  static InputStream record(String key, InputStream in) {
+    File dir;
+    synchronized (AddeCache.class) {
+      if (!isEnabled()) return in;
+      dir = directory;
+    }
+    try {
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("cannot create " + dir);
+      }
+      return new Recorder(key, in, File.createTempFile("adde", ".tmp", dir));
+    } catch (IOException e) {
+      LOGGER.warning("Cannot record ADDE response: " + e);
+      return in;
+    }
+  }
+
+  /**
+   * Drop the recording of a stream returned by record, e.g. because
+   * the server reported an error; other streams are left alone.
+   *
+   * @param in  the stream
+   */
+  static void discard(InputStream in) {
+    if (in instanceof Recorder) {
+      ((Recorder) in).discard();
+    }
+  }
+
+  /** enter a completed recording in the cache */
+  private static synchronized void commit(String key, File temp) {
+    if (!isEnabled()) {
+      temp.delete();
+      return;
+    }
+    File file = new File(directory, key + SUFFIX);
+    file.delete();
+    if (!temp.renameTo(file)) {
+      LOGGER.warning("Cannot enter ADDE cache entry " + file);
+      temp.delete();
+      return;
+    }
+    trim();
+  }
+
+  /** delete the least recently used entries beyond the budget */
+  private static synchronized void trim() {
+    File[] files = listEntries();
+    long size = 0;
+    for (int i = 0; i < files.length; i++) {
+      size += files[i].length();
+    }
+    if (size <= maxBytes) return;
+    final long[] used = new long[files.length];
+    Integer[] order = new Integer[files.length];
+    for (int i = 0; i < files.length; i++) {
+      used[i] = files[i].lastModified();
+      order[i] = Integer.valueOf(i);
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        long ua = used[a.intValue()];
+        long ub = used[b.intValue()];
+        return (ua < ub) ? -1 : ((ua == ub) ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < order.length && size > maxBytes; i++) {
+      File file = files[order[i].intValue()];
+      long length = file.length();
+      if (file.delete()) size -= length;
+    }
+  }
+
+  private static File[] listEntries() {
+    File[] files = (directory == null) ? null : directory.listFiles();
+    if (files == null) return new File[0];
+    int n = 0;
+    for (int i = 0; i < files.length; i++) {
+      if (files[i].getName().endsWith(SUFFIX)) files[n++] = files[i];
+    }
+    return Arrays.copyOf(files, n);
+  }
+
+  /**
+   * Copies the bytes read through it to a temporary file, which is
+   * entered in the cache at the end of the stream.
+   */
+  private static final class Recorder extends FilterInputStream {
+
+    private final String key;
+    private final File temp;
+    private DataOutputStream out;
+    private long count = 0;
+    private boolean done = false;
+
+    Recorder(String key, InputStream in, File temp) throws IOException {
+      super(in);
+      this.key = key;
+      this.temp = temp;
+      out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(temp)));
+      out.writeLong(System.currentTimeMillis());
+    }
+
+    public int read() throws IOException {
+      int b = in.read();
+      if (b < 0) {
+        finish();
+      } else if (out != null) {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n < 0) {
+        finish();
+      } else if (out != null) {
+        write(b, off, n);
+      }
+      return n;
+    }
+
+    public long skip(long n) throws IOException {
+      // skipped bytes must be recorded too
+      byte[] buf = new byte[(int) Math.min(n, 8192)];
+      long skipped = 0;
+      while (skipped < n) {
+        int r = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+        if (r < 0) break;
+        skipped += r;
+      }
+      return skipped;
+    }
+
+    public boolean markSupported() {
+      return false;
+    }
+
+    public void mark(int readlimit) {
+    }
+
+    public void reset() throws IOException {
+      throw new IOException("mark/reset not supported");
+    }
+
+    public void close() throws IOException {
+      // complete a response whose reader stopped just short of its end
+      // (e.g. before a trailer); give up on longer remainders
+      if (out != null && !done) {
+        byte[] buf = new byte[8192];
+        long limit = count + DRAIN_LIMIT;
+        try {
+          while (out != null && !done && count < limit) {
+            if (read(buf, 0, buf.length) < 0) break;
+          }
+        } catch (IOException e) {
+          // the response is incomplete; not cached
+        }
+      }
+      discard();
+      in.close();
+    }
+
+    private void write(byte[] b, int off, int len) {
+      count += len;
+      try {
+        if (count > getMaxBytes()) {
+          throw new IOException("response larger than the cache");
+        }
+        out.write(b, off, len);
+      } catch (IOException e) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+          LOGGER.fine("Not caching ADDE response " + key + ": " + e);
+        }
+        discard();
+      }
+    }
+
+    private void finish() {
+      if (out == null || done) return;
+      done = true;
+      try {
+        out.close();
+        out = null;
+        commit(key, temp);
+      } catch (IOException e) {
+        LOGGER.warning("Cannot write ADDE cache entry: " + e);
+        discard();
+      }
+    }
+
+    /** stop recording and delete the temporary file, unless it has
+        been entered in the cache */
+    void discard() {
+      if (out != null) {
+        try { out.close(); } catch (IOException ignore) {}
+        out = null;
+        temp.delete();
+      }
+    }
+  }
+}
@@ -51,7 +51,9 @@ import HTTPClient.UncompressInputStream;
  * image data, image directories, grid data, grid directory, 
  * point source data, text, weather text, observational text
  * and dataset information (McIDAS AGET, ADIR, GDIR, GGET, MDKS, 
- * TXTG, OBTG, WXTG and LWPR requests) are supported.
+ * TXTG, OBTG, WXTG and LWPR requests) are supported.  Image, grid
+ * and point data responses are served from the {@link AddeCache}
+ * when it is enabled.
  *
  * @see <A HREF="http://www.ssec.wisc.edu/mcidas/doc//prog_man.html">
  *      McIDAS Programmer's Manual</A>
@@ -334,6 +336,11 @@ public class AddeURLConnection extends URLConnection
   /** request type - default to AGET */
   private int reqType = AGET;
 
+  /** true if an AGET request names its image by an absolute position or
+      by day and time, or a GGET request names its grids by day and time,
+      so that its answer does not change */
+  private boolean absoluteRequest = false;
+
   /** debug flag  - value can be overrided with debug=true */
   private boolean debug = false;
 
@@ -613,6 +620,32 @@ public class AddeURLConnection extends URLConnection
 
 // end of request decoding
 //-------------------------------------------------------------------------
+// serve image, grid and point data requests from the cache if we can
+
+    String cacheKey = null;
+    // relative image and grid requests (such as the latest image) and
+    // point requests, whose data may still be arriving, are only cached
+    // when entries expire
+    if ((reqType == AGET || reqType == GGET || reqType == MDKS) &&
+        (((reqType == AGET || reqType == GGET) && absoluteRequest) ||
+         AddeCache.getTimeToLive() > 0) &&
+        AddeCache.isEnabled()) {
+      cacheKey = AddeCache.makeKey(url.getHost().toLowerCase() + ":" +
+        portToUse + " " + new String(svc) + " " + new String(usr) + " " +
+        proj + (rawStream ? " raw " : " ") + cmd, binaryData);
+      InputStream cached = AddeCache.get(cacheKey);
+      if (cached != null) {
+        if (LOGGER.isLoggable(Level.FINEST)) {
+          LOGGER.finest("serving request from ADDE cache");
+        }
+        is = cached;
+        dis = new DataInputStream(is);
+        readResponseSize();
+        connected = true;
+        return;
+      }
+    }
+
 // now write this all to the port
 
     // first figure out which port to connect on.  This can either be
@@ -745,6 +778,7 @@ public class AddeURLConnection extends URLConnection
         : (compressionType == COMPRESS)
             ? new UncompressInputStream(t.getInputStream())
             : t.getInputStream();
+    if (cacheKey != null) is = AddeCache.record(cacheKey, is);
     dis = new DataInputStream(is);
 
     if (LOGGER.isLoggable(Level.FINEST) && (compressionType != portToUse) ) {
@@ -753,6 +787,20 @@ public class AddeURLConnection extends URLConnection
                             ((compressionType == GZIP)?"GZIP":"compress"))));
     }
 
+    readResponseSize();
+
+    // if we made it to here, we're getting data
+    connected = true;
+
+  }
+
+  /**
+   * Read the byte count at the start of the response (unless a raw
+   * stream was requested), and the error message if there is one.
+   */
+  private void readResponseSize()
+    throws IOException, AddeURLException
+  {
     // get response from server, byte count coming
 
     if(!rawStream) {
@@ -763,16 +811,13 @@ public class AddeURLConnection extends URLConnection
 
       // if server returns zero, there was an error so read trailer and exit
       if (numBytes == 0) {
+        AddeCache.discard(is);
         byte [] trailer = new byte[TRAILER_SIZE];
         dis.readFully(trailer, 0, trailer.length);
         String errMsg = new String(trailer, ERRMSG_OFFS, ERRMSG_SIZE);
         throw new AddeURLException(errMsg);
       }
     }
-
-    // if we made it to here, we're getting data
-    connected = true;
-
   }
 
   private static char AMPERSAND = '&';
@@ -929,6 +974,7 @@ public class AddeURLConnection extends URLConnection
         String lineleType = "A";
         String placement = "C";
         String trackString = "TRACKING=0";
+        boolean dayGiven = false;
 
         StringTokenizer cmdTokens = new StringTokenizer(uCmd, "&");
         while (cmdTokens.hasMoreTokens())
@@ -1132,6 +1178,7 @@ public class AddeURLConnection extends URLConnection
             {
                 buf.append(" ");
                 buf.append(testString);
+                dayGiven = true;
             }
             else
             if (lctestString.startsWith("id"))        // id keyword
@@ -1152,6 +1199,8 @@ public class AddeURLConnection extends URLConnection
                 buf.append(testString);
             }
         } 
+        absoluteRequest = isAbsolutePosition(posString) ||
+          (dayGiven && !timeString.equalsIgnoreCase("TIME=X X I"));
         buf.append(" ");
         buf.append(traceString);
         buf.append(" ");
@@ -1193,6 +1242,24 @@ public class AddeURLConnection extends URLConnection
 
     }
 
+    /**
+     * Helper function for decodeAGETString; a position is absolute if it
+     * is a positive dataset position.  Zero and negative positions are
+     * relative to the latest image.
+     *
+     * @param posString  the value of the pos keyword
+     * @return true if the position names one image
+     */
+    private static boolean isAbsolutePosition(String posString) {
+        StringTokenizer tok = new StringTokenizer(posString);
+        if (!tok.hasMoreTokens()) return false;
+        try {
+            return Integer.parseInt(tok.nextToken()) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     /**
      * Decode the ADDE request for grid directory information.
      *
@@ -1244,6 +1311,8 @@ public class AddeURLConnection extends URLConnection
       String colString = null;
       String srcString = null;
       String skip = null;
+      boolean dayGiven = false;
+      boolean timeGiven = false;
 
       StringTokenizer cmdTokens = new StringTokenizer(uCmd, "&");
       while (cmdTokens.hasMoreTokens()) {
@@ -1286,10 +1355,12 @@ public class AddeURLConnection extends URLConnection
         } else if (lctestString.startsWith("day")) {
           buf.append(" ");
           buf.append(testString);
+          dayGiven = true;
 
         } else if (lctestString.startsWith("time")) {
           buf.append(" ");
           buf.append(testString);
+          timeGiven = true;
 
         } else if (lctestString.startsWith("lev")) {
           buf.append(" ");
@@ -1361,6 +1432,7 @@ public class AddeURLConnection extends URLConnection
         */
         } 
       }
+      absoluteRequest = dayGiven && timeGiven;
       buf.append(" ");
       buf.append(numString);
       buf.append(" ");
@@ -30,8 +30,11 @@ import java.rmi.RemoteException;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import visad.util.ThreadPool;
+import visad.util.Tracer;
 
 /*
 Action - ThingReference event logic
@@ -69,6 +72,13 @@ call stacks:
  *
  * ActionImpl is the superclass of DisplayImpl and CellImpl.<P>
  *
+ * All ActionImpls share one ThreadPool.  Its executor is chosen by the
+ * system property visad.actionimpl.executor ("fixed", the default,
+ * "workstealing" or "virtual"), or may be replaced by
+ * setThreadPool().  An ActionImpl is in the pool's queue at most once:
+ * requests for activity while it is already queued are coalesced into
+ * the queued run.<P>
+ *
  * ActionImpl is not Serializable and should not be copied
  * between JVMs.<P>
  */
@@ -89,9 +99,30 @@ public abstract class ActionImpl implements Action, Runnable {
                                             "false"));
 
 
+  /**
+   * Executor mode of the shared thread pool, one of the ThreadPool.MODE_
+   * constants
+   */
+  public static final String EXECUTOR_MODE =
+    System.getProperty("visad.actionimpl.executor", ThreadPool.MODE_FIXED);
+
   /**           */
   private String stackTrace;
 
+  /** Tracer probe for doAction() calls */
+  private static final int TRACE_ACTION = Tracer.register("ActionImpl.doAction");
+
+  /** if true, requests for activity while queued are coalesced */
+  private static boolean coalesce =
+    Boolean.parseBoolean(System.getProperty("visad.actionimpl.coalesce",
+                                            "true"));
+
+  /** number of requests for activity absorbed by an already queued run */
+  private static final AtomicLong coalesced = new AtomicLong();
+
+  /** true while this ActionImpl is in the pool's queue */
+  private final AtomicBoolean queued = new AtomicBoolean(false);
+
 
   /** thread pool and its lock */
   private transient static ThreadPool pool = null;
@@ -154,7 +185,7 @@ public abstract class ActionImpl implements Action, Runnable {
       if (pool == null) {
         // ...fill the pool; die if pool wasn't created
         try {
-          pool = new ThreadPool("ActionThread");
+          pool = ThreadPool.create("ActionThread", EXECUTOR_MODE);
         }
         catch (Exception e) {
           System.err.println(e.getClass().getName() + ": " + e.getMessage());
@@ -175,6 +206,96 @@ public abstract class ActionImpl implements Action, Runnable {
   }
 
 
+  /**
+   * return the number of ActionImpls waiting in the threadpool queue
+   * @return number of queued ActionImpls that have not started
+   */
+  public static int getQueueDepth() {
+    ThreadPool p = pool;
+    return (p == null) ? 0 : p.getQueueDepth();
+  }
+
+  /**
+   * return the mean time ActionImpls waited in the threadpool queue
+   * @return mean queue latency in milliseconds
+   */
+  public static double getMeanQueueLatency() {
+    ThreadPool p = pool;
+    return (p == null) ? 0.0 : p.getMeanQueueLatency();
+  }
+
+  /**
+   * return the longest time an ActionImpl waited in the threadpool queue
+   * @return maximum queue latency in milliseconds
+   */
+  public static double getMaxQueueLatency() {
+    ThreadPool p = pool;
+    return (p == null) ? 0.0 : p.getMaxQueueLatency();
+  }
+
+  /**
+   * return the number of requests for activity that were coalesced
+   * into an already queued run
+   * @return number of coalesced requests
+   */
+  public static long getCoalescedCount() {
+    return coalesced.get();
+  }
+
+  /**
+   * reset queue latency and coalescing statistics
+   */
+  public static void resetStatistics() {
+    coalesced.set(0);
+    ThreadPool p = pool;
+    if (p != null) p.resetStatistics();
+  }
+
+  /**
+   * enable or disable coalescing of requests for activity in an
+   * ActionImpl that is already queued
+   * @param c true to coalesce
+   */
+  public static void setCoalesce(boolean c) {
+    coalesce = c;
+  }
+
+  /**
+   * @return true if requests for activity are coalesced
+   */
+  public static boolean getCoalesce() {
+    return coalesce;
+  }
+
+  /**
+   * return the shared ActionImpl thread pool, starting it if necessary
+   * @return the thread pool
+   */
+  public static ThreadPool getThreadPool() {
+    if (pool == null) {
+      startThreadPool();
+    }
+    return pool;
+  }
+
+  /**
+   * replace the shared ActionImpl thread pool, e.g. by one built with
+   * ThreadPool.create() or around another ExecutorService; the old pool
+   * drains its queue and then stops
+   * @param newPool the new thread pool
+   */
+  public static void setThreadPool(ThreadPool newPool) {
+    if (newPool == null) return;
+    ThreadPool old;
+    synchronized (poolLock) {
+      old = pool;
+      pool = newPool;
+    }
+    if (old != null && old != newPool) {
+      old.stopThreads();
+    }
+  }
+
   /**
    * 
    */
@@ -230,7 +351,7 @@ public abstract class ActionImpl implements Action, Runnable {
 
     // WLH 17 Dec 2001
     if (pool != null && !pool.isTerminated()) {
-      pool.queue(this);
+      queue(pool);
     }
     run_links = null;
 
@@ -372,6 +493,9 @@ public abstract class ActionImpl implements Action, Runnable {
    */
   public void run() {
 
+    // a request for activity from now on needs a new run
+    queued.set(false);
+
     // Save the current thread so we can prohibit it from calling
     // getImage.  This is thread-safe, because only one ActionImpl
     // thread can be running at a time.
@@ -410,7 +534,13 @@ public abstract class ActionImpl implements Action, Runnable {
           if (checkTicks()) {
 // if (getName() != null) System.out.println("RUN " + getName());
             long t1 = System.currentTimeMillis();
-            doAction();
+            long traceStart = Tracer.begin();
+            try {
+              doAction();
+            }
+            finally {
+              Tracer.end(TRACE_ACTION, traceStart);
+            }
             long t2 = System.currentTimeMillis();
             //If it took longer than 10 milliseconds then do the trace
             if ((t2 - t1) > 10) {
@@ -471,7 +601,7 @@ public abstract class ActionImpl implements Action, Runnable {
       if (requeue) {
         if (pool != null) {
 // if (getName() != null) System.out.println("requeue " + getName());
-          pool.queue(this);
+          queue(pool);
         }
         requeue = false;
       }
@@ -548,7 +678,30 @@ public abstract class ActionImpl implements Action, Runnable {
     if (TRACE_STACK) {
       stackTrace = visad.util.Util.getStackTrace();
     }
-    pool.queue(this);
+    queue(pool);
+  }
+
+  /**
+   * add this ActionImpl to the queue of a thread pool, unless it is
+   * already queued and requests are coalesced
+   * @param p the thread pool
+   */
+  private void queue(ThreadPool p) {
+    if (!coalesce) {
+      p.queue(this);
+      return;
+    }
+    if (!queued.compareAndSet(false, true)) {
+      coalesced.incrementAndGet();
+      return;
+    }
+    try {
+      p.queue(this);
+    }
+    catch (RuntimeException e) {
+      queued.set(false);
+      throw e;
+    }
   }
 
   /**
@@ -33,7 +33,10 @@ import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import visad.util.HersheyFont;
 
@@ -71,8 +74,8 @@ public class AxisScale implements java.io.Serializable
   private boolean ticksVisible = true;
   private boolean labelBothSides = false;
 
-  private VisADLineArray scaleArray;
-  private VisADTriangleArray labelArray;
+  private volatile VisADLineArray scaleArray;
+  private volatile VisADTriangleArray labelArray;
   private ScalarMap scalarMap;
   private Color myColor = Color.white;
   private double[] dataRange = new double[2];
@@ -101,6 +104,30 @@ public class AxisScale implements java.io.Serializable
   /** Is the label angled away from the axis or is it "flat"*/
   private boolean labelRelief = true;
 
+  /** maximum number of cached tick label strings */
+  private static final int LABEL_CACHE_SIZE = 1024;
+
+  /** tick label strings by value, for the current label formats */
+  private transient LabelCache labelCache;
+
+  /** incremented whenever a property of the scale changes */
+  private transient volatile int generation = 0;
+
+  /** arguments of the last screen based scale, and the generation and
+      user label table it was made with; only the last arguments are
+      remembered, since the scale holds one set of geometry arrays and
+      frames seldom return to older arguments while panning or zooming */
+  private transient volatile double[] madeArgs = null;
+  private transient volatile int madeGeneration = 0;
+  private transient volatile int madeLabelHash = 0;
+
+  /** latest arguments and callback for makeScreenBasedScaleLater */
+  private transient volatile double[] pendingArgs = null;
+  private transient volatile Runnable pendingDone = null;
+
+  /** true while a makeScreenBasedScaleLater task is queued or running */
+  private final AtomicBoolean scaleQueued = new AtomicBoolean(false);
+
   /**
    * Construct a new AxisScale for the given ScalarMap
    * @param map  ScalarMap to monitor.  Must be mapped to one of
@@ -241,6 +268,7 @@ public class AxisScale implements java.io.Serializable
   */
   public void setScreenBased(boolean sb) {
     screenBased = sb;
+    generation++;
   }
 
   /**
@@ -252,7 +280,10 @@ public class AxisScale implements java.io.Serializable
   }
 
   /**
-   * Create the scale for screen based.
+   * Create the scale for screen based.  The scale is only remade if
+   * the screen bounds, the data range or a property of this AxisScale
+   * changed since the last call, so this is cheap enough to call for
+   * every frame.
    * @return  true if scale was successfully created, otherwise false
    */
   public boolean makeScreenBasedScale(double xmin, double ymin,
@@ -260,15 +291,125 @@ public class AxisScale implements java.io.Serializable
                                       double XTMIN, double YTMIN,
                                       double XTMAX, double YTMAX)
          throws VisADException {
+    double[] args = screenBasedArguments(xmin, ymin, xmax, ymax,
+                                         XTMIN, YTMIN, XTMAX, YTMAX);
+    if (args == null) return false;
+    return makeScale(args);
+  }
+
+  /**
+   * Create the scale for screen based in the background, on the
+   * ActionImpl thread pool, so that labels and ticks are not computed
+   * in the middle of rendering a frame.  If the scale for these
+   * arguments is not already made, this returns at once and done is
+   * run once the new scale is available through getScaleArray and
+   * getLabelArray; until then they return the previous scale.  Calls
+   * made while a scale is being made replace its arguments, so only
+   * the latest scale is made.
+   * @param done  run (on a pool thread) when a new scale is ready;
+   *              may be null
+   * @return  true if getScaleArray and getLabelArray hold a screen
+   *          based scale, which may be for earlier arguments until
+   *          done is run
+   */
+  public boolean makeScreenBasedScaleLater(double xmin, double ymin,
+                                           double xmax, double ymax,
+                                           double XTMIN, double YTMIN,
+                                           double XTMAX, double YTMAX,
+                                           Runnable done)
+         throws VisADException {
+    double[] args = screenBasedArguments(xmin, ymin, xmax, ymax,
+                                         XTMIN, YTMIN, XTMAX, YTMAX);
+    if (args == null) return false;
+    // no lock here: a scale may be in the making on a pool thread
+    if (isMade(args)) return true;
+    pendingDone = done;
+    pendingArgs = args;
+    if (scaleQueued.compareAndSet(false, true)) {
+      ActionImpl.getThreadPool().queue(new Runnable() {
+        public void run() {
+          makePendingScales();
+        }
+      });
+    }
+    return madeArgs != null;
+  }
+
+  /** make scales for pendingArgs until there are no new arguments */
+  private void makePendingScales() {
+    while (true) {
+      double[] args = pendingArgs;
+      pendingArgs = null;
+      if (args != null) {
+        try {
+          makeScale(args);
+        }
+        catch (VisADException e) {
+        }
+        Runnable done = pendingDone;
+        if (done != null && pendingArgs == null) done.run();
+      }
+      scaleQueued.set(false);
+      // arguments may have arrived after pendingArgs was last read
+      if (pendingArgs == null || !scaleQueued.compareAndSet(false, true)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return  true if the current scale was made for args, in the
+   *          current generation and with the current label table
+   */
+  private boolean isMade(double[] args) {
+    return madeArgs != null && madeGeneration == generation &&
+           madeLabelHash == userLabelHash() && Arrays.equals(madeArgs, args);
+  }
+
+  private int userLabelHash() {
+    return userLabels ? labelTable.hashCode() : 0;
+  }
+
+  /** make the scale for arguments computed by screenBasedArguments,
+      unless it is already made */
+  private synchronized boolean makeScale(double[] args)
+          throws VisADException {
+    if (isMade(args)) return true;
+    int gen = generation;
+    int hash = userLabelHash();
+    boolean ok = makeScale(args[0] != 0.0, args[1], args[2], args[3],
+                           args[4], args[5], args[6], args[7], args[8],
+                           args[9], new double[] {args[10], args[11]});
+    if (ok) {
+      madeArgs = args;
+      madeGeneration = gen;
+      madeLabelHash = hash;
+    }
+    else {
+      madeArgs = null;
+    }
+    return ok;
+  }
+
+  /**
+   * @return  the arguments of makeScale for a screen based scale:
+   *          twoD (1 or 0), xmin, ymin, zmin, xmax, ymax, zmax, scale,
+   *          offset, line and the two ends of the data range; or null
+   *          if no scale can be made
+   */
+  private double[] screenBasedArguments(double xmin, double ymin,
+                                        double xmax, double ymax,
+                                        double XTMIN, double YTMIN,
+                                        double XTMAX, double YTMAX)
+          throws VisADException {
     DisplayImpl display = scalarMap.getDisplay();
-    if (display == null) return false;
+    if (display == null) return null;
     DisplayRenderer displayRenderer = display.getDisplayRenderer();
-    if (displayRenderer == null) return false;
-    if (axisOrdinal < 0) return false;
+    if (displayRenderer == null) return null;
+    if (axisOrdinal < 0) return null;
     dataRange = scalarMap.getRange();
     // boolean twoD = displayRenderer.getMode2D();
-    if (!displayRenderer.getMode2D()) return false;
-    boolean twoD = true;
+    if (!displayRenderer.getMode2D()) return null;
 
     ProjectionControl pcontrol = display.getProjectionControl();
     double[] aspect = pcontrol.getAspectCartesian();
@@ -341,8 +482,8 @@ public class AxisScale implements java.io.Serializable
     // position of baseline for this scale
     double line = 4.0 * myPosition * scale;  // DRM 17-APR-2001
 
-    return makeScale(twoD, xmin, ymin, zmin, xmax, ymax, zmax,
-                     scale, offset, line, dr);
+    return new double[] {1.0, xmin, ymin, zmin, xmax, ymax, zmax,
+                         scale, offset, line, dr[0], dr[1]};
   }
 
   /**
@@ -351,6 +492,8 @@ public class AxisScale implements java.io.Serializable
    */
   public boolean makeScale()
       throws VisADException {
+    // something changed; screen based scales must be remade too
+    generation++;
     DisplayImpl display = scalarMap.getDisplay();
     if (display == null) return false;
     DisplayRenderer displayRenderer = display.getDisplayRenderer();
@@ -433,11 +576,14 @@ public class AxisScale implements java.io.Serializable
 
   /** inner logic of makeScale with no references to display, displayRenderer
       or scalarMap, allwoing more flexible placement of scales */
-  public boolean makeScale(boolean twoD, double xmin, double ymin, double zmin,
+  public synchronized boolean makeScale(boolean twoD,
+                           double xmin, double ymin, double zmin,
                            double xmax, double ymax, double zmax,
                            double scale, double offset, double line,
                            double[] dataRange)
          throws VisADException {
+    // whatever this makes, it is not the memoized screen based scale
+    madeArgs = null;
 
 // start new method here
 // no references to display, scalarMap, or displayRenderer past this point
@@ -455,6 +601,8 @@ public class AxisScale implements java.io.Serializable
     int numSides = (getLabelBothSides()) ? 2 : 1;
     Vector lineArrayVector = new Vector(4*numSides);
     Vector labelArrayVector = new Vector();
+    VisADLineArray newScaleArray = null;
+    VisADTriangleArray newLabelArray = null;
 
     double one = 1.0;
     if (dataRange[0] > dataRange[1]) one = -1.0; // inverted range
@@ -874,6 +1022,8 @@ public class AxisScale implements java.io.Serializable
       //
       int maximumYAxisTickLabelSize = 1;
       int yAxisLabelLength=0;
+      Vector labelStrings = new Vector();
+      Vector labelPoints = new Vector();
       Hashtable localTable;
       synchronized(labelTable) {
           localTable = new Hashtable(labelTable);
@@ -912,26 +1062,37 @@ public class AxisScale implements java.io.Serializable
         System.out.println("For label = " + value.doubleValue() + "(" + val + "), point is (" + point[0] + "," + point[1] + "," + point[2] + ")");
         */
   
+        labelStrings.add((String) localTable.get(value));
+        labelPoints.add(point);
+      }
+
+      // render all the tick labels in one array
+      if (!labelStrings.isEmpty())
+      {
+        String[] strs =
+          (String[]) labelStrings.toArray(new String[labelStrings.size()]);
+        double[][] points =
+          (double[][]) labelPoints.toArray(new double[labelPoints.size()][]);
         if (labelFont == null)
         {
-          VisADLineArray label =
-            PlotText.render_label((String) localTable.get(value), point, base, updir, justification);
-          lineArrayVector.add(label);
+          lineArrayVector.add(
+            PlotText.render_label(strs, points, base, updir, justification,
+                                  TextControl.Justification.BOTTOM,
+                                  0.0, 1.0, null));
         }
         else if (labelFont instanceof Font)
         {
-          VisADTriangleArray label =
-            PlotText.render_font(
-                (String) localTable.get(value), (Font) labelFont, point, base,
-                updir, justification);
-          labelArrayVector.add(label);
-  
+          labelArrayVector.add(
+            PlotText.render_font(strs, (Font) labelFont, points, base, updir,
+                                 justification,
+                                 TextControl.Justification.BOTTOM,
+                                 0.0, 1.0, null));
         } else if (labelFont instanceof HersheyFont) {
-          VisADLineArray label =
-            PlotText.render_font(
-                (String) localTable.get(value), (HersheyFont) labelFont,
-                   point, base, updir, justification);
-          lineArrayVector.add(label);
+          lineArrayVector.add(
+            PlotText.render_font(strs, (HersheyFont) labelFont, points, base,
+                                 updir, justification,
+                                 TextControl.Justification.BOTTOM,
+                                 0.0, 1.0, null));
         }
       }
   
@@ -987,32 +1148,35 @@ public class AxisScale implements java.io.Serializable
       VisADLineArray[] arrays =
           (VisADLineArray[]) lineArrayVector.toArray(
             new VisADLineArray[lineArrayVector.size()]);
-      scaleArray = VisADLineArray.merge(arrays);
+      newScaleArray = VisADLineArray.merge(arrays);
   
       // merge the label arrays
-      labelArray = new VisADTriangleArray();
+      newLabelArray = new VisADTriangleArray();
       if ( !(labelArrayVector.isEmpty()) )
       {
         VisADTriangleArray[] labelArrays =
             (VisADTriangleArray[]) labelArrayVector.toArray(
               new VisADTriangleArray[labelArrayVector.size()]);
-        labelArray = VisADTriangleArray.merge(labelArrays);
+        newLabelArray = VisADTriangleArray.merge(labelArrays);
         // set the color for the label arrays
         float[] rgb = myColor.getColorComponents(null);
         byte red = ShadowType.floatToByte(rgb[0]);
         byte green = ShadowType.floatToByte(rgb[1]);
         byte blue = ShadowType.floatToByte(rgb[2]);
-        int n = 3 * labelArray.vertexCount;
+        int n = 3 * newLabelArray.vertexCount;
         byte[] colors = new byte[n];
         for (int i=0; i<n; i+=3) {
           colors[i] = red;
           colors[i+1] = green;
           colors[i+2] = blue;
         }
-        labelArray.colors = colors;
+        newLabelArray.colors = colors;
       }
     }
 
+    // publish both arrays together, for renderers on other threads
+    labelArray = newLabelArray;
+    scaleArray = newScaleArray;
     return true;
   }
 
@@ -1529,6 +1693,8 @@ public class AxisScale implements java.io.Serializable
   public void setNumberFormat(NumberFormat format)
   {
     labelFormat = format;
+    labelCache = null;
+    generation++;
   }
 
   /**
@@ -1708,8 +1874,56 @@ public class AxisScale implements java.io.Serializable
     return vals;
   }
 
-  /** create the default string for a value */
+  /** tick label strings by value, made with one state of the label
+      formats: a copy of labelFormat (which may be changed in place
+      through getNumberFormat) and the DateTime format pattern and
+      time zone */
+  private static final class LabelCache {
+    final NumberFormat format;
+    final String timePattern;
+    final TimeZone timeZone;
+    final ConcurrentHashMap<Double, String> labels =
+      new ConcurrentHashMap<Double, String>();
+
+    LabelCache(NumberFormat format) {
+      this.format = (format == null) ? null : (NumberFormat) format.clone();
+      timePattern = DateTime.getFormatPattern();
+      timeZone = DateTime.getFormatTimeZone();
+    }
+
+    /** true if the labels were made with these formats */
+    boolean isFor(NumberFormat format) {
+      return same(format, this.format) &&
+             same(DateTime.getFormatPattern(), timePattern) &&
+             same(DateTime.getFormatTimeZone(), timeZone);
+    }
+
+    private static boolean same(Object a, Object b) {
+      return (a == null) ? b == null : a.equals(b);
+    }
+  }
+
+  /** create the default string for a value, or reuse the one made
+      before; while panning most tick values stay the same */
   private String createLabelString(double value)
+  {
+    LabelCache cache = labelCache;
+    if (cache == null || !cache.isFor(labelFormat)) {
+      cache = new LabelCache(labelFormat);
+      labelCache = cache;
+    }
+    Double key = Double.valueOf(value);
+    String label = cache.labels.get(key);
+    if (label == null) {
+      label = formatLabel(value);
+      if (cache.labels.size() >= LABEL_CACHE_SIZE) cache.labels.clear();
+      cache.labels.put(key, label);
+    }
+    return label;
+  }
+
+  /** format the default string for a value */
+  private String formatLabel(double value)
   {
     String     label = null;
     ScalarType sType = scalarMap.getScalar();
@@ -1756,6 +1970,7 @@ public class AxisScale implements java.io.Serializable
    */
   public void setLabelRelief(boolean labelRelief) {
     this.labelRelief = labelRelief;
+    generation++;
   }
 
 }
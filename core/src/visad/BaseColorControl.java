@@ -66,6 +66,9 @@ public class BaseColorControl
 
   private transient Object lock = new Object();
 
+  // incremented whenever table or function is replaced or modified
+  private transient long tableVersion = 0;
+
   private final int components;
 
   /**
@@ -315,6 +318,7 @@ public class BaseColorControl
       functionCoordinateSystem = function.getDomainCoordinateSystem();
       functionUnits = function.getDomainUnits();
       table = null;
+      tableVersion++;
     }
     changeControl(true);
   }
@@ -376,10 +380,26 @@ public class BaseColorControl
         System.arraycopy(t[j], 0, table[j], 0, tableLength);
       }
       function = null;
+      tableVersion++;
     }
     changeControl(true);
   }
 
+  /**
+   * Get a counter which changes every time the colors of this
+   * control are redefined (via setTable, setFunction, setRange
+   * or syncControl); useful as a cheap key for caches of
+   * rendered colors.
+   *
+   * @return The current table version.
+   */
+  public long getTableVersion()
+  {
+    synchronized (lock) {
+      return tableVersion;
+    }
+  }
+
   /**
    * Get the table of colors.
    *
@@ -634,6 +654,7 @@ public class BaseColorControl
           table[ALPHA][i+left] = colors[ALPHA][i];
         }
       }
+      tableVersion++;
     }
     changeControl(true);
   }
@@ -752,6 +773,7 @@ public class BaseColorControl
           }
           tableLength = table[0].length;
           function = null;
+          tableVersion++;
         }
         try {
           changeControl(true);
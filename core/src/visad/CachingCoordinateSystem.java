@@ -35,10 +35,10 @@ import visad.data.ArrayCache;
 
 
 /**
- * A wrapper class for CoordinateSystems that will cache the last
- * values input and output values of the toReference and fromReference
- * methods.  If the inputs are the same as the last time these
- * methods were called, the previously calculated values are returned.
+ * A wrapper class for CoordinateSystems that will cache recent
+ * input and output values of the toReference and fromReference
+ * methods.  If the inputs are the same as in one of the cached
+ * calls, the previously calculated values are returned.
  *
  * @author Don Murray
  * @version $Revision: 1.11 $ $Date: 2009-12-07 12:16:19 $
@@ -51,7 +51,10 @@ public class CachingCoordinateSystem extends CoordinateSystem {
   /**  Does the actual caching         */
   private ArrayCache arrayCache = new ArrayCache();
 
-  /** Show time to transform           */
+  /**
+   * No longer used
+   * @deprecated use {@link #getCacheStatistics()}
+   */
   public static boolean debugTime = 
     Boolean.parseBoolean(System.getProperty("visad.cachingcoordinatesystem.debugtime",
                                             "false"));
@@ -88,28 +91,18 @@ public class CachingCoordinateSystem extends CoordinateSystem {
    */
   public double[][] toReference(double[][] inputs) throws VisADException {
     if (inputs == null) return inputs;
-    long t1 = System.currentTimeMillis();
-    boolean hit = true;
     String key = "toReferenceD";
     ArrayCache.DoubleResult results = arrayCache.get(key, inputs);    
     if (results.values == null) {
       double[][] tmp = results.cloneForCache(inputs);
       results.values = myCS.toReference(inputs);
       arrayCache.put(key, tmp, results);
-      hit = false;
     }
-    if(debugTime  && results.getShouldCache())
-        debugTime(inputs[0].length, key +" hit?" + hit, t1,System.currentTimeMillis());
     //    System.err.println (Util.getStackTrace());
 
     return results.values;
   }
 
-    private void debugTime(int size, String msg, long t1, long t2) {
-        if(size>100 && debugTime && t1!=t2) {
-            System.err.println("CCS #" +cnt + " size:" + size+ " " +  msg+" time:" + (t2 - t1));
-        }
-    }
 
 
   /**
@@ -126,18 +119,13 @@ public class CachingCoordinateSystem extends CoordinateSystem {
   public double[][] fromReference(double[][] inputs) throws VisADException {
     if (inputs == null) return inputs;
 
-    long t1 = System.currentTimeMillis();
-    boolean hit = true;
     String key = "fromReferenceD";
     ArrayCache.DoubleResult results = arrayCache.get(key, inputs);
     if (results.values == null) {
       double[][] tmp = results.cloneForCache(inputs);
       results.values = myCS.fromReference(inputs);
       arrayCache.put(key, tmp, results);
-      hit = false;
     }
-    if(debugTime  && results.getShouldCache())
-        debugTime(inputs[0].length,key +" hit?" + hit, t1,System.currentTimeMillis());
     return results.values;
 
   }
@@ -160,8 +148,6 @@ public class CachingCoordinateSystem extends CoordinateSystem {
   public float[][] toReference(float[][] inputs) throws VisADException {
     if (inputs == null) return inputs;
 
-    long t1 = System.currentTimeMillis();
-    boolean hit = true;
     String key = "toReferenceF";
 
     ArrayCache.FloatResult results = arrayCache.get(key, inputs);
@@ -169,11 +155,8 @@ public class CachingCoordinateSystem extends CoordinateSystem {
       float[][] tmp = results.cloneForCache(inputs);
       results.values = myCS.toReference(inputs);
       arrayCache.put(key, tmp, results);
-      hit = false;
     }
 
-    if(debugTime  && results.getShouldCache())
-        debugTime(inputs[0].length,key +" hit?" + hit, t1,System.currentTimeMillis());
     return results.values;
   }
 
@@ -191,18 +174,13 @@ public class CachingCoordinateSystem extends CoordinateSystem {
    */
   public float[][] fromReference(float[][] inputs) throws VisADException {
     if (inputs == null) return inputs;
-    long t1 = System.currentTimeMillis();
-    boolean hit = true;
     String key = "fromReferenceF";
     ArrayCache.FloatResult results = arrayCache.get(key, inputs);
     if (results.values==null) {
       float[][] tmp = results.cloneForCache(inputs);
       results.values = myCS.fromReference(inputs);
       arrayCache.put(key, tmp, results);
-      hit = false;
     }
-    if(debugTime  && results.getShouldCache())
-        debugTime(inputs[0].length,key +" hit?" + hit, t1,System.currentTimeMillis());
     return results.values;
   }
 
@@ -218,6 +196,23 @@ public class CachingCoordinateSystem extends CoordinateSystem {
     return that.myCS.equals(myCS);
   }
 
+  /**
+   * Access to the cache of transformed values, e.g. to change its
+   * byte budget
+   * @return the ArrayCache used by this CS
+   */
+  public ArrayCache getArrayCache() {
+    return arrayCache;
+  }
+
+  /**
+   * @return hit, miss and size statistics of the cache of transformed
+   *         values
+   */
+  public String getCacheStatistics() {
+    return arrayCache.getStatistics();
+  }
+
   /**
    * Access to the "cached" CS
    * @return  cached CoordinateSystem
@@ -29,6 +29,8 @@ package visad;
 import java.util.*;
 import java.rmi.*;
 
+import visad.util.Tracer;
+
 /**
    DataRenderer is the VisAD abstract super-class for graphics rendering
    algorithms.  These transform Data objects into 3-D (or 2-D)
@@ -79,6 +81,26 @@ public abstract class DataRenderer extends Object implements Cloneable {
   private float polygonOffset = 0f;
   private float polygonOffsetFactor = 0f;
 
+  /** Tracer probe for the doTransform calls of renderers */
+  protected static final int TRACE_TRANSFORM =
+    Tracer.register("DataRenderer.doTransform");
+
+  /** Tracer probe counting reuses of the cached spatial stage */
+  static final int TRACE_SPATIAL_HIT =
+    Tracer.register("DataRenderer.spatialCacheHit");
+
+  /** display_values arrays and allocation counts for doTransform */
+  private TransformBuffers transformBuffers = new TransformBuffers();
+
+  /** flag to cache the spatial stage of doTransform */
+  private boolean cacheSpatial = false;
+  /** true if only color or contour ScalarMaps changed since the cache
+      in spatialCache was filled */
+  private boolean spatialReusable = false;
+  /** spatial stage results of doTransform, keyed by Data identity */
+  private IdentityHashMap<Data, Object> spatialCache =
+    new IdentityHashMap<Data, Object>();
+
   /**
    * construct a DataRenderer
    */
@@ -101,6 +123,96 @@ public abstract class DataRenderer extends Object implements Cloneable {
   public void suppressExceptions(boolean suppress) {
     suppress_exceptions = suppress;
   }
+
+  /**
+   * @return the TransformBuffers that supply display_values arrays
+   *         during doTransform and count their allocations
+   */
+  public TransformBuffers getTransformBuffers() {
+    return transformBuffers;
+  }
+
+  /**
+   * set whether display_values arrays are reused across calls to
+   * doTransform, instead of being allocated each time (each frame
+   * of an animation still gets its own arrays); only safe if no
+   * depiction keeps references to display_values past the next
+   * doTransform (so not for direct manipulation renderers)
+   * @param reuse true to reuse display_values arrays
+   */
+  public void setReuseDisplayValues(boolean reuse) {
+    transformBuffers.setReuse(reuse);
+  }
+
+  /**
+   * @return flag indicating whether display_values arrays are reused
+   */
+  public boolean getReuseDisplayValues() {
+    return transformBuffers.getReuse();
+  }
+
+  /**
+   * set whether the spatial coordinates computed by doTransform are
+   * kept and reused when only color or contour ScalarMaps or Controls
+   * (e.g. ColorControl tables or ContourControl levels) change, so
+   * that the domain CoordinateSystem transforms and spatial assembly
+   * are skipped for those re-transforms; costs a copy of the spatial
+   * coordinates of the linked Data
+   * @param cache true to cache spatial coordinates
+   */
+  public void setCacheSpatialValues(boolean cache) {
+    synchronized (spatialCache) {
+      cacheSpatial = cache;
+      if (!cache) spatialCache.clear();
+    }
+  }
+
+  /**
+   * @return flag indicating whether spatial coordinates are cached
+   */
+  public boolean getCacheSpatialValues() {
+    return cacheSpatial;
+  }
+
+  /**
+   * used by ShadowFunctionOrSetType
+   * @param data Data object being transformed
+   * @return spatial stage results saved by putCachedSpatial for data,
+   *         or null if none or if they may be invalid
+   */
+  Object getCachedSpatial(Data data) {
+    synchronized (spatialCache) {
+      return spatialReusable ? spatialCache.get(data) : null;
+    }
+  }
+
+  /**
+   * used by ShadowFunctionOrSetType to save spatial stage results
+   * @param data Data object being transformed
+   * @param stage results to save
+   */
+  void putCachedSpatial(Data data, Object stage) {
+    synchronized (spatialCache) {
+      if (cacheSpatial) spatialCache.put(data, stage);
+    }
+  }
+
+  /**
+   * @return true if changes to map cannot affect spatial coordinates
+   */
+  private static boolean isColorOrContour(ScalarMap map) {
+    DisplayRealType real = map.getDisplayScalar();
+    if (Display.RGB.equals(real) || Display.RGBA.equals(real) ||
+        Display.Alpha.equals(real) || Display.IsoContour.equals(real)) {
+      return true;
+    }
+    DisplayTupleType tuple = real.getTuple();
+    return tuple != null &&
+           (tuple.equals(Display.DisplayRGBTuple) ||
+            (tuple.getCoordinateSystem() != null &&
+             tuple.getCoordinateSystem().getReference().equals(
+               Display.DisplayRGBTuple)));
+  }
     
   /**
    * add a BadMappingException or UnimplementedException to
@@ -141,6 +253,16 @@ public abstract class DataRenderer extends Object implements Cloneable {
     return any_changed;
   }
 
+  /**
+   * @param index index of a DataDisplayLink in getLinks()
+   * @return flag indicating whether the Data linked by
+   *         getLinks()[index] changed in the last prepareAction()
+   */
+  public boolean get_changed(int index) {
+    return changed != null && index >= 0 && index < changed.length &&
+           changed[index];
+  }
+
   /**
    * @return flag indicating whether any Controls associated with
    * ScalarMaps applying to any linked Data have changed and require
@@ -298,6 +420,7 @@ public abstract class DataRenderer extends Object implements Cloneable {
     any_changed = false;
     all_feasible = true;
     any_transform_control = false;
+    boolean spatial_changed = go;
 
     for (int i=0; i<Links.length; i++) {
       changed[i] = false;
@@ -305,6 +428,7 @@ public abstract class DataRenderer extends Object implements Cloneable {
       // test for changed Controls that require doTransform
 
       boolean do_prepare = Links[i].checkTicks() || !feasible[i] || go;
+      if (do_prepare) spatial_changed = true;
       if (feasible[i] && !do_prepare) {
         // check if this Data includes any changed Controls
         Enumeration maps = Links[i].getSelectedMapVector().elements();
@@ -372,6 +496,7 @@ System.out.println("prepareAction " + display.getName() + " " +
           ScalarMap map = (ScalarMap) maps.nextElement();
           if (map.checkTicks(this, Links[i])) {
             any_transform_control = true;
+            if (!isColorOrContour(map)) spatial_changed = true;
           }
         }
       } // end if (feasible[i])
@@ -382,6 +507,10 @@ System.out.println("any_changed = " + any_changed +
                    " all_feasible = " + all_feasible +
                    " any_transform_control = " + any_transform_control);
 */
+    synchronized (spatialCache) {
+      spatialReusable = cacheSpatial && !spatial_changed;
+      if (!spatialReusable) spatialCache.clear();
+    }
     return shadow;
   }
 
@@ -488,6 +617,11 @@ if (map.badRange()) {
     Links = null;
     exceptionVector.removeAllElements();
     projCntrlListeners.clear();
+    transformBuffers.clear();
+    synchronized (spatialCache) {
+      spatialCache.clear();
+      spatialReusable = false;
+    }
 
 // clear flow rendering and direct manipulation variables
     shadow_data_out = null;
@@ -33,7 +33,6 @@ import java.util.GregorianCalendar;
 import java.util.TimeZone;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.text.ParseException;
 import java.text.FieldPosition;
 
 /**
@@ -335,6 +334,10 @@ DateTime
      */
     public String formattedString(String pattern, TimeZone timezone)
     {
+        if (dateFormatClass == null && pattern != null) {
+            return DateTimeFormat.getInstance(pattern, timezone).format(
+                getValue());
+        }
         StringBuffer buf = new StringBuffer();
         DateFormat sdf = null;
         if(dateFormatClass!=null) {
@@ -500,16 +503,45 @@ DateTime
                                         TimeZone timezone)
         throws VisADException
     {
-        Date d;
-        try {
-          SimpleDateFormat sdf = new SimpleDateFormat();
-          sdf.setTimeZone(timezone);
-          sdf.applyPattern(format);
-          d = sdf.parse(dateString);
-        } catch (ParseException pe) {
-            throw new VisADException("invalid date string: " + dateString);
-        }
-        return new DateTime(d);
+        return new DateTime(
+            DateTimeFormat.getInstance(format, timezone).parse(dateString));
+    }
+
+    /**
+     * Parse an array of date/time strings, such as a column of a text
+     * file, into seconds since the epoch, without creating a DateTime
+     * for each value.
+     * @param  values       date/time strings; null or empty strings, and
+     *                      strings that do not match format, are missing
+     * @param  format       format string
+     * @param  timezone     TimeZone to use
+     *
+     * @return seconds since the epoch, NaN for missing values
+     * @see DateTimeFormat
+     */
+    public static double[] parseTimes(CharSequence[] values,
+                                      String format,
+                                      TimeZone timezone)
+    {
+        return DateTimeFormat.getInstance(format, timezone).parse(values);
+    }
+
+    /**
+     * Format an array of times, without creating a DateTime for each
+     * value.  The pattern uses the time format syntax of
+     * java.text.SimpleDateFormat.
+     * @param  seconds      seconds since the epoch
+     * @param  pattern      time format string
+     * @param  timezone     time zone to use
+     *
+     * @return formatted times, null for NaN values
+     * @see DateTimeFormat
+     */
+    public static String[] formatTimes(double[] seconds,
+                                       String pattern,
+                                       TimeZone timezone)
+    {
+        return DateTimeFormat.getInstance(pattern, timezone).format(seconds);
     }
 
     /**
@@ -0,0 +1,696 @@
+//
+// DateTimeFormat.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.text.DateFormatSymbols;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled, thread-safe date/time pattern for converting between
+ * strings and seconds since the epoch (1970-01-01 00:00:00Z), one value
+ * or whole arrays at a time, without a DateTime or Date per value.<P>
+ *
+ * Patterns use the syntax of java.text.SimpleDateFormat and give the
+ * same results.  Patterns made of numeric fields (y, M, d, D, H, k, K,
+ * h, m, s, S), the am/pm marker and literal text are compiled into a
+ * direct parser and formatter, which handles fixed offset time zones
+ * (such as GMT) arithmetically and other time zones through a per thread
+ * Calendar.  Anything else - month or day names, time zone fields,
+ * lenient values such as a 13th month, dates before the Gregorian
+ * calendar - is handed to a per thread SimpleDateFormat.<P>
+ *
+ * Instances are immutable; {@link #getInstance(String, TimeZone)}
+ * memoizes them by pattern and time zone.
+ */
+public final class DateTimeFormat
+{
+    /** Maximum number of memoized formats */
+    private static final int MAX_CACHED = 256;
+
+    private static final ConcurrentHashMap<Key, DateTimeFormat> cache =
+        new ConcurrentHashMap<Key, DateTimeFormat>();
+
+    /** returned by the direct parser for values it can't handle */
+    private static final long FAIL = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /** first year of the Gregorian calendar, as used by SimpleDateFormat */
+    private static final int FIRST_YEAR = 1583;
+
+    private static final int[] DAYS_BEFORE_MONTH =
+        {0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334, 365};
+
+    private final String pattern;
+    private final TimeZone timeZone;
+
+    /** pattern letter of each field, or 0 for literal text */
+    private final char[] letters;
+    /** pattern letter count of each field */
+    private final int[] counts;
+    /** literal text of each field */
+    private final String[] literals;
+    /** whether a numeric field is directly followed by another field */
+    private final boolean[] abutting;
+
+    /** whether the pattern can be handled without SimpleDateFormat */
+    private final boolean direct;
+    /** whether the pattern can be formatted without SimpleDateFormat */
+    private final boolean directFormat;
+    /** whether the time zone has a fixed offset from UTC */
+    private final boolean fixedOffset;
+    private final int rawOffset;
+    private final String[] amPmStrings;
+
+    private final ThreadLocal<SimpleDateFormat> formats =
+        new ThreadLocal<SimpleDateFormat>() {
+            protected SimpleDateFormat initialValue() {
+                return makeSimpleDateFormat();
+            }
+        };
+
+    private final ThreadLocal<Calendar> calendars =
+        new ThreadLocal<Calendar>() {
+            protected Calendar initialValue() {
+                return new GregorianCalendar(timeZone);
+            }
+        };
+
+    private static final class Key
+    {
+        private final String pattern;
+        private final TimeZone timeZone;
+
+        Key(String pattern, TimeZone timeZone)
+        {
+            this.pattern = pattern;
+            this.timeZone = timeZone;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Key)) return false;
+            Key that = (Key) obj;
+            return pattern.equals(that.pattern) &&
+                   timeZone.equals(that.timeZone);
+        }
+
+        public int hashCode()
+        {
+            return 31 * pattern.hashCode() + timeZone.hashCode();
+        }
+    }
+
+    /**
+     * Get the format for a pattern and time zone.
+     *
+     * @param  pattern   pattern in the syntax of java.text.SimpleDateFormat
+     * @param  timeZone  time zone of the formatted strings
+     *
+     * @return the format
+     * @throws IllegalArgumentException  the pattern is invalid
+     */
+    public static DateTimeFormat getInstance(String pattern,
+                                             TimeZone timeZone)
+    {
+        Key key = new Key(pattern, timeZone);
+        DateTimeFormat format = cache.get(key);
+        if (format == null) {
+            format = new DateTimeFormat(pattern, timeZone);
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(new Key(pattern, format.timeZone), format);
+        }
+        return format;
+    }
+
+    /**
+     * Forget all memoized formats.
+     */
+    public static void clearCache()
+    {
+        cache.clear();
+    }
+
+    private DateTimeFormat(String pattern, TimeZone timeZone)
+    {
+        this.pattern = pattern;
+        this.timeZone = (TimeZone) timeZone.clone();
+
+        // validate the pattern the way SimpleDateFormat does
+        makeSimpleDateFormat();
+
+        List<Object> fields = new ArrayList<Object>();
+        boolean ok = compile(pattern, fields);
+        int n = fields.size();
+        letters = new char[n];
+        counts = new int[n];
+        literals = new String[n];
+        abutting = new boolean[n];
+        for (int i=0; i<n; i++) {
+            Object field = fields.get(i);
+            if (field instanceof String) {
+                literals[i] = (String) field;
+            }
+            else {
+                int[] f = (int[]) field;
+                letters[i] = (char) f[0];
+                counts[i] = f[1];
+            }
+        }
+        boolean hasAmPm = false;
+        boolean has12 = false;
+        boolean has24 = false;
+        boolean hasMonthDay = false;
+        boolean hasDayOfYear = false;
+        for (int i=0; i<n; i++) {
+            char c = letters[i];
+            if (c == 0) continue;
+            if (i + 1 < n && letters[i + 1] != 0 && c != 'a') {
+                abutting[i] = true;
+            }
+            if (c == 'a') hasAmPm = true;
+            if (c == 'h' || c == 'K') has12 = true;
+            if (c == 'H' || c == 'k') has24 = true;
+            if (c == 'M' || c == 'd') hasMonthDay = true;
+            if (c == 'D') hasDayOfYear = true;
+        }
+        // field combinations resolved by Calendar priorities are left
+        // to SimpleDateFormat
+        direct = ok && !(has12 && has24) && !(hasAmPm && has24) &&
+                 !(hasMonthDay && hasDayOfYear);
+        directFormat = direct && !hasAmPm;
+        rawOffset = this.timeZone.getRawOffset();
+        fixedOffset = this.timeZone.hasSameRules(
+            new SimpleTimeZone(rawOffset, "fixed"));
+        amPmStrings = hasAmPm ? new DateFormatSymbols().getAmPmStrings()
+                              : null;
+    }
+
+    /**
+     * Split pattern into literal Strings and int[] {letter, count}.
+     *
+     * @return false if the pattern has fields that are not handled
+     *         directly
+     */
+    private static boolean compile(String pattern, List<Object> fields)
+    {
+        boolean ok = true;
+        StringBuffer literal = new StringBuffer();
+        int len = pattern.length();
+        int i = 0;
+        while (i < len) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                // quoted text; '' is a single quote
+                i++;
+                if (i < len && pattern.charAt(i) == '\'') {
+                    literal.append('\'');
+                    i++;
+                    continue;
+                }
+                while (i < len) {
+                    char q = pattern.charAt(i);
+                    if (q == '\'') {
+                        if (i + 1 < len && pattern.charAt(i + 1) == '\'') {
+                            literal.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    literal.append(q);
+                    i++;
+                }
+                i++;
+            }
+            else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                int count = 1;
+                while (i + count < len && pattern.charAt(i + count) == c) {
+                    count++;
+                }
+                if (literal.length() > 0) {
+                    fields.add(literal.toString());
+                    literal.setLength(0);
+                }
+                fields.add(new int[] {c, count});
+                switch (c) {
+                    case 'y':
+                        // abbreviated years are parsed relative to now
+                        if (count <= 2) ok = false;
+                        break;
+                    case 'M':
+                        // month names
+                        if (count > 2) ok = false;
+                        break;
+                    case 'd': case 'D': case 'H': case 'k': case 'K':
+                    case 'h': case 'm': case 's': case 'S': case 'a':
+                        break;
+                    default:
+                        ok = false;
+                        break;
+                }
+                i += count;
+            }
+            else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            fields.add(literal.toString());
+        }
+        return ok;
+    }
+
+    private SimpleDateFormat makeSimpleDateFormat()
+    {
+        SimpleDateFormat sdf = new SimpleDateFormat();
+        sdf.setTimeZone(timeZone);
+        sdf.applyPattern(pattern);
+        return sdf;
+    }
+
+    /**
+     * @return the pattern of this format
+     */
+    public String getPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * @return the time zone of this format
+     */
+    public TimeZone getTimeZone()
+    {
+        return (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * Parse a date/time string.  As with SimpleDateFormat, text following
+     * the date/time is ignored.
+     *
+     * @param  value  date/time string
+     *
+     * @return seconds since the epoch
+     * @throws VisADException  value does not match the pattern
+     */
+    public double parse(CharSequence value)
+        throws VisADException
+    {
+        double seconds = parseValue(value);
+        if (seconds != seconds) {
+            throw new VisADException("invalid date string: " + value);
+        }
+        return seconds;
+    }
+
+    /**
+     * Parse an array of date/time strings.
+     *
+     * @param  values  date/time strings; null or empty strings, and
+     *                 strings that do not match the pattern, are missing
+     *
+     * @return seconds since the epoch, NaN for missing values
+     */
+    public double[] parse(CharSequence[] values)
+    {
+        double[] seconds = new double[values.length];
+        for (int i=0; i<values.length; i++) {
+            seconds[i] = parseValue(values[i]);
+        }
+        return seconds;
+    }
+
+    /**
+     * @return seconds since the epoch, or NaN
+     */
+    private double parseValue(CharSequence value)
+    {
+        if (value == null || value.length() == 0) return Double.NaN;
+        if (direct) {
+            long millis = parseDirect(value);
+            if (millis != FAIL) return millis / 1000.0;
+        }
+        try {
+            Date d = ((SimpleDateFormat) formats.get()).parse(value.toString());
+            return d.getTime() / 1000.0;
+        }
+        catch (ParseException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return milliseconds since the epoch, or FAIL
+     */
+    private long parseDirect(CharSequence s)
+    {
+        int len = s.length();
+        int pos = 0;
+        int year = 1970;
+        int month = 1;
+        int day = 1;
+        int dayOfYear = 0;
+        int hour = 0;
+        int hour12 = -1;
+        int pm = 0;
+        int minute = 0;
+        int second = 0;
+        int millis = 0;
+        for (int i=0; i<letters.length; i++) {
+            char c = letters[i];
+            if (c == 0) {
+                String lit = literals[i];
+                int n = lit.length();
+                if (pos + n > len) return FAIL;
+                for (int j=0; j<n; j++) {
+                    if (s.charAt(pos + j) != lit.charAt(j)) return FAIL;
+                }
+                pos += n;
+                continue;
+            }
+            if (c == 'a') {
+                int match = -1;
+                for (int j=0; j<amPmStrings.length; j++) {
+                    String ap = amPmStrings[j];
+                    if (pos + ap.length() <= len &&
+                        s.toString().regionMatches(true, pos, ap, 0,
+                                                   ap.length())) {
+                        match = j;
+                        pos += ap.length();
+                        break;
+                    }
+                }
+                if (match < 0) return FAIL;
+                pm = match;
+                continue;
+            }
+            // like SimpleDateFormat, a field followed by another field
+            // takes at most its count of digits
+            int max = abutting[i] ? counts[i] : 9;
+            if (abutting[i] && pos + max > len) return FAIL;
+            int start = pos;
+            int v = 0;
+            while (pos < len && pos - start < max) {
+                char d = s.charAt(pos);
+                if (d < '0' || d > '9') break;
+                v = 10 * v + (d - '0');
+                pos++;
+            }
+            if (pos == start) return FAIL;
+            // more digits than an int holds
+            if (!abutting[i] && pos < len && pos - start == max &&
+                s.charAt(pos) >= '0' && s.charAt(pos) <= '9') return FAIL;
+            switch (c) {
+                case 'y':
+                    year = v;
+                    break;
+                case 'M':
+                    if (v < 1 || v > 12) return FAIL;
+                    month = v;
+                    break;
+                case 'd':
+                    if (v < 1 || v > 31) return FAIL;
+                    day = v;
+                    break;
+                case 'D':
+                    if (v < 1 || v > 366) return FAIL;
+                    dayOfYear = v;
+                    break;
+                case 'H':
+                    if (v > 23) return FAIL;
+                    hour = v;
+                    break;
+                case 'k':
+                    if (v < 1 || v > 24) return FAIL;
+                    hour = v % 24;
+                    break;
+                case 'K':
+                    if (v > 11) return FAIL;
+                    hour12 = v;
+                    break;
+                case 'h':
+                    if (v < 1 || v > 12) return FAIL;
+                    hour12 = v % 12;
+                    break;
+                case 'm':
+                    if (v > 59) return FAIL;
+                    minute = v;
+                    break;
+                case 's':
+                    if (v > 59) return FAIL;
+                    second = v;
+                    break;
+                case 'S':
+                    if (v > 999) return FAIL;
+                    millis = v;
+                    break;
+            }
+        }
+        if (hour12 >= 0) {
+            hour = hour12 + 12 * pm;
+        }
+        if (year < FIRST_YEAR) return FAIL;
+        boolean leap = isLeapYear(year);
+        if (dayOfYear > 0) {
+            if (dayOfYear > (leap ? 366 : 365)) return FAIL;
+            month = 1;
+            while (month < 12 &&
+                   dayOfYear > daysBeforeMonth(month + 1, leap)) {
+                month++;
+            }
+            day = dayOfYear - daysBeforeMonth(month, leap);
+        }
+        else if (day > daysBeforeMonth(month + 1, leap) -
+                       daysBeforeMonth(month, leap)) {
+            return FAIL;
+        }
+        if (fixedOffset) {
+            return daysFromCivil(year, month, day) * MILLIS_PER_DAY +
+                   ((hour * 60L + minute) * 60L + second) * 1000L + millis -
+                   rawOffset;
+        }
+        Calendar cal = (Calendar) calendars.get();
+        cal.clear();
+        cal.set(year, month - 1, day, hour, minute, second);
+        cal.set(Calendar.MILLISECOND, millis);
+        return cal.getTimeInMillis();
+    }
+
+    /**
+     * Format a time.
+     *
+     * @param  seconds  seconds since the epoch
+     *
+     * @return the formatted time
+     */
+    public String format(double seconds)
+    {
+        return format(seconds, new StringBuffer()).toString();
+    }
+
+    /**
+     * Format an array of times.
+     *
+     * @param  seconds  seconds since the epoch
+     *
+     * @return the formatted times, null for NaN
+     */
+    public String[] format(double[] seconds)
+    {
+        String[] strings = new String[seconds.length];
+        StringBuffer buf = new StringBuffer();
+        for (int i=0; i<seconds.length; i++) {
+            if (seconds[i] != seconds[i]) continue;
+            buf.setLength(0);
+            strings[i] = format(seconds[i], buf).toString();
+        }
+        return strings;
+    }
+
+    private StringBuffer format(double seconds, StringBuffer buf)
+    {
+        // the same rounding as DateTime
+        long time = Math.round(seconds * 1000.);
+        if (directFormat && formatDirect(time, buf)) {
+            return buf;
+        }
+        buf.setLength(0);
+        return buf.append(((SimpleDateFormat) formats.get()).format(
+                              new Date(time)));
+    }
+
+    /**
+     * @return false if time is out of range of the direct formatter
+     */
+    private boolean formatDirect(long time, StringBuffer buf)
+    {
+        int year, month, day, dayOfYear, hour, minute, second, millis;
+        if (fixedOffset) {
+            long local = time + rawOffset;
+            long days = floorDiv(local, MILLIS_PER_DAY);
+            int ms = (int) (local - days * MILLIS_PER_DAY);
+            int[] ymd = civilFromDays(days);
+            year = ymd[0];
+            month = ymd[1];
+            day = ymd[2];
+            dayOfYear = daysBeforeMonth(month, isLeapYear(year)) + day;
+            hour = ms / 3600000;
+            minute = (ms / 60000) % 60;
+            second = (ms / 1000) % 60;
+            millis = ms % 1000;
+        }
+        else {
+            Calendar cal = (Calendar) calendars.get();
+            cal.setTimeInMillis(time);
+            if (cal.get(Calendar.ERA) != GregorianCalendar.AD) return false;
+            year = cal.get(Calendar.YEAR);
+            month = cal.get(Calendar.MONTH) + 1;
+            day = cal.get(Calendar.DAY_OF_MONTH);
+            dayOfYear = cal.get(Calendar.DAY_OF_YEAR);
+            hour = cal.get(Calendar.HOUR_OF_DAY);
+            minute = cal.get(Calendar.MINUTE);
+            second = cal.get(Calendar.SECOND);
+            millis = cal.get(Calendar.MILLISECOND);
+        }
+        if (year < FIRST_YEAR || year > 9999) return false;
+        for (int i=0; i<letters.length; i++) {
+            int count = counts[i];
+            switch (letters[i]) {
+                case 0:
+                    buf.append(literals[i]);
+                    break;
+                case 'y':
+                    pad(buf, count == 2 ? year % 100 : year, count);
+                    break;
+                case 'M':
+                    pad(buf, month, count);
+                    break;
+                case 'd':
+                    pad(buf, day, count);
+                    break;
+                case 'D':
+                    pad(buf, dayOfYear, count);
+                    break;
+                case 'H':
+                    pad(buf, hour, count);
+                    break;
+                case 'k':
+                    pad(buf, hour == 0 ? 24 : hour, count);
+                    break;
+                case 'K':
+                    pad(buf, hour % 12, count);
+                    break;
+                case 'h':
+                    pad(buf, hour % 12 == 0 ? 12 : hour % 12, count);
+                    break;
+                case 'm':
+                    pad(buf, minute, count);
+                    break;
+                case 's':
+                    pad(buf, second, count);
+                    break;
+                case 'S':
+                    pad(buf, millis, count);
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private static void pad(StringBuffer buf, int value, int width)
+    {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) digits++;
+        for (int i=digits; i<width; i++) buf.append('0');
+        buf.append(value);
+    }
+
+    private static boolean isLeapYear(int year)
+    {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    /**
+     * @param month 1 - 13
+     * @return number of days in the year before the month
+     */
+    private static int daysBeforeMonth(int month, boolean leap)
+    {
+        return DAYS_BEFORE_MONTH[month - 1] + ((leap && month > 2) ? 1 : 0);
+    }
+
+    private static long floorDiv(long a, long b)
+    {
+        long q = a / b;
+        return (a % b != 0 && ((a < 0) != (b < 0))) ? q - 1 : q;
+    }
+
+    /**
+     * @return days since 1970-01-01 of a date in the proleptic
+     *         Gregorian calendar
+     */
+    private static long daysFromCivil(long year, int month, int day)
+    {
+        if (month <= 2) year--;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * @return {year, month, day} of days since 1970-01-01 in the
+     *         proleptic Gregorian calendar
+     */
+    private static int[] civilFromDays(long days)
+    {
+        days += 719468;
+        long era = (days >= 0 ? days : days - 146096) / 146097;
+        long doe = days - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        return new int[] {(int) year, month, day};
+    }
+}
@@ -1977,17 +1977,13 @@ public class FieldImpl extends FunctionImpl implements Field {
     }
     else
     {
+      int[] sub_indices = new int[work.length];
       for ( ii = 0; ii < length; ii++ )
       {
-        FieldImpl new_field = new FieldImpl( new_type, new_domain );
         for ( jj = 0; jj < work.length; jj++ ) {
-          index = 0;
-          index = ii*dim_product[factorIndex];
-          index += work[jj];
-          new_range_data[jj] = this.getSample(index);
+          sub_indices[jj] = ii*dim_product[factorIndex] + work[jj];
         }
-        new_field.setSamples( new_range_data, false, false );
-        new_range_data[ii] = new_field;
+        new_range_data[ii] = subField( new_type, new_domain, sub_indices );
       }
     }
     factor_field = new FieldImpl( new FunctionType( factor, new_type),
@@ -1996,6 +1992,29 @@ public class FieldImpl extends FunctionImpl implements Field {
     return factor_field;
   }
 
+  /**
+   * Make a Field of the given type on domain whose range samples are
+   * the range samples of this at indices; used by domainFactor for the
+   * inner Fields.  Subclasses that do not keep a range object per
+   * sample may override this to copy their samples directly.
+   *
+   * @param type     type of the new Field
+   * @param domain   domain Set of the new Field, with indices.length
+   *                 samples
+   * @param indices  indices of the samples of this to copy
+   * @return         the new Field
+   */
+  protected Field subField(FunctionType type, Set domain, int[] indices)
+            throws VisADException, RemoteException {
+    FieldImpl field = new FieldImpl(type, domain);
+    Data[] range = new Data[indices.length];
+    for (int i=0; i<indices.length; i++) {
+      range[i] = getSample(indices[i]);
+    }
+    field.setSamples(range, false, false);
+    return field;
+  }
+
   /** 
    * Combine domains of two outermost nested Fields into a single
    * domain and Field.  If the domains each have <code>
@@ -3656,7 +3675,7 @@ public class FieldImpl extends FunctionImpl implements Field {
       return false;
     }
 
-    if (MissingFlag != fi.MissingFlag) {
+    if (isMissing() != fi.isMissing()) {
       return false;
     }
     Set domainSet = getDomainSet();
@@ -30,6 +30,9 @@ import java.rmi.RemoteException;
 import java.util.Arrays;
 import java.util.Random;
 
+import visad.util.Reductions;
+import visad.util.Tracer;
+
 /**
    FlatField is the VisAD class for finite samplings of functions whose
    range type and range coordinate systems are simple enough to allow
@@ -87,6 +90,14 @@ import java.util.Random;
 */
 public class FlatField extends FieldImpl implements FlatFieldIface {
 
+  /** Tracer probes for binary and unary operations and resampling; the
+      resample probe has its own name because the Trace.call1() label
+      "FlatField.resample" is already recorded, but not when it throws */
+  private static final int TRACE_BINARY = Tracer.register("FlatField.binary");
+  private static final int TRACE_UNARY = Tracer.register("FlatField.unary");
+  private static final int TRACE_RESAMPLE =
+    Tracer.register("FlatField.resample(Set)");
+
   protected int TupleDimension; // dimension of Type.getFlatRange()
   private Set RangeSet[]; // one 1-D Set per range components
   private int RangeMode[]; // DOUBLE, FLOAT, INT, SHORT or BYTE
@@ -114,6 +125,14 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   private static final int MISSING4 = Integer.MIN_VALUE;   // least int
   // private static final int MISSING8 = Long.MIN_VALUE;   // least long
 
+  // number of samples converted at a time by the packed range methods
+  private static final int UNPACK_CHUNK = 65536;
+
+  // for BYTE and SHORT tuple members, tables of the float values of
+  // the packed values (less MISSING1 or MISSING2), built when first
+  // needed; guarded by RangeSet
+  private transient float[][] RangeTables;
+
   private static final int DOUBLE = 1;
   private static final int FLOAT = 2;
   private static final int LONG = 3; // not currently used because array
@@ -1078,6 +1097,387 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     return ByteRange;
   }
 
+  /**
+   * Returns the range values of tuple members packed in shorts, i.e.
+   * whose range sets have 256 to 65535 samples.  A value is the index
+   * in the range set plus <code>Short.MIN_VALUE + 1</code>, and
+   * <code>Short.MIN_VALUE</code> is missing.  The array is not copied.
+   *
+   * @return                  The packed values; <code>null</code> for
+   *                          tuple members not packed in shorts.
+   */
+  public short[][] grabShorts() {
+    return ShortRange;
+  }
+
+  /**
+   * Returns a range set for values packed as integers <code>min</code>
+   * to <code>max</code> with <code>value = offset + scale * packed</code>,
+   * such as the scale_factor and add_offset of packed netCDF variables
+   * or the counts of satellite images.  A FlatField with this range
+   * set keeps the values of the component as bytes if there are fewer
+   * than 256 of them and as shorts if fewer than 65536 (one packed
+   * value is reserved for missing), and they may be set without
+   * conversion to floats by the <code>setPackedSamples</code> methods.
+   *
+   * @param type              The RealType of the range component.
+   * @param min               The least packed value.
+   * @param max               The greatest packed value.
+   * @param scale             The scale of the packed values.
+   * @param offset            The offset of the packed values.
+   * @return                  The range set.
+   * @throws VisADException   if <code>max &lt; min</code> or the set
+   *                          can't be created.
+   */
+  public static Linear1DSet makePackedRangeSet(RealType type, int min,
+                                               int max, double scale,
+                                               double offset)
+         throws VisADException {
+    if (max < min) {
+      throw new SetException("FlatField.makePackedRangeSet: max < min");
+    }
+    return new Linear1DSet(type, offset + scale * min, offset + scale * max,
+                           max - min + 1);
+  }
+
+  /**
+   * Sets the range values of one component from packed bytes.  The
+   * component's range set should be a Linear1DSet made by {@link
+   * #makePackedRangeSet}, and packed value <code>p</code> is stored as
+   * index <code>p - min</code> in it without being converted to a
+   * float.  Packed values equal to <code>missing</code> or outside of
+   * the range set are missing.
+   *
+   * @param comp              The index of the range component.
+   * @param samples           The packed values in domain order.
+   * @param unsigned          Whether the bytes are unsigned.
+   * @param min               The packed value of the first sample of
+   *                          the range set.
+   * @param missing           The packed value for missing.
+   * @throws SetException     if the component's values are not packed
+   *                          in bytes, shorts or ints.
+   * @throws FieldException   if <code>comp</code> or the length of
+   *                          <code>samples</code> is bad.
+   * @throws VisADException   if a core VisAD failure occurs.
+   * @throws RemoteException  if a Java RMI failure occurs.
+   */
+  public void setPackedSamples(int comp, byte[] samples, boolean unsigned,
+                               int min, int missing)
+         throws VisADException, RemoteException {
+    int[] packed = new int[Math.min(UNPACK_CHUNK, samples.length)];
+    synchronized (DoubleRange) {
+      checkPacked(comp, samples.length);
+      for (int start=0; start<samples.length; start+=packed.length) {
+        int length = Math.min(packed.length, samples.length - start);
+        for (int j=0; j<length; j++) {
+          packed[j] = unsigned ? (samples[start + j] & 0xff)
+                               : samples[start + j];
+        }
+        storePacked(comp, start, packed, length, min, missing);
+      }
+      finishPacked(comp);
+    }
+    notifyReferences();
+  }
+
+  /**
+   * Sets the range values of one component from packed shorts, as for
+   * {@link #setPackedSamples(int, byte[], boolean, int, int)}.
+   *
+   * @param comp              The index of the range component.
+   * @param samples           The packed values in domain order.
+   * @param unsigned          Whether the shorts are unsigned.
+   * @param min               The packed value of the first sample of
+   *                          the range set.
+   * @param missing           The packed value for missing.
+   * @throws SetException     if the component's values are not packed
+   *                          in bytes, shorts or ints.
+   * @throws FieldException   if <code>comp</code> or the length of
+   *                          <code>samples</code> is bad.
+   * @throws VisADException   if a core VisAD failure occurs.
+   * @throws RemoteException  if a Java RMI failure occurs.
+   */
+  public void setPackedSamples(int comp, short[] samples, boolean unsigned,
+                               int min, int missing)
+         throws VisADException, RemoteException {
+    int[] packed = new int[Math.min(UNPACK_CHUNK, samples.length)];
+    synchronized (DoubleRange) {
+      checkPacked(comp, samples.length);
+      for (int start=0; start<samples.length; start+=packed.length) {
+        int length = Math.min(packed.length, samples.length - start);
+        for (int j=0; j<length; j++) {
+          packed[j] = unsigned ? (samples[start + j] & 0xffff)
+                               : samples[start + j];
+        }
+        storePacked(comp, start, packed, length, min, missing);
+      }
+      finishPacked(comp);
+    }
+    notifyReferences();
+  }
+
+  /**
+   * Sets the range values of one component from packed ints, as for
+   * {@link #setPackedSamples(int, byte[], boolean, int, int)}.
+   *
+   * @param comp              The index of the range component.
+   * @param samples           The packed values in domain order.
+   * @param min               The packed value of the first sample of
+   *                          the range set.
+   * @param missing           The packed value for missing.
+   * @throws SetException     if the component's values are not packed
+   *                          in bytes, shorts or ints.
+   * @throws FieldException   if <code>comp</code> or the length of
+   *                          <code>samples</code> is bad.
+   * @throws VisADException   if a core VisAD failure occurs.
+   * @throws RemoteException  if a Java RMI failure occurs.
+   */
+  public void setPackedSamples(int comp, int[] samples, int min, int missing)
+         throws VisADException, RemoteException {
+    synchronized (DoubleRange) {
+      checkPacked(comp, samples.length);
+      storePacked(comp, 0, samples, samples.length, min, missing);
+      finishPacked(comp);
+    }
+    notifyReferences();
+  }
+
+  private void checkPacked(int comp, int length) throws VisADException {
+    if (comp < 0 || comp >= TupleDimension) {
+      throw new FieldException("FlatField.setPackedSamples: bad component");
+    }
+    if (length != getLength()) {
+      throw new FieldException("FlatField.setPackedSamples: bad array length");
+    }
+    if (RangeMode[comp] != BYTE && RangeMode[comp] != SHORT &&
+        RangeMode[comp] != INT) {
+      throw new SetException("FlatField.setPackedSamples: range set of " +
+                             "component " + comp + " is not packed");
+    }
+  }
+
+  /** store packed[0 ... length-1] as range values start ... of comp;
+      must be called with the DoubleRange lock */
+  private void storePacked(int comp, int start, int[] packed, int length,
+                           int min, int missing) throws VisADException {
+    int n = RangeSet[comp].getLength();
+    switch (RangeMode[comp]) {
+      case BYTE:
+        if (ByteRange[comp] == null) ByteRange[comp] = new byte[getLength()];
+        byte[] ByteRangeI = ByteRange[comp];
+        for (int j=0; j<length; j++) {
+          int index = packed[j] - min;
+          ByteRangeI[start + j] = (packed[j] == missing || index < 0 ||
+            index >= n) ? (byte) MISSING1 : (byte) (index + MISSING1 + 1);
+        }
+        break;
+      case SHORT:
+        if (ShortRange[comp] == null) ShortRange[comp] = new short[getLength()];
+        short[] ShortRangeI = ShortRange[comp];
+        for (int j=0; j<length; j++) {
+          int index = packed[j] - min;
+          ShortRangeI[start + j] = (packed[j] == missing || index < 0 ||
+            index >= n) ? (short) MISSING2 : (short) (index + MISSING2 + 1);
+        }
+        break;
+      case INT:
+        if (IntRange[comp] == null) IntRange[comp] = new int[getLength()];
+        int[] IntRangeI = IntRange[comp];
+        for (int j=0; j<length; j++) {
+          // long, since packed[j] - min may overflow
+          long index = (long) packed[j] - min;
+          IntRangeI[start + j] = (packed[j] == missing || index < 0 ||
+            index >= n) ? MISSING4 : (int) index + MISSING4 + 1;
+        }
+        break;
+      default:
+        throw new SetException("FlatField.setPackedSamples: bad RangeMode");
+    }
+  }
+
+  /** after setting the packed values of comp, set the values of other
+      components to missing if they have none, and clear the missing
+      flag; must be called with the DoubleRange lock */
+  private void finishPacked(int comp) throws VisADException {
+    for (int i=0; i<TupleDimension; i++) {
+      if (i == comp) continue;
+      switch (RangeMode[i]) {
+        case DOUBLE:
+          if (DoubleRange[i] == null) {
+            DoubleRange[i] = new double[getLength()];
+            for (int j=0; j<getLength(); j++) DoubleRange[i][j] = Double.NaN;
+          }
+          break;
+        case FLOAT:
+          if (FloatRange[i] == null) {
+            FloatRange[i] = new float[getLength()];
+            for (int j=0; j<getLength(); j++) FloatRange[i][j] = Float.NaN;
+          }
+          break;
+        case BYTE:
+          if (ByteRange[i] == null) {
+            ByteRange[i] = new byte[getLength()];
+            for (int j=0; j<getLength(); j++) ByteRange[i][j] = (byte) MISSING1;
+          }
+          break;
+        case SHORT:
+          if (ShortRange[i] == null) {
+            ShortRange[i] = new short[getLength()];
+            for (int j=0; j<getLength(); j++) ShortRange[i][j] = (short) MISSING2;
+          }
+          break;
+        case INT:
+          if (IntRange[i] == null) {
+            IntRange[i] = new int[getLength()];
+            for (int j=0; j<getLength(); j++) IntRange[i][j] = MISSING4;
+          }
+          break;
+        default:
+          throw new SetException("FlatField.setPackedSamples: bad RangeMode");
+      }
+    }
+    synchronized (RangeErrors) {
+      RangeErrors[comp] = null;
+    }
+    clearMissing();
+  }
+
+  /**
+   * Unpacks the float values of samples <code>start</code> to
+   * <code>start + length - 1</code> of one range component.  Values
+   * packed in bytes or shorts are decoded through a table of the
+   * values of the range set, so a large field may be read a chunk at a
+   * time without unpacking all of it.
+   *
+   * @param comp              The index of the range component.
+   * @param start             The index of the first sample.
+   * @param length            The number of samples.
+   * @return                  The values; missing values are NaN.
+   * @throws FieldException   if the component or samples are bad.
+   * @throws VisADException   if a core VisAD failure occurs.
+   */
+  public float[] unpackFloats(int comp, int start, int length)
+         throws VisADException {
+    if (comp < 0 || comp >= TupleDimension) {
+      throw new FieldException("FlatField.unpackFloats: bad component");
+    }
+    if (start < 0 || length < 0 || start > getLength() - length) {
+      throw new FieldException("FlatField.unpackFloats: bad sample range");
+    }
+    float[] range = new float[length];
+    synchronized (DoubleRange) {
+      if (isMissing()) {
+        for (int j=0; j<length; j++) range[j] = Float.NaN;
+        return range;
+      }
+      if (holdsRange(comp)) {
+        switch (RangeMode[comp]) {
+          case DOUBLE:
+            double[] DoubleRangeI = DoubleRange[comp];
+            for (int j=0; j<length; j++) {
+              range[j] = (float) DoubleRangeI[start + j];
+            }
+            break;
+          case FLOAT:
+            System.arraycopy(FloatRange[comp], start, range, 0, length);
+            break;
+          default:
+            unpackPacked(comp, start, length, range, 0);
+        }
+        return range;
+      }
+    }
+    // samples are held elsewhere (e.g. ImageFlatField, CachedFlatField)
+    System.arraycopy(unpackFloats(false)[comp], start, range, 0, length);
+    return range;
+  }
+
+  /** true if this FlatField's own arrays hold tuple member comp */
+  private boolean holdsRange(int comp) {
+    switch (RangeMode[comp]) {
+      case DOUBLE: return DoubleRange[comp] != null;
+      case FLOAT: return FloatRange != null && FloatRange[comp] != null;
+      case BYTE: return ByteRange != null && ByteRange[comp] != null;
+      case SHORT: return ShortRange != null && ShortRange[comp] != null;
+      case INT: return IntRange != null && IntRange[comp] != null;
+      default: return false;
+    }
+  }
+
+  /** the table of the float values of the BYTE or SHORT tuple member
+      comp, indexed by packed value less MISSING1 or MISSING2 */
+  private float[] getRangeTable(int comp) throws VisADException {
+    synchronized (RangeSet) {
+      if (RangeTables == null) RangeTables = new float[TupleDimension][];
+      if (RangeTables[comp] == null) {
+        // index -1 is missing
+        int[] index = new int[RangeSet[comp].getLength() + 1];
+        for (int k=0; k<index.length; k++) index[k] = k - 1;
+        RangeTables[comp] = RangeSet[comp].indexToValue(index)[0];
+      }
+      return RangeTables[comp];
+    }
+  }
+
+  /** unpack the values start ... start+length-1 of the BYTE, SHORT or
+      INT tuple member comp into range[offset ...] */
+  private void unpackPacked(int comp, int start, int length, float[] range,
+                            int offset) throws VisADException {
+    float[] table;
+    switch (RangeMode[comp]) {
+      case BYTE:
+        table = getRangeTable(comp);
+        byte[] ByteRangeI = ByteRange[comp];
+        for (int j=0; j<length; j++) {
+          range[offset + j] = table[ByteRangeI[start + j] - MISSING1];
+        }
+        break;
+      case SHORT:
+        table = getRangeTable(comp);
+        short[] ShortRangeI = ShortRange[comp];
+        for (int j=0; j<length; j++) {
+          range[offset + j] = table[ShortRangeI[start + j] - MISSING2];
+        }
+        break;
+      case INT:
+        int[] IntRangeI = IntRange[comp];
+        int[] index = new int[Math.min(UNPACK_CHUNK, length)];
+        for (int s=0; s<length; s+=index.length) {
+          int n = Math.min(index.length, length - s);
+          if (n < index.length) index = new int[n];
+          for (int j=0; j<n; j++) {
+            index[j] = IntRangeI[start + s + j] - MISSING4 - 1;
+          }
+          float[] values = RangeSet[comp].indexToValue(index)[0];
+          System.arraycopy(values, 0, range, offset + s, n);
+        }
+        break;
+      default:
+        throw new SetException("FlatField.unpackFloats: bad RangeMode");
+    }
+  }
+
+  /** unpack all values of the BYTE, SHORT or INT tuple member comp as
+      floats */
+  private float[] unpackPackedFloats(int comp) throws VisADException {
+    float[] range = new float[getLength()];
+    unpackPacked(comp, 0, getLength(), range, 0);
+    return range;
+  }
+
+  /** unpack all values of the BYTE, SHORT or INT tuple member comp as
+      doubles (of their float values) */
+  private double[] unpackPackedDoubles(int comp) throws VisADException {
+    double[] range = new double[getLength()];
+    float[] chunk = new float[Math.min(UNPACK_CHUNK, getLength())];
+    for (int s=0; s<getLength(); s+=chunk.length) {
+      int n = Math.min(chunk.length, getLength() - s);
+      unpackPacked(comp, s, n, chunk, 0);
+      for (int j=0; j<n; j++) range[s + j] = chunk[j];
+    }
+    return range;
+  }
+
   /** unpack an array of doubles from field sample values according to the
       RangeSet-s; returns a copy */
   public double[][] unpackValues() throws VisADException {
@@ -1109,9 +1509,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 return range;
             }
 
-            int[] index;
             range = new double[TupleDimension][];
-            double[][] range0;
             double[] rangeI;
             for (int i=0; i<TupleDimension; i++) {
                 switch (RangeMode[i]) {
@@ -1136,31 +1534,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                     }
                     break;
                 case BYTE:
-                    index = new int[getLength()];
-                    byte[] ByteRangeI = ByteRange[i];
-                    for (int j=0; j<getLength(); j++) {
-                        index[j] = ((int) ByteRangeI[j]) - MISSING1 - 1;
-                    }
-                    range0 = Set.floatToDouble(RangeSet[i].indexToValue(index));
-                    range[i] = range0[0];
-                    break;
                 case SHORT:
-                    index = new int[getLength()];
-                    short[] ShortRangeI = ShortRange[i];
-                    for (int j=0; j<getLength(); j++) {
-                        index[j] = ((int) ShortRangeI[j]) - MISSING2 - 1;
-                    }
-                    range0 = Set.floatToDouble(RangeSet[i].indexToValue(index));
-                    range[i] = range0[0];
-                    break;
                 case INT:
-                    index = new int[getLength()];
-                    int[] IntRangeI = IntRange[i];
-                    for (int j=0; j<getLength(); j++) {
-                        index[j] = ((int) IntRangeI[j]) - MISSING4 - 1;
-                    }
-                    range0 = Set.floatToDouble(RangeSet[i].indexToValue(index));
-                    range[i] = range0[0];
+                    range[i] = unpackPackedDoubles(i);
                     break;
                 default:
                     throw new SetException("FlatField.unpackValues: bad RangeMode");
@@ -1191,9 +1567,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         }
         return range;
       }
-      int[] index;
       range = new float[TupleDimension][];
-      float[][] range0;
       float[] rangeI;
 
       for (int i=0; i<TupleDimension; i++) {
@@ -1215,31 +1589,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
           case BYTE:
-              index = new int[getLength()];
-              byte[] ByteRangeI = ByteRange[i];
-              for (int j=0; j<getLength(); j++) {
-                  index[j] = ((int) ByteRangeI[j]) - MISSING1 - 1;
-              }
-              range0 = RangeSet[i].indexToValue(index);
-              range[i] = range0[0];
-              break;
           case SHORT:
-            index = new int[getLength()];
-            short[] ShortRangeI = ShortRange[i];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) ShortRangeI[j]) - MISSING2 - 1;
-            }
-            range0 = RangeSet[i].indexToValue(index);
-            range[i] = range0[0];
-            break;
           case INT:
-            index = new int[getLength()];
-            int[] IntRangeI = IntRange[i];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) IntRangeI[j]) - MISSING4 - 1;
-            }
-            range0 = RangeSet[i].indexToValue(index);
-            range[i] = range0[0];
+            range[i] = unpackPackedFloats(i);
             break;
           default:
             throw new SetException("FlatField.unpackFloats: bad RangeMode");
@@ -1280,55 +1632,29 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         }
         return range;
       }
-      int[] index;
-      double[][] range0;
-      for (int i=0; i<TupleDimension; i++) {
-        switch (RangeMode[comp]) {
-          case DOUBLE:
-            if (copy) {
-              range = new double[getLength()];
-              System.arraycopy (DoubleRange[comp], 0, range, 0, getLength());
-            }  else {
-              range = DoubleRange[comp];
-            }
-            break;
-          case FLOAT:
+      switch (RangeMode[comp]) {
+        case DOUBLE:
+          if (copy) {
             range = new double[getLength()];
-            float[] FloatRangeI = FloatRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              range[j] = (double) FloatRangeI[j];
-            }
-            break;
-          case BYTE:
-            index = new int[getLength()];
-            byte[] ByteRangeI = ByteRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) ByteRangeI[j]) - MISSING1 - 1;
-            }
-            range0 = Set.floatToDouble(RangeSet[comp].indexToValue(index));
-            range = range0[0];
-            break;
-          case SHORT:
-            index = new int[getLength()];
-            short[] ShortRangeI = ShortRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) ShortRangeI[j]) - MISSING2 - 1;
-            }
-            range0 = Set.floatToDouble(RangeSet[comp].indexToValue(index));
-            range = range0[0];
-            break;
-          case INT:
-            index = new int[getLength()];
-            int[] IntRangeI = IntRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) IntRangeI[j]) - MISSING4 - 1;
-            }
-            range0 = Set.floatToDouble(RangeSet[comp].indexToValue(index));
-            range = range0[0];
-            break;
-          default:
-            throw new SetException("FlatField.unpackValues: bad RangeMode");
-        }
+            System.arraycopy (DoubleRange[comp], 0, range, 0, getLength());
+          }  else {
+            range = DoubleRange[comp];
+          }
+          break;
+        case FLOAT:
+          range = new double[getLength()];
+          float[] FloatRangeI = FloatRange[comp];
+          for (int j=0; j<getLength(); j++) {
+            range[j] = (double) FloatRangeI[j];
+          }
+          break;
+        case BYTE:
+        case SHORT:
+        case INT:
+          range = unpackPackedDoubles(comp);
+          break;
+        default:
+          throw new SetException("FlatField.unpackValues: bad RangeMode");
       }
     }
     return range;
@@ -1365,55 +1691,29 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         }
         return range;
       }
-      int[] index;
-      float[][] range0;
-      for (int i=0; i<TupleDimension; i++) {
-        switch (RangeMode[comp]) {
-          case DOUBLE:
+      switch (RangeMode[comp]) {
+        case DOUBLE:
+          range = new float[getLength()];
+          double[] DoubleRangeI = DoubleRange[comp];
+          for (int j=0; j<getLength(); j++) {
+            range[j] = (float) DoubleRangeI[j];
+          }
+          break;
+        case FLOAT:
+          if (copy) {
             range = new float[getLength()];
-            double[] DoubleRangeI = DoubleRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              range[j] = (float) DoubleRangeI[j];
-            }
-            break;
-          case FLOAT:
-            if (copy) {
-              range = new float[getLength()];
-              System.arraycopy (FloatRange[comp], 0, range, 0, getLength());
-            }  else {
-              range = FloatRange[comp];
-            }
-            break;
-          case BYTE:
-            index = new int[getLength()];
-            byte[] ByteRangeI = ByteRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) ByteRangeI[j]) - MISSING1 - 1;
-            }
-            range0 = RangeSet[comp].indexToValue(index);
-            range = range0[0];
-            break;
-          case SHORT:
-            index = new int[getLength()];
-            short[] ShortRangeI = ShortRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) ShortRangeI[j]) - MISSING2 - 1;
-            }
-            range0 = RangeSet[comp].indexToValue(index);
-            range = range0[0];
-            break;
-          case INT:
-            index = new int[getLength()];
-            int[] IntRangeI = IntRange[comp];
-            for (int j=0; j<getLength(); j++) {
-              index[j] = ((int) IntRangeI[j]) - MISSING4 - 1;
-            }
-            range0 = RangeSet[comp].indexToValue(index);
-            range = range0[0];
-            break;
-          default:
-            throw new SetException("FlatField.unpackValues: bad RangeMode");
-        }
+            System.arraycopy (FloatRange[comp], 0, range, 0, getLength());
+          }  else {
+            range = FloatRange[comp];
+          }
+          break;
+        case BYTE:
+        case SHORT:
+        case INT:
+          range = unpackPackedFloats(comp);
+          break;
+        default:
+          throw new SetException("FlatField.unpackValues: bad RangeMode");
       }
     }
     return range;
@@ -2038,6 +2338,18 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
   public Data binary(Data data, int op, MathType new_type,
                      int sampling_mode, int error_mode)
               throws VisADException, RemoteException {
+    long traceStart = Tracer.begin();
+    try {
+      return binaryFlat(data, op, new_type, sampling_mode, error_mode);
+    }
+    finally {
+      Tracer.end(TRACE_BINARY, traceStart);
+    }
+  }
+
+  private Data binaryFlat(Data data, int op, MathType new_type,
+                          int sampling_mode, int error_mode)
+              throws VisADException, RemoteException {
     if ( new_type == null ) {
       throw new TypeException("binary: new_type may not be null");
     }
@@ -2380,9 +2692,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               Unit absUnit = thatUnits[j].getAbsoluteUnit();
               if (!absUnit.equals(thatUnits[j])) {
                   if (thatValuesD != null)
-                      thatValuesD[j] = absUnit.toThis(thatValuesD[j], thatUnits[j]);
+                      thatValuesD[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesD[j], true);
                   if (thatValuesF != null)
-                      thatValuesF[j] = absUnit.toThis(thatValuesF[j], thatUnits[j]);
+                      thatValuesF[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesF[j], true);
                   thatUnits[j] = absUnit;
               }
             }
@@ -2448,9 +2760,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               Unit absUnit = thisUnits[j].getAbsoluteUnit();
               if (!absUnit.equals(thisUnits[j])) {
                   if (thisValuesD != null)
-                      thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
+                      thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
                   if (thisValuesF != null)
-                      thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                      thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                   thisUnits[j] = absUnit;
               }
             }
@@ -2459,9 +2771,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 Unit absUnit = thatUnits[j].getAbsoluteUnit();
                 if (!absUnit.equals(thatUnits[j])) {
                     if (thatValuesD != null)
-                        thatValuesD[j] = absUnit.toThis(thatValuesD[j], thatUnits[j]);
+                        thatValuesD[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesD[j], true);
                     if (thatValuesF != null)
-                        thatValuesF[j] = absUnit.toThis(thatValuesF[j], thatUnits[j]);
+                        thatValuesF[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesF[j], true);
                     thatUnits[j] = absUnit;
               }
             }
@@ -2488,9 +2800,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               Unit absUnit = thatUnits[j].getAbsoluteUnit();
               if (!absUnit.equals(thatUnits[j])) {
                   if (thatValuesD != null)
-                      thatValuesD[j] = absUnit.toThis(thatValuesD[j], thatUnits[j]);
+                      thatValuesD[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesD[j], true);
                   if (thatValuesF != null)
-                      thatValuesF[j] = absUnit.toThis(thatValuesF[j], thatUnits[j]);
+                      thatValuesF[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesF[j], true);
                   thatUnits[j] = absUnit;
               }
             }
@@ -2499,9 +2811,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               Unit absUnit = thisUnits[j].getAbsoluteUnit();
               if (!absUnit.equals(thisUnits[j])) {
                   if (thisValuesD != null)
-                      thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
+                      thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
                   if (thisValuesF != null)
-                      thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                      thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                   thisUnits[j] = absUnit;
               }
             }
@@ -2533,16 +2845,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               Unit absUnit = thisUnits[j].getAbsoluteUnit();
               if (!absUnit.equals(thisUnits[j])) {
                   if (thisValuesD != null)
-                      thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
+                      thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
                   if (thisValuesF != null)
-                      thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                      thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                   thisUnits[j] = absUnit;
               }
               if (!absUnit.equals(thatUnits[j])) {
                   if (thatValuesD != null)
-                      thatValuesD[j] = absUnit.toThis(thatValuesD[j], thatUnits[j]);
+                      thatValuesD[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesD[j], true);
                   if (thatValuesF != null)
-                      thatValuesF[j] = absUnit.toThis(thatValuesF[j], thatUnits[j]);
+                      thatValuesF[j] = UnitConverter.getInstance(thatUnits[j], absUnit).convert(thatValuesF[j], true);
                   thatUnits[j] = absUnit;
               }
             }
@@ -2784,9 +3096,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
                       if (convertThis)
                           if (thisValuesD != null)
-                              thisValuesD[j] = outUnits[j].toThis(thisValuesD[j], thisUnits[j]);
+                              thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], outUnits[j]).convert(thisValuesD[j], true);
                           if (thisValuesF != null)
-                              thisValuesF[j] = outUnits[j].toThis(thisValuesF[j], thisUnits[j]);
+                              thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], outUnits[j]).convert(thisValuesF[j], true);
 
                       if (convertThat)
                           thatValues[j] =
@@ -2882,8 +3194,8 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               if (thisUnits[j] != null) {
                   Unit absUnit = thisUnits[j].getAbsoluteUnit();
                   if (!absUnit.equals(thisUnits[j])) {
-                      if (thisValuesD != null) thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
-                      if (thisValuesF != null) thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                      if (thisValuesD != null) thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
+                      if (thisValuesF != null) thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                       thisUnits[j] = absUnit;
                   }
               }
@@ -2955,8 +3267,8 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               if (thisUnits[j] != null) {
                   Unit absUnit = thisUnits[j].getAbsoluteUnit();
                   if (!absUnit.equals(thisUnits[j])) {
-                      if (thisValuesD != null) thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
-                      if (thisValuesF != null) thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                      if (thisValuesD != null) thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
+                      if (thisValuesF != null) thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                       thisUnits[j] = absUnit;
                   }
               }
@@ -2998,8 +3310,8 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                   !CommonUnit.promiscuous.equals(thisUnits[j])) {
                   Unit absUnit = thisUnits[j].getAbsoluteUnit();
                   if (!absUnit.equals(thisUnits[j])) {
-                      if (thisValuesD != null)  thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
-                      if (thisValuesF != null)  thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                      if (thisValuesD != null)  thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
+                      if (thisValuesF != null)  thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                       thisUnits[j] = absUnit;
                   }
               }
@@ -3031,9 +3343,9 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                   Unit absUnit = thisUnits[j].getAbsoluteUnit();
                   if (!absUnit.equals(thisUnits[j])) {
                       if (thisValuesD != null)
-                          thisValuesD[j] = absUnit.toThis(thisValuesD[j], thisUnits[j]);
+                          thisValuesD[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesD[j], true);
                       if (thisValuesF != null)
-                          thisValuesF[j] = absUnit.toThis(thisValuesF[j], thisUnits[j]);
+                          thisValuesF[j] = UnitConverter.getInstance(thisUnits[j], absUnit).convert(thisValuesF[j], true);
                       thisUnits[j] = absUnit;
                   }
                   if (!absUnit.equals(thatUnits[j])) {
@@ -3159,6 +3471,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
      * @throws RemoteException  couldn't create new Remote object
      */
     public Data unary (int op, MathType new_type, int sampling_mode, int error_mode)
+        throws VisADException {
+        long traceStart = Tracer.begin();
+        try {
+            return unaryFlat(op, new_type, sampling_mode, error_mode);
+        }
+        finally {
+            Tracer.end(TRACE_UNARY, traceStart);
+        }
+    }
+
+    private Data unaryFlat (int op, MathType new_type, int sampling_mode, int error_mode)
         throws VisADException {
         // use DoubleSet rather than RangeSet for intermediate computation results
         //      if (isMissing()) return cloneDouble();
@@ -4510,6 +4833,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
    */
   public Field resample (Set set, int sampling_mode, int error_mode)
          throws VisADException, RemoteException {
+    long traceStart = Tracer.begin();
+    try {
+      return resampleFlat(set, sampling_mode, error_mode);
+    }
+    finally {
+      Tracer.end(TRACE_RESAMPLE, traceStart);
+    }
+  }
+
+  private Field resampleFlat(Set set, int sampling_mode, int error_mode)
+         throws VisADException, RemoteException {
 
     /* NB: resampling is done in this method for a float domain.  If
      * you make changes to this method, make the corresponding changes
@@ -4539,26 +4873,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       (error_mode == NO_ERRORS) ? new ErrorEstimate[dim] : set.getSetErrors();
 
     // create (initially missing) FlatField for return
-    Set[] sets = new Set[TupleDimension];
-    for (int i=0; i<TupleDimension; i++) {
-      SetType set_type =
-        new SetType(((FunctionType) Type).getFlatRange().getComponent(i));
-      // WLH 26 Nov 2001
-      // sets[i] = new DoubleSet(set_type);
-      if (sampling_mode == Data.NEAREST_NEIGHBOR) {
-        sets[i] = RangeSet[i];
-      }
-      else {
-        sets[i] = new FloatSet(set_type);
-      }
-    }
-
-    MathType range_type = ((FunctionType) Type).getRange();
-    RealTupleType domain_type = ((SetType) set.getType()).getDomain();
-    FunctionType func_type = new FunctionType(domain_type, range_type);
-    FlatField new_field =
-      new FlatField(func_type, set, RangeCoordinateSystem,
-                    RangeCoordinateSystems, sets, RangeUnits);
+    FlatField new_field = makeResampledField(set, sampling_mode);
 
     if (isMissing()) return new_field;
 
@@ -4571,6 +4886,24 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
     // create an array containing all indices of 'this'
     int length = set.getLength();
+
+    // the new values depend only on domainSet, set and sampling_mode,
+    // so they are computed from a cached Regridder, or separably
+    // between two LinearSets; both need all values unpacked
+    if (isPlainResample(range_errors_in) &&
+        ((10 * length > getLength()) || !shouldBeDouble() ||
+         sampling_mode == WEIGHTED_AVERAGE)) {
+      float[][] new_values = resampleLinear(set, sampling_mode, units, errors);
+      if (new_values == null) {
+        new_values = Regridder.get(domainSet, set, sampling_mode).resample(
+                       unpackFloats(false));
+      }
+      new_field.packValues(new_values, false);
+      new_field.setRangeErrors(range_errors_out);
+      new_field.clearMissing();
+      visad.util.Trace.call2("FlatField.resample", "Regridder");
+      return new_field;
+    }
     int[] wedge = set.getWedge();
 
     // get values from wedge and possibly transform coordinates
@@ -4893,6 +5226,266 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     return new_field;
   }
 
+  /**
+   * Create the (initially missing) FlatField returned by resample.
+   */
+  private FlatField makeResampledField(Set set, int sampling_mode)
+          throws VisADException {
+    Set[] sets = new Set[TupleDimension];
+    for (int i=0; i<TupleDimension; i++) {
+      SetType set_type =
+        new SetType(((FunctionType) Type).getFlatRange().getComponent(i));
+      // WLH 26 Nov 2001
+      // sets[i] = new DoubleSet(set_type);
+      if (sampling_mode == Data.NEAREST_NEIGHBOR) {
+        sets[i] = RangeSet[i];
+      }
+      else {
+        sets[i] = new FloatSet(set_type);
+      }
+    }
+
+    MathType range_type = ((FunctionType) Type).getRange();
+    RealTupleType domain_type = ((SetType) set.getType()).getDomain();
+    FunctionType func_type = new FunctionType(domain_type, range_type);
+    return new FlatField(func_type, set, RangeCoordinateSystem,
+                         RangeCoordinateSystems, sets, RangeUnits);
+  }
+
+  /**
+   * Return true if resample need not estimate errors or transform
+   * vectors, so that the resampled values depend only on the domain
+   * Set, the sampling Set and the sampling mode, as computed by a
+   * Regridder.
+   */
+  private boolean isPlainResample(ErrorEstimate[] range_errors)
+          throws VisADException {
+    for (int j=0; j<TupleDimension; j++) {
+      if (range_errors[j] != null) return false;
+    }
+    MathType range = ((FunctionType) Type).getRange();
+    if (range instanceof RealVectorType) return false;
+    if (range instanceof TupleType) {
+      for (int j=0; j<((TupleType) range).getDimension(); j++) {
+        if (((TupleType) range).getComponent(j) instanceof RealVectorType) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Resample with a Regridder whose source Set is equal to the domain
+   * Set of this FlatField, as by resample(regridder.getTargetSet(),
+   * regridder.getSamplingMode(), NO_ERRORS).
+   */
+  Field resample(Regridder regridder)
+        throws VisADException, RemoteException {
+    Set set = regridder.getTargetSet();
+    int sampling_mode = regridder.getSamplingMode();
+    Set domainSet = getDomainSet();
+    if (domainSet.equals(set)) return this;
+    ErrorEstimate[] range_errors = new ErrorEstimate[TupleDimension];
+    if (domainSet instanceof GriddedDoubleSet ||
+        !isPlainResample(range_errors)) {
+      return resample(set, sampling_mode, NO_ERRORS);
+    }
+    FlatField new_field = makeResampledField(set, sampling_mode);
+    if (isMissing()) return new_field;
+    new_field.packValues(regridder.resample(unpackFloats(false)), false);
+    new_field.setRangeErrors(range_errors);
+    new_field.clearMissing();
+    return new_field;
+  }
+
+  /**
+   * Resample between two LinearSets whose domains differ at most in
+   * Units.  Both sets are cross products of arithmetic progressions, so
+   * the samples of each axis of set are located once in the matching
+   * axis of the domain set, rather than once for every sample of set;
+   * the range values are then gathered (NEAREST_NEIGHBOR) or
+   * interpolated (WEIGHTED_AVERAGE) exactly as by the general code in
+   * resample.
+   * @return resampled range values, or null if the Sets are not two
+   *         such LinearSets
+   */
+  private float[][] resampleLinear(Set set, int sampling_mode, Unit[] units,
+                                   ErrorEstimate[] errors)
+          throws VisADException {
+    Set domainSet = getDomainSet();
+    // LinearLatLonSet wraps Longitude in valueToGrid
+    if (!(domainSet instanceof LinearSet) || !(set instanceof LinearSet) ||
+        domainSet instanceof LinearLatLonSet) {
+      return null;
+    }
+    int dim = domainSet.getDimension();
+    if (domainSet.getManifoldDimension() != dim ||
+        set.getManifoldDimension() != dim) {
+      return null;
+    }
+    // no coordinate transform
+    RealTupleType domain_out = ((FunctionType) Type).getDomain();
+    RealTupleType domain_in = ((SetType) set.getType()).getDomain();
+    if (!domain_out.equals(domain_in)) return null;
+    CoordinateSystem coord_out = getDomainCoordinateSystem();
+    if (coord_out == null) coord_out = domain_out.getCoordinateSystem();
+    CoordinateSystem coord_in = set.getCoordinateSystem();
+    if (coord_in == null) coord_in = domain_in.getCoordinateSystem();
+    if (coord_in == null ? coord_out != null : !coord_in.equals(coord_out)) {
+      return null;
+    }
+    int length = set.getLength();
+
+    Linear1DSet[] in = new Linear1DSet[dim];
+    Linear1DSet[] out = new Linear1DSet[dim];
+    int[] lengths = new int[dim];
+    int[] off = new int[dim]; // index offsets in domainSet by axis
+    float[][] axis_vals = new float[dim][];
+    for (int j=0; j<dim; j++) {
+      in[j] = ((LinearSet) set).getLinear1DComponent(j);
+      out[j] = ((LinearSet) domainSet).getLinear1DComponent(j);
+      lengths[j] = in[j].getLength();
+      if (out[j].getLength() < 2) return null;
+      off[j] = (j == 0) ? 1 : off[j-1] * out[j-1].getLength();
+      int[] ramp = new int[lengths[j]];
+      for (int i=0; i<lengths[j]; i++) ramp[i] = i;
+      axis_vals[j] = in[j].indexToValue(ramp)[0];
+    }
+    // with no coordinate transform only Units are converted, axis by
+    // axis, so the (ragged) axis values convert as the samples would
+    axis_vals = CoordinateSystem.transformCoordinates(
+                  domain_out, getDomainCoordinateSystem(), getDomainUnits(),
+                  new ErrorEstimate[dim], domain_in, set.getCoordinateSystem(),
+                  units, errors, axis_vals, false);
+
+    float[][] values = unpackFloats(false);
+    float[][] new_values = new float[TupleDimension][length];
+    int[] n = new int[dim]; // axis indices of the current sample of set
+
+    if (sampling_mode == WEIGHTED_AVERAGE) {
+      // per axis base, offset and weights, as in GriddedSet.valueToInterp
+      int[][] base = new int[dim][];
+      int[][] isoff = new int[dim][];
+      float[][] wa = new float[dim][];
+      float[][] wb = new float[dim][];
+      for (int j=0; j<dim; j++) {
+        int len = lengths[j];
+        int outlen = out[j].getLength();
+        float[] grid = new float[len];
+        out[j].valueToGrid(axis_vals[j], grid);
+        base[j] = new int[len];
+        isoff[j] = new int[len];
+        wa[j] = new float[len];
+        wb[j] = new float[len];
+        for (int i=0; i<len; i++) {
+          float g = grid[i];
+          if (g != g) {
+            base[j][i] = -1;
+            continue;
+          }
+          int l = (int) (g + 0.5);
+          if (l == outlen) l--;
+          float c = g - ((float) l);
+          base[j][i] = (l < 0 || l >= outlen) ? -1 : l * off[j];
+          if ((l == 0 && c <= 0.0) || (l == outlen - 1 && c >= 0.0)) {
+            isoff[j][i] = 0; // no interpolation along axis j
+          }
+          else if (c >= 0.0) {
+            isoff[j][i] = off[j];
+            wa[j][i] = 1.0f - c;
+            wb[j][i] = c;
+          }
+          else {
+            isoff[j][i] = -off[j];
+            wa[j][i] = 1.0f + c;
+            wb[j][i] = -c;
+          }
+        }
+      }
+      int[] is = new int[1 << dim];
+      float[] cs = new float[1 << dim];
+      for (int s=0; s<length; s++) {
+        int b = 0;
+        for (int j=0; j<dim && b>=0; j++) {
+          int bj = base[j][n[j]];
+          b = (bj < 0) ? -1 : b + bj;
+        }
+        if (b < 0) {
+          for (int t=0; t<TupleDimension; t++) new_values[t][s] = Float.NaN;
+        }
+        else {
+          is[0] = b;
+          cs[0] = 1.0f;
+          int lis = 1;
+          for (int j=0; j<dim; j++) {
+            int o = isoff[j][n[j]];
+            if (o == 0) continue;
+            float a = wa[j][n[j]];
+            float bw = wb[j][n[j]];
+            for (int k=0; k<lis; k++) {
+              is[k+lis] = is[k] + o;
+              cs[k+lis] = cs[k] * bw;
+              cs[k] *= a;
+            }
+            lis *= 2;
+          }
+          for (int t=0; t<TupleDimension; t++) {
+            float[] valuesT = values[t];
+            float v = valuesT[is[0]] * cs[0];
+            for (int k=1; k<lis; k++) v += valuesT[is[k]] * cs[k];
+            new_values[t][s] = v;
+          }
+        }
+        // next sample of set, first axis fastest
+        for (int j=0; j<dim && ++n[j] == lengths[j]; j++) n[j] = 0;
+      }
+    }
+    else {
+      // nearest sample offsets per axis; each row of set along the
+      // first axis is then a strided copy from the range values
+      int[][] offset = new int[dim][];
+      for (int j=0; j<dim; j++) {
+        offset[j] = new int[lengths[j]];
+        out[j].accumulateIndex(axis_vals[j], offset[j], true);
+        for (int i=0; i<lengths[j]; i++) {
+          if (offset[j][i] >= 0) offset[j][i] *= off[j];
+        }
+      }
+      int[] row = offset[0];
+      int nx = lengths[0];
+      boolean contiguous = row[0] >= 0 && row[nx-1] == row[0] + nx - 1;
+      for (int i=1; i<nx && contiguous; i++) {
+        contiguous = row[i] == row[i-1] + 1;
+      }
+      for (int s=0; s<length; s+=nx) {
+        int b = 0;
+        for (int j=1; j<dim && b>=0; j++) {
+          int bj = offset[j][n[j]];
+          b = (bj < 0) ? -1 : b + bj;
+        }
+        for (int t=0; t<TupleDimension; t++) {
+          float[] valuesT = values[t];
+          float[] new_valuesT = new_values[t];
+          if (b < 0) {
+            java.util.Arrays.fill(new_valuesT, s, s + nx, Float.NaN);
+          }
+          else if (contiguous) {
+            System.arraycopy(valuesT, b + row[0], new_valuesT, s, nx);
+          }
+          else {
+            for (int i=0; i<nx; i++) {
+              new_valuesT[s + i] = (row[i] >= 0) ? valuesT[b + row[i]] :
+                                                   Float.NaN;
+            }
+          }
+        }
+        for (int j=1; j<dim && ++n[j] == lengths[j]; j++) n[j] = 0;
+      }
+    }
+    return new_values;
+  }
+
   /**
    * Resamples the range to domain samples of a given double set.  Resampling is either
    * by nearest neighbor or mulit-linear interpolation.  NOTE: This code is very
@@ -5353,21 +5946,15 @@ if (pr) System.out.println("value = " + new_values[0][0]);
         double max = -Double.MAX_VALUE;
 
         if (valuesDI!=null) {
-            for (int j=0; j<getLength(); j++) {
-                if (valuesDI[j] == valuesDI[j]) {
-                    min = Math.min(min, valuesDI[j]);
-                    max = Math.max(max, valuesDI[j]);
-                }
-            }
+            double[] minMax = Reductions.minMax(valuesDI);
+            min = Math.min(min, minMax[0]);
+            max = Math.max(max, minMax[1]);
         }
 
         if (valuesFI!=null) {
-            for (int j=0; j<getLength(); j++) {
-                if (valuesFI[j] == valuesFI[j]) {
-                    min = Math.min(min, valuesFI[j]);
-                    max = Math.max(max, valuesFI[j]);
-                }
-            }
+            float[] minMax = Reductions.minMax(valuesFI);
+            min = Math.min(min, minMax[0]);
+            max = Math.max(max, minMax[1]);
         }
 
 
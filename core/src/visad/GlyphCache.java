@@ -0,0 +1,236 @@
+//
+// GlyphCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+   GlyphCache holds the text geometry computed by PlotText, so that
+   labels drawn over and over (tick labels, contour labels, station
+   plots) are laid out and tessellated only once.<P>
+
+   Geometry is stored in unit text coordinates: pairs (u, v) where u
+   runs along the base vector and v along the up vector.  PlotText
+   places a copy of it with
+   <CODE>start + u * base + v * up</CODE>, which is much cheaper than
+   laying the text out again.  Strings drawn with the built-in font or
+   a HersheyFont are cached whole; glyphs of a java.awt.Font are
+   cached one character at a time, since their tessellation is the
+   expensive part and they are shared by many different strings.<P>
+
+   The cache is thread-safe.  Its size is bounded by the
+   <CODE>visad.glyphcache.size</CODE> system property (default 4096
+   entries); when it fills up it is simply cleared.  A size of 0
+   disables caching.
+*/
+public final class GlyphCache {
+
+  /** kind of key for a string in the built-in font */
+  static final int LABEL = 0;
+  /** kind of key for a string in a HersheyFont */
+  static final int HERSHEY = 1;
+  /** kind of key for a single java.awt.Font glyph */
+  static final int GLYPH = 2;
+
+  private static volatile int maxSize =
+    Integer.getInteger("visad.glyphcache.size", 4096).intValue();
+
+  private static final ConcurrentHashMap<Key, Object> cache =
+    new ConcurrentHashMap<Key, Object>();
+
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+
+  private GlyphCache() { }
+
+  /**
+   * Key of a cache entry.  Justification values are compared by
+   * identity, as PlotText does.
+   */
+  static final class Key {
+    private final int kind;
+    private final Object font;
+    private final String text;
+    private final double rotation;
+    private final double scale;
+    private final TextControl.Justification justification;
+    private final TextControl.Justification verticalJustification;
+    private final int hash;
+
+    Key(int kind, Object font, String text, double rotation, double scale,
+        TextControl.Justification justification,
+        TextControl.Justification verticalJustification) {
+      this.kind = kind;
+      this.font = font;
+      this.text = text;
+      this.rotation = rotation;
+      this.scale = scale;
+      this.justification = justification;
+      this.verticalJustification = verticalJustification;
+      long r = Double.doubleToLongBits(rotation);
+      long s = Double.doubleToLongBits(scale);
+      int h = kind;
+      h = 31 * h + (font == null ? 0 : font.hashCode());
+      h = 31 * h + text.hashCode();
+      h = 31 * h + (int) (r ^ (r >>> 32));
+      h = 31 * h + (int) (s ^ (s >>> 32));
+      h = 31 * h + System.identityHashCode(justification);
+      h = 31 * h + System.identityHashCode(verticalJustification);
+      hash = h;
+    }
+
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Key)) return false;
+      Key that = (Key) obj;
+      return hash == that.hash && kind == that.kind &&
+             text.equals(that.text) &&
+             Double.doubleToLongBits(rotation) ==
+               Double.doubleToLongBits(that.rotation) &&
+             Double.doubleToLongBits(scale) ==
+               Double.doubleToLongBits(that.scale) &&
+             justification == that.justification &&
+             verticalJustification == that.verticalJustification &&
+             (font == null ? that.font == null : font.equals(that.font));
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /**
+   * Geometry of one java.awt.Font glyph: vertices of its triangles in
+   * unit text coordinates, and its advance along the base line.
+   */
+  static final class Glyph {
+    final float[] triangles;
+    final float advance;
+
+    Glyph(float[] triangles, float advance) {
+      this.triangles = triangles;
+      this.advance = advance;
+    }
+  }
+
+  /**
+   * @return the cached geometry for key, or null if there is none
+   */
+  static Object get(Key key) {
+    if (maxSize <= 0) return null;
+    Object value = cache.get(key);
+    if (value == null) {
+      misses.incrementAndGet();
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    return value;
+  }
+
+  /**
+   * Cache value, which must not be modified afterwards, for key.
+   */
+  static void put(Key key, Object value) {
+    int max = maxSize;
+    if (max <= 0) return;
+    if (cache.size() >= max) {
+      cache.clear();
+    }
+    cache.put(key, value);
+  }
+
+  /**
+   * Place unit text coordinates in space.
+   *
+   * @param uv pairs (u, v) of unit text coordinates
+   * @param offset number of pairs already placed in coordinates
+   * @param count number of pairs to place
+   * @param start point of text origin (x,y,z)
+   * @param base (x,y,z) of base line vector
+   * @param up (x,y,z) of up vector
+   * @param coordinates receives (x,y,z) of the placed points,
+   *        starting at point offset
+   */
+  static void place(float[] uv, int offset, int count, double[] start,
+                    double[] base, double[] up, float[] coordinates) {
+    int k = 3 * offset;
+    for (int i=0; i<2*count; i+=2) {
+      double u = uv[i];
+      double v = uv[i + 1];
+      coordinates[k++] = (float) (start[0] + u * base[0] + v * up[0]);
+      coordinates[k++] = (float) (start[1] + u * base[1] + v * up[1]);
+      coordinates[k++] = (float) (start[2] + u * base[2] + v * up[2]);
+    }
+  }
+
+  /**
+   * Empty the cache, e.g. after fonts have been reloaded.
+   */
+  public static void clearCache() {
+    cache.clear();
+  }
+
+  /**
+   * @param size maximum number of cache entries; 0 disables caching
+   */
+  public static void setMaximumSize(int size) {
+    maxSize = size;
+    if (size <= 0 || cache.size() > size) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * @return maximum number of cache entries
+   */
+  public static int getMaximumSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return current number of cache entries
+   */
+  public static int size() {
+    return cache.size();
+  }
+
+  /**
+   * @return number of lookups that found cached geometry
+   */
+  public static long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of lookups that did not find cached geometry
+   */
+  public static long getMissCount() {
+    return misses.get();
+  }
+}
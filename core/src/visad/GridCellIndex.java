@@ -0,0 +1,331 @@
+//
+// GridCellIndex.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+/**
+   GridCellIndex is a spatial index of the grid boxes of a 2-D or 3-D
+   curvilinear grid, used by Gridded2DSet and Gridded3DSet to seed
+   the grid box walk of valueToGrid.<P>
+
+   Grid boxes are grouped in blocks of BLOCK boxes along each axis,
+   and the bounding box of each block is entered in a uniform bucket
+   grid over the bounds of the samples.  Blocks on the edge of the
+   grid are enlarged by twice the size of their edge boxes, so that
+   the extrapolation of valueToGrid up to half a box outside the
+   samples is covered too.  A point outside every block cannot be
+   located by valueToGrid, and the walk need not be tried.<P>
+
+   GridCellIndex is immutable and may be shared between threads.<P>
+*/
+final class GridCellIndex {
+
+  /** number of grid boxes along each axis of a block */
+  static final int BLOCK = 4;
+
+  /** maximum number of buckets along each axis */
+  private static final int MAX_BUCKETS = 1024;
+
+  private final int dim;
+  /** grid lengths (in samples) */
+  private final int[] lengths;
+  /** number of blocks along each axis */
+  private final int[] nblocks;
+  /** block bounds, [2*dim*block + 2*j] low and + 1 high on axis j */
+  private final float[] bounds;
+
+  /** low corner and size of the bucket grid */
+  private final float[] low;
+  private final float[] high;
+  private final float[] scale;
+  private final int[] nbuckets;
+  /** blocks of bucket b are blocks[start[b]] ... blocks[start[b+1]-1] */
+  private final int[] start;
+  private final int[] blocks;
+
+  /**
+   * @param samples grid samples, samples[j][i] for axis j
+   * @param grid_lengths grid lengths, each at least 2; their number is
+   *        the dimension (2 or 3) of the grid
+   */
+  GridCellIndex(float[][] samples, int[] grid_lengths) {
+    dim = grid_lengths.length;
+    lengths = new int[dim];
+    nblocks = new int[dim];
+    int nb = 1;
+    for (int j=0; j<dim; j++) {
+      lengths[j] = grid_lengths[j];
+      nblocks[j] = (lengths[j] - 2) / BLOCK + 1;
+      nb *= nblocks[j];
+    }
+    bounds = new float[2 * dim * nb];
+    for (int b=0; b<nb; b++) {
+      for (int j=0; j<dim; j++) {
+        bounds[2*dim*b + 2*j] = Float.POSITIVE_INFINITY;
+        bounds[2*dim*b + 2*j + 1] = Float.NEGATIVE_INFINITY;
+      }
+    }
+
+    // block bounds from the samples; missing samples are ignored
+    int lx = lengths[0];
+    int ly = lengths[1];
+    int lz = (dim == 3) ? lengths[2] : 1;
+    int[] bi = new int[3];
+    int[] lo_s = new int[3];
+    int[] hi_s = new int[3];
+    for (int b=0; b<nb; b++) {
+      int r = b;
+      for (int j=0; j<dim; j++) {
+        bi[j] = r % nblocks[j];
+        r /= nblocks[j];
+        lo_s[j] = bi[j] * BLOCK;
+        hi_s[j] = Math.min(lo_s[j] + BLOCK, lengths[j] - 1);
+      }
+      for (int k=lo_s[2]; k<=hi_s[2]; k++) {
+        for (int jj=lo_s[1]; jj<=hi_s[1]; jj++) {
+          for (int i=lo_s[0]; i<=hi_s[0]; i++) {
+            int s = (k * ly + jj) * lx + i;
+            for (int j=0; j<dim; j++) {
+              float v = samples[j][s];
+              int o = 2*dim*b + 2*j;
+              if (v < bounds[o]) bounds[o] = v;
+              if (v > bounds[o + 1]) bounds[o + 1] = v;
+            }
+          }
+        }
+      }
+    }
+
+    // enlarge the blocks on the edge of the grid by their edge boxes
+    int[] box = new int[3];
+    float[] lo = new float[3];
+    float[] hi = new float[3];
+    for (int k=0; k<Math.max(1, lz - 1); k++) {
+      for (int jj=0; jj<ly-1; jj++) {
+        for (int i=0; i<lx-1; i++) {
+          box[0] = i;
+          box[1] = jj;
+          box[2] = k;
+          boolean edge = false;
+          for (int j=0; j<dim; j++) {
+            if (box[j] == 0 || box[j] == lengths[j] - 2) edge = true;
+          }
+          if (!edge) continue;
+          boxBounds(samples, box, lo, hi);
+          for (int j=0; j<dim; j++) bi[j] = box[j] / BLOCK;
+          int b = blockIndex(bi);
+          for (int j=0; j<dim; j++) {
+            if (!(lo[j] <= hi[j])) continue;
+            float pad = 2.0f * (hi[j] - lo[j]);
+            int o = 2*dim*b + 2*j;
+            if (lo[j] - pad < bounds[o]) bounds[o] = lo[j] - pad;
+            if (hi[j] + pad > bounds[o + 1]) bounds[o + 1] = hi[j] + pad;
+          }
+        }
+      }
+    }
+
+    // bucket grid over the bounds of all blocks
+    low = new float[dim];
+    high = new float[dim];
+    for (int j=0; j<dim; j++) {
+      low[j] = Float.POSITIVE_INFINITY;
+      high[j] = Float.NEGATIVE_INFINITY;
+    }
+    for (int b=0; b<nb; b++) {
+      for (int j=0; j<dim; j++) {
+        float l = bounds[2*dim*b + 2*j];
+        float h = bounds[2*dim*b + 2*j + 1];
+        if (l < low[j]) low[j] = l;
+        if (h > high[j]) high[j] = h;
+      }
+    }
+    // about one block per bucket, with buckets of equal size on each axis
+    double volume = 1.0;
+    int extended = 0;
+    for (int j=0; j<dim; j++) {
+      double r = high[j] - low[j];
+      if (r > 0) {
+        volume *= r;
+        extended++;
+      }
+    }
+    double size = (extended == 0) ? 1.0 : Math.pow(volume / nb, 1.0 / extended);
+    nbuckets = new int[dim];
+    scale = new float[dim];
+    int nbk = 1;
+    for (int j=0; j<dim; j++) {
+      double r = high[j] - low[j];
+      int n = 1;
+      if (r > 0 && size > 0) {
+        n = (int) Math.min(MAX_BUCKETS, Math.max(1, Math.ceil(r / size)));
+      }
+      nbuckets[j] = n;
+      scale[j] = (r > 0) ? (float) (n / r) : 0.0f;
+      nbk *= n;
+    }
+
+    // count, then fill, the blocks of each bucket
+    start = new int[nbk + 1];
+    int[] blo = new int[3];
+    int[] bhi = new int[3];
+    int[] fill = null;
+    int[] list = null;
+    for (int pass=0; pass<2; pass++) {
+      for (int b=0; b<nb; b++) {
+        if (!bucketRange(b, blo, bhi)) continue;
+        for (int z=blo[2]; z<=bhi[2]; z++) {
+          for (int y=blo[1]; y<=bhi[1]; y++) {
+            for (int x=blo[0]; x<=bhi[0]; x++) {
+              int k = (z * nbuckets[1] + y) * nbuckets[0] + x;
+              if (pass == 0) {
+                start[k + 1]++;
+              }
+              else {
+                list[fill[k]++] = b;
+              }
+            }
+          }
+        }
+      }
+      if (pass == 0) {
+        for (int k=0; k<nbk; k++) start[k + 1] += start[k];
+        list = new int[start[nbk]];
+        fill = new int[nbk];
+        System.arraycopy(start, 0, fill, 0, nbk);
+      }
+    }
+    blocks = list;
+  }
+
+  private int blockIndex(int[] bi) {
+    int b = bi[dim - 1];
+    for (int j=dim-2; j>=0; j--) b = b * nblocks[j] + bi[j];
+    return b;
+  }
+
+  /** bounds of the samples at the corners of a grid box */
+  private void boxBounds(float[][] samples, int[] box, float[] lo, float[] hi) {
+    for (int j=0; j<dim; j++) {
+      lo[j] = Float.POSITIVE_INFINITY;
+      hi[j] = Float.NEGATIVE_INFINITY;
+    }
+    int lx = lengths[0];
+    int ly = lengths[1];
+    for (int corner=0; corner<(1 << dim); corner++) {
+      int i = box[0] + (corner & 1);
+      int jj = box[1] + ((corner >> 1) & 1);
+      int k = (dim == 3) ? box[2] + ((corner >> 2) & 1) : 0;
+      int s = (k * ly + jj) * lx + i;
+      for (int j=0; j<dim; j++) {
+        float v = samples[j][s];
+        if (v < lo[j]) lo[j] = v;
+        if (v > hi[j]) hi[j] = v;
+      }
+    }
+  }
+
+  /** range of buckets overlapped by block b;
+      return false if the block has no valid samples */
+  private boolean bucketRange(int b, int[] blo, int[] bhi) {
+    blo[2] = bhi[2] = 0;
+    for (int j=0; j<dim; j++) {
+      float l = bounds[2*dim*b + 2*j];
+      float h = bounds[2*dim*b + 2*j + 1];
+      if (!(l <= h)) return false;
+      blo[j] = bucket(l, j);
+      bhi[j] = bucket(h, j);
+    }
+    return true;
+  }
+
+  private int bucket(float v, int j) {
+    int n = (int) ((v - low[j]) * scale[j]);
+    if (n < 0) n = 0;
+    if (n >= nbuckets[j]) n = nbuckets[j] - 1;
+    return n;
+  }
+
+  private boolean contains(int b, float[] p) {
+    for (int j=0; j<dim; j++) {
+      int o = 2*dim*b + 2*j;
+      if (!(p[j] >= bounds[o] && p[j] <= bounds[o + 1])) return false;
+    }
+    return true;
+  }
+
+  /**
+   * Choose the grid box from which to start the valueToGrid walk
+   * for point p.  If p lies in the block of the current box g, g is
+   * kept, so that runs of nearby points keep their locality;
+   * otherwise g is set to the centre box of a block that contains p.
+   *
+   * @param p point, of length dim
+   * @param g current grid box on input (lower corner indices),
+   *        chosen grid box on output
+   * @return false if no block contains p, so that valueToGrid
+   *         cannot locate it
+   */
+  boolean seed(float[] p, int[] g) {
+    int[] bi = new int[3];
+    boolean inside = true;
+    for (int j=0; j<dim; j++) {
+      if (g[j] < 0 || g[j] > lengths[j] - 2) inside = false;
+      else bi[j] = g[j] / BLOCK;
+    }
+    if (inside && contains(blockIndex(bi), p)) return true;
+
+    int k = 0;
+    for (int j=dim-1; j>=0; j--) {
+      if (!(p[j] >= low[j] && p[j] <= high[j])) return false;
+      k = k * nbuckets[j] + bucket(p[j], j);
+    }
+    // of the blocks that contain p, take the one with the nearest centre
+    int best = -1;
+    double bestDistance = Double.POSITIVE_INFINITY;
+    for (int n=start[k]; n<start[k + 1]; n++) {
+      int b = blocks[n];
+      if (!contains(b, p)) continue;
+      double distance = 0.0;
+      for (int j=0; j<dim; j++) {
+        int o = 2*dim*b + 2*j;
+        double d = p[j] - 0.5 * (bounds[o] + bounds[o + 1]);
+        distance += d * d;
+      }
+      if (distance < bestDistance) {
+        best = b;
+        bestDistance = distance;
+      }
+    }
+    if (best < 0) return false;
+    for (int j=0; j<dim; j++) {
+      int first = (best % nblocks[j]) * BLOCK;
+      best /= nblocks[j];
+      g[j] = Math.min(first + BLOCK / 2, lengths[j] - 2);
+    }
+    return true;
+  }
+}
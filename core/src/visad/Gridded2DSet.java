@@ -362,7 +362,6 @@ System.out.println("1st = " + ( (v10[0]-v00[0])*(v11[1]-v10[1])
   /** transform an array of values in R^DomainDimension to an array
       of non-integer grid coordinates */
   public float[][] valueToGrid(float[][] value, int[] guess) throws VisADException {
-    float[][]mySamples = getMySamples();
     if (value.length < DomainDimension) {
       throw new SetException("Gridded2DSet.valueToGrid: value dimension " +
                              value.length + " not equal to Domain dimension " +
@@ -381,7 +380,31 @@ System.out.println("1st = " + ( (v10[0]-v00[0])*(v11[1]-v10[1])
           + guess.length + " must equal 2");
     }
     int length = Math.min(value[0].length, value[1].length);
-    float[][] grid = new float[ManifoldDimension][length];
+    final float[][] grid = new float[ManifoldDimension][length];
+
+    // the spatial index seeds the walk once enough values are looked up
+    final GridCellIndex index = (Length > 1) ? getCellIndex(length) : null;
+    if (guess != null) {
+      // a guess chains calls, so keep the walk in one thread
+      locate(value, grid, index, guess, 0, length);
+    }
+    else {
+      final float[][] values = value;
+      locateInParallel(length, new GridLocator() {
+        public void locate(int start, int end) throws VisADException {
+          Gridded2DSet.this.locate(values, grid, index, null, start, end);
+        }
+      });
+    }
+    return grid;
+  }
+
+  /** compute grid[][start] through grid[][end-1] for value[][start]
+      through value[][end-1], walking from grid box to grid box
+      starting at guess, or at boxes seeded by index if not null */
+  private void locate(float[][] value, float[][] grid, GridCellIndex index,
+                      int[] guess, int start, int end) {
+    float[][]mySamples = getMySamples();
 
     // (gx, gy) is the current grid box guess
     int gx = (LengthX-1)/2;
@@ -393,8 +416,12 @@ System.out.println("1st = " + ( (v10[0]-v00[0])*(v11[1]-v10[1])
       gy = guess[1];
     }
 
+    float[] p = new float[2];
+    int[] g = new int[2];
+    // true if the last value that was not missing was not found
+    boolean lost = false;
     boolean lowertri = true;
-    for (int i=0; i<length; i++) {
+    for (int i=start; i<end; i++) {
       // grid box guess starts at previous box unless there was no solution
 /* WLH 24 Oct 97
       if ( (i != 0) && (Float.isNaN(grid[0][i-1])) )
@@ -409,13 +436,28 @@ System.out.println("1st = " + ( (v10[0]-v00[0])*(v11[1]-v10[1])
         continue;
       }
 
-      // test for missing
-      if ( (i != 0) && grid[0][i-1] != grid[0][i-1] ) {
+      // if the loop doesn't find the answer, the result should be NaN
+      grid[0][i] = grid[1][i] = Float.NaN;
+
+      // missing values are not located, and do not move the guess
+      p[0] = value[0][i];
+      p[1] = value[1][i];
+      if (p[0] != p[0] || p[1] != p[1]) continue;
+      if (index != null) {
+        g[0] = gx;
+        g[1] = gy;
+        if (!index.seed(p, g)) {
+          // no grid box is near enough to this value
+          lost = true;
+          continue;
+        }
+        gx = g[0];
+        gy = g[1];
+      }
+      else if (lost) {
         gx = (LengthX-1)/2;
         gy = (LengthY-1)/2;
       }
-      // if the loop doesn't find the answer, the result should be NaN
-      grid[0][i] = grid[1][i] = Float.NaN;
       for (int itnum=0; itnum<2*(LengthX+LengthY); itnum++) {
         // define the four vertices of the current grid box
         float[] v0 = {mySamples[0][gy*LengthX+gx],
@@ -544,13 +586,13 @@ System.out.println("1st = " + ( (v10[0]-v00[0])*(v11[1]-v10[1])
         || (grid[0][i] <= -0.5) || (grid[1][i] <= -0.5) ) {
         grid[0][i] = grid[1][i] = Float.NaN;
       }
+      lost = (grid[0][i] != grid[0][i]);
     }
     //TDR: use last found as guess for next locate request
     if (guess != null) {
       guess[0] = gx;
       guess[1] = gy;
     }
-    return grid;
   }
 
   public Object cloneButType(MathType type) throws VisADException {
@@ -1061,7 +1061,6 @@ public class Gridded3DSet extends GriddedSet {
    */
   public float[][] valueToGrid(float[][] value, int[] guess) throws VisADException {
 
-    float[][]mySamples = getMySamples();
     if (value.length < DomainDimension) {
       throw new SetException("Gridded3DSet.valueToGrid: value dimension "
           + value.length + " not equal to Domain dimension " + DomainDimension);
@@ -1081,7 +1080,33 @@ public class Gridded3DSet extends GriddedSet {
     // Avoid any ArrayOutOfBounds exceptions by taking the shortest length
     int length = Math.min(value[0].length, value[1].length);
     length = Math.min(length, value[2].length);
-    float[][] grid = new float[ManifoldDimension][length];
+    final float[][] grid = new float[ManifoldDimension][length];
+
+    // the spatial index seeds the walk once enough values are looked up
+    final GridCellIndex index = (Length > 1) ? getCellIndex(length) : null;
+    if (guess != null) {
+      // a guess chains calls, so keep the walk in one thread
+      locate(value, grid, index, guess, 0, length);
+    }
+    else {
+      final float[][] values = value;
+      locateInParallel(length, new GridLocator() {
+        public void locate(int start, int end) throws VisADException {
+          Gridded3DSet.this.locate(values, grid, index, null, start, end);
+        }
+      });
+    }
+    return grid;
+  }
+
+  /**
+   * compute grid[][start] through grid[][end-1] for value[][start]
+   * through value[][end-1], walking from grid box to grid box starting
+   * at guess, or at boxes seeded by index if not null
+   */
+  private void locate(float[][] value, float[][] grid, GridCellIndex index,
+                      int[] guess, int start, int end) {
+    float[][]mySamples = getMySamples();
 
     // (gx, gy, gz) is the current grid box guess
     int gx = (LengthX-1)/2; 
@@ -1111,7 +1136,13 @@ public class Gridded3DSet extends GriddedSet {
     float[] X = new float[3];
     float[] Y = new float[3];
 
-    for (int i = 0; i < length; i++) {
+    float[] p = new float[3];
+    int[] g = new int[3];
+    // true if the last value that was not missing was not found
+    boolean lost = false;
+    // index of the last value that was found
+    int found = -1;
+    for (int i = start; i < end; i++) {
       // a flag indicating whether point is off the grid
       boolean offgrid = false;
       // the first guess should be the last box unless there was no solution
@@ -1129,12 +1160,6 @@ public class Gridded3DSet extends GriddedSet {
         }
         continue;
       }
-      // test for missing
-      if ((i != 0) && grid[0][i - 1] != grid[0][i - 1]) {
-        // gx = (LengthX-1)/2;
-        // gy = (LengthY-1)/2;
-        // gz = (LengthZ-1)/2;
-      }
       int tetnum = 5; // Tetrahedron number in which to start search
       // if the iteration loop fails, the result should be NaN
       grid[0][i] = grid[1][i] = grid[2][i] = Float.NaN;
@@ -1144,16 +1169,34 @@ public class Gridded3DSet extends GriddedSet {
       v_x = value[0][i];
       v_y = value[1][i];
       v_z = value[2][i];
+      // missing values are not located, and do not move the guess
+      if (v_x != v_x || v_y != v_y || v_z != v_z) continue;
       int ii = LengthX * LengthY * LengthZ - 1;
       int gii = (int) gz * LengthX * LengthY + gy * LengthX + gx;
       float sx = mySamples[0][gii];
       float sy = mySamples[1][gii];
       float sz = mySamples[2][gii];
+      if (index != null) {
+        p[0] = v_x;
+        p[1] = v_y;
+        p[2] = v_z;
+        g[0] = gx;
+        g[1] = gy;
+        g[2] = gz;
+        if (!index.seed(p, g)) {
+          // no grid box is near enough to this value
+          lost = true;
+          continue;
+        }
+        gx = g[0];
+        gy = g[1];
+        gz = g[2];
+      }
       //GHANSHAM: Added this if condition. It tries to get start point
       //when i = 0 (first time) or when the last guess is not a valid value
-      if (i == 0 || ((i != 0) && grid[0][i - 1] != grid[0][i - 1])) {
+      else if (found < 0 || lost) {
         // TDR: special check if i==0 when a first value guess is supplied.
-        if (i == 0 && guess != null && guess[0] >= 0 && guess[1] >= 0 && guess[2] >= 0) {
+        if (found < 0 && !lost && guess != null && guess[0] >= 0 && guess[1] >= 0 && guess[2] >= 0) {
           gx = guess[0];
           gy = guess[1];
           gz = guess[2];
@@ -1169,9 +1212,9 @@ public class Gridded3DSet extends GriddedSet {
           }
         }
       } else { //GHANSHAM: Use the last guest other wise
-          gx = (int) grid[0][i-1];
-          gy = (int) grid[1][i-1];
-          gz = (int) grid[2][i-1];
+          gx = (int) grid[0][found];
+          gy = (int) grid[1][found];
+          gz = (int) grid[2][found];
           if (gx > LengthX - 2) {
              gx = LengthX - 2;
           }
@@ -2296,6 +2339,8 @@ public class Gridded3DSet extends GriddedSet {
           || (grid[2][i] <= -0.5) || (grid[2][i] >= LengthZ - 0.5)) {
         grid[0][i] = grid[1][i] = grid[2][i] = Float.NaN;
       }
+      lost = (grid[0][i] != grid[0][i]);
+      if (!lost) found = i;
     }
 
     // TDR: use last found as guess for next locate request
@@ -2304,8 +2349,6 @@ public class Gridded3DSet extends GriddedSet {
       guess[1] = gy;
       guess[2] = gz;
     }
-    
-    return grid;
   }
 
   public float[] getStartPoint(float x, float y, float z) {
@@ -26,6 +26,10 @@ MA 02111-1307, USA
 
 package visad;
 
+import java.rmi.RemoteException;
+
+import visad.util.ThreadManager;
+
 /**
    GriddedSet is implemented by those Set sub-classes whose samples
    lie on a rectangular grid topology (but note the geometry need
@@ -52,6 +56,19 @@ public class GriddedSet extends SampledSet implements GriddedSetIface {
   // (i.e., the sign of the cross-products of the grid edges)
   boolean Pos;
 
+  /** number of threads for large valueToGrid requests of curvilinear
+      Gridded2DSets and Gridded3DSets */
+  public static int valueToGridThreads =
+    Runtime.getRuntime().availableProcessors();
+  /** minimum number of values per valueToGrid thread */
+  static final int MIN_VALUES_PER_THREAD = 8192;
+
+  /** spatial index of grid boxes for valueToGrid, built lazily */
+  private transient volatile GridCellIndex cellIndex = null;
+  /** number of values looked up by valueToGrid before cellIndex
+      was built */
+  private transient long cellIndexLookups = 0;
+
   /** construct a GriddedSet with samples */
   public GriddedSet(MathType type, float[][] samples, int[] lengths)
          throws VisADException {
@@ -79,6 +96,70 @@ public class GriddedSet extends SampledSet implements GriddedSetIface {
     }
   }
 
+  /**
+   * Return the spatial index of grid boxes that seeds the grid box
+   * walk of valueToGrid.  The index is built once enough values have
+   * been looked up to pay for it: the walk may take up to the sum of
+   * the grid lengths steps per value, building the index takes about
+   * Length steps.
+   *
+   * @param count number of values about to be looked up
+   * @return the index, or null if it is not built (yet)
+   */
+  GridCellIndex getCellIndex(int count) {
+    GridCellIndex index = cellIndex;
+    if (index != null) return index;
+    synchronized (this) {
+      if (cellIndex == null) {
+        long steps = 0;
+        for (int j=0; j<ManifoldDimension; j++) steps += Lengths[j];
+        cellIndexLookups += count;
+        float[][] samples = getMySamples();
+        if (cellIndexLookups * steps >= Length && samples != null) {
+          cellIndex = new GridCellIndex(samples, Lengths);
+        }
+      }
+      return cellIndex;
+    }
+  }
+
+  /** a valueToGrid computation over a range of values */
+  interface GridLocator {
+    /** locate values start through end-1 */
+    void locate(int start, int end) throws VisADException;
+  }
+
+  /**
+   * Run locator over values 0 through length-1, split in contiguous
+   * blocks on up to valueToGridThreads threads if length is large.
+   */
+  static void locateInParallel(int length, final GridLocator locator)
+         throws VisADException {
+    int numThreads =
+      Math.min(valueToGridThreads, length / MIN_VALUES_PER_THREAD);
+    if (numThreads < 2) {
+      locator.locate(0, length);
+      return;
+    }
+    ThreadManager threadManager = new ThreadManager("valueToGrid");
+    int blockSize = (length + numThreads - 1) / numThreads;
+    for (int start=0; start<length; start+=blockSize) {
+      final int first = start;
+      final int last = Math.min(start + blockSize, length);
+      threadManager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          locator.locate(first, last);
+        }
+      });
+    }
+    try {
+      threadManager.runInParallel(numThreads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("GriddedSet.valueToGrid: " + e.toString());
+    }
+  }
+
   private void init_lengths(int[] lengths) throws VisADException {
     Lengths = new int[ManifoldDimension];
     Length = 1;
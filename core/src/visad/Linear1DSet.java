@@ -267,8 +267,19 @@ public class Linear1DSet extends Gridded1DSet
     */
     int length = value[0].length;
     float[][] grid = new float[1][length];
-    float[] grid0 = grid[0];
-    float[] value0 = value[0];
+    valueToGrid(value[0], grid[0]);
+    return grid;
+  }
+
+  /**
+   * Transform an array of values in R to non-integer grid coordinates,
+   * written into a caller-supplied array.
+   * @param value  values in R
+   * @param grid   grid coordinates of value, NaN for values outside
+   *               this set; at least as long as value
+   */
+  public void valueToGrid(float[] value, float[] grid) {
+    int length = value.length;
     float l = (float) (First - 0.5 * Step);
     float h = (float) (First + (((float) Length) - 0.5) * Step);
     float v;
@@ -279,10 +290,82 @@ public class Linear1DSet extends Gridded1DSet
       h = temp;
     }
     for (int i=0; i<length; i++) {
-      v = value0[i];
-      grid0[i] = (float) ((l < v && v < h) ? (v - First) * Invstep : Float.NaN);
+      v = value[i];
+      grid[i] = (float) ((l < v && v < h) ? (v - First) * Invstep : Float.NaN);
+    }
+  }
+
+  /**
+   * Convert an array of values in R to the indices of the nearest
+   * samples.
+   * @param value  An array of coordinates.  <code>value[0][i]</code>
+   *               is the <code>i</code>th point.
+   * @return       Indices of nearest points, <code>-1</code> for values
+   *               outside this set.
+   * @throws VisADException  bad value dimension.
+   */
+  public int[] valueToIndex(float[][] value) throws VisADException {
+    int[] index = new int[value[0].length];
+    valueToIndex(value, index);
+    return index;
+  }
+
+  /**
+   * Convert an array of values in R to the indices of the nearest
+   * samples, written into a caller-supplied array.
+   * @param value  An array of coordinates.  <code>value[0][i]</code>
+   *               is the <code>i</code>th point.
+   * @param index  Indices of nearest points, <code>-1</code> for values
+   *               outside this set; at least as long as
+   *               <code>value[0]</code>.
+   * @throws VisADException  bad value dimension.
+   */
+  public void valueToIndex(float[][] value, int[] index)
+         throws VisADException {
+    if (value.length != 1) {
+      throw new SetException("Linear1DSet.valueToIndex: value dimension" +
+                             " should be 1, not " + value.length);
+    }
+    accumulateIndex(value[0], index, true);
+  }
+
+  /**
+   * Fold the nearest sample indices of values along this progression
+   * into an array of indices of a cross product, as
+   * <code>index[i] = nearest + Length * index[i]</code>, without
+   * allocating grid coordinates.  Calling this on the last component
+   * of a cross product first, and then on each component down to the
+   * first, computes the raster indices of GriddedSet.valueToIndex.
+   * @param value  values in R
+   * @param index  indices folded so far; <code>-1</code> stays -1, and
+   *               values outside this set give -1
+   * @param first  if true, index is only written, as for the last
+   *               component of a cross product
+   */
+  void accumulateIndex(float[] value, int[] index, boolean first) {
+    int length = value.length;
+    float l = (float) (First - 0.5 * Step);
+    float h = (float) (First + (((float) Length) - 0.5) * Step);
+    float v;
+    int k;
+
+    if (h < l) {
+      float temp = l;
+      l = h;
+      h = temp;
+    }
+    for (int i=0; i<length; i++) {
+      v = value[i];
+      if (l < v && v < h && (first || index[i] >= 0)) {
+        // same float rounding as valueToGrid, then nearest sample
+        k = (int) (((float) ((v - First) * Invstep)) + 0.5);
+        if (k >= Length) k = Length - 1;
+        index[i] = first ? k : k + Length * index[i];
+      }
+      else {
+        index[i] = -1;
+      }
     }
-    return grid;
   }
 
   /** transform an array of values in R to an array
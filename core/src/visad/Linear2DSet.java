@@ -341,6 +341,33 @@ public class Linear2DSet extends Gridded2DSet
     return grid;
   }
 
+  /** convert an array of values in R^2 to an array of 1-D indices */
+  public int[] valueToIndex(float[][] value) throws VisADException {
+    if (value.length != 2) {
+      throw new SetException("Linear2DSet.valueToIndex: value dimension" +
+                             " must be 2, not " + value.length);
+    }
+    int[] index = new int[value[0].length];
+    valueToIndex(value, index);
+    return index;
+  }
+
+  /** convert an array of values in R^2 to an array of 1-D indices,
+      written into index, directly from the two progressions */
+  public void valueToIndex(float[][] value, int[] index)
+         throws VisADException {
+    if (value.length != 2) {
+      throw new SetException("Linear2DSet.valueToIndex: value dimension" +
+                             " must be 2, not " + value.length);
+    }
+    if (Length > 1 && (Lengths[0] < 2 || Lengths[1] < 2)) {
+      throw new SetException("Linear2DSet.valueToIndex: requires all grid " +
+                             "dimensions to be > 1");
+    }
+    Y.accumulateIndex(value[1], index, true);
+    X.accumulateIndex(value[0], index, false);
+  }
+
   /**
    * Return the first arithmetic progression for this
    * cross product (X of XY).
@@ -368,6 +368,34 @@ public class Linear3DSet extends Gridded3DSet
     return grid;
   }
 
+  /** convert an array of values in R^3 to an array of 1-D indices */
+  public int[] valueToIndex(float[][] value) throws VisADException {
+    if (value.length != 3) {
+      throw new SetException("Linear3DSet.valueToIndex: value dimension" +
+                             " must be 3, not " + value.length);
+    }
+    int[] index = new int[value[0].length];
+    valueToIndex(value, index);
+    return index;
+  }
+
+  /** convert an array of values in R^3 to an array of 1-D indices,
+      written into index, directly from the three progressions */
+  public void valueToIndex(float[][] value, int[] index)
+         throws VisADException {
+    if (value.length != 3) {
+      throw new SetException("Linear3DSet.valueToIndex: value dimension" +
+                             " must be 3, not " + value.length);
+    }
+    if (Length > 1 && (Lengths[0] < 2 || Lengths[1] < 2 || Lengths[2] < 2)) {
+      throw new SetException("Linear3DSet.valueToIndex: requires all grid " +
+                             "dimensions to be > 1");
+    }
+    Z.accumulateIndex(value[2], index, true);
+    Y.accumulateIndex(value[1], index, false);
+    X.accumulateIndex(value[0], index, false);
+  }
+
   /**
    * Return the first arithmetic progression for this
    * cross product (X of XYZ).
@@ -348,6 +348,25 @@ public class LinearLatLonSet extends Linear2DSet {
     return grid;
   }
 
+  /** convert an array of values in (Latitude, Longitude) to an array
+      of 1-D indices, written into index; Longitude is wrapped as by
+      valueToGrid, so the indices come from the grid coordinates */
+  public void valueToIndex(float[][] value, int[] index)
+         throws VisADException {
+    int length = value[0].length;
+    float[][] grid = valueToGrid(value);
+    float[] grid0 = grid[0];
+    float[] grid1 = grid[1];
+    float g0, g1;
+    for (int i=0; i<length; i++) {
+      g0 = grid0[i];
+      g1 = grid1[i];
+      // test for missing
+      index[i] = (g0 != g0 || g1 != g1) ? -1 :
+                 ((int) (g0 + 0.5)) + LengthX * ((int) (g1 + 0.5));
+    }
+  }
+
   /** for each of an array of values in (Latitude, Longitude), compute an array
       of 1-D indices and an array of weights, to be used for interpolation;
       indices[i] and weights[i] are null if i-th value is outside grid
@@ -416,6 +416,42 @@ public class LinearNDSet extends GriddedSet
     return grid;
   }
 
+  /** convert an array of values in R^DomainDimension to an array of
+      1-D indices */
+  public int[] valueToIndex(float[][] value) throws VisADException {
+    if (value.length != DomainDimension) {
+      throw new SetException("LinearNDSet.valueToIndex: value dimension " +
+                             value.length + " not equal to Domain dimension " +
+                             DomainDimension);
+    }
+    int[] index = new int[value[0].length];
+    valueToIndex(value, index);
+    return index;
+  }
+
+  /** convert an array of values in R^DomainDimension to an array of
+      1-D indices, written into index, directly from the progressions */
+  public void valueToIndex(float[][] value, int[] index)
+         throws VisADException {
+    int j;
+    if (value.length != DomainDimension) {
+      throw new SetException("LinearNDSet.valueToIndex: value dimension " +
+                             value.length + " not equal to Domain dimension " +
+                             DomainDimension);
+    }
+    if (Length > 1) {
+      for (j=0; j<DomainDimension; j++) {
+        if (Lengths[j] < 2) {
+          throw new SetException("LinearNDSet.valueToIndex: requires all " +
+                                 "grid dimensions to be > 1");
+        }
+      }
+    }
+    for (j=DomainDimension-1; j>=0; j--) {
+      L[j].accumulateIndex(value[j], index, j == DomainDimension-1);
+    }
+  }
+
   /**
    * Check to see if this is an empty cross-product.
    * @return always false.
@@ -106,6 +106,24 @@ public final class LogarithmicUnit extends Unit implements Serializable {
                 : Math.log(base);
     }
 
+    /**
+     * Returns the reference level of this unit.
+     * 
+     * @return The reference level.
+     */
+    Unit getReferenceLevel() {
+        return reference;
+    }
+
+    /**
+     * Returns the logarithmic base of this unit.
+     * 
+     * @return The logarithmic base.
+     */
+    double getBase() {
+        return base;
+    }
+
     static Unit getInstance(final double base, final Unit reference) {
         return new LogarithmicUnit(base, reference);
     }
@@ -303,11 +303,13 @@ public final class OffsetUnit extends Unit implements Serializable {
         }
         else {
             try {
-                definition = scaledString
-                        + " since "
-                        + dateFormat
-                                .format(new Date((long) (millisecond.toThis(
-                                        offset, underUnit) + offsetUnitOrigin)));
+                final Date origin = new Date((long) (millisecond.toThis(
+                        offset, underUnit) + offsetUnitOrigin));
+                // SimpleDateFormat isn't thread-safe
+                synchronized (dateFormat) {
+                    definition = scaledString + " since "
+                            + dateFormat.format(origin);
+                }
             }
             catch (final UnitException e) {
                 definition = e.toString();
@@ -364,44 +364,66 @@ public class PlotText extends Object {
          double[] base, double[] up, TextControl.Justification justification,
          TextControl.Justification verticalJustification,
          double characRotation, double scale, double[] offsets) {
-    if (offsets == null) {
-      offsets = new double[]{0.0, 0.0, 0.0};
-    }
-    if (scale <= 0.0) {
-      scale = 1.0;
-    }
-
-    /*  System.out.println("in render_label:" +
-        " characRotation= " + characRotation +
-        " scale=" + scale +
-        " offset=[" + offsets[0] + ", " + offsets[1] +
-        ", " + offsets[2] + "]");
-    */
-
-    double []start_off = new double[3];
-    start_off[0] = start[0] + offsets[0];
-    start_off[1] = start[1] + offsets[1];
-    start_off[2] = start[2] + offsets[2];
-
-    double[] base_scaled = new double[3];
-    base_scaled[0] = base[0] * scale;
-    base_scaled[1] = base[1] * scale;
-    base_scaled[2] = base[2] * scale;
+    return render_label(new String[] {str}, new double[][] {start}, base, up,
+                        justification, verticalJustification,
+                        characRotation, scale, offsets);
+  }
 
-    double[] up_scaled = new double[3];
-    up_scaled[0] = up[0] * scale;
-    up_scaled[1] = up[1] * scale;
-    up_scaled[2] = up[2] * scale;
+  /**
+   * Convert a number of strings of characters (ASCII collating sequence)
+   * into a single array of vectors for drawing, e.g. all the labels of a
+   * layer.  All strings share the orientation, size and justification.
+   *
+   * @param strs  Strings to use; null elements are skipped
+   * @param  starts start point (x,y,z) of each string
+   * @param  base  (x,y,z) of baseline vector
+   * @param  up  (x,y,z) of "up" direction vector
+   * @param  justification LEFT, CENTER or RIGHT
+   * @param  verticalJustification TOP, CENTER or BOTTOM
+   * @param characRotation is the angle (in degrees) at which each character
+   * is rotated with respect to the base line of the text
+   * @param scale is the scaling factor.
+   * @param offsets is a 1x3 array defining the offsets in X, Y, Z, respectively.
+   *
+   * @return VisADLineArray of all the lines needed to draw the
+   * characters in these strings, or null if there are none
+   */
+  public static VisADLineArray render_label(String[] strs, double[][] starts,
+         double[] base, double[] up, TextControl.Justification justification,
+         TextControl.Justification verticalJustification,
+         double characRotation, double scale, double[] offsets) {
+    float[][] uv = new float[strs.length][];
+    for (int i=0; i<strs.length; i++) {
+      if (strs[i] == null) continue;
+      GlyphCache.Key key =
+        new GlyphCache.Key(GlyphCache.LABEL, null, strs[i], characRotation,
+                           1.0, justification, verticalJustification);
+      uv[i] = (float[]) GlyphCache.get(key);
+      if (uv[i] == null) {
+        uv[i] = layout_label(strs[i], justification, verticalJustification,
+                             characRotation);
+        GlyphCache.put(key, uv[i]);
+      }
+    }
+    return makeLineArray(uv, starts, base, up, scale, offsets);
+  }
 
-    double cx, cy, cz;
+  /**
+   * Lay out str in the built-in font, in unit text coordinates.
+   *
+   * @return pairs (u, v) of the end points of the vectors
+   */
+  private static float[] layout_label(String str,
+         TextControl.Justification justification,
+         TextControl.Justification verticalJustification,
+         double characRotation) {
+    double cu;
     int i, j, k, len;
 
-    cx = start_off[0];
-    cy = start_off[1];
-    cz = start_off[2];
+    cu = 0.0;
     len = str.length();
-    // allow 20 2-point 3-component strokes per character
-    float[] plot = new float[120 * len];
+    // allow 20 2-point 2-component strokes per character
+    float[] plot = new float[80 * len];
 
     int plot_index = 0;
 
@@ -431,10 +453,9 @@ public class PlotText extends Object {
 
         boolean dup_point = true;
         if (j == (verts - 1) ) dup_point = false; // don't dupe last point
-        float px, py, pz;
         w = (double) charCodes[k][temp_index]*.1;
         if (w > 9.0) {
-          if (j != 0) plot_index -= 3; // reset pointer to remove last point
+          if (j != 0) plot_index -= 2; // reset pointer to remove last point
           w = w - 10.0;
           dup_point = false;
         }
@@ -447,31 +468,22 @@ public class PlotText extends Object {
         if (h > maxY) maxY = (float) h;
         if (h < minY) minY = (float) h;
 
-        // System.out.println(i + " " + j + " " + cur_char + ". w=" + w + " h=" + h);
         x = (float) (w * Math.cos(angle) - h * Math.sin(angle));
         y = (float) (w * Math.sin(angle) + h * Math.cos(angle));
-        // System.out.println(i + ". " + k + ". " + j + ". x=" + x + ", y="+ y);
-
-        px = (float) (cx + x * base_scaled[0] + y * up_scaled[0]);
-        py = (float) (cy + x * base_scaled[1] + y * up_scaled[1]);
-        pz = (float) (cz + x * base_scaled[2] + y * up_scaled[2]);
 
-        plot[plot_index] = px;
-        plot[plot_index + 1] = py;
-        plot[plot_index + 2] = pz;
+        plot[plot_index] = (float) (cu + x);
+        plot[plot_index + 1] = (float) y;
 
         if (dup_point) { // plot points are in pairs -- set up for next pair
-          plot[plot_index + 3] = plot[plot_index];
-          plot[plot_index + 4] = plot[plot_index + 1];
-          plot[plot_index + 5] = plot[plot_index + 2];
-          plot_index += 3;
+          plot[plot_index + 2] = plot[plot_index];
+          plot[plot_index + 3] = plot[plot_index + 1];
+          plot_index += 2;
         }
-        plot_index += 3;
+        plot_index += 2;
       }
       if (minY > maxY) {
         minY = maxY;  // no vertice
       }
-      //  System.out.println(i + ". " + cur_char + ". maxX=" + maxX + ", minY="+ minY + ", maxY="+ maxY);
 
       // Calculate offsets due to rotations of characters
       x = maxX;
@@ -489,81 +501,21 @@ public class PlotText extends Object {
         cur_x_off += (float) ((-minY+0.05) * Math.abs(Math.cos(angle2)));
       }
 
-      // System.out.println(i + ". " + cur_char + ". x=" + x + " y=" + y + " x_plus=" + x_plus + " cur_x_off=" + cur_x_off);
-
       // Apply offsets
-      for (j=plot_index_begin;j<plot_index; j=j+6) {
-        plot[j] += cur_x_off * base_scaled[0];
-        plot[j + 1] += cur_x_off * base_scaled[1];
-        plot[j + 2] += cur_x_off * base_scaled[2];
-        plot[j + 3] += cur_x_off * base_scaled[0];
-        plot[j + 4] += cur_x_off * base_scaled[1];
-        plot[j + 5] += cur_x_off * base_scaled[2];
+      for (j=plot_index_begin; j<plot_index; j=j+2) {
+        plot[j] += cur_x_off;
       }
 
       /* calculate position for next char */
       double width = Math.max(WIDTH, x_plus + 0.3);
-      cx += (float) (width * base_scaled[0]);
-      cy += (float) (width * base_scaled[1]);
-      cz += (float) (width * base_scaled[2]);
+      cu += (float) width;
 
     } // end for (i=0; i<len; i++)
 
-    if (plot_index <= 0) return null;
-
-/* grf 22 Jan 2004 - alter to get vertical justification correct
-*/
-    float cxoff = 0.0f;
-    float cyoff = 0.0f;
-    float czoff = 0.0f;
-
-    // LEFT is normal (or TOP or BOTTOM)
-    if (justification == TextControl.Justification.CENTER) {
-      cxoff = (float)((cx - start_off[0])/2.);
-      cyoff = (float)((cy - start_off[1])/2.);
-      czoff = (float)((cz - start_off[2])/2.);
-
-    } else if (justification == TextControl.Justification.RIGHT) {
-      cxoff = (float)(cx - start_off[0]);
-      cyoff = (float)(cy - start_off[1]);
-      czoff = (float)(cz - start_off[2]);
-    }
-
-    // BOTTOM is normal (or LEFT or RIGHT)
-    if (verticalJustification == TextControl.Justification.TOP) {
-      final double height = WIDTH;
-      cxoff += height * up_scaled[0];
-      cyoff += height * up_scaled[1];
-      czoff += height * up_scaled[2];
-    } else if (verticalJustification == TextControl.Justification.CENTER) {
-      final double height = WIDTH;
-      cxoff += height * up_scaled[0] / 2.0;
-      cyoff += height * up_scaled[1] / 2.0;
-      czoff += height * up_scaled[2] / 2.0;
-    }
-
-
-/* grf 22 Jan 2004 - alter to get vertical justification correct
-*/
-    if (cxoff != 0.0f || cyoff != 0.0f || czoff != 0.0f) { 
-      for (i=0; i<plot_index; i=i+3) {
-        plot[i] = plot[i] - cxoff;
-        plot[i+1] = plot[i+1] - cyoff;
-        plot[i+2] = plot[i+2] - czoff;
-      }
-    }
-
-    VisADLineArray array = new VisADLineArray();
-    float[] coordinates = new float[plot_index];
-    System.arraycopy(plot, 0, coordinates, 0, plot_index);
-    array.coordinates = coordinates;
-    array.vertexCount = plot_index / 3;
-
-/* WLH 20 Feb 98
-    array.vertexFormat = COORDINATES;
-*/
+    if (plot_index <= 0) return NO_GEOMETRY;
 
-    return array;
+    return justify(plot, plot_index, cu, justification,
+                   verticalJustification);
   }
 
   /** make a short string for value for use in slider label */
@@ -718,48 +670,73 @@ public class PlotText extends Object {
             TextControl.Justification justification,
             TextControl.Justification verticalJustification,
             double characRotation, double scale, double[] offsets) {
-    /*
-      System.out.println("in render_font with HersheyFont font:" +
-      " characRotation= " + characRotation +
-      " scale=" + scale +
-      " offset=[" + offsets[0] + ", " + offsets[1] +
-      ", " + offsets[2] + "]"              );
-    */
-
-    if (offsets == null) {
-      offsets = new double[]{0.0, 0.0, 0.0};
-    }
-    double []start_off = new double[3];
-    start_off[0] = start[0] + offsets[0];
-    start_off[1] = start[1] + offsets[1];
-    start_off[2] = start[2] + offsets[2];
+    return render_font(new String[] {str}, font, new double[][] {start},
+                       base, up, justification, verticalJustification,
+                       characRotation, scale, offsets);
+  }
 
-    if (scale <= 0.0) {
-      scale = 1.0;
+  /**
+   * Convert a number of strings of characters (ASCII collating sequence)
+   * into a single array of vectors for drawing, e.g. all the labels of a
+   * layer.  All strings share the font, orientation, size and
+   * justification.
+   *
+   * @param strs  Strings to use; null elements are skipped
+   * @param  font  non-null HersheyFont name
+   * @param  starts start point (x,y,z) of each string
+   * @param  base  (x,y,z) of baseline vector
+   * @param  up  (x,y,z) of "up" direction vector
+   * @param  justification LEFT, CENTER or RIGHT
+   * @param  verticalJustification TOP, CENTER or BOTTOM
+   * @param characRotation is the angle (in degrees) at which each character
+   * is rotated with respect to the base line of the text
+   * @param scale is the scaling factor.
+   * @param offsets is a 1x3 array defining the offsets in X, Y, Z, respectively.
+   *
+   * @return VisADLineArray of all the lines needed to draw the
+   * characters in these strings, or null if there are none
+   */
+  public static VisADLineArray render_font(String[] strs, HersheyFont font,
+            double[][] starts, double[] base, double[] up,
+            TextControl.Justification justification,
+            TextControl.Justification verticalJustification,
+            double characRotation, double scale, double[] offsets) {
+    float[][] uv = new float[strs.length][];
+    for (int i=0; i<strs.length; i++) {
+      if (strs[i] == null) continue;
+      GlyphCache.Key key =
+        new GlyphCache.Key(GlyphCache.HERSHEY, font, strs[i], characRotation,
+                           1.0, justification, verticalJustification);
+      uv[i] = (float[]) GlyphCache.get(key);
+      if (uv[i] == null) {
+        uv[i] = layout_font(strs[i], font, justification,
+                            verticalJustification, characRotation);
+        GlyphCache.put(key, uv[i]);
+      }
     }
-    double[] base_scaled = new double[3];
-    base_scaled[0] = base[0] * scale;
-    base_scaled[1] = base[1] * scale;
-    base_scaled[2] = base[2] * scale;
-
-    double[] up_scaled = new double[3];
-    up_scaled[0] = up[0] * scale;
-    up_scaled[1] = up[1] * scale;
-    up_scaled[2] = up[2] * scale;
+    return makeLineArray(uv, starts, base, up, scale, offsets);
+  }
 
+  /**
+   * Lay out str in a HersheyFont, in unit text coordinates.
+   *
+   * @return pairs (u, v) of the end points of the vectors
+   */
+  private static float[] layout_font(String str, HersheyFont font,
+            TextControl.Justification justification,
+            TextControl.Justification verticalJustification,
+            double characRotation) {
     int maxChars = font.getCharactersInSet();
 
     double width = 0;
 
-    double cx = start_off[0];
-    double cy = start_off[1];
-    double cz = start_off[2];
+    double cu = 0.0;
     int len = str.length();
     boolean isFixed = font.getFixedWidth();
 
-    // allow 2-point 3-component strokes per character
+    // allow 2-point 2-component strokes per character
     int maxSeg = font.getMaxPoints();
-    float[] plot = new float[maxSeg * 6 * len];
+    float[] plot = new float[maxSeg * 4 * len];
 
     int plot_index = 0;
     int [] charMinX = font.getCharacterMinX();
@@ -770,10 +747,9 @@ public class PlotText extends Object {
     int charSetMaxX = font.getCharacterSetMaxX();
     boolean isCursive = font.getIsCursive();
 
-    float oldpx = 0.f;
-    float oldpy = 0.f;
-    float oldpz = 0.f;
-    float x,y, px, py, pz;
+    float oldpu = 0.f;
+    float oldpv = 0.f;
+    float x,y, pu, pv;
     float w,h;
 
     // look at each character in the string
@@ -792,14 +768,9 @@ public class PlotText extends Object {
 
         width = .08;
         if (isCursive) width = -.08;
-        cx += width * base_scaled[0];
-        cy += width * base_scaled[1];
-        cz += width * base_scaled[2];
+        cu += width;
       }
 
-      // System.out.println(i + ". " + cur_char + ". charMinY=" + charMinY + " charMaxY=" + charMaxY);
-      // System.out.println(i + ". " + cur_char + " cx=" + cx + " cy=" + cy + " cz=" + cz);
-
       int plot_index_begin = plot_index;
       boolean skip = true;
       float maxX = 0.f;
@@ -828,31 +799,23 @@ public class PlotText extends Object {
           if (w > maxX) maxX = w;
           if (h > maxY) maxY = h;
           if (h < minY) minY = h;
-          //          System.out.println(i + " " + j + " " + cur_char + ". w=" + w + " h=" + h);
           x = (float) (w * Math.cos(angle) - h * Math.sin(angle));
           y = (float) (w * Math.sin(angle) + h * Math.cos(angle));
-          // System.out.println(i + ". " + k + ". " + j + ". x=" + x + ", y="+ y);
-
-          px = (float) (cx + x * base_scaled[0] + y * up_scaled[0]);
-          py = (float) (cy + x * base_scaled[1] + y * up_scaled[1]);
-          pz = (float) (cz + x * base_scaled[2] + y * up_scaled[2]);
 
-          // System.out.println(i + ". " + k + ". " + j + ". px=" + px + ", py="+ py + ", pz=" + pz);
+          pu = (float) (cu + x);
+          pv = y;
 
           // need pairs of points
           if (!skip) {
-            plot[plot_index] = oldpx;
-            plot[plot_index + 1] = oldpy;
-            plot[plot_index + 2] = oldpz;
-            plot[plot_index + 3] = px;
-            plot[plot_index + 4] = py;
-            plot[plot_index + 5] = pz;
-            plot_index += 6;
+            plot[plot_index] = oldpu;
+            plot[plot_index + 1] = oldpv;
+            plot[plot_index + 2] = pu;
+            plot[plot_index + 3] = pv;
+            plot_index += 4;
           }
           skip = false;
-          oldpx = px;
-          oldpy = py;
-          oldpz = pz;
+          oldpu = pu;
+          oldpv = pv;
         }
       }
 
@@ -862,8 +825,6 @@ public class PlotText extends Object {
         minY = maxY;  // no vertice
       }
 
-      // System.out.println(i + ". " + cur_char + ". maxX=" + maxX + ", minY="+ minY + ", maxY="+ maxY);
-
       // Calculate offsets due to rotations of characters
       x = maxX;
       y = (float)Math.max((maxY - minY + 0.3), 0.5);
@@ -880,80 +841,23 @@ public class PlotText extends Object {
       float y1 = (float) ((minY + .30)/2.0 - minY);
       cur_x_off += (float) (y1 * Math.cos(angle2));
 
-      // System.out.println(i + ". " + cur_char + ". x=" + x + " y=" + y + " y1=" + y1 + " x_plus=" + x_plus + " cur_x_off=" + cur_x_off);
-
       // Apply offsets
-      for (int j=plot_index_begin;j<plot_index; j=j+6) {
-        plot[j] += cur_x_off * base_scaled[0];
-        plot[j + 1] += cur_x_off * base_scaled[1];
-        plot[j + 2] += cur_x_off * base_scaled[2];
-        plot[j + 3] += cur_x_off * base_scaled[0];
-        plot[j + 4] += cur_x_off * base_scaled[1];
-        plot[j + 5] += cur_x_off * base_scaled[2];
+      for (int j=plot_index_begin; j<plot_index; j=j+2) {
+        plot[j] += cur_x_off;
       }
 
       // move pointer to the end position of this character
       width = width + x_plus;
-      cx += width * base_scaled[0];
-      cy += width * base_scaled[1];
-      cz += width * base_scaled[2];
+      cu += width;
 
     } // end for (i=0; i<len; i++)
 
 
-    if (plot_index <= 0) return null;
+    if (plot_index <= 0) return NO_GEOMETRY;
 
     // now re-justify text along x-axis if need be.
-/* grf 22 Jan 2004 - alter to get vertical justification correct
-*/
-    float cxoff = 0.0f;
-    float cyoff = 0.0f;
-    float czoff = 0.0f;
-
-    // LEFT is normal (or TOP or BOTTOM)
-    if (justification == TextControl.Justification.CENTER) {
-      cxoff = (float)((cx - start_off[0])/2.);
-      cyoff = (float)((cy - start_off[1])/2.);
-      czoff = (float)((cz - start_off[2])/2.);
-    } else if (justification == TextControl.Justification.RIGHT) {
-      cxoff = (float)(cx - start_off[0]);
-      cyoff = (float)(cy - start_off[1]);
-      czoff = (float)(cz - start_off[2]);
-
-    }
-
-    // BOTTOM is normal (or LEFT or RIGHT)
-    if (verticalJustification == TextControl.Justification.TOP) {
-      final double height = WIDTH;
-      cxoff += height * up_scaled[0];
-      cyoff += height * up_scaled[1];
-      czoff += height * up_scaled[2];
-    } else if (verticalJustification == TextControl.Justification.CENTER) {
-      final double height = WIDTH;
-      cxoff += height * up_scaled[0] / 2.0;
-      cyoff += height * up_scaled[1] / 2.0;
-      czoff += height * up_scaled[2] / 2.0;
-    }
-
-/* grf 22 Jan 2004 - alter to get vertical justification correct
-   only alter if needed
-*/
-    if (cxoff != 0.0f || cyoff != 0.0f || czoff != 0.0f) { 
-      for (int i=0; i<plot_index; i=i+3) {
-        plot[i] = plot[i] - cxoff;
-        plot[i+1] = plot[i+1] - cyoff;
-        plot[i+2] = plot[i+2] - czoff;
-      }
-    }
-
-    // finally, make the VisADLineArray
-    VisADLineArray array = new VisADLineArray();
-    float[] coordinates = new float[plot_index];
-    System.arraycopy(plot, 0, coordinates, 0, plot_index);
-    array.coordinates = coordinates;
-    array.vertexCount = plot_index / 3;
-
-    return array;
+    return justify(plot, plot_index, cu, justification,
+                   verticalJustification);
   }
 
 // abcd 5 February 2001
@@ -1104,38 +1008,157 @@ public class PlotText extends Object {
          TextControl.Justification justification,
          TextControl.Justification verticalJustification,
          double characRotation, double scale, double[] offsets) {
-    VisADTriangleArray array = null;
-
-    // System.out.println("x, y, z = " + x + " " + y + " " + z);
-    // System.out.println("center = " + center);
-
+    return render_font(new String[] {str}, font, new double[][] {start},
+                       base, up, justification, verticalJustification,
+                       characRotation, scale, offsets);
+  }
 
-    /* System.out.println("in render_font with Java font:" +
-       " characRotation= " + characRotation +
-       " scale=" + scale +
-       " offset=[" + offsets[0] + ", " + offsets[1] +
-       ", " + offsets[2] + "]");
-    */
+  /**
+   * Convert a number of strings of characters (ASCII collating sequence)
+   * into a single array of triangles for drawing, e.g. all the labels of
+   * a layer.  All strings share the font, orientation, size and
+   * justification.
+   *
+   * @param strs  Strings to use; null elements are skipped
+   * @param  font  non-null font
+   * @param  starts start point (x,y,z) of each string
+   * @param  base  (x,y,z) of baseline vector
+   * @param  up  (x,y,z) of "up" direction vector
+   * @param  justification LEFT, CENTER or RIGHT
+   * @param  verticalJustification TOP, CENTER or BOTTOM
+   * @param characRotation is the angle (in degrees) at which each character
+   * is rotated with respect to the base line of the text
+   * @param scale is the scaling factor.
+   * @param offsets is a 1x3 array defining the offsets in X, Y, Z, respectively.
+   *
+   * @return VisADTriangleArray of all the triangles needed to draw the
+   * characters in these strings, or null if there are none
+   */
+  public static VisADTriangleArray render_font(String[] strs, Font font,
+         double[][] starts, double[] base, double[] up,
+         TextControl.Justification justification,
+         TextControl.Justification verticalJustification,
+         double characRotation, double scale, double[] offsets) {
     if (offsets == null) {
       offsets = new double[]{0.0, 0.0, 0.0};
     }
-    double []start_off = new double[3];
-    start_off[0] = start[0] + offsets[0];
-    start_off[1] = start[1] + offsets[1];
-    start_off[2] = start[2] + offsets[2];
-
     if (scale < 0.0) {
       scale = 1.0;
     }
 
+    /*
+     * abcd 20 March 2003
+     * Figure out how far to 'up' our text should start
+     */
+/* grf 22 Jan 2004 - alter to get vertical justification correct
+   Set to default BOTTOM
+*/
+    float y_offset = (float)(0.8*scale);
+    if (verticalJustification == TextControl.Justification.CENTER) {
+      y_offset = -0.5f * y_offset;
+    } else if ( verticalJustification == TextControl.Justification.TOP) {
+      y_offset = -1.0f * y_offset;
+    } else { // BOTTOM (or LEFT or RIGHT)
+      y_offset = 0.0f;
+    }
+
+    float[][] uv = new float[strs.length][];
+    int count = 0;
+    for (int i=0; i<strs.length; i++) {
+      if (strs[i] == null) continue;
+      int str_len = strs[i].length();
+      GlyphCache.Glyph[] glyphs = new GlyphCache.Glyph[str_len];
+      float x_offset = 0.0f;
+      int n = 0;
+      for (int str_index=0; str_index<str_len; str_index++) {
+        glyphs[str_index] = get_glyph(strs[i].charAt(str_index), font,
+                                      characRotation, scale);
+        x_offset += glyphs[str_index].advance;
+        n += glyphs[str_index].triangles.length;
+      }
+      if (n == 0) continue;
+
+      /*
+       * abcd 5 February 2001
+       * Figure out how far to the 'left' our text should start
+       */
+      // Set default to LEFT
+      float x_start;
+      if (justification == TextControl.Justification.CENTER) {
+        x_start = -0.5f * x_offset;
+      } else if (justification == TextControl.Justification.RIGHT) {
+        x_start = -1.0f * x_offset;
+      } else { // Default LEFT (or TOP or BOTTOM)
+        x_start = 0.0f;
+      }
+
+      uv[i] = new float[n];
+      x_offset = x_start;
+      n = 0;
+      for (int str_index=0; str_index<str_len; str_index++) {
+        float[] tris = glyphs[str_index].triangles;
+        for (int j=0; j<tris.length; j+=2) {
+          uv[i][n++] = tris[j] + x_offset;
+          uv[i][n++] = tris[j + 1] + y_offset;
+        }
+        x_offset += glyphs[str_index].advance;
+      }
+      count += n / 2;
+    }
+    if (count == 0) return null;
+
+    float[] coordinates = new float[3 * count];
+    double[] start_off = new double[3];
+    int n = 0;
+    for (int i=0; i<strs.length; i++) {
+      if (uv[i] == null) continue;
+      for (int j=0; j<3; j++) {
+        start_off[j] = starts[i][j] + offsets[j];
+      }
+      GlyphCache.place(uv[i], n, uv[i].length / 2, start_off, base, up,
+                       coordinates);
+      n += uv[i].length / 2;
+    }
+    float[] normals = new float[3 * count];
+    for (int j3=0; j3<normals.length; j3+=3) {
+      normals[j3 + 2] = 1.0f;
+    }
+
+    VisADTriangleArray array = new VisADTriangleArray();
+    array.vertexCount = count;
+    array.coordinates = coordinates;
+    array.normals = normals;
+    return array;
+  }
+
+  /**
+   * Get the geometry of one character of a font, from the GlyphCache
+   * or by tessellating its outline.
+   */
+  private static GlyphCache.Glyph get_glyph(char c, Font font,
+         double characRotation, double scale) {
+    GlyphCache.Key key =
+      new GlyphCache.Key(GlyphCache.GLYPH, font, String.valueOf(c),
+                         characRotation, scale, null, null);
+    GlyphCache.Glyph glyph = (GlyphCache.Glyph) GlyphCache.get(key);
+    if (glyph == null) {
+      glyph = tessellate_glyph(c, font, characRotation, scale);
+      GlyphCache.put(key, glyph);
+    }
+    return glyph;
+  }
+
+  /**
+   * Tessellate the outline of one character of a font.
+   *
+   * @return the triangles, as pairs (u, v) of unit text coordinates of
+   * their vertices, and the advance of the character
+   */
+  private static GlyphCache.Glyph tessellate_glyph(char c, Font font,
+         double characRotation, double scale) {
     float fsize = font.getSize();
     float fsize_inv = (float)(scale / fsize);
-    //float fsize_inv = (float)(1.0 / fsize);
 
-    // ??
-    // Graphics2D g2 = null;
-    // FontRenderContext frc = g2.getFontRenderContext();
-    int str_len = str.length();
     AffineTransform at = null;
     boolean isAntiAliased = false;
     boolean usesFractionalMetrics = false;
@@ -1152,244 +1175,250 @@ public class PlotText extends Object {
     float[][] big_samples = new float[2][big_len];
     float[] seg = new float[6];
 
+    char[] chars = {c};
+    gv = font.createGlyphVector(frc, chars);
 
+    int ng = gv.getNumGlyphs();
+    if (ng == 0) return new GlyphCache.Glyph(NO_GEOMETRY, 0.0f);
+    int path_count = 0;
+    Vector samples_vector = new Vector();
 
-    float x_offset = 0.0f;
-    for (int str_index=0; str_index<str_len; str_index++) {
-      char[] chars = {str.charAt(str_index)};
-      gv = font.createGlyphVector(frc, chars);
-
-      int ng = gv.getNumGlyphs();
-      if (ng == 0) continue;
-      int path_count = 0;
-      Vector samples_vector = new Vector();
-
-      // abcd - 1 February 2001
-      // Get x increment from the fonts 'advance' property
-      // float x_plus = (float) (fsize_inv * gv.getGlyphMetrics(0).getAdvance());
-      //System.out.println(str_index + " " + chars[0] + " " + x_plus + " " + fsize_inv);
-
-      // Compute advance along baseline
-      float angle = (float) Math.toRadians(-characRotation);
-      float angle2 = (float) (angle + Math.PI/2.0);
-      float x = (float) (fsize_inv * gv.getGlyphMetrics(0).getAdvance());
-      float y = (float) (fsize_inv *
-                         (gv.getGlyphMetrics(0).getBounds2D().getHeight())
-                         + 0.2);
-      float x_plus = (float) (x * Math.abs(Math.cos(angle)) +
-                              y * Math.abs(Math.cos(angle2)));
+    // abcd - 1 February 2001
+    // Get x increment from the fonts 'advance' property
 
-      // Compute offset along baseline
-      float y1 = (float) (fsize_inv *
-                          (gv.getGlyphMetrics(0).getBounds2D().getY() * -1)
-                          + 0.2);
-      float cur_x_off = 0.0f;
-      if (Math.cos(angle) < 0) {
-        cur_x_off = (float) (x * Math.abs(Math.cos(angle)));
-      }
-      if (Math.cos(angle2) < 0) {
-        cur_x_off += (float) (y1 * Math.abs(Math.cos(angle2)));
+    // Compute advance along baseline
+    float angle = (float) Math.toRadians(-characRotation);
+    float angle2 = (float) (angle + Math.PI/2.0);
+    float x = (float) (fsize_inv * gv.getGlyphMetrics(0).getAdvance());
+    float y = (float) (fsize_inv *
+                       (gv.getGlyphMetrics(0).getBounds2D().getHeight())
+                       + 0.2);
+    float x_plus = (float) (x * Math.abs(Math.cos(angle)) +
+                            y * Math.abs(Math.cos(angle2)));
+
+    // Compute offset along baseline
+    float y1 = (float) (fsize_inv *
+                        (gv.getGlyphMetrics(0).getBounds2D().getY() * -1)
+                        + 0.2);
+    float cur_x_off = 0.0f;
+    if (Math.cos(angle) < 0) {
+      cur_x_off = (float) (x * Math.abs(Math.cos(angle)));
+    }
+    if (Math.cos(angle2) < 0) {
+      cur_x_off += (float) (y1 * Math.abs(Math.cos(angle2)));
+    }
+    else {
+      cur_x_off += (float) ((y-y1) * Math.abs(Math.cos(angle2)));
+    }
+    // Compute offset perpendicular to the baseline
+    float w = (float) (fsize_inv * gv.getGlyphMetrics(0).getBounds2D().
+                       getWidth());
+    float x_start = (float) (fsize_inv * gv.getGlyphMetrics(0).getBounds2D().
+                             getX());
+    float space = (float) ((maxW - w)/2.0);
+    float cur_y_off = (float) ((space - x_start) * Math.cos(angle2));
+
+    for (int ig=0; ig<ng; ig++) {
+      Shape sh = null;
+      if (characRotation != 0.0) {
+        Shape sh0 = gv.getGlyphOutline(ig);
+        angle = (float) Math.toRadians(characRotation);
+        AffineTransform at2 = AffineTransform.getRotateInstance(angle);
+        sh = at2.createTransformedShape(sh0);
       }
       else {
-        cur_x_off += (float) ((y-y1) * Math.abs(Math.cos(angle2)));
+        sh = gv.getGlyphOutline(ig);
       }
-      // Compute offset perpendicular to the baseline
-      float w = (float) (fsize_inv * gv.getGlyphMetrics(0).getBounds2D().
-                         getWidth());
-      float x_start = (float) (fsize_inv * gv.getGlyphMetrics(0).getBounds2D().
-                               getX());
-      float space = (float) ((maxW - w)/2.0);
-      float cur_y_off = (float) ((space - x_start) * Math.cos(angle2));
-      //System.out.println("\n" + str_index + " " + chars[0] + " " + gv.getGlyphMetrics(0).getBounds2D() + " " + gv.getGlyphMetrics(0).getLSB() + " " + gv.getGlyphMetrics(0).getRSB());
-      //System.out.println("\n" + str_index + " " + chars[0] + " w=" + w + " x_start=" + x_start + " space=" + space + " maxW=" + maxW);
-      //System.out.println("\n" + str_index + " " + chars[0] + " " + "x=" + x + " y=" + y + " y1=" + y1 + " x_plus=" + x_plus + " cur_x_off=" + cur_x_off + " cur_y_off=" + cur_y_off);
-
-      for (int ig=0; ig<ng; ig++) {
-        Shape sh = null;
-        if (characRotation != 0.0) {
-          Shape sh0 = gv.getGlyphOutline(ig);
-          angle = (float) Math.toRadians(characRotation);
-          AffineTransform at2 = AffineTransform.getRotateInstance(angle);
-          sh = at2.createTransformedShape(sh0);
-        }
-        else {
-          sh = gv.getGlyphOutline(ig);
-        }
 
-        // pi only has SEG_MOVETO, SEG_LINETO, and SEG_CLOSE point types
-        PathIterator pi = sh.getPathIterator(at, flatness);
-        int k = 0;
-        while (!pi.isDone()) {
-          int segType = pi.currentSegment(seg);
-          switch(segType) {
-            case PathIterator.SEG_MOVETO:
-              if (k > 0) {
-                //System.out.println("SEG_MOVETO  k = " + k + "  ig = " + ig);
-                float[][] samples = new float[2][k];
-                System.arraycopy(big_samples[0], 0, samples[0], 0, k);
-                System.arraycopy(big_samples[1], 0, samples[1], 0, k);
-                samples_vector.addElement(samples);
-                k = 0;
-                path_count++;
-              }
-              // NOTE falls through to SEG_LINETO to add first point
-            case PathIterator.SEG_LINETO:
-              big_samples[0][k] = x_offset + cur_x_off + fsize_inv * seg[0];
-              big_samples[1][k] = - cur_y_off - fsize_inv * seg[1];
-              k++;
-              if (k >= big_len) {
-                float[][] bs = new float[2][2 * big_len];
-                System.arraycopy(big_samples[0], 0, bs[0], 0, big_len);
-                System.arraycopy(big_samples[1], 0, bs[1], 0, big_len);
-                big_samples = bs;
-                big_len = 2 * big_len;
-              }
-              break;
-            case PathIterator.SEG_CLOSE:
-              if (k > 0) {
-//System.out.println("SEG_CLOSE  k = " + k + "  ig = " + ig);
-                float[][] samples = new float[2][k];
-                System.arraycopy(big_samples[0], 0, samples[0], 0, k);
-                System.arraycopy(big_samples[1], 0, samples[1], 0, k);
-                samples_vector.addElement(samples);
-                k = 0;
-                path_count++;
-              }
-              break;
-          }
-          pi.next();
-        } // end while (!pi.isDone())
-        if (k > 0) {
-// System.out.println("  end  k = " + k + "  ig = " + ig);
-          float[][] samples = new float[2][k];
-          System.arraycopy(big_samples[0], 0, samples[0], 0, k);
-          System.arraycopy(big_samples[1], 0, samples[1], 0, k);
-          samples_vector.addElement(samples);
-          k = 0;
-          path_count++;
+      // pi only has SEG_MOVETO, SEG_LINETO, and SEG_CLOSE point types
+      PathIterator pi = sh.getPathIterator(at, flatness);
+      int k = 0;
+      while (!pi.isDone()) {
+        int segType = pi.currentSegment(seg);
+        switch(segType) {
+          case PathIterator.SEG_MOVETO:
+            if (k > 0) {
+              float[][] samples = new float[2][k];
+              System.arraycopy(big_samples[0], 0, samples[0], 0, k);
+              System.arraycopy(big_samples[1], 0, samples[1], 0, k);
+              samples_vector.addElement(samples);
+              k = 0;
+              path_count++;
+            }
+            // NOTE falls through to SEG_LINETO to add first point
+          case PathIterator.SEG_LINETO:
+            big_samples[0][k] = cur_x_off + fsize_inv * seg[0];
+            big_samples[1][k] = - cur_y_off - fsize_inv * seg[1];
+            k++;
+            if (k >= big_len) {
+              float[][] bs = new float[2][2 * big_len];
+              System.arraycopy(big_samples[0], 0, bs[0], 0, big_len);
+              System.arraycopy(big_samples[1], 0, bs[1], 0, big_len);
+              big_samples = bs;
+              big_len = 2 * big_len;
+            }
+            break;
+          case PathIterator.SEG_CLOSE:
+            if (k > 0) {
+              float[][] samples = new float[2][k];
+              System.arraycopy(big_samples[0], 0, samples[0], 0, k);
+              System.arraycopy(big_samples[1], 0, samples[1], 0, k);
+              samples_vector.addElement(samples);
+              k = 0;
+              path_count++;
+            }
+            break;
         }
+        pi.next();
+      } // end while (!pi.isDone())
+      if (k > 0) {
+        float[][] samples = new float[2][k];
+        System.arraycopy(big_samples[0], 0, samples[0], 0, k);
+        System.arraycopy(big_samples[1], 0, samples[1], 0, k);
+        samples_vector.addElement(samples);
+        k = 0;
+        path_count++;
+      }
 
-      } // end for (int ig=0; ig<ng; ig++)
+    } // end for (int ig=0; ig<ng; ig++)
 
-      if (path_count == 1) {
-// System.out.println("  char  " + chars[0]);
-        big_vector.addElement(samples_vector.elementAt(0));
+    if (path_count == 1) {
+      big_vector.addElement(samples_vector.elementAt(0));
+    }
+    else if (path_count > 1) {
+      float[][][] ss = new float[path_count][][];
+      for (int i=0; i<path_count; i++) {
+        ss[i] = (float[][]) samples_vector.elementAt(i);
       }
-      else if (path_count > 1) {
-        // System.out.println("path_count = " + path_count +
-        //                    " for char = " + chars[0]);
-        float[][][] ss = new float[path_count][][];
-        for (int i=0; i<path_count; i++) {
-          ss[i] = (float[][]) samples_vector.elementAt(i);
-        }
-        try {
-          if (path_count == 2 &&
-              (!DelaunayCustom.inside(ss[0], ss[1][0][0], ss[1][1][0]) &&
-               !DelaunayCustom.inside(ss[1], ss[0][0][0], ss[0][1][0]))) {
-            // don't link for disconnected paths link "i"
-// System.out.println("  no link for  " + chars[0] + " " + path_count);
-            for (int i=0; i<path_count; i++) {
-              big_vector.addElement(ss[i]);
-            }
-          }
-          else {
-// System.out.println("  call link for  " + chars[0] + " " + path_count);
-            big_vector.addElement(DelaunayCustom.link(ss));
+      try {
+        if (path_count == 2 &&
+            (!DelaunayCustom.inside(ss[0], ss[1][0][0], ss[1][1][0]) &&
+             !DelaunayCustom.inside(ss[1], ss[0][0][0], ss[0][1][0]))) {
+          // don't link for disconnected paths link "i"
+          for (int i=0; i<path_count; i++) {
+            big_vector.addElement(ss[i]);
           }
         }
-        catch (VisADException ex) {
-          System.out.println(ex);
+        else {
+          big_vector.addElement(DelaunayCustom.link(ss));
         }
       }
-      samples_vector.removeAllElements();
-
-      x_offset += x_plus;
-    } // end for (int str_index=0; str_index<str_len; str_index++)
-
-    /*
-     * abcd 5 February 2001
-     * Figure out how far to the 'left' our text should start
-     */
-    // x_offset = center ? -0.5f * x_offset : 0.0f;
-
-    // Set default to LEFT
-    if (justification == TextControl.Justification.CENTER) {
-      x_offset = -0.5f * x_offset;
-    } else if (justification == TextControl.Justification.RIGHT) {
-      x_offset = -1.0f * x_offset;
-    } else { // Default LEFT (or TOP or BOTTOM)
-      x_offset = 0.0f;
-    }
-    /*
-     * abcd 20 March 2003
-     * Figure out how far to 'up' our text should start
-     */
-/* grf 22 Jan 2004 - alter to get vertical justification correct
-   Set to default BOTTOM
-*/
-    float y_offset = (float)(0.8*scale);
-    if (verticalJustification == TextControl.Justification.CENTER) {
-      y_offset = -0.5f * y_offset;
-    } else if ( verticalJustification == TextControl.Justification.TOP) {
-      y_offset = -1.0f * y_offset;
-    } else { // BOTTOM (or LEFT or RIGHT)
-      y_offset = 0.0f;
+      catch (VisADException ex) {
+        System.out.println(ex);
+      }
     }
 
     int n = big_vector.size();
-    VisADTriangleArray[] arrays = new VisADTriangleArray[n];
+    int[][][] tris = new int[n][][];
+    int count = 0;
     for (int i=0; i<n; i++) {
       float[][] samples = (float[][]) big_vector.elementAt(i);
-// System.out.println("samples " + i + " " + samples[0][0] + " " + samples[1][0] +
-//                    " " + samples[0][1] + " " + samples[1][1]);
-      int[][] tris = null;
       try {
-        tris = DelaunayCustom.fillCheck(samples, false);
+        tris[i] = DelaunayCustom.fillCheck(samples, false);
       }
       catch (VisADException ex) {
       }
-      if (tris == null || tris.length == 0) continue;
-      int m = tris.length;
-      float[] coordinates = new float[9 * m];
-      for (int j=0; j<m; j++) {
-        int j9 = 9 * j;
+      if (tris[i] != null) count += tris[i].length;
+    }
+
+    float[] triangles = new float[6 * count];
+    int m = 0;
+    for (int i=0; i<n; i++) {
+      if (tris[i] == null) continue;
+      float[][] samples = (float[][]) big_vector.elementAt(i);
+      for (int j=0; j<tris[i].length; j++) {
         for (int tj=0; tj<3; tj++) {
-          int j3 = j9 + 3 * tj;
-          coordinates[j3 + 0] = (float)
-            (start_off[0] +  base[0] * (samples[0][tris[j][tj]] + x_offset) +
-             up[0] * (samples[1][tris[j][tj]] + y_offset));
-          coordinates[j3 + 1] = (float)
-            (start_off[1] +
-             base[1] * (samples[0][tris[j][tj]] + x_offset) +
-             up[1] * (samples[1][tris[j][tj]] + y_offset));
-          coordinates[j3 + 2] = (float)
-            (start_off[2] +
-             base[2] * (samples[0][tris[j][tj]] + x_offset) +
-             up[2] * (samples[1][tris[j][tj]] + y_offset));
+          triangles[m++] = samples[0][tris[i][j][tj]];
+          triangles[m++] = samples[1][tris[i][j][tj]];
         }
       }
-      float[] normals = new float[9 * m];
-      for (int j=0; j<3*m; j++) {
-        int j3 = 3 * j;
-        normals[j3 + 0] = 0.0f;
-        normals[j3 + 1] = 0.0f;
-        normals[j3 + 2] = 1.0f;
-      }
-      arrays[i] = new VisADTriangleArray();
-      arrays[i].vertexCount = 3 * m;
-      arrays[i].coordinates = coordinates;
-      arrays[i].normals = normals;
-      // System.out.println("array[" + i + "] has " + m + " tris");
-    } // end for (int i=0; i<n; i++)
-
-    array = new VisADTriangleArray();
-    try {
-      VisADGeometryArray.merge(arrays, array);
     }
-    catch (VisADException ex) {
-      array = new VisADTriangleArray();
+    return new GlyphCache.Glyph(triangles, x_plus);
+  }
+
+  /** cached result for strings with nothing to draw */
+  private static final float[] NO_GEOMETRY = new float[0];
+
+  /**
+   * Shift the first length values of plot, pairs (u, v) of text laid
+   * out left and bottom justified, to the requested justification.
+   *
+   * @param width extent of the text along the base line
+   * @return the first length values of plot, shifted
+   */
+  private static float[] justify(float[] plot, int length, double width,
+         TextControl.Justification justification,
+         TextControl.Justification verticalJustification) {
+/* grf 22 Jan 2004 - alter to get vertical justification correct
+*/
+    double uoff = 0.0;
+    double voff = 0.0;
+
+    // LEFT is normal (or TOP or BOTTOM)
+    if (justification == TextControl.Justification.CENTER) {
+      uoff = width / 2.;
+    } else if (justification == TextControl.Justification.RIGHT) {
+      uoff = width;
+    }
+
+    // BOTTOM is normal (or LEFT or RIGHT)
+    if (verticalJustification == TextControl.Justification.TOP) {
+      voff = WIDTH;
+    } else if (verticalJustification == TextControl.Justification.CENTER) {
+      voff = WIDTH / 2.0;
+    }
+
+    float[] uv = new float[length];
+    for (int i=0; i<length; i+=2) {
+      uv[i] = (float) (plot[i] - uoff);
+      uv[i + 1] = (float) (plot[i + 1] - voff);
+    }
+    return uv;
+  }
+
+  /**
+   * Place the unit text geometry of a number of strings of a line font
+   * in one VisADLineArray.
+   *
+   * @return the array, or null if there is nothing to draw
+   */
+  private static VisADLineArray makeLineArray(float[][] uv, double[][] starts,
+         double[] base, double[] up, double scale, double[] offsets) {
+    if (offsets == null) {
+      offsets = new double[]{0.0, 0.0, 0.0};
     }
-    if (array.coordinates == null) return null;
+    if (scale <= 0.0) {
+      scale = 1.0;
+    }
+    double[] base_scaled = new double[3];
+    double[] up_scaled = new double[3];
+    for (int i=0; i<3; i++) {
+      base_scaled[i] = base[i] * scale;
+      up_scaled[i] = up[i] * scale;
+    }
+
+    int count = 0;
+    for (int i=0; i<uv.length; i++) {
+      if (uv[i] != null) count += uv[i].length / 2;
+    }
+    if (count == 0) return null;
+
+    float[] coordinates = new float[3 * count];
+    double[] start_off = new double[3];
+    int n = 0;
+    for (int i=0; i<uv.length; i++) {
+      if (uv[i] == null || uv[i].length == 0) continue;
+      for (int j=0; j<3; j++) {
+        start_off[j] = starts[i][j] + offsets[j];
+      }
+      GlyphCache.place(uv[i], n, uv[i].length / 2, start_off, base_scaled,
+                       up_scaled, coordinates);
+      n += uv[i].length / 2;
+    }
+
+    VisADLineArray array = new VisADLineArray();
+    array.coordinates = coordinates;
+    array.vertexCount = count;
     return array;
   }
 
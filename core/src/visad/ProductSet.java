@@ -357,28 +357,59 @@ public class ProductSet extends SampledSet {
     int nsets = Sets.length;
     int npts = value[0].length;
     int[] index = new int[npts];
-    float[][][] vals = new float[nsets][][];
+    int[] temp_inds = null;
     int curdim = 0;
-    int[][] temp_inds = new int[nsets][];
+    int num = 1;
+    // fold the indices of each component set into index as they are
+    // computed; linear components write into one reused buffer
     for (int i=0; i<nsets; i++) {
-      vals[i] = new float[Sets[i].DomainDimension][];
+      float[][] vals = new float[Sets[i].DomainDimension][];
       for (int k=0; k<Sets[i].DomainDimension; k++) {
-        vals[i][k] = value[curdim++];
+        vals[k] = value[curdim++];
       }
-      temp_inds[i] = Sets[i].valueToIndex(vals[i]);
-    }
-    for (int j=0; j<npts; j++) {
-      int ind_j = 0;
-      int num = 1;
-      for (int i=0; i<nsets; i++) {
-        ind_j += temp_inds[i][j]*num;
-        num *= Sets[i].Length;
+      if (isLinear(Sets[i])) {
+        if (temp_inds == null) temp_inds = new int[npts];
+        linearValueToIndex(Sets[i], vals, temp_inds);
+      }
+      else {
+        temp_inds = Sets[i].valueToIndex(vals);
+      }
+      for (int j=0; j<npts; j++) {
+        if (index[j] < 0 || temp_inds[j] < 0) {
+          index[j] = -1;
+        }
+        else {
+          index[j] += temp_inds[j]*num;
+        }
       }
-      index[j] = ind_j;
+      num *= Sets[i].Length;
     }
     return index;
   }
 
+  /** true if set has valueToIndex(float[][], int[]) */
+  private static boolean isLinear(Set set) {
+    return set instanceof Linear1DSet || set instanceof Linear2DSet ||
+           set instanceof Linear3DSet || set instanceof LinearNDSet;
+  }
+
+  /** valueToIndex(float[][], int[]) of a set for which isLinear is true */
+  private static void linearValueToIndex(Set set, float[][] value,
+                                         int[] index) throws VisADException {
+    if (set instanceof Linear1DSet) {
+      ((Linear1DSet) set).valueToIndex(value, index);
+    }
+    else if (set instanceof Linear2DSet) {
+      ((Linear2DSet) set).valueToIndex(value, index);
+    }
+    else if (set instanceof Linear3DSet) {
+      ((Linear3DSet) set).valueToIndex(value, index);
+    }
+    else {
+      ((LinearNDSet) set).valueToIndex(value, index);
+    }
+  }
+
   /** for each of an array of values in R^DomainDimension, compute an array
       of 1-D indices and an array of weights, to be used for interpolation;
       indices[i] and weights[i] are null if i-th value is outside grid
@@ -0,0 +1,409 @@
+//
+// Regridder.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import visad.util.ThreadManager;
+import visad.util.Tracer;
+
+/**
+   Regridder holds the mapping from the samples of a source Set to the
+   samples of a target Set that FlatField.resample computes: for each
+   target sample, the indices of the source samples it is taken from
+   and, for WEIGHTED_AVERAGE, their interpolation weights.  The mapping
+   depends only on the two Sets (including their CoordinateSystems and
+   Units) and the sampling mode, so it is computed once and applied to
+   any number of FlatFields whose domain is the source Set, as for the
+   variables of one model run or the time steps of one satellite
+   sector.<P>
+
+   The indices and weights are kept in compact int and float arrays
+   (one entry per source sample used), and resample is a gather over
+   them, split between threads for large targets.<P>
+
+   FlatField.resample uses Regridders from a cache shared by all
+   FlatFields, kept up to a byte budget with the least recently used
+   Regridders dropped first, so repeated resampling between equal Sets
+   (e.g. the FlatFields of a time sequence) reuses the mapping without
+   any change to the calling code.  The budget is set by the system
+   property visad.regridder.maxbytes or by setMaxBytes; a budget of 0
+   disables the cache.<P>
+
+   Regridder is immutable and may be shared between threads.<P>
+*/
+public class Regridder {
+
+  /** number of threads used by resample */
+  public static int resampleThreads =
+    Runtime.getRuntime().availableProcessors();
+
+  /** minimum number of target samples for each thread of resample */
+  static final int MIN_SAMPLES_PER_THREAD = 65536;
+
+  /** Tracer probes counting cache hits and misses */
+  private static final int TRACE_HIT = Tracer.register("Regridder.hit");
+  private static final int TRACE_MISS = Tracer.register("Regridder.miss");
+
+  /** maximum number of bytes of Regridders to keep in the cache */
+  private static long maxBytes =
+    Long.parseLong(System.getProperty("visad.regridder.maxbytes",
+                                      "67108864"));
+
+  /** cached Regridders in least recently used order */
+  private static final LinkedHashMap<Key, Regridder> cache =
+    new LinkedHashMap<Key, Regridder>(16, 0.75f, true);
+
+  private static long cacheBytes = 0;
+
+  private final Set source;
+  private final Set target;
+  private final int samplingMode;
+  private final int sourceLength;
+  private final int length;
+
+  /** for NEAREST_NEIGHBOR, source index of each target sample, or -1 */
+  private final int[] nearest;
+
+  /** for WEIGHTED_AVERAGE, the source indices and weights of target
+      sample i are index[start[i]] ... index[start[i+1]-1], and the
+      same elements of weight; none if i is outside the source Set */
+  private final int[] start;
+  private final int[] index;
+  private final float[] weight;
+
+  /**
+   * Compute the mapping from the samples of source to the samples of
+   * target, as done by FlatField.resample.
+   * @param source         domain Set of the FlatFields to resample
+   * @param target         Set of points at which to resample
+   * @param sampling_mode  Data.NEAREST_NEIGHBOR or Data.WEIGHTED_AVERAGE;
+   *                       WEIGHTED_AVERAGE needs a SimpleSet source, and
+   *                       is done as NEAREST_NEIGHBOR otherwise (as in
+   *                       FlatField.resample)
+   * @throws VisADException if the Sets are not compatible
+   */
+  public Regridder(Set source, Set target, int sampling_mode)
+         throws VisADException {
+    int dim = source.getDimension();
+    if (dim != target.getDimension()) {
+      throw new SetException("Regridder: bad Set Dimension");
+    }
+    this.source = source;
+    this.target = target;
+    samplingMode = sampling_mode;
+    sourceLength = source.getLength();
+    length = target.getLength();
+
+    int[] wedge = target.getWedge();
+    float[][] vals = target.indexToValue(wedge);
+    ErrorEstimate[] errors_out = new ErrorEstimate[dim];
+    try {  // this is only to throw a more meaningful message
+      vals = CoordinateSystem.transformCoordinates(
+                      ((SetType) source.getType()).getDomain(),
+                      source.getCoordinateSystem(),
+                      source.getSetUnits(), errors_out,
+                      ((SetType) target.getType()).getDomain(),
+                      target.getCoordinateSystem(),
+                      target.getSetUnits(), new ErrorEstimate[dim],
+                      vals, false);
+    } catch (UnitException ue) {
+        throw new VisADException("Sampling set is not compatible with domain");
+    }
+
+    if (isWeighted()) {
+      int[][] indices = new int[length][];
+      float[][] coefs = new float[length][];
+      ((SimpleSet) source).valueToInterp(vals, indices, coefs);
+      vals = null;
+      start = new int[length + 1];
+      for (int i=0; i<length; i++) {
+        int len = (indices[i] == null) ? 0 : indices[i].length;
+        start[wedge[i] + 1] = len;
+      }
+      for (int i=0; i<length; i++) start[i + 1] += start[i];
+      index = new int[start[length]];
+      weight = new float[start[length]];
+      for (int i=0; i<length; i++) {
+        int len = (indices[i] == null) ? 0 : indices[i].length;
+        if (len > 0) {
+          System.arraycopy(indices[i], 0, index, start[wedge[i]], len);
+          System.arraycopy(coefs[i], 0, weight, start[wedge[i]], len);
+        }
+      }
+      nearest = null;
+    }
+    else {
+      int[] indices = source.valueToIndex(vals);
+      nearest = new int[length];
+      for (int i=0; i<length; i++) nearest[wedge[i]] = indices[i];
+      start = null;
+      index = null;
+      weight = null;
+    }
+  }
+
+  /** @return the Set resampled from */
+  public Set getSourceSet() {
+    return source;
+  }
+
+  /** @return the Set resampled to */
+  public Set getTargetSet() {
+    return target;
+  }
+
+  /** @return the sampling mode given to the constructor */
+  public int getSamplingMode() {
+    return samplingMode;
+  }
+
+  private boolean isWeighted() {
+    return samplingMode == Data.WEIGHTED_AVERAGE && source instanceof SimpleSet;
+  }
+
+  /** @return number of bytes of indices and weights held */
+  public long getBytes() {
+    return (nearest != null) ? 4L * nearest.length :
+           4L * start.length + 8L * index.length;
+  }
+
+  /**
+   * Resample a FlatField whose domain Set is equal to the source Set
+   * of this Regridder, with no error estimates; the result is the same
+   * as that of field.resample(getTargetSet(), getSamplingMode(),
+   * Data.NO_ERRORS).
+   * @param field  FlatField to resample
+   * @return       resampled FlatField; may be field if its domain Set
+   *               is equal to the target Set
+   * @throws VisADException  if the domain Set of field is not equal to
+   *                         the source Set
+   * @throws RemoteException Java RMI error
+   */
+  public Field resample(FlatField field)
+         throws VisADException, RemoteException {
+    Set domainSet = field.getDomainSet();
+    if (domainSet != source && !domainSet.equals(source)) {
+      throw new SetException("Regridder.resample: FlatField domain Set " +
+                             "is not the source Set");
+    }
+    return field.resample(this);
+  }
+
+  /**
+   * Resample range values over the samples of the source Set to the
+   * samples of the target Set.
+   * @param values  range values, values[j][i] for component j at source
+   *                sample i
+   * @return        range values at the target samples, NaN outside the
+   *                source Set
+   * @throws VisADException  a VisAD error, or wrong length of values
+   */
+  public float[][] resample(final float[][] values) throws VisADException {
+    for (int j=0; j<values.length; j++) {
+      if (values[j].length != sourceLength) {
+        throw new SetException("Regridder.resample: values length " +
+                               values[j].length + " not equal to source " +
+                               "Set length " + sourceLength);
+      }
+    }
+    final float[][] new_values = new float[values.length][length];
+    int numThreads = Math.min(resampleThreads, length / MIN_SAMPLES_PER_THREAD);
+    if (numThreads < 2) {
+      gather(values, new_values, 0, length);
+      return new_values;
+    }
+    ThreadManager threadManager = new ThreadManager("Regridder.resample");
+    int blockSize = (length + numThreads - 1) / numThreads;
+    for (int first=0; first<length; first+=blockSize) {
+      final int s0 = first;
+      final int s1 = Math.min(first + blockSize, length);
+      threadManager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          gather(values, new_values, s0, s1);
+        }
+      });
+    }
+    try {
+      threadManager.runInParallel(numThreads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("Regridder.resample: " + e.toString());
+    }
+    return new_values;
+  }
+
+  /** resample target samples s0 ... s1-1; the sums are done in the same
+      order as in FlatField.resample, so the results are identical */
+  private void gather(float[][] values, float[][] new_values, int s0, int s1) {
+    for (int j=0; j<values.length; j++) {
+      float[] valuesJ = values[j];
+      float[] new_valuesJ = new_values[j];
+      if (nearest != null) {
+        for (int i=s0; i<s1; i++) {
+          int k = nearest[i];
+          new_valuesJ[i] = (k >= 0) ? valuesJ[k] : Float.NaN;
+        }
+      }
+      else {
+        for (int i=s0; i<s1; i++) {
+          int k0 = start[i];
+          int k1 = start[i + 1];
+          if (k0 < k1) {
+            float v = valuesJ[index[k0]] * weight[k0];
+            for (int k=k0+1; k<k1; k++) v += valuesJ[index[k]] * weight[k];
+            new_valuesJ[i] = v;
+          }
+          else { // values outside grid
+            new_valuesJ[i] = Float.NaN;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Return a Regridder from source to target, from the cache if an
+   * equal one was made recently, else made and added to the cache.
+   * @param source         domain Set of the FlatFields to resample
+   * @param target         Set of points at which to resample
+   * @param sampling_mode  Data.NEAREST_NEIGHBOR or Data.WEIGHTED_AVERAGE
+   * @return               Regridder from source to target
+   * @throws VisADException if the Sets are not compatible
+   */
+  public static Regridder get(Set source, Set target, int sampling_mode)
+         throws VisADException {
+    Key key = new Key(source, target, sampling_mode);
+    Regridder regridder;
+    synchronized (cache) {
+      regridder = cache.get(key);
+    }
+    if (regridder != null) {
+      Tracer.count(TRACE_HIT);
+      return regridder;
+    }
+    Tracer.count(TRACE_MISS);
+    // made without the lock; two threads may both make the same one
+    regridder = new Regridder(source, target, sampling_mode);
+    long bytes = regridder.getCachedBytes();
+    synchronized (cache) {
+      if (bytes <= maxBytes && !cache.containsKey(key)) {
+        cache.put(key, regridder);
+        cacheBytes += bytes;
+        evict();
+      }
+    }
+    return regridder;
+  }
+
+  /** bytes charged to the cache: indices and weights, and the samples
+      of the two Sets that the cache keeps reachable */
+  private long getCachedBytes() {
+    return getBytes() + 4L * source.getDimension() * sourceLength +
+           4L * target.getDimension() * length;
+  }
+
+  // called with the cache lock held
+  private static void evict() {
+    Iterator<Map.Entry<Key, Regridder>> it = cache.entrySet().iterator();
+    while (cacheBytes > maxBytes && it.hasNext()) {
+      cacheBytes -= it.next().getValue().getCachedBytes();
+      it.remove();
+    }
+  }
+
+  /**
+   * Set the maximum number of bytes of Regridders kept in the cache
+   * used by get and FlatField.resample; 0 disables the cache.
+   * @param bytes  the byte budget
+   */
+  public static void setMaxBytes(long bytes) {
+    synchronized (cache) {
+      maxBytes = bytes;
+      evict();
+    }
+  }
+
+  /** @return the maximum number of bytes of Regridders kept in the cache */
+  public static long getMaxBytes() {
+    synchronized (cache) {
+      return maxBytes;
+    }
+  }
+
+  /** @return the number of bytes of Regridders kept in the cache */
+  public static long getCacheBytes() {
+    synchronized (cache) {
+      return cacheBytes;
+    }
+  }
+
+  /** drop all Regridders from the cache */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+      cacheBytes = 0;
+    }
+  }
+
+  /** cache key; Sets are compared by identity first, then by MathType
+      and equals (which compares samples, Units and CoordinateSystem) */
+  private static final class Key {
+    private final Set source;
+    private final Set target;
+    private final int mode;
+    private final int hash;
+
+    Key(Set source, Set target, int mode) throws VisADException {
+      this.source = source;
+      this.target = target;
+      this.mode = mode;
+      // cheap hash, so that lookups do not hash all the samples
+      hash = source.getClass().hashCode() ^ (31 * source.getLength()) ^
+             (961 * target.getLength()) ^ target.getClass().hashCode() ^ mode;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      return mode == k.mode && hash == k.hash &&
+             same(source, k.source) && same(target, k.target);
+    }
+
+    private static boolean same(Set a, Set b) {
+      return a == b || (a.getType().equals(b.getType()) && a.equals(b));
+    }
+  }
+
+}
@@ -28,6 +28,8 @@ package visad;
 
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 
 /**
@@ -55,6 +57,14 @@ public abstract class SampledSet extends SimpleSet implements SampledSetIface {
   /**           */
   float[][] Samples;
 
+  /** version tags of the sample arrays held by SampledSets; arrays
+      compare by identity, so this is a weak identity map */
+  private static final Map<float[], Long> sampleVersions =
+    new WeakHashMap<float[], Long>();
+
+  /**           */
+  private static long lastSampleVersion = 0;
+
   /**           */
   float Low[], Hi[];
 
@@ -165,6 +175,35 @@ public abstract class SampledSet extends SimpleSet implements SampledSetIface {
       return;
     }
     this.Samples = samples;
+    if (samples != null) tagSamples(samples);
+  }
+
+  /** give the arrays of samples a new version tag */
+  private static void tagSamples(float[][] samples) {
+    synchronized (sampleVersions) {
+      Long version = Long.valueOf(++lastSampleVersion);
+      for (int j = 0; j < samples.length; j++) {
+        if (samples[j] != null) sampleVersions.put(samples[j], version);
+      }
+    }
+  }
+
+  /**
+   * Returns the version tag of an array of samples held by a SampledSet,
+   * as returned by <code>getSamples(false)</code>.  The tag changes
+   * whenever the set (re)sets its samples, so two calls returning the
+   * same tag for the same array mean that the array holds the same
+   * values, as long as no caller has modified it in place.
+   *
+   * @param samples         an array of sample values
+   * @return                the version tag, or 0 if the array is not
+   *                        the samples of a SampledSet
+   */
+  public static long getSampleVersion(float[] samples) {
+    synchronized (sampleVersions) {
+      Long version = sampleVersions.get(samples);
+      return (version == null) ? 0 : version.longValue();
+    }
   }
 
 
@@ -45,6 +45,10 @@ public class ScalarMap extends Object
   private Unit overrideUnit = null;
   // scale and offset for converting from Scalar default Unit to overrideUnit
   private double override_scale, override_offset;
+  // true if the conversion to overrideUnit is linear
+  private boolean override_linear = true;
+  // precompiled conversion from Scalar default Unit to overrideUnit
+  private transient UnitConverter overrideConverter = null;
 
   private ScalarType Scalar;
   private DisplayRealType DisplayScalar;
@@ -221,9 +225,21 @@ public class ScalarMap extends Object
       overrideUnit = unit;
       override_offset = overrideUnit.toThis(0.0, rtunit);
       override_scale = overrideUnit.toThis(1.0, rtunit) - override_offset;
+      overrideConverter = UnitConverter.getInstance(rtunit, unit);
+      override_linear = overrideConverter.isLinear();
     }
   }
 
+  /** return the conversion from the Scalar default Unit to the
+   *  override Unit */
+  private UnitConverter getOverrideConverter() throws UnitException {
+    if (overrideConverter == null) {
+      overrideConverter = UnitConverter.getInstance(
+        ((RealType) Scalar).getDefaultUnit(), overrideUnit);
+    }
+    return overrideConverter;
+  }
+
   // WLH 31 Aug 2000
   /**
    * Return the override unit.
@@ -1003,8 +1019,7 @@ System.out.println(Scalar + " -> " + DisplayScalar + " range: " + dataRange[0] +
       if (overrideUnit != null &&
           !overrideUnit.equals(((RealType) Scalar).getDefaultUnit())) {
         try {
-          values =
-            overrideUnit.toThis(values, ((RealType) Scalar).getDefaultUnit());
+          values = getOverrideConverter().convert(values, true);
         }
         catch (UnitException e) {
         }
@@ -1069,8 +1084,7 @@ if (overrideUnit != null) {
       if (overrideUnit != null &&
           !overrideUnit.equals(((RealType) Scalar).getDefaultUnit())) {
         try {
-          values =
-            overrideUnit.toThis(values, ((RealType) Scalar).getDefaultUnit(), newArray);
+          values = getOverrideConverter().convert(values, newArray);
         }
         catch (UnitException e) {
         }
@@ -1103,6 +1117,59 @@ if (overrideUnit != null) {
     return new_values;
   }
 
+  /** scale data_values into display (DisplayRealType) values in a
+   *  single pass, first applying the linear conversion
+   *  inScale * value + inOffset (e.g. from the data Unit to the
+   *  Scalar default Unit), then any override Unit conversion, then the
+   *  linear scaling of this ScalarMap
+   * @param   values to scale as floats; not modified
+   * @param   inScale  scale of the conversion applied first
+   * @param   inOffset  offset of the conversion applied first
+   * @param   out  array to receive the display values; at least as
+   *               long as values, and may be values itself
+   * @return  false if the override Unit conversion is not linear, in
+   *          which case out is unchanged and scaleValues(float[],
+   *          boolean) must be used instead
+   */
+  public boolean scaleValues(float[] values, double inScale, double inOffset,
+                             float[] out) {
+    int n = values.length;
+    if (badRange()) {
+      for (int i=0; i<n; i++) out[i] = Float.NaN;
+      return true;
+    }
+    double a = inScale;
+    double b = inOffset;
+    if (overrideUnit != null &&
+        !overrideUnit.equals(((RealType) Scalar).getDefaultUnit())) {
+      if (!override_linear) return false;
+      b = override_scale * b + override_offset;
+      a = override_scale * a;
+    }
+    if (isScaled) {
+      b = offset + scale * b;
+      a = scale * a;
+    }
+    if (a == 1.0 && b == 0.0) {
+      if (out != values) System.arraycopy(values, 0, out, 0, n);
+    }
+    else {
+      // missing values stay NaN through the arithmetic
+      for (int i=0; i<n; i++) {
+        out[i] = (float) (b + a * values[i]);
+      }
+    }
+    return true;
+  }
+
+  /** return true if scaling by this ScalarMap leaves values unchanged
+   *  (no linear scaling and no override Unit conversion) */
+  public boolean isIdentityScale() {
+    return !badRange() && !isScaled &&
+           (overrideUnit == null ||
+            overrideUnit.equals(((RealType) Scalar).getDefaultUnit()));
+  }
+
   /** return an array of display (DisplayRealType) values by
    *  linear scaling (if applicable) the data_values array
    *  (RealType values); results are scaled by the given scale factor
@@ -162,6 +162,17 @@ public abstract class ShadowFunctionOrSetType extends ShadowType {
   /** value_indices from parent */
   int[] inherited_values;
 
+  /** results of assembleSpatial, saved through
+      DataRenderer.putCachedSpatial for re-transforms in which only
+      color or contour mappings changed */
+  static class SpatialStage {
+    float[][] spatial_values;
+    Set spatial_set;
+    int[] spatialDimensions;
+    boolean[] spatial_range_select;
+    boolean[] swap;
+  }
+
   /** this constructor is a bit of a kludge to get around
       single inheritance problems */
   public ShadowFunctionOrSetType(MathType t, DataDisplayLink link, ShadowType parent,
@@ -197,6 +208,33 @@ public abstract class ShadowFunctionOrSetType extends ShadowType {
     DomainReferenceComponents = getComponents(Domain.getReference(), false);
   }
 
+  /** copy the arrays of from into to */
+  private static void copyValues(float[][] from, float[][] to) {
+    for (int i=0; i<from.length; i++) {
+      to[i] = (from[i] == null) ? null : (float[]) from[i].clone();
+    }
+  }
+
+  /** @return true if all ScalarMaps of reals are to spatial
+      DisplayRealTypes */
+  private static boolean onlySpatial(ShadowRealType[] reals) {
+    for (int i=0; i<reals.length; i++) {
+      Enumeration maps = reals[i].getSelectedMapVector().elements();
+      while (maps.hasMoreElements()) {
+        ScalarMap map = (ScalarMap) maps.nextElement();
+        DisplayTupleType tuple = map.getDisplayScalar().getTuple();
+        if (tuple == null ||
+            !(tuple.equals(Display.DisplaySpatialCartesianTuple) ||
+              (tuple.getCoordinateSystem() != null &&
+               tuple.getCoordinateSystem().getReference().equals(
+                 Display.DisplaySpatialCartesianTuple)))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   public boolean getFlat() {
     return Flat;
   }
@@ -1183,6 +1221,13 @@ for (int i=0; i < 4; i++) {
     // WLH 1 April 2000
     // else { // !isTextureMap && !isTexture3D
     // WLH 16 July 2000 - add '&& !isLinearContour3D'
+    // spatial coordinates from an earlier transform of this data, if
+    // only color or contour mappings have changed since
+    SpatialStage spatialStage = (SpatialStage) renderer.getCachedSpatial(data);
+    if (spatialStage != null) {
+      visad.util.Tracer.count(DataRenderer.TRACE_SPATIAL_HIT);
+    }
+
     if (!isTextureMap && (!isTexture3D || range3D) && !isLinearContour3D) {
 
 // if (link != null) System.out.println("start domain " + (System.currentTimeMillis() - link.start_time));
@@ -1196,20 +1241,13 @@ for (int i=0; i < 4; i++) {
         mapValues(display_values, domain_doubles, DomainComponents);
       }
       else {
-        // do shallow clone and don't copy in convert DRM 2003-02-24
-        // domain_values = (float[][]) domain_set.getSamples(false).clone();
-        domain_values = (float[][]) domain_set.getSamples(true);
-
-        // convert values to default units (used in display)
-        // MEM & FREE
-        //domain_values = Unit.convertTuple(domain_values, dataUnits, domain_units);
-        domain_values = 
-           Unit.convertTuple(domain_values, dataUnits, domain_units, false);
-        // System.out.println("got domain_values: domain_length = " + domain_length);
-
-        // map domain_values to appropriate DisplayRealType-s
+        // map domain samples to appropriate DisplayRealType-s, converting
+        // to default units (used in display) in the same pass; the
+        // samples are not copied or modified
         // MEM
-        mapValues(display_values, domain_values, DomainComponents, false);
+        mapValues(display_values, domain_set.getSamples(false),
+                  DomainComponents, dataUnits, domain_units,
+                  renderer.getTransformBuffers(), false);
       }
 
       // System.out.println("mapped domain_values");
@@ -1234,7 +1272,13 @@ for (int i=0; i < 4; i++) {
         // MEM
         float[][] reference_values = null;
         double[][] reference_doubles = null;
-        if (domain_dimension == 1) {
+        boolean skip_reference = (spatialStage != null &&
+          onlySpatial(getDomainReferenceComponents()));
+        if (skip_reference) {
+          // reference values only feed spatial coordinates, which are
+          // taken from spatialStage
+        }
+        else if (domain_dimension == 1) {
           visad.util.Trace.call1("ShadowFunctionOrSetType:domain_ref_mapped:1");
           reference_doubles =
             CoordinateSystem.transformCoordinates(
@@ -1244,6 +1288,15 @@ for (int i=0; i < 4; i++) {
           visad.util.Trace.call2("ShadowFunctionOrSetType:domain_ref_mapped:1");
         }
         else {
+          // do shallow clone and don't copy in convert DRM 2003-02-24
+          // domain_values = (float[][]) domain_set.getSamples(false).clone();
+          domain_values = (float[][]) domain_set.getSamples(true);
+
+          // convert values to default units (used in display)
+          // MEM & FREE
+          domain_values =
+             Unit.convertTuple(domain_values, dataUnits, domain_units, false);
+
           // this interferes with correct handling of missing data
           // if (curvedTexture && domainOnlySpatial) {
           if (false) {
@@ -1342,7 +1395,10 @@ System.out.println("data_width = " + data_width + " data_height = " + data_heigh
         // map reference_values to appropriate DisplayRealType-s
         ShadowRealType[] DomainReferenceComponents = getDomainReferenceComponents();
         // MEM
-        if (domain_dimension == 1) {
+        if (skip_reference) {
+          // spatial coordinates are taken from spatialStage
+        }
+        else if (domain_dimension == 1) {
           mapValues(display_values, reference_doubles, DomainReferenceComponents);
         }
         else {
@@ -1410,7 +1466,8 @@ for (int i=0; i<DomainReferenceComponents.length; i++) {
         // map range_values to appropriate DisplayRealType-s
         ShadowRealType[] RangeComponents = getRangeComponents();
         // MEM
-        mapValues(display_values, range_values, RangeComponents, true);
+        mapValues(display_values, range_values, RangeComponents, null, null,
+                  renderer.getTransformBuffers(), true);
 
         // System.out.println("mapped range_values");
 
@@ -1837,15 +1894,44 @@ if (range_select[0] != null) {
       // WLH 29 April 99
       boolean[][] spatial_range_select = new boolean[1][];
 
-      // MEM - but not if isTextureMap
-      Set spatial_set =
-        shadow_api.assembleSpatial(spatial_values, display_values, valueArrayLength,
-                        valueToScalar, display, default_values,
-                        inherited_values, domain_set, Domain.getAllSpatial(),
-                        anyContour && !isLinearContour3D,
-                        spatialDimensions, spatial_range_select,
-                        flow1_values, flow2_values, flowScale, swap, renderer,
-                        shadow_api);
+      Set spatial_set;
+      if (spatialStage != null) {
+        // only color or contour mappings changed, so reuse the spatial
+        // coordinates; copies, as later stages may modify them
+        copyValues(spatialStage.spatial_values, spatial_values);
+        spatial_set = spatialStage.spatial_set;
+        spatialDimensions[0] = spatialStage.spatialDimensions[0];
+        spatialDimensions[1] = spatialStage.spatialDimensions[1];
+        System.arraycopy(spatialStage.swap, 0, swap, 0, swap.length);
+        if (spatialStage.spatial_range_select != null) {
+          spatial_range_select[0] =
+            (boolean[]) spatialStage.spatial_range_select.clone();
+        }
+      }
+      else {
+        // MEM - but not if isTextureMap
+        spatial_set =
+          shadow_api.assembleSpatial(spatial_values, display_values, valueArrayLength,
+                          valueToScalar, display, default_values,
+                          inherited_values, domain_set, Domain.getAllSpatial(),
+                          anyContour && !isLinearContour3D,
+                          spatialDimensions, spatial_range_select,
+                          flow1_values, flow2_values, flowScale, swap, renderer,
+                          shadow_api);
+        if (renderer.getCacheSpatialValues()) {
+          SpatialStage stage = new SpatialStage();
+          stage.spatial_values = new float[spatial_values.length][];
+          copyValues(spatial_values, stage.spatial_values);
+          stage.spatial_set = spatial_set;
+          stage.spatialDimensions = (int[]) spatialDimensions.clone();
+          stage.swap = (boolean[]) swap.clone();
+          if (spatial_range_select[0] != null) {
+            stage.spatial_range_select =
+              (boolean[]) spatial_range_select[0].clone();
+          }
+          renderer.putCachedSpatial(data, stage);
+        }
+      }
 
       if (isLinearContour3D) {
         spatial_set = domain_set;
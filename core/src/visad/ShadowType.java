@@ -57,6 +57,10 @@ public abstract class ShadowType extends Object implements java.io.Serializable
   public static final String PROP_CONTOURFILL_SINGLE_VALUE_AS_TEXTURE = "visad.contourFillSingleValueAsTexture";
   public static final boolean byReference;
   public static final boolean yUp;
+
+  /** Tracer probe for isosurface construction */
+  private static final int TRACE_ISOSURFACE =
+    visad.util.Tracer.register("ShadowType.makeIsoSurface");
   static {
     byReference = Boolean.parseBoolean(System.getProperty(PROP_IMAGE_BY_REF, "false"));
     if (byReference) {
@@ -1207,6 +1211,79 @@ public abstract class ShadowType extends Object implements java.io.Serializable
     }
   }
 
+  /**
+   * Map values into display_values according to ScalarMap-s in reals,
+   * converting Units and scaling in a single pass per ScalarMap, into
+   * display_values arrays supplied by buffers
+   * 
+   * @param display_values
+   *          return display values
+   * @param values
+   *          data values; not modified
+   * @param reals
+   *          the ShadowRealTypes corresponding to the Scalar in maps
+   * @param units_in
+   *          Units of values, or null if they are already in units_out
+   * @param units_out
+   *          default Units of reals; ignored if units_in is null
+   * @param buffers
+   *          source of the display_values arrays
+   * @param alias
+   *          if true, display_values may reference values directly where
+   *          conversion and scaling leave them unchanged (as for
+   *          getFloats(false) range values); if false display_values
+   *          never reference values
+   */
+  public static void mapValues(float[][] display_values, float[][] values,
+      ShadowRealType[] reals, Unit[] units_in, Unit[] units_out,
+      TransformBuffers buffers, boolean alias) throws VisADException {
+    int n = values.length;
+    if (n != reals.length) {
+      throw new DisplayException("lengths don't match: ShadowType.mapValues");
+    }
+    for (int i = 0; i < n; i++) {
+      Vector mapVector = reals[i].getSelectedMapVector();
+      if (mapVector.isEmpty()) continue;
+      float[] in = values[i];
+      UnitConverter conv = (units_in == null) ? null :
+        UnitConverter.getInstance(units_in[i], units_out[i]);
+      if (conv != null && !conv.isLinear()) {
+        // not a linear conversion, so convert separately
+        in = conv.convert(values[i], true);
+        buffers.countAllocated(4L * in.length);
+        conv = null;
+      }
+      double inScale = (conv == null) ? 1.0 : conv.getScale();
+      double inOffset = (conv == null) ? 0.0 : conv.getOffset();
+      boolean unchanged = (inScale == 1.0 && inOffset == 0.0);
+      Enumeration maps = mapVector.elements();
+      while (maps.hasMoreElements()) {
+        ScalarMap map = (ScalarMap) maps.nextElement();
+        int value_index = map.getValueIndex();
+        if (unchanged && map.isIdentityScale() && (alias || in != values[i])) {
+          display_values[value_index] = in;
+          continue;
+        }
+        float[] out = buffers.get(value_index, in.length);
+        if (!map.scaleValues(in, inScale, inOffset, out)) {
+          // non-linear override Unit in the ScalarMap
+          if (!unchanged) {
+            for (int j = 0; j < out.length; j++) {
+              out[j] = (float) (inOffset + inScale * in[j]);
+            }
+          }
+          else {
+            System.arraycopy(in, 0, out, 0, in.length);
+          }
+          float[] scaled = map.scaleValues(out, false);
+          if (scaled != out) buffers.countAllocated(4L * scaled.length);
+          out = scaled;
+        }
+        display_values[value_index] = out;
+      }
+    }
+  }
+
   /* CTR: 13 Oct 1998 - BEGIN CHANGES */
   public static VisADGeometryArray makePointGeometry(float[][] spatial_values,
       byte[][] color_values) throws VisADException {
@@ -4030,43 +4107,49 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
           }
           if (spatialManifoldDimension == 3) {
             if (isoLvl == isoLvl) { // not NaN
-              if (spatial_set != null) {
-                if (isLinearContour3D) {
-                  array = ((Linear3DSet) spatial_set).makeLinearIsoSurface(
-                      isoLvl, display_values[i], color_values, indexed,
-                      spatial_maps, permute);
-                } else {
-                  array = spatial_set.makeIsoSurface(isoLvl, display_values[i],
-                      color_values, indexed);
-                }
+              long traceStart = visad.util.Tracer.begin();
+              try {
+                if (spatial_set != null) {
+                  if (isLinearContour3D) {
+                    array = ((Linear3DSet) spatial_set).makeLinearIsoSurface(
+                        isoLvl, display_values[i], color_values, indexed,
+                        spatial_maps, permute);
+                  } else {
+                    array = spatial_set.makeIsoSurface(isoLvl, display_values[i],
+                        color_values, indexed);
+                  }
 
-                // WLH 4 May 2001
-                if (array != null && getAdjustProjectionSeam()) {
-                  try {
-                    array = array.adjustLongitude(renderer);
-                    array = array.adjustSeam(renderer);
-                  } catch (Exception e) {
+                  // WLH 4 May 2001
+                  if (array != null && getAdjustProjectionSeam()) {
+                    try {
+                      array = array.adjustLongitude(renderer);
+                      array = array.adjustSeam(renderer);
+                    } catch (Exception e) {
+                    }
                   }
-                }
 
-                // add all data to group
-                shadow_api.addToGroup(group, array, mode, constant_alpha,
-                    constant_color);
-                array = null;
-              } else if (coord_sys != null) { // missing spatials set as result
-                                              // of transform (coord_sys)
-                array = ((Gridded3DSet) domain_set)
-                    .makeIsoSurfaceMissingSpatial(isoLvl, display_values[i],
-                        color_values, indexed, Domain, domain_reference,
-                        domain_units, dataCoordinateSystem, coord_sys,
-                        DomainReferenceComponents, spatialTuple,
-                        spatial_offset_values);
-                if (array != null) {
-                  array = array.removeMissing();
+                  // add all data to group
+                  shadow_api.addToGroup(group, array, mode, constant_alpha,
+                      constant_color);
+                  array = null;
+                } else if (coord_sys != null) { // missing spatials set as result
+                                                // of transform (coord_sys)
+                  array = ((Gridded3DSet) domain_set)
+                      .makeIsoSurfaceMissingSpatial(isoLvl, display_values[i],
+                          color_values, indexed, Domain, domain_reference,
+                          domain_units, dataCoordinateSystem, coord_sys,
+                          DomainReferenceComponents, spatialTuple,
+                          spatial_offset_values);
+                  if (array != null) {
+                    array = array.removeMissing();
+                  }
+                  shadow_api.addToGroup(group, array, mode, constant_alpha,
+                      constant_color);
+                  array = null;
                 }
-                shadow_api.addToGroup(group, array, mode, constant_alpha,
-                    constant_color);
-                array = null;
+              }
+              finally {
+                visad.util.Tracer.end(TRACE_ISOSURFACE, traceStart);
               }
             }
             // anyContourCreated = true;
@@ -32,6 +32,14 @@ public class Trajectory {
   byte[] stopColor;
 
   float[] stopPts = new float[3];
+
+  /* start of the pair computed by advance, not yet added by commitPair */
+  boolean pairPending = false;
+  float[] pairStartPts = new float[3];
+  byte[] pairStartColor;
+
+  /* location moved by move, not yet looked up by locate */
+  boolean locatePending = false;
   float[][] startPts2D = new float[2][1];
   float[][] startPts3D = new float[3][1];
 
@@ -80,6 +88,25 @@ public class Trajectory {
   
   public void forward(FlowInfo info, float[][] flow_values, byte[][] color_values, GriddedSet spatial_set, int direction, float timeStep)
            throws VisADException {
+     advance(info, flow_values, color_values, spatial_set, direction, timeStep);
+     commitPair();
+  }
+
+  /* Same as forward, but the new pair is only added to the manager by
+     commitPair, so pairs can be committed afterwards in a fixed order.
+   */
+  public void advance(FlowInfo info, float[][] flow_values, byte[][] color_values, GriddedSet spatial_set, int direction, float timeStep)
+           throws VisADException {
+     move(info, flow_values, color_values, direction, timeStep);
+     locate(spatial_set);
+  }
+
+  /* First half of advance: compute the new location and color. The
+     displacement goes through the renderer's coordinate systems, which need
+     not be thread safe, so trajectories are moved one at a time.
+   */
+  public void move(FlowInfo info, float[][] flow_values, byte[][] color_values, int direction, float timeStep)
+           throws VisADException {
      if (offGrid) return;
 
      int[][] indices = new int[1][];
@@ -88,8 +115,6 @@ public class Trajectory {
      int clrDim = color_values.length;
      float[] intrpClr = new float[clrDim];
 
-     int manifoldDimension = spatial_set.getManifoldDimension();
-
      indices[0] = startCell;
      weights[0] = cellWeights;
 
@@ -137,7 +162,14 @@ public class Trajectory {
           stopColor[3] = ShadowType.floatToByte(intrpClr[3]);
         }
 
-        addPair(startPts, stopPts, startColor, stopColor);
+        pairStartPts[0] = startPts[0];
+        pairStartPts[1] = startPts[1];
+        pairStartPts[2] = startPts[2];
+        if (pairStartColor == null) {
+          pairStartColor = new byte[clrDim];
+        }
+        System.arraycopy(startColor, 0, pairStartColor, 0, clrDim);
+        pairPending = true;
 
         uVecPath[0] = stopPts[0] - startPts[0];
         uVecPath[1] = stopPts[1] - startPts[1];
@@ -158,28 +190,53 @@ public class Trajectory {
         if (clrDim == 4) {
           startColor[3] = stopColor[3];
         }
+        locatePending = true;
+     }
 
-        if (manifoldDimension == 2) {
-           startPts2D[0][0] = startPts[0];
-           startPts2D[1][0] = startPts[1];
-           spatial_set.valueToInterp(startPts2D, indices, weights, guess2D);
-        }
-        else if (manifoldDimension == 3) {
-           startPts3D[0][0] = startPts[0];
-           startPts3D[1][0] = startPts[1];
-           startPts3D[2][0] = startPts[2];
-           spatial_set.valueToInterp(startPts3D, indices, weights, guess3D);
-        }
+  }
 
-        startCell = indices[0];
-        cellWeights = weights[0];
-        if (indices[0] == null) {
-           offGrid = true;
-        }
+  /* Second half of advance: find the grid cell of the location computed by
+     move. This only reads spatial_set, so trajectories can be located
+     concurrently.
+   */
+  public void locate(GriddedSet spatial_set) throws VisADException {
+     if (!locatePending) return;
+     locatePending = false;
+
+     int[][] indices = new int[1][];
+     float[][] weights = new float[1][];
+     int manifoldDimension = spatial_set.getManifoldDimension();
+
+     if (manifoldDimension == 2) {
+        startPts2D[0][0] = startPts[0];
+        startPts2D[1][0] = startPts[1];
+        spatial_set.valueToInterp(startPts2D, indices, weights, guess2D);
+     }
+     else if (manifoldDimension == 3) {
+        startPts3D[0][0] = startPts[0];
+        startPts3D[1][0] = startPts[1];
+        startPts3D[2][0] = startPts[2];
+        spatial_set.valueToInterp(startPts3D, indices, weights, guess3D);
+     }
+     else {
+        return;
      }
 
+     startCell = indices[0];
+     cellWeights = weights[0];
+     if (indices[0] == null) {
+        offGrid = true;
+     }
   }
   
+  /* Add the pair computed by the last advance, if any. */
+  public void commitPair() {
+     if (pairPending) {
+       pairPending = false;
+       addPair(pairStartPts, stopPts, pairStartColor, stopColor);
+     }
+  }
+
   public void addPair(float[] startPt, float[] stopPt, byte[] startColor, byte[] stopColor) {
 
      indexes[npairs] = trajMan.getCoordinateCount();
@@ -6,6 +6,7 @@
 package visad;
 
 import visad.util.CubicInterpolator;
+import visad.util.ThreadManager;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -36,6 +37,12 @@ public class TrajectoryManager {
   private int cnt=0;
   
   public static boolean doStartOffset = false;
+
+  /* Number of threads used to advance trajectories. */
+  public static int trajectoryThreads = Runtime.getRuntime().availableProcessors();
+
+  /* Below this many trajectories per thread, integration stays serial. */
+  public static final int MIN_TRAJECTORIES_PER_THREAD = 500;
   public static int[] o_j = new int[] {0, 0, 1, 1}; 
   public static int[] o_i = new int[] {0, 1, 0, 1};
   
@@ -345,42 +352,43 @@ public class TrajectoryManager {
        
        reset();
 
-       for (int ti=0; ti<numIntrpPts; ti++) { // additional points per domain time step
-         double dst = (x1 - x0)/numIntrpPts;
-         double xt = x0 + dst*ti;
+       ThreadManager locator = makeLocator(spatialSetTraj);
+       try {
+         for (int ti=0; ti<numIntrpPts; ti++) { // additional points per domain time step
+           double dst = (x1 - x0)/numIntrpPts;
+           double xt = x0 + dst*ti;
 
-         updateInterpolators();
+           updateInterpolators();
 
-         uInterp.interpolate(xt, intrpU);
-         vInterp.interpolate(xt, intrpV);
-         wInterp.interpolate(xt, intrpW);
+           uInterp.interpolate(xt, intrpU);
+           vInterp.interpolate(xt, intrpV);
+           wInterp.interpolate(xt, intrpW);
 
-         if (doHysplit) { // NOAA HySplit
-           if (ti == numIntrpPts-1) {
-             System.arraycopy(values1[0], 0, intrpU_1, 0, intrpU_1.length);
-             System.arraycopy(values1[1], 0, intrpV_1, 0, intrpV_1.length);
-             System.arraycopy(values1[2], 0, intrpW_1, 0, intrpW_1.length);
+           if (doHysplit) { // NOAA HySplit
+             if (ti == numIntrpPts-1) {
+               System.arraycopy(values1[0], 0, intrpU_1, 0, intrpU_1.length);
+               System.arraycopy(values1[1], 0, intrpV_1, 0, intrpV_1.length);
+               System.arraycopy(values1[2], 0, intrpW_1, 0, intrpW_1.length);
             
-           }
-           else {
-             uInterp.interpolate(xt+dst, intrpU_1);
-             vInterp.interpolate(xt+dst, intrpV_1);
-             wInterp.interpolate(xt+dst, intrpW_1);
-           }
+             }
+             else {
+               uInterp.interpolate(xt+dst, intrpU_1);
+               vInterp.interpolate(xt+dst, intrpV_1);
+               wInterp.interpolate(xt+dst, intrpW_1);
+             }
 
-           intrpU = mean(intrpU, intrpU_1);         
-           intrpV = mean(intrpV, intrpV_1);         
-           intrpW = mean(intrpW, intrpW_1);
-         }
+             intrpU = mean(intrpU, intrpU_1);         
+             intrpV = mean(intrpV, intrpV_1);         
+             intrpW = mean(intrpW, intrpW_1);
+           }
 
-         for (int t=0; t<numTrajectories; t++) {
-           Trajectory traj = trajectories.get(t);
-           traj.currentTimeIndex = direction*i;
-           traj.currentTime = direction*times[i];
-           traj.forward(info, new float[][] {intrpU, intrpV, intrpW}, color_values, spatialSetTraj, direction, timeStep);
-         }
+           advanceTrajectories(i, times[i], info, new float[][] {intrpU, intrpV, intrpW}, color_values, spatialSetTraj, timeStep, locator);
 
-       } // inner time loop (time interpolation)
+         } // inner time loop (time interpolation)
+       }
+       finally {
+         if (locator != null) locator.stopThreads();
+       }
        
        values0_last = values0;
        values0 = values1;
@@ -411,6 +419,66 @@ public class TrajectoryManager {
        return array;
   } 
   
+  /* With enough trajectories, a ThreadManager that looks up the grid cells
+     of the trajectories in contiguous blocks on trajectoryThreads threads.
+     It is built once per pass and keeps its threads until stopThreads.
+   */
+  private ThreadManager makeLocator(final GriddedSet spatial_set) {
+     final int numTrajectories = trajectories.size();
+     int numThreads = Math.min(trajectoryThreads, numTrajectories/MIN_TRAJECTORIES_PER_THREAD);
+     if (numThreads < 2) return null;
+
+     ThreadManager threadManager = new ThreadManager("trajectory integration");
+     threadManager.setKeepThreads(true);
+     int blockSize = (numTrajectories + numThreads - 1)/numThreads;
+     for (int start=0; start<numTrajectories; start+=blockSize) {
+       final int first = start;
+       final int last = Math.min(start+blockSize, numTrajectories);
+       threadManager.addRunnable(new ThreadManager.MyRunnable() {
+         public void run() throws Exception {
+           for (int t=first; t<last; t++) {
+             trajectories.get(t).locate(spatial_set);
+           }
+         }
+       });
+     }
+     return threadManager;
+  }
+
+  /* Advance every trajectory one interpolation step. With a locator, the
+     trajectories are moved in order on this thread, since the displacement
+     uses the renderer's coordinate systems, and only the grid cell lookups
+     run concurrently. The new pairs are then added in trajectory order, so
+     the geometry is the same as from the serial path.
+   */
+  private void advanceTrajectories(int timeIdx, double time, FlowInfo info, float[][] flow_values,
+                                   byte[][] color_values, GriddedSet spatial_set, float timeStep,
+                                   ThreadManager locator)
+          throws VisADException, RemoteException {
+     int numTrajectories = trajectories.size();
+     for (int t=0; t<numTrajectories; t++) {
+       Trajectory traj = trajectories.get(t);
+       traj.currentTimeIndex = direction*timeIdx;
+       traj.currentTime = direction*time;
+     }
+
+     if (locator == null) {
+       for (int t=0; t<numTrajectories; t++) {
+         trajectories.get(t).advance(info, flow_values, color_values, spatial_set, direction, timeStep);
+       }
+     }
+     else {
+       for (int t=0; t<numTrajectories; t++) {
+         trajectories.get(t).move(info, flow_values, color_values, direction, timeStep);
+       }
+       locator.runAllParallel();
+     }
+
+     for (int t=0; t<numTrajectories; t++) {
+       trajectories.get(t).commitPair();
+     }
+  }
+
   public void makeTrajectories(double time, float[][] startPts, byte[][] color_values, GriddedSet spatial_set) throws VisADException  {
      int num = startPts[0].length;
      clrDim = color_values.length;
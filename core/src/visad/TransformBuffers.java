@@ -0,0 +1,194 @@
+//
+// TransformBuffers.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+/**
+   TransformBuffers supplies the display_values arrays that
+   ShadowType.mapValues fills during a DataRenderer's doTransform,
+   and counts the bytes allocated for them.<P>
+
+   By default every request allocates a new array, as before.  If
+   reuse is enabled (see DataRenderer.setReuseDisplayValues), the n-th
+   array handed out for a display value index during a transform is
+   handed out again as the n-th one of the next transform, when the
+   length matches, so repeated transforms of same-sized data allocate
+   nothing.  Within one transform an array is never handed out twice,
+   so each frame of an animation (and each level of a nested Field)
+   gets its own arrays.  Arrays are only reused between
+   beginTransform and endTransform; outside of them every request
+   allocates.  Reuse is only safe when nothing keeps references to
+   display_values arrays past the end of doTransform: for example,
+   direct manipulation renderers keep their spatial values and must
+   not enable it.<P>
+
+   The bytes allocated and reused by each transform are reported to the
+   MetricsListener set by setMetricsListener, if any.<P>
+*/
+public class TransformBuffers {
+
+  /**
+     receives the allocation counts of each transform
+  */
+  public interface MetricsListener {
+
+    /**
+     * called at the end of each doTransform of renderer
+     * @param renderer the DataRenderer that did the transform
+     * @param bytesAllocated bytes of display value arrays allocated
+     * @param bytesReused bytes of display value arrays reused
+     */
+    void transformDone(DataRenderer renderer, long bytesAllocated,
+                       long bytesReused);
+  }
+
+  private static MetricsListener metricsListener = null;
+
+  private boolean reuse = false;
+  private boolean inTransform = false;
+  // arrays handed out for each display value index, in order of use
+  private float[][][] slots = new float[0][][];
+  // number of arrays of each index handed out in the current transform
+  private int[] used = new int[0];
+
+  private long bytesAllocated = 0;
+  private long bytesReused = 0;
+  private long lastBytesAllocated = 0;
+  private long lastBytesReused = 0;
+
+  public TransformBuffers() {
+  }
+
+  /**
+   * set the listener that receives the allocation counts of every
+   * transform in this JVM; null to disable
+   */
+  public static void setMetricsListener(MetricsListener listener) {
+    metricsListener = listener;
+  }
+
+  public static MetricsListener getMetricsListener() {
+    return metricsListener;
+  }
+
+  /**
+   * @param reuse true to hand out the same arrays across transforms
+   */
+  public synchronized void setReuse(boolean reuse) {
+    this.reuse = reuse;
+    if (!reuse) clear();
+  }
+
+  public boolean getReuse() {
+    return reuse;
+  }
+
+  /**
+   * @param index display value index (ScalarMap.getValueIndex())
+   * @param length required array length
+   * @return an array of exactly length floats; its contents are
+   *         undefined and must be overwritten by the caller
+   */
+  public synchronized float[] get(int index, int length) {
+    if (reuse && inTransform) {
+      if (index >= slots.length) {
+        float[][][] s = new float[index + 1][][];
+        System.arraycopy(slots, 0, s, 0, slots.length);
+        int[] u = new int[index + 1];
+        System.arraycopy(used, 0, u, 0, used.length);
+        slots = s;
+        used = u;
+      }
+      float[][] list = slots[index];
+      int n = used[index]++;
+      if (list == null || n >= list.length) {
+        float[][] l = new float[n + 1][];
+        if (list != null) System.arraycopy(list, 0, l, 0, list.length);
+        list = l;
+        slots[index] = list;
+      }
+      float[] a = list[n];
+      if (a != null && a.length == length) {
+        bytesReused += 4L * length;
+        return a;
+      }
+      a = new float[length];
+      list[n] = a;
+      bytesAllocated += 4L * length;
+      return a;
+    }
+    bytesAllocated += 4L * length;
+    return new float[length];
+  }
+
+  /**
+   * count an array allocated outside this object for display values
+   * @param bytes number of bytes allocated
+   */
+  public synchronized void countAllocated(long bytes) {
+    bytesAllocated += bytes;
+  }
+
+  /** release all reused arrays */
+  public synchronized void clear() {
+    slots = new float[0][][];
+    used = new int[0];
+  }
+
+  /** reset the counts; called before doTransform */
+  public synchronized void beginTransform() {
+    bytesAllocated = 0;
+    bytesReused = 0;
+    inTransform = true;
+    for (int i=0; i<used.length; i++) used[i] = 0;
+  }
+
+  /** report the counts; called after doTransform */
+  public void endTransform(DataRenderer renderer) {
+    long allocated, reused;
+    synchronized (this) {
+      inTransform = false;
+      allocated = bytesAllocated;
+      reused = bytesReused;
+      lastBytesAllocated = allocated;
+      lastBytesReused = reused;
+    }
+    MetricsListener listener = metricsListener;
+    if (listener != null) {
+      listener.transformDone(renderer, allocated, reused);
+    }
+  }
+
+  /** @return bytes allocated by the last completed transform */
+  public synchronized long getLastBytesAllocated() {
+    return lastBytesAllocated;
+  }
+
+  /** @return bytes reused by the last completed transform */
+  public synchronized long getLastBytesReused() {
+    return lastBytesReused;
+  }
+}
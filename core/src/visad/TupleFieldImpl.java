@@ -0,0 +1,888 @@
+//
+// TupleFieldImpl.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.rmi.RemoteException;
+
+import java.util.Arrays;
+
+/**
+   TupleFieldImpl is a FieldImpl whose range is a Tuple of RealType,
+   TextType and RealTupleType components (or a RealTupleType), such as
+   the records of a station or point observation file.<P>
+
+   Rather than keeping one Tuple object (and its Real, Text and
+   RealTuple components) per sample, TupleFieldImpl stores each
+   RealType component as a column of doubles in the default Unit of
+   its RealType, and each TextType component as a column of Strings.
+   Range Tuples are only created by getSample; getValues,
+   getStringValues, extract, domainFactor and resample work on the
+   columns directly.<P>
+
+   Because values are kept in default Units and CoordinateSystems,
+   the Units, CoordinateSystems and ErrorEstimates of the samples
+   passed to setSample are not retained.  Nested Tuple components
+   are not supported; use a FieldImpl for those.<P>
+*/
+public class TupleFieldImpl extends FieldImpl {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int REAL = 0;
+  private static final int TEXT = 1;
+  private static final int REAL_TUPLE = 2;
+
+  /** range type of this TupleFieldImpl */
+  private TupleType RangeType;
+
+  /** true if RangeType is a RealTupleType */
+  private boolean RealTupleRange;
+
+  /** kind of each component of RangeType: REAL, TEXT or REAL_TUPLE */
+  private int[] Kinds;
+
+  /** index of the first column of each component of RangeType */
+  private int[] Columns;
+
+  /** RealType components, in the order of getValues */
+  private RealType[] RealComponents;
+
+  /** default Units of RealComponents */
+  private Unit[] DefaultUnits;
+
+  /** values of RealType components: [component][sample], default Units */
+  private double[][] RealValues;
+
+  /** values of TextType components: [component][sample] */
+  private String[][] TextValues;
+
+  /** false for samples that are missing */
+  private boolean[] Defined;
+
+  private boolean MissingFlag;
+
+  // use VisADRay since it is Serializable and small
+  private VisADRay ColumnLock = new VisADRay();
+
+  /** construct a TupleFieldImpl from type;
+      use default Set of FunctionType domain;
+      initial values are missing */
+  public TupleFieldImpl(FunctionType type) throws VisADException {
+    this(type, null);
+  }
+
+  /** construct a TupleFieldImpl from type and domain Set;
+      initial values are missing */
+  public TupleFieldImpl(FunctionType type, Set set) throws VisADException {
+    super(type, set, false);
+    MathType range = type.getRange();
+    if (!isTupleRange(range)) {
+      throw new TypeException("TupleFieldImpl: range must be a TupleType of " +
+                              "RealType, TextType and RealTupleType components");
+    }
+    RangeType = (TupleType) range;
+    RealTupleRange = (range instanceof RealTupleType);
+    RealComponents = RangeType.getRealComponents();
+    DefaultUnits = getDefaultRangeUnits();
+    int n = RangeType.getDimension();
+    Kinds = new int[n];
+    Columns = new int[n];
+    int nreal = 0;
+    int ntext = 0;
+    for (int j=0; j<n; j++) {
+      MathType t = RangeType.getComponent(j);
+      if (t instanceof RealType) {
+        Kinds[j] = REAL;
+        Columns[j] = nreal++;
+      }
+      else if (t instanceof TextType) {
+        Kinds[j] = TEXT;
+        Columns[j] = ntext++;
+      }
+      else {
+        Kinds[j] = REAL_TUPLE;
+        Columns[j] = nreal;
+        nreal += ((RealTupleType) t).getDimension();
+      }
+    }
+    int len = getLength();
+    RealValues = new double[nreal][len];
+    TextValues = new String[ntext][len];
+    Defined = new boolean[len];
+    clearColumns();
+    MissingFlag = true;
+  }
+
+  /**
+   * @return true if a TupleFieldImpl can have range type
+   */
+  public static boolean isTupleRange(MathType range) {
+    if (!(range instanceof TupleType)) return false;
+    if (range instanceof RealTupleType) return true;
+    TupleType tuple = (TupleType) range;
+    try {
+      for (int j=0; j<tuple.getDimension(); j++) {
+        MathType t = tuple.getComponent(j);
+        if (!(t instanceof RealType || t instanceof TextType ||
+              t instanceof RealTupleType)) {
+          return false;
+        }
+      }
+    }
+    catch (VisADException e) {
+      return false;
+    }
+    return true;
+  }
+
+  /** set all samples to missing; call while holding ColumnLock */
+  private void clearColumns() {
+    for (int k=0; k<RealValues.length; k++) {
+      Arrays.fill(RealValues[k], Double.NaN);
+    }
+    for (int k=0; k<TextValues.length; k++) {
+      Arrays.fill(TextValues[k], null);
+    }
+    Arrays.fill(Defined, false);
+  }
+
+  /** set sample index to missing; call while holding ColumnLock */
+  private void clearSample(int index) {
+    for (int k=0; k<RealValues.length; k++) RealValues[k][index] = Double.NaN;
+    for (int k=0; k<TextValues.length; k++) TextValues[k][index] = null;
+    Defined[index] = false;
+  }
+
+  /** value of real in unit; Reals without a Unit, or values for a
+      RealType without a default Unit, are taken as is */
+  private static double getValue(Real real, Unit unit)
+          throws VisADException {
+    Unit u = real.getUnit();
+    if (unit == null || u == null || unit.equals(u)) return real.getValue();
+    return real.getValue(unit);
+  }
+
+  /** store the components of tuple in columns column to column + n - 1 */
+  private void storeRealTuple(RealTuple tuple, RealTupleType type,
+                              int column, int index)
+          throws VisADException, RemoteException {
+    int n = type.getDimension();
+    if (tuple == null || tuple.isMissing()) {
+      for (int m=0; m<n; m++) RealValues[column + m][index] = Double.NaN;
+      return;
+    }
+    CoordinateSystem cs = tuple.getCoordinateSystem();
+    CoordinateSystem default_cs = type.getCoordinateSystem();
+    if (cs == null || cs.equals(default_cs)) {
+      for (int m=0; m<n; m++) {
+        RealValues[column + m][index] =
+          getValue((Real) tuple.getComponent(m), DefaultUnits[column + m]);
+      }
+    }
+    else {
+      // same conversion as FieldImpl.extract
+      double[][] values = new double[n][1];
+      for (int m=0; m<n; m++) {
+        values[m][0] = ((Real) tuple.getComponent(m)).getValue();
+      }
+      values = CoordinateSystem.transformCoordinates(
+                 type, default_cs, type.getDefaultUnits(), null,
+                 type, cs, tuple.getTupleUnits(), null, values);
+      for (int m=0; m<n; m++) RealValues[column + m][index] = values[m][0];
+    }
+  }
+
+  /** decompose sample into the columns at index; call while holding
+      ColumnLock */
+  private void store(int index, Data sample)
+          throws VisADException, RemoteException {
+    if (sample == null || sample.isMissing()) {
+      clearSample(index);
+      return;
+    }
+    if (RealTupleRange) {
+      storeRealTuple((RealTuple) sample, (RealTupleType) RangeType, 0, index);
+    }
+    else {
+      TupleIface tuple = (TupleIface) sample;
+      for (int j=0; j<Kinds.length; j++) {
+        Data component = tuple.getComponent(j);
+        int c = Columns[j];
+        switch (Kinds[j]) {
+          case REAL:
+            RealValues[c][index] = getValue((Real) component, DefaultUnits[c]);
+            break;
+          case TEXT:
+            TextValues[c][index] = ((Text) component).getValue();
+            break;
+          default:
+            storeRealTuple((RealTuple) component,
+                           (RealTupleType) RangeType.getComponent(j), c, index);
+            break;
+        }
+      }
+    }
+    Defined[index] = true;
+  }
+
+  /** make a RealTuple from columns column to column + n - 1 */
+  private RealTuple makeRealTuple(RealTupleType type, int column, int index)
+          throws VisADException, RemoteException {
+    int n = type.getDimension();
+    double[] values = new double[n];
+    for (int m=0; m<n; m++) values[m] = RealValues[column + m][index];
+    return new RealTuple(type, values);
+  }
+
+  /** make the range sample at index from the columns; call while
+      holding ColumnLock */
+  private Data makeSample(int index)
+          throws VisADException, RemoteException {
+    if (RealTupleRange) {
+      return makeRealTuple((RealTupleType) RangeType, 0, index);
+    }
+    Data[] components = new Data[Kinds.length];
+    for (int j=0; j<Kinds.length; j++) {
+      int c = Columns[j];
+      MathType t = RangeType.getComponent(j);
+      switch (Kinds[j]) {
+        case REAL:
+          components[j] = new Real((RealType) t, RealValues[c][index]);
+          break;
+        case TEXT:
+          components[j] = new Text((TextType) t, TextValues[c][index]);
+          break;
+        default:
+          components[j] = makeRealTuple((RealTupleType) t, c, index);
+          break;
+      }
+    }
+    return new Tuple(RangeType, components, false, false);
+  }
+
+  /**
+   * Set the range samples of the function; the order of range samples
+   * must be the same as the order of domain indices in the DomainSet.
+   * The samples are decomposed into columns, so they are always
+   * copied.
+   * @param range The range values
+   * @param copy ignored
+   * @param checkAllRangeTypes  If true then ensure that the MathType of
+   *                            each element in the range matches the type
+   *                            of this field. If false then only check the
+   *                            first range element.
+   */
+  public void setSamples(Data[] range, boolean copy, boolean checkAllRangeTypes)
+         throws VisADException, RemoteException {
+    if (range == null) {
+      synchronized (ColumnLock) {
+        clearColumns();
+        MissingFlag = true;
+      }
+      return;
+    }
+    int len = getLength();
+    if (range.length != len) {
+      throw new FieldException("TupleFieldImpl.setSamples: bad array length");
+    }
+    boolean checked = false;
+    for (int i=0; i<len; i++) {
+      if (range[i] != null && (checkAllRangeTypes || !checked)) {
+        if (!RangeType.equals(range[i].getType())) {
+          throw new TypeException("TupleFieldImpl.setSamples: sample#" + i +
+                                  " type " + range[i].getType() +
+                                  " doesn't match field type " + RangeType);
+        }
+        checked = true;
+      }
+    }
+    synchronized (ColumnLock) {
+      MissingFlag = false;
+      for (int i=0; i<len; i++) {
+        store(i, range[i]);
+      }
+    }
+    notifyReferences();
+  }
+
+  /** set the range values of RealType components, in their default
+      Units; this must not have TextType components; the array is
+      dimensioned double[number_of_range_components][number_of_range_samples];
+      the order of range values must be the same as the order of domain
+      indices in the DomainSet */
+  public void setSamples(double[][] range)
+         throws VisADException, RemoteException {
+    if (TextValues.length > 0) {
+      throw new FieldException("TupleFieldImpl.setSamples: not Flat range");
+    }
+    setSamples(range, null, true);
+  }
+
+  /**
+   * Set the range values of all samples from columns.
+   *
+   * @param values values of the RealType components in their default
+   *               Units, dimensioned
+   *               double[number_of_real_components][number_of_range_samples];
+   *               may be null if there are no RealType components
+   * @param strings values of the TextType components, dimensioned
+   *               String[number_of_text_components][number_of_range_samples];
+   *               may be null if there are no TextType components
+   * @param copy   true to copy the arrays, false to use them as is
+   */
+  public void setSamples(double[][] values, String[][] strings, boolean copy)
+         throws VisADException, RemoteException {
+    int len = getLength();
+    int nreal = RealValues.length;
+    int ntext = TextValues.length;
+    if ((values == null ? 0 : values.length) != nreal ||
+        (strings == null ? 0 : strings.length) != ntext) {
+      throw new FieldException("TupleFieldImpl.setSamples: bad tuple length");
+    }
+    for (int k=0; k<nreal; k++) {
+      if (values[k] == null || values[k].length != len) {
+        throw new FieldException("TupleFieldImpl.setSamples: bad array length");
+      }
+    }
+    for (int k=0; k<ntext; k++) {
+      if (strings[k] == null || strings[k].length != len) {
+        throw new FieldException("TupleFieldImpl.setSamples: bad array length");
+      }
+    }
+    synchronized (ColumnLock) {
+      for (int k=0; k<nreal; k++) {
+        RealValues[k] = copy ? values[k].clone() : values[k];
+      }
+      for (int k=0; k<ntext; k++) {
+        TextValues[k] = copy ? strings[k].clone() : strings[k];
+      }
+      Arrays.fill(Defined, true);
+      MissingFlag = false;
+    }
+    notifyReferences();
+  }
+
+  /** get range values for Text components; the return array is dimensioned
+      String[number_of_text_components][number_of_range_samples] */
+  public String[][] getStringValues()
+         throws VisADException, RemoteException {
+    int n = TextValues.length;
+    if (n == 0) return null;
+    int len = getLength();
+    String[][] values = new String[n][len];
+    synchronized (ColumnLock) {
+      for (int i=0; i<len; i++) {
+        boolean defined = !MissingFlag && Defined[i];
+        for (int k=0; k<n; k++) {
+          values[k][i] = defined ? TextValues[k][i] : "";
+        }
+      }
+    }
+    return values;
+  }
+
+  /** get range values for RealType components in their default range
+      Units; the return array is dimensioned
+      double[number_of_range_components][number_of_range_samples];
+      if copy is false the columns of this TupleFieldImpl are returned */
+  public double[][] getValues(boolean copy)
+         throws VisADException, RemoteException {
+    int n = RealValues.length;
+    int len = getLength();
+    double[][] values = new double[n][];
+    synchronized (ColumnLock) {
+      for (int k=0; k<n; k++) {
+        if (MissingFlag) {
+          values[k] = new double[len];
+          Arrays.fill(values[k], Double.NaN);
+        }
+        else {
+          values[k] = copy ? RealValues[k].clone() : RealValues[k];
+        }
+      }
+    }
+    return values;
+  }
+
+  /** return array of Units associated with each RealType
+      component of range; these are always the default Units */
+  public Unit[][] getRangeUnits()
+         throws VisADException, RemoteException {
+    int n = DefaultUnits.length;
+    Unit[][] units = new Unit[n][getLength()];
+    for (int k=0; k<n; k++) {
+      Arrays.fill(units[k], DefaultUnits[k]);
+    }
+    return units;
+  }
+
+  /** get range CoordinateSystem for a RealTupleType range; this is
+      always the default CoordinateSystem of the range */
+  public CoordinateSystem[] getRangeCoordinateSystem()
+         throws VisADException, RemoteException {
+    if (!RealTupleRange) {
+      throw new TypeException("TupleFieldImpl.getRangeCoordinateSystem: " +
+        "Range is not RealTupleType");
+    }
+    CoordinateSystem[] cs = new CoordinateSystem[getLength()];
+    Arrays.fill(cs, ((RealTupleType) RangeType).getCoordinateSystem());
+    return cs;
+  }
+
+  /** get range CoordinateSystem for 'RealTuple' components; this is
+      always the default CoordinateSystem of the component */
+  public CoordinateSystem[] getRangeCoordinateSystem(int component)
+         throws VisADException, RemoteException {
+    if (RealTupleRange) {
+      throw new TypeException("TupleFieldImpl.getRangeCoordinateSystem: " +
+        "Range must be TupleType but not RealTupleType");
+    }
+    MathType component_type = RangeType.getComponent(component);
+    if (!(component_type instanceof RealTupleType)) {
+      throw new TypeException("TupleFieldImpl.getRangeCoordinateSystem: " +
+        "selected Range component must be RealTupleType");
+    }
+    CoordinateSystem[] cs = new CoordinateSystem[getLength()];
+    Arrays.fill(cs,
+      ((RealTupleType) component_type).getCoordinateSystem());
+    return cs;
+  }
+
+  /**
+   * Get the range value at the index-th sample.  A new Tuple (or
+   * RealTuple) is made from the columns on each call.
+   *
+   * @param index index of requested range sample
+   * @param metadataOnly ignored
+   */
+  public Data getSample(int index, boolean metadataOnly)
+         throws VisADException, RemoteException {
+    synchronized (ColumnLock) {
+      if (MissingFlag || index < 0 || index >= getLength() || !Defined[index]) {
+        return RangeType.missingData();
+      }
+      return makeSample(index);
+    }
+  }
+
+  /**
+   * Set the range value at the index-th sample; its values are
+   * copied into the columns
+   * @param  index  index in domain
+   * @param  range  sample at that index
+   * @param  copy   ignored
+   * @param  checkRangeType  true to check that the sample MathType is
+   *                         the range of this TupleFieldImpl
+   */
+  public void setSample(int index, Data range, boolean copy, boolean checkRangeType)
+         throws VisADException, RemoteException {
+    if (range != null && checkRangeType &&
+        !RangeType.equals(range.getType())) {
+      throw new TypeException("TupleFieldImpl.setSample: bad range type");
+    }
+    if (index >= 0 && index < getLength()) {
+      synchronized (ColumnLock) {
+        MissingFlag = false;
+        store(index, range);
+      }
+    }
+    notifyReferences();
+  }
+
+  /** test whether Field value is missing */
+  public boolean isMissing() {
+    synchronized (ColumnLock) {
+      return MissingFlag;
+    }
+  }
+
+  /**
+   * Convert this TupleFieldImpl to a (non-Flat) FieldImpl with one
+   * range Tuple per sample.
+   */
+  public FieldImpl convertToField() throws VisADException, RemoteException {
+    FieldImpl new_field = new FieldImpl((FunctionType) Type, getDomainSet());
+    if (isMissing()) return new_field;
+    int len = getLength();
+    Data[] range = new Data[len];
+    synchronized (ColumnLock) {
+      for (int i=0; i<len; i++) {
+        if (Defined[i]) range[i] = makeSample(i);
+      }
+    }
+    new_field.setSamples(range, false, false);
+    return new_field;
+  }
+
+  /** return new Field with value 'this op data'; this is computed on
+      the FieldImpl made by convertToField */
+  public Data binary(Data data, int op, MathType new_type,
+                     int sampling_mode, int error_mode)
+              throws VisADException, RemoteException {
+    return convertToField().binary(data, op, new_type, sampling_mode,
+                                   error_mode);
+  }
+
+  /** return new Field with value 'op this'; this is computed on
+      the FieldImpl made by convertToField */
+  public Data unary(int op, MathType new_type, int sampling_mode,
+                    int error_mode)
+              throws VisADException, RemoteException {
+    return convertToField().unary(op, new_type, sampling_mode, error_mode);
+  }
+
+  /** extract field from this[].component; RealType and RealTupleType
+      components are extracted into FlatFields, TextType components
+      into FieldImpls */
+  public Field extract(int component)
+         throws VisADException, RemoteException {
+    int n_comps = RangeType.getDimension();
+    if (component == 0 && n_comps == 1) return this;
+    if (component < 0 || component >= n_comps) {
+      throw new VisADException("extract: component selection too large");
+    }
+    Set domainSet = getDomainSet();
+    MathType new_range = RangeType.getComponent(component);
+    FunctionType new_type =
+      new FunctionType(((FunctionType) Type).getDomain(), new_range);
+    int c = Columns[component];
+    int len = getLength();
+
+    if (RealTupleRange || Kinds[component] != TEXT) {
+      FlatField new_field = new FlatField(new_type, domainSet);
+      if (isMissing()) return new_field;
+      int dim = (new_range instanceof RealTupleType) ?
+                ((RealTupleType) new_range).getDimension() : 1;
+      double[][] values = new double[dim][];
+      synchronized (ColumnLock) {
+        for (int m=0; m<dim; m++) {
+          values[m] = RealValues[c + m].clone();
+        }
+      }
+      new_field.setSamples(values, false);
+      return new_field;
+    }
+    else {
+      FieldImpl new_field = new FieldImpl(new_type, domainSet);
+      if (isMissing()) return new_field;
+      TextType text_type = (TextType) new_range;
+      Data[] range = new Data[len];
+      synchronized (ColumnLock) {
+        for (int i=0; i<len; i++) {
+          if (Defined[i]) range[i] = new Text(text_type, TextValues[c][i]);
+        }
+      }
+      new_field.setSamples(range, false, false);
+      return new_field;
+    }
+  }
+
+  /** gather the columns at indices into a new TupleFieldImpl */
+  protected Field subField(FunctionType type, Set domain, int[] indices)
+            throws VisADException, RemoteException {
+    TupleFieldImpl field = new TupleFieldImpl(type, domain);
+    if (isMissing()) return field;
+    synchronized (ColumnLock) {
+      gather(field, indices);
+    }
+    return field;
+  }
+
+  /** copy the samples at indices into field, where field has
+      indices.length samples; negative indices make missing samples;
+      call while holding ColumnLock */
+  private void gather(TupleFieldImpl field, int[] indices) {
+    int len = indices.length;
+    for (int k=0; k<RealValues.length; k++) {
+      double[] from = RealValues[k];
+      double[] to = field.RealValues[k];
+      for (int i=0; i<len; i++) {
+        int j = indices[i];
+        to[i] = (j >= 0 && Defined[j]) ? from[j] : Double.NaN;
+      }
+    }
+    for (int k=0; k<TextValues.length; k++) {
+      String[] from = TextValues[k];
+      String[] to = field.TextValues[k];
+      for (int i=0; i<len; i++) {
+        int j = indices[i];
+        to[i] = (j >= 0 && Defined[j]) ? from[j] : null;
+      }
+    }
+    for (int i=0; i<len; i++) {
+      int j = indices[i];
+      field.Defined[i] = (j >= 0 && Defined[j]);
+    }
+    field.MissingFlag = false;
+  }
+
+  /**
+   * Resample range values of this Field to domain samples in set either
+   * by nearest neighbor or multi-linear interpolation, working on the
+   * columns.  RealType components are interpolated; TextType components
+   * take the value of the neighbor with the largest weight.  Requests
+   * for sampling errors, double precision domains, and vector
+   * transforms of RealVectorType components are handed to the FieldImpl
+   * made by convertToField.
+   * @param set            finite sampling values for the function.
+   * @param sampling_mode  type of interpolation to perform (e.g.,
+   *                       Data.WEIGHTED_AVERAGE, Data.NEAREST_NEIGHBOR)
+   * @param error_mode     type of error estimation to perform (e.g.,
+   *                       Data.INDEPENDENT, Data.DEPENDENT, Data.NO_ERRORS)
+   * @return Data object corresponding to the function value at that domain,
+   *         using the sampling_mode and error_modes specified.  NOTE: may
+   *         return this (i.e., not a copy).
+   * @throws  VisADException   unable to resample function
+   * @throws  RemoteException  Java RMI exception
+   */
+  public Field resample(Set set, int sampling_mode, int error_mode)
+         throws VisADException, RemoteException {
+    Set domainSet = getDomainSet();
+    if (domainSet.equals(set)) {
+      // nothing to do
+      return this;
+    }
+    if (error_mode != NO_ERRORS || domainSet instanceof GriddedDoubleSet) {
+      return convertToField().resample(set, sampling_mode, error_mode);
+    }
+
+    RealTupleType domain_type = ((SetType) set.getType()).getDomain();
+    FunctionType func_type = new FunctionType(domain_type, RangeType);
+    TupleFieldImpl field = new TupleFieldImpl(func_type, set);
+    if (isMissing()) return field;
+
+    int dim = domainSet.getDimension();
+    if (dim != set.getDimension()) {
+      throw new SetException("TupleFieldImpl.resample: bad Set Dimension");
+    }
+
+    float[][] vals = set.getSamples(true);
+    float[][] oldvals = vals;
+    try {  // this is only to throw a more meaningful message
+      vals = CoordinateSystem.transformCoordinates(
+                      ((FunctionType) Type).getDomain(),
+                      getDomainCoordinateSystem(),
+                      getDomainUnits(), new ErrorEstimate[dim],
+                      domain_type, set.getCoordinateSystem(),
+                      set.getSetUnits(), new ErrorEstimate[dim], vals);
+    } catch (UnitException ue) {
+        throw new VisADException("Sampling set is not compatible with domain");
+    }
+    if (vals != oldvals && hasVectorComponents()) {
+      return convertToField().resample(set, sampling_mode, error_mode);
+    }
+
+    int length = set.getLength();
+    if (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) {
+      // resample by interpolation
+      int[][] indices = new int[length][];
+      float[][] coefs = new float[length][];
+      ((SimpleSet) domainSet).valueToInterp(vals, indices, coefs);
+      synchronized (ColumnLock) {
+        for (int i=0; i<length; i++) {
+          int len = (indices[i] == null) ? 0 : indices[i].length;
+          boolean defined = (len > 0);
+          int nearest = -1;
+          float weight = 0.0f;
+          for (int k=0; k<len && defined; k++) {
+            int j = indices[i][k];
+            if (!Defined[j]) {
+              defined = false;
+            }
+            else if (nearest < 0 || coefs[i][k] > weight) {
+              nearest = j;
+              weight = coefs[i][k];
+            }
+          }
+          if (!defined) continue;
+          for (int c=0; c<RealValues.length; c++) {
+            double[] from = RealValues[c];
+            double v = 0.0;
+            for (int k=0; k<len; k++) {
+              v += from[indices[i][k]] * (double) coefs[i][k];
+            }
+            field.RealValues[c][i] = v;
+          }
+          for (int c=0; c<TextValues.length; c++) {
+            field.TextValues[c][i] = TextValues[c][nearest];
+          }
+          field.Defined[i] = true;
+        }
+        field.MissingFlag = false;
+      }
+    }
+    else { // Mode is NEAREST_NEIGHBOR or set is not SimpleSet
+      int[] indices = domainSet.valueToIndex(vals);
+      synchronized (ColumnLock) {
+        gather(field, indices);
+      }
+    }
+    return field;
+  }
+
+  /** true if any component of the range is a RealVectorType */
+  private boolean hasVectorComponents() throws VisADException {
+    if (RangeType instanceof RealVectorType) return true;
+    if (RealTupleRange) return false;
+    for (int j=0; j<Kinds.length; j++) {
+      if (RangeType.getComponent(j) instanceof RealVectorType) return true;
+    }
+    return false;
+  }
+
+  /** resampling to a double precision domain is done on the FieldImpl
+      made by convertToField */
+  public Field resampleDouble(Set set, int sampling_mode, int error_mode)
+         throws VisADException, RemoteException {
+    return convertToField().resampleDouble(set, sampling_mode, error_mode);
+  }
+
+  public DataShadow computeRanges(ShadowType type, DataShadow shadow)
+         throws VisADException, RemoteException {
+    if (isMissing()) return shadow;
+
+    ShadowRealTupleType domain_type = ((ShadowFunctionType) type).getDomain();
+    int n = domain_type.getDimension();
+    double[][] ranges = new double[2][n];
+    // DomainSet.computeRanges handles Reference
+    shadow = getDomainSet().computeRanges(domain_type, shadow, ranges, true);
+    ShadowType rtype = ((ShadowFunctionType) type).getRange();
+
+    synchronized (ColumnLock) {
+      if (RealTupleRange) {
+        return computeRealTupleRanges((ShadowRealTupleType) rtype,
+                                      (RealTupleType) RangeType, 0, shadow);
+      }
+      for (int j=0; j<Kinds.length; j++) {
+        ShadowType ctype = ((ShadowTupleType) rtype).getComponent(j);
+        if (Kinds[j] == REAL) {
+          shadow = computeColumnRanges((ShadowRealType) ctype, Columns[j],
+                                       shadow);
+        }
+        else if (Kinds[j] == REAL_TUPLE) {
+          shadow = computeRealTupleRanges((ShadowRealTupleType) ctype,
+                     (RealTupleType) RangeType.getComponent(j), Columns[j],
+                     shadow);
+        }
+      }
+    }
+    return shadow;
+  }
+
+  /** add the values of column to the range of type in shadow */
+  private DataShadow computeColumnRanges(ShadowRealType type, int column,
+                                         DataShadow shadow) {
+    int index = type.getIndex();
+    if (index < 0) return shadow;
+    double[] values = RealValues[column];
+    double min = shadow.ranges[0][index];
+    double max = shadow.ranges[1][index];
+    for (int i=0; i<values.length; i++) {
+      double v = values[i];
+      if (v == v) {
+        if (v < min) min = v;
+        if (v > max) max = v;
+      }
+    }
+    shadow.ranges[0][index] = min;
+    shadow.ranges[1][index] = max;
+    return shadow;
+  }
+
+  /** add the values of a RealTupleType component to shadow; the
+      ranges of a Reference need the CoordinateSystem transform of
+      each sample, which RealTuple.computeRanges does */
+  private DataShadow computeRealTupleRanges(ShadowRealTupleType type,
+                                            RealTupleType tuple_type,
+                                            int column, DataShadow shadow)
+          throws VisADException, RemoteException {
+    int dim = tuple_type.getDimension();
+    if (type.getReference() == null) {
+      for (int m=0; m<dim; m++) {
+        shadow = computeColumnRanges((ShadowRealType) type.getComponent(m),
+                                     column + m, shadow);
+      }
+      return shadow;
+    }
+    for (int i=0; i<getLength(); i++) {
+      if (Defined[i]) {
+        shadow = makeRealTuple(tuple_type, column, i).computeRanges(type, shadow);
+      }
+    }
+    return shadow;
+  }
+
+  /** return a Field that clones this, except its ErrorEstimate-s
+      are adjusted for sampling errors in error */
+  public Data adjustSamplingError(Data error, int error_mode)
+         throws VisADException, RemoteException {
+    if (isMissing() || error == null || error.isMissing()) return this;
+    return convertToField().adjustSamplingError(error, error_mode);
+  }
+
+  /**
+   * Clones this instance.  The {@link MathType}, domain {@link Set}, and
+   * {@link CoordinateSystem} are shallow copied; the columns are copied.
+   *
+   * @return                            A clone of this instance.
+   * @throws CloneNotSupportedException if cloning isn't supported.
+   */
+  public Object clone() throws CloneNotSupportedException {
+    TupleFieldImpl clone = (TupleFieldImpl) super.clone();
+    synchronized (ColumnLock) {
+      clone.ColumnLock = new VisADRay();
+      clone.RealValues = new double[RealValues.length][];
+      for (int k=0; k<RealValues.length; k++) {
+        clone.RealValues[k] = RealValues[k].clone();
+      }
+      clone.TextValues = new String[TextValues.length][];
+      for (int k=0; k<TextValues.length; k++) {
+        clone.TextValues[k] = TextValues[k].clone();
+      }
+      clone.Defined = Defined.clone();
+    }
+    return clone;
+  }
+
+  public String longString(String pre)
+         throws VisADException, RemoteException {
+    StringBuffer s = new StringBuffer(pre + "TupleFieldImpl\n" + pre +
+                                      "  Type: " + Type.toString() + "\n");
+    s.append(pre + "  DomainSet:\n" + getDomainSet().longString(pre + "    "));
+    if (isMissing()) {
+      s.append("  missing\n");
+      return s.toString();
+    }
+    for (int i=0; i<getLength(); i++) {
+      Data range = getSample(i);
+      s.append(pre + "  Range value " + i + ":\n" + (range.isMissing() ?
+               (pre + "missing\n") : range.longString(pre + "    ")));
+    }
+    return s.toString();
+  }
+
+}
@@ -60,7 +60,7 @@ public abstract class Unit implements Serializable {
      * </p>
      * 
      * <p>
-     * This implementation uses {@link #toThis(double[], Unit)} to convert the
+     * This implementation uses a {@link UnitConverter} to convert the
      * individual arrays.
      * </p>
      * 
@@ -100,7 +100,7 @@ public abstract class Unit implements Serializable {
      * </p>
      * 
      * <p>
-     * This implementation uses {@link #toThis(double[], Unit)} to convert the
+     * This implementation uses a {@link UnitConverter} to convert the
      * individual arrays.
      * </p>
      * 
@@ -163,7 +163,8 @@ public abstract class Unit implements Serializable {
                 }
                 else {
                     // else do the conversion (creates a new array)
-                    new_value[i] = units_out[i].toThis(value[i], units_in[i]);
+                    new_value[i] = UnitConverter.getInstance(units_in[i],
+                            units_out[i]).convert(value[i], true);
                 }
             }
         }
@@ -176,7 +177,7 @@ public abstract class Unit implements Serializable {
      * </p>
      * 
      * <p>
-     * This implementation uses {@link #toThis(float[], Unit)} to convert the
+     * This implementation uses a {@link UnitConverter} to convert the
      * individual arrays.
      * </p>
      * 
@@ -216,7 +217,7 @@ public abstract class Unit implements Serializable {
      * </p>
      * 
      * <p>
-     * This implementation uses {@link #toThis(float[], Unit)} to convert the
+     * This implementation uses a {@link UnitConverter} to convert the
      * individual arrays.
      * </p>
      * 
@@ -279,13 +280,54 @@ public abstract class Unit implements Serializable {
                 }
                 else {
                     // else do the conversion
-                    new_value[i] = units_out[i].toThis(value[i], units_in[i]);
+                    new_value[i] = UnitConverter.getInstance(units_in[i],
+                            units_out[i]).convert(value[i], true);
                 }
             }
         }
         return new_value;
     }
 
+    /**
+     * Returns the scale and offset of the conversion of values from one unit
+     * to another, if that conversion is linear. Values convert as
+     * <code>out = scale * in + offset</code>.
+     * 
+     * @param unit_in
+     *            The unit of the input values; may be <code>null</code>.
+     * @param unit_out
+     *            The unit of the output values; may be <code>null</code>.
+     * @return <code>{scale, offset}</code>, or <code>null</code> if the
+     *         conversion is not linear or the units are not convertible.
+     */
+    public static double[] getLinearConversion(final Unit unit_in,
+            final Unit unit_out) {
+        if (unit_out == null || unit_in == null) {
+            return (unit_out == unit_in || unit_in instanceof PromiscuousUnit
+                    || unit_out instanceof PromiscuousUnit)
+                    ? new double[] { 1.0, 0.0 }
+                    : null;
+        }
+        if (unit_out.equals(unit_in)) {
+            return new double[] { 1.0, 0.0 };
+        }
+        final double[] probe;
+        try {
+            probe = unit_out.toThis(new double[] { 0.0, 1.0, 1000.0 }, unit_in);
+        }
+        catch (final UnitException e) {
+            return null;
+        }
+        final double scale = probe[1] - probe[0];
+        final double offset = probe[0];
+        final double expected = offset + 1000.0 * scale;
+        if (!(Math.abs(probe[2] - expected) <= 1.0e-9 * Math
+                .max(1.0, Math.abs(expected)))) {
+            return null;
+        }
+        return new double[] { scale, offset };
+    }
+
     /**
      * Indicates if values in two units are convertible. The values of two units
      * are convertible if each unit is either <code>null</code> or the
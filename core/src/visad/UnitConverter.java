@@ -0,0 +1,351 @@
+//
+// UnitConverter.java
+//
+
+/*
+ VisAD system for interactive analysis and visualization of numerical
+ data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+ Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+ Tommy Jasmin.
+
+ This library is free software; you can redistribute it and/or
+ modify it under the terms of the GNU Library General Public
+ License as published by the Free Software Foundation; either
+ version 2 of the License, or (at your option) any later version.
+
+ This library is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ Library General Public License for more details.
+
+ You should have received a copy of the GNU Library General Public
+ License along with this library; if not, write to the Free
+ Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+ MA 02111-1307, USA
+ */
+
+package visad;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A precompiled conversion of numeric values from one unit to another.
+ * <p>
+ * The conversion is worked out once, when the converter is created, and
+ * reduced where possible to one of a few closed forms:
+ * <ul>
+ * <li>the identity,</li>
+ * <li>a linear conversion <code>out = scale * in + offset</code>,</li>
+ * <li>a linear conversion into the reference level of a
+ * {@link LogarithmicUnit} followed by the logarithm, or</li>
+ * <li>the exponential out of a logarithmic unit followed by a linear
+ * conversion from its reference level.</li>
+ * </ul>
+ * Anything else falls back to {@link Unit#toThis(double[], Unit, boolean)}.
+ * The bulk methods convert whole arrays in a single pass, in place if
+ * requested, so repeated conversions between the same pair of units avoid
+ * the unit arithmetic and temporary arrays of <code>toThis()</code>.
+ * <p>
+ * Converters are immutable and thread-safe. {@link #getInstance(Unit, Unit)}
+ * memoizes them by pair of units.
+ */
+public final class UnitConverter {
+
+    /** Maximum number of memoized converters. */
+    private static final int                                  MAX_CACHED = 512;
+
+    private static final ConcurrentHashMap<Key, UnitConverter> cache      =
+        new ConcurrentHashMap<Key, UnitConverter>();
+
+    private static final int                                  IDENTITY   = 0;
+    private static final int                                  LINEAR     = 1;
+    private static final int                                  LOG        = 2;
+    private static final int                                  EXP        = 3;
+    private static final int                                  GENERAL    = 4;
+
+    private final Unit                                        from;
+    private final Unit                                        to;
+    private final int                                         kind;
+    private final double                                      scale;
+    private final double                                      offset;
+    private final double                                      lnBase;
+
+    private static final class Key {
+        private final Unit from;
+        private final Unit to;
+
+        Key(final Unit from, final Unit to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) obj;
+            return (from == null
+                    ? that.from == null
+                    : from.equals(that.from))
+                    && (to == null
+                            ? that.to == null
+                            : to.equals(that.to));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (from == null
+                    ? 0
+                    : from.hashCode()) + (to == null
+                    ? 0
+                    : to.hashCode());
+        }
+    }
+
+    private UnitConverter(final Unit from, final Unit to)
+            throws UnitException {
+        if (!Unit.canConvert(from, to)) {
+            throw new UnitException("UnitConverter: can't convert from "
+                    + from + " to " + to);
+        }
+        this.from = from;
+        this.to = to;
+        double[] lin = Unit.getLinearConversion(from, to);
+        if (lin != null) {
+            scale = lin[0];
+            offset = lin[1];
+            kind = (scale == 1.0 && offset == 0.0)
+                    ? IDENTITY
+                    : LINEAR;
+            lnBase = 1.0;
+            return;
+        }
+        if (to instanceof LogarithmicUnit
+                && !(from instanceof LogarithmicUnit)) {
+            final LogarithmicUnit log = (LogarithmicUnit) to;
+            lin = Unit.getLinearConversion(from, log.getReferenceLevel());
+            if (lin != null) {
+                scale = lin[0];
+                offset = lin[1];
+                lnBase = Math.log(log.getBase());
+                kind = LOG;
+                return;
+            }
+        }
+        else if (from instanceof LogarithmicUnit
+                && !(to instanceof LogarithmicUnit)) {
+            final LogarithmicUnit log = (LogarithmicUnit) from;
+            lin = Unit.getLinearConversion(log.getReferenceLevel(), to);
+            if (lin != null) {
+                scale = lin[0];
+                offset = lin[1];
+                lnBase = Math.log(log.getBase());
+                kind = EXP;
+                return;
+            }
+        }
+        scale = 1.0;
+        offset = 0.0;
+        lnBase = 1.0;
+        kind = GENERAL;
+    }
+
+    /**
+     * Returns a converter of values from one unit to another.
+     *
+     * @param from
+     *            The unit of the input values; may be <code>null</code>.
+     * @param to
+     *            The unit of the output values; may be <code>null</code>.
+     * @return A converter from <code>from</code> to <code>to</code>.
+     * @throws UnitException
+     *             if the units are not convertible.
+     */
+    public static UnitConverter getInstance(final Unit from, final Unit to)
+            throws UnitException {
+        final Key key = new Key(from, to);
+        UnitConverter converter = cache.get(key);
+        if (converter == null) {
+            converter = new UnitConverter(from, to);
+            if (cache.size() >= MAX_CACHED) {
+                cache.clear();
+            }
+            cache.put(key, converter);
+        }
+        return converter;
+    }
+
+    /**
+     * Removes all memoized converters.
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * @return The unit of the input values.
+     */
+    public Unit getFromUnit() {
+        return from;
+    }
+
+    /**
+     * @return The unit of the output values.
+     */
+    public Unit getToUnit() {
+        return to;
+    }
+
+    /**
+     * @return <code>true</code> if values are unchanged by this conversion.
+     */
+    public boolean isIdentity() {
+        return kind == IDENTITY;
+    }
+
+    /**
+     * @return <code>true</code> if this conversion is
+     *         <code>out = getScale() * in + getOffset()</code>.
+     */
+    public boolean isLinear() {
+        return kind == IDENTITY || kind == LINEAR;
+    }
+
+    /**
+     * @return The scale of a linear conversion, or of the linear part of a
+     *         logarithmic conversion.
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * @return The offset of a linear conversion, or of the linear part of a
+     *         logarithmic conversion.
+     */
+    public double getOffset() {
+        return offset;
+    }
+
+    /**
+     * Converts a single value.
+     *
+     * @param value
+     *            The value in the input unit.
+     * @return The value in the output unit.
+     * @throws UnitException
+     *             if the conversion fails.
+     */
+    public double convert(final double value) throws UnitException {
+        switch (kind) {
+        case IDENTITY:
+            return value;
+        case LINEAR:
+            return scale * value + offset;
+        case LOG:
+            return Math.log(scale * value + offset) / lnBase;
+        case EXP:
+            return scale * Math.exp(value * lnBase) + offset;
+        default:
+            return to.toThis(value, from);
+        }
+    }
+
+    /**
+     * Converts an array of values.
+     *
+     * @param values
+     *            The values in the input unit.
+     * @param copy
+     *            If <code>true</code>, the values are converted into a new
+     *            array; otherwise they are converted in place.
+     * @return The values in the output unit.
+     * @throws UnitException
+     *             if the conversion fails.
+     */
+    public double[] convert(final double[] values, final boolean copy)
+            throws UnitException {
+        if (kind == GENERAL) {
+            return to.toThis(values, from, copy);
+        }
+        final double[] out = copy
+                ? new double[values.length]
+                : values;
+        final int n = values.length;
+        switch (kind) {
+        case IDENTITY:
+            if (out != values) {
+                System.arraycopy(values, 0, out, 0, n);
+            }
+            break;
+        case LINEAR:
+            for (int i = 0; i < n; i++) {
+                out[i] = scale * values[i] + offset;
+            }
+            break;
+        case LOG:
+            for (int i = 0; i < n; i++) {
+                out[i] = Math.log(scale * values[i] + offset) / lnBase;
+            }
+            break;
+        case EXP:
+            for (int i = 0; i < n; i++) {
+                out[i] = scale * Math.exp(values[i] * lnBase) + offset;
+            }
+            break;
+        }
+        return out;
+    }
+
+    /**
+     * Converts an array of values.
+     *
+     * @param values
+     *            The values in the input unit.
+     * @param copy
+     *            If <code>true</code>, the values are converted into a new
+     *            array; otherwise they are converted in place.
+     * @return The values in the output unit.
+     * @throws UnitException
+     *             if the conversion fails.
+     */
+    public float[] convert(final float[] values, final boolean copy)
+            throws UnitException {
+        if (kind == GENERAL) {
+            return to.toThis(values, from, copy);
+        }
+        final float[] out = copy
+                ? new float[values.length]
+                : values;
+        final int n = values.length;
+        switch (kind) {
+        case IDENTITY:
+            if (out != values) {
+                System.arraycopy(values, 0, out, 0, n);
+            }
+            break;
+        case LINEAR:
+            for (int i = 0; i < n; i++) {
+                out[i] = (float) (scale * values[i] + offset);
+            }
+            break;
+        case LOG:
+            for (int i = 0; i < n; i++) {
+                out[i] = (float) (Math.log(scale * values[i] + offset) / lnBase);
+            }
+            break;
+        case EXP:
+            for (int i = 0; i < n; i++) {
+                out[i] = (float) (scale * Math.exp(values[i] * lnBase) + offset);
+            }
+            break;
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "UnitConverter[" + from + " -> " + to + "]";
+    }
+}
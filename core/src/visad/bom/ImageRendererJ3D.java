@@ -26,11 +26,14 @@ MA 02111-1307, USA
 
 package visad.bom;
 
+import java.awt.Component;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.Enumeration;
 
 import javax.media.j3d.BranchGroup;
 import javax.swing.BoxLayout;
@@ -41,6 +44,8 @@ import visad.AnimationControl;
 import visad.BadMappingException;
 import visad.CoordinateSystem;
 import visad.CachingCoordinateSystem;
+import visad.ControlEvent;
+import visad.ControlListener;
 import visad.InverseLinearScaledCS;
 import visad.Data;
 import visad.DataDisplayLink;
@@ -56,6 +61,7 @@ import visad.FieldImpl;
 import visad.FlatField;
 import visad.FunctionType;
 import visad.Gridded1DDoubleSet;
+import visad.GriddedSet;
 import visad.MathType;
 import visad.RealTupleType;
 import visad.RealType;
@@ -71,10 +77,14 @@ import visad.VisADException;
 import visad.data.netcdf.Plain;
 import visad.java3d.DefaultRendererJ3D;
 import visad.java3d.DisplayImplJ3D;
+import visad.java3d.DisplayRendererJ3D;
+import visad.java3d.ImageTileCache;
+import visad.java3d.MouseBehaviorJ3D;
 import visad.java3d.ShadowTypeJ3D;
 import visad.java3d.VisADBranchGroup;
 import visad.java3d.VisADImageNode;
 import visad.util.Delay;
+import visad.util.ImagePyramid;
 
 /**
    ImageRendererJ3D is the VisAD class for fast loading of images
@@ -369,6 +379,19 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
 
   private boolean lastByRef = false;
 
+  private ImageTileCache tileCache = null;
+
+  // level-of-detail state for large single images
+  private boolean levelOfDetail = false;
+  private ImagePyramid pyramid = null;
+  private int lodLevel = -1;         // pyramid level of the last doTransform
+  private int[] lodRegion = null;    // {x0, y0, w, h} of that level shown
+  private volatile boolean lodChanged = false;
+  private ControlListener lodListener = null;
+
+  // canvas size assumed when the display has no on-screen component
+  private static final int LOD_DEFAULT_CANVAS = 1024;
+
 
   public static boolean isByRefUsable(DataDisplayLink link, ShadowType shadow) throws VisADException, RemoteException {
         ShadowFunctionOrSetType shadowType = (ShadowFunctionOrSetType) shadow.getAdaptedShadowType();
@@ -504,6 +527,216 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
     return suggestedBufImgType;
   }
 
+  /**
+   * Limit the memory used for the textures of an image sequence.
+   * When maxBytes &gt; 0, only the first image is rendered during
+   * doTransform(); the other frames are rendered in the background
+   * as the animation approaches them, kept in a cache keyed by
+   * image, color table and ScalarMap range, and evicted furthest
+   * from the current frame first once maxBytes is exceeded.
+   * Only applies to the by-reference rendering path.
+   *
+   * @param maxBytes byte budget for cached textures; 0 (the default)
+   *                 renders all frames up front
+   */
+  public void setTextureCacheSize(long maxBytes) {
+    if (maxBytes <= 0) {
+      if (tileCache != null) tileCache.clear();
+      tileCache = null;
+    }
+    else if (tileCache == null) {
+      tileCache = new ImageTileCache(maxBytes);
+    }
+    else {
+      tileCache.setMaxBytes(maxBytes);
+    }
+  }
+
+  public long getTextureCacheSize() {
+    return (tileCache == null) ? 0 : tileCache.getMaxBytes();
+  }
+
+  ImageTileCache getTileCache() {
+    return tileCache;
+  }
+
+  /**
+   * Toggle level-of-detail rendering of large single images.  When on,
+   * an image FlatField larger than the display is replaced during
+   * doTransform() by the level of a lazily built ImagePyramid whose
+   * resolution matches the screen, given the ProjectionControl scale and
+   * the display size.  When zoomed in, only the visible region (plus a
+   * margin) of the chosen level is rendered, down to full resolution;
+   * the image is re-transformed when zooming or panning needs another
+   * level or region.  Image sequences are not affected.
+   *
+   * @param lod true to enable level-of-detail rendering
+   */
+  public void setLevelOfDetail(boolean lod) {
+    levelOfDetail = lod;
+    if (!lod) {
+      pyramid = null;
+      lodLevel = -1;
+      lodRegion = null;
+    }
+  }
+
+  public boolean getLevelOfDetail() {
+    return levelOfDetail;
+  }
+
+  /**
+   * @return true if a level-of-detail change requires a re-transform
+   */
+  public boolean checkAction() {
+    return lodChanged || super.checkAction();
+  }
+
+  public boolean get_any_transform_control() {
+    return lodChanged || super.get_any_transform_control();
+  }
+
+  // replace a large image by the pyramid level (and region) matching the view
+  private Data selectLevelOfDetail(FlatField image) throws VisADException {
+    lodChanged = false;
+    if (pyramid == null || pyramid.getImage() != image) {
+      try {
+        pyramid = new ImagePyramid(image);
+      }
+      catch (VisADException e) {
+        pyramid = null;
+        return image;
+      }
+      lodLevel = -1;
+      lodRegion = null;
+    }
+    if (pyramid.getNumLevels() == 1) return image;
+    addLevelOfDetailListener();
+
+    double[] view = getImageView(image);
+    int level = pyramid.chooseLevel(view[0], view[1]);
+    int lw = pyramid.getWidth(level);
+    int lh = pyramid.getHeight(level);
+
+    // visible region with a margin of half the visible size on each side
+    double mx = 0.5 * (view[3] - view[2]);
+    double my = 0.5 * (view[5] - view[4]);
+    int x0 = (int) Math.floor(Math.max(0.0, view[2] - mx) * lw);
+    int x1 = (int) Math.ceil(Math.min(1.0, view[3] + mx) * lw);
+    int y0 = (int) Math.floor(Math.max(0.0, view[4] - my) * lh);
+    int y1 = (int) Math.ceil(Math.min(1.0, view[5] + my) * lh);
+    if ((double) (x1 - x0) * (y1 - y0) > 0.75 * lw * lh) {
+      x0 = 0;
+      y0 = 0;
+      x1 = lw;
+      y1 = lh;
+    }
+    lodLevel = level;
+    lodRegion = new int[] {x0, y0, x1 - x0, y1 - y0};
+    return pyramid.getRegion(level, x0, y0, x1 - x0, y1 - y0);
+  }
+
+  private void addLevelOfDetailListener() {
+    if (lodListener != null) return;
+    lodListener = new ControlListener() {
+      public void controlChanged(ControlEvent e)
+             throws VisADException, RemoteException {
+        ImagePyramid p = pyramid;
+        int[] region = lodRegion;
+        DisplayImpl display = getDisplay();
+        if (p == null || region == null || display == null || lodChanged) {
+          return;
+        }
+        double[] view = getImageView(p.getImage());
+        int level = p.chooseLevel(view[0], view[1]);
+        int lw = p.getWidth(level);
+        int lh = p.getHeight(level);
+        boolean inside = view[2] * lw >= region[0] &&
+                         view[3] * lw <= region[0] + region[2] &&
+                         view[4] * lh >= region[1] &&
+                         view[5] * lh <= region[1] + region[3];
+        if (level != lodLevel || !inside) {
+          lodChanged = true;
+          display.controlChanged();
+        }
+      }
+    };
+    getDisplay().getProjectionControl().addControlListener(lodListener);
+    getProjectionControlListeners().add(lodListener);
+  }
+
+  /**
+   * Estimate how the image appears in the current view.
+   * @return {screen pixels covered by the whole image along the first
+   *         and second domain axes, followed by the visible fraction
+   *         [lo, hi] of the image along the first then the second axis}
+   */
+  private double[] getImageView(FlatField image) throws VisADException {
+    DisplayImpl display = getDisplay();
+    int cw = 0;
+    int ch = 0;
+    Component comp = display.getComponent();
+    if (comp == null && getDisplayRenderer() instanceof DisplayRendererJ3D) {
+      comp = ((DisplayRendererJ3D) getDisplayRenderer()).getCanvas();
+    }
+    if (comp != null) {
+      cw = comp.getWidth();
+      ch = comp.getHeight();
+    }
+    if (cw <= 0 || ch <= 0) {
+      cw = LOD_DEFAULT_CANVAS;
+      ch = LOD_DEFAULT_CANVAS;
+    }
+
+    double[] rot = new double[3];
+    double[] scale = new double[1];
+    double[] trans = new double[3];
+    MouseBehaviorJ3D.unmake_matrix(rot, scale, trans,
+                                   display.getProjectionControl().getMatrix());
+    double s = (scale[0] > 0.0) ? scale[0] : 1.0;
+    // the (-1, 1) display box fills the smaller canvas dimension at scale 1
+    double ppu = 0.5 * Math.min(cw, ch) * s;
+    double[] center = {-trans[0] / s, -trans[1] / s};
+    double[] half = {0.5 * cw / ppu, 0.5 * ch / ppu};
+
+    // display coordinates of the first and last grid points of each axis
+    GriddedSet domain = (GriddedSet) image.getDomainSet();
+    int[] lengths = domain.getLengths();
+    float[][] corners = domain.gridToValue(new float[][]
+      {{0f, lengths[0] - 1f}, {0f, lengths[1] - 1f}});
+    RealTupleType dtype = ((FunctionType) image.getType()).getDomain();
+    double[][] disp = {{-1.0, 1.0}, {-1.0, 1.0}};
+    int[] axis = {0, 1};
+    Enumeration maps = getLinks()[0].getSelectedMapVector().elements();
+    while (maps.hasMoreElements()) {
+      ScalarMap map = (ScalarMap) maps.nextElement();
+      DisplayRealType dreal = map.getDisplayScalar();
+      int a = Display.XAxis.equals(dreal) ? 0 : (Display.YAxis.equals(dreal) ? 1 : -1);
+      if (a < 0) continue;
+      for (int k=0; k<2; k++) {
+        if (map.getScalar().equals(dtype.getComponent(k))) {
+          double[] so = new double[2];
+          map.getScale(so, new double[2], new double[2]);
+          axis[k] = a;
+          disp[k][0] = so[0] * corners[k][0] + so[1];
+          disp[k][1] = so[0] * corners[k][1] + so[1];
+        }
+      }
+    }
+
+    double[] view = new double[6];
+    for (int k=0; k<2; k++) {
+      double extent = disp[k][1] - disp[k][0];
+      if (extent == 0.0 || extent != extent) extent = 2.0;
+      view[k] = Math.abs(extent) * ppu;
+      double f0 = (center[axis[k]] - half[axis[k]] - disp[k][0]) / extent;
+      double f1 = (center[axis[k]] + half[axis[k]] - disp[k][0]) / extent;
+      view[2 + 2*k] = Math.max(0.0, Math.min(1.0, Math.min(f0, f1)));
+      view[3 + 2*k] = Math.max(0.0, Math.min(1.0, Math.max(f0, f1)));
+    }
+    return view;
+  }
+
   public void setImageNode(VisADImageNode node) {
     this.imagesNode = node;
   }
@@ -537,6 +770,9 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
 
   public void clearScene() {
     vbranch = null;
+    pyramid = null;
+    lodListener = null; // removed from the ProjectionControl by super
+    lodRegion = null;
     super.clearScene();
   }
 
@@ -617,6 +853,17 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
       if (!isImageType(mtype)) {
         throw new BadMappingException("must be image or image sequence");
       }
+      // decide before selectLevelOfDetail, which clears lodChanged
+      boolean action = checkAction();
+      if (levelOfDetail && data instanceof FlatField) {
+        int oldLevel = lodLevel;
+        int[] oldRegion = lodRegion;
+        data = selectLevelOfDetail((FlatField) data);
+        if (lodLevel != oldLevel ||
+            !Arrays.equals(lodRegion, oldRegion)) {
+          action = true;
+        }
+      }
       link.start_time = System.currentTimeMillis();
       link.time_flag = false;
       vbranch = null;
@@ -624,7 +871,7 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
 	long t1 = System.currentTimeMillis();
       try {
 	if (type instanceof ShadowImageByRefFunctionTypeJ3D) { //GEOMETRY/COLORBYTE REUSE LOGIC Only for ByRef for Time being
-		if (checkAction()) { //This generally decides whether at all retransformation is required or not.
+		if (action) { //This generally decides whether at all retransformation is required or not.
 	        	type.doTransform(branch, data, valueArray,
                          	link.getDefaultValues(), this);
 		}
@@ -95,6 +95,7 @@ import visad.java3d.VisADImageTile;
 import visad.java3d.RendererJ3D;
 import visad.java3d.DisplayImplJ3D;
 import visad.java3d.GraphicsModeControlJ3D;
+import visad.java3d.ImageTileCache;
 
 /**
    The ShadowImageFunctionTypeJ3D class shadows the FunctionType class for
@@ -133,8 +134,12 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
   boolean regen_colbytes = false;
   boolean regen_geom = false;
   boolean apply_alpha = false;
+  boolean samples_changed = false; //regen_colbytes only because samples may have changed
   //REUSE GEOMETRY/COLORBYTE VARIABLES (ENDS HERE)
 
+  //TEXTURE TILE CACHE: true if frames > 0 of an animation come from the renderer's ImageTileCache
+  private boolean cacheFrames = false;
+
   public ShadowImageByRefFunctionTypeJ3D(MathType t, DataDisplayLink link, ShadowType parent) 
          throws VisADException, RemoteException {
     super(t, link, parent);
@@ -362,6 +367,7 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
                                                 regen_colbytes = true;
                                         } else { //Assuming that ff.setSamples() has been called.
                                                 regen_colbytes = true;
+                                                samples_changed = true;
                                         }
 				}
 			}
@@ -377,7 +383,8 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
     //REUSE GEOMETRY/COLORBYTE UTILITY METHODS (ENDS HERE)
 
   // transform data into a depiction under group
-  public boolean doTransform(Object group, Data data, float[] value_array,
+  // synchronized since ImageTileCache renders frames on another thread
+  public synchronized boolean doTransform(Object group, Data data, float[] value_array,
                              float[] default_values, DataRenderer renderer)
          throws VisADException, RemoteException {
 	
@@ -594,6 +601,7 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
 	regen_colbytes = false;
   	regen_geom = false;
   	apply_alpha = false; 
+	samples_changed = false;
 	initRegenFlags((ImageRendererJ3D)renderer, adaptedShadowType, constant_alpha, cmap, cmaps, data, display, default_values, value_array, valueToScalar, valueArrayLength, link, curved_size, hasAlpha);
 	if(!reuseImages) {
 		regen_geom = true;
@@ -677,6 +685,13 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
     CoordinateSystem dataCoordinateSystem = null;
 
 
+    ImageTileCache tileCache = imgRenderer.getTileCache();
+    cacheFrames = (tileCache != null && null != animControl && numImages > 1);
+    imgNode.setTileCache(null); //install cache only once frame 0 is ready (below)
+    if (samples_changed && tileCache != null) {
+	tileCache.clear();
+    }
+
     if (null != animControl) {
 	Switch swit = new SwitchNotify(imgNode, numImages);  
       	((AVControlJ3D) animControl).addPair((Switch) swit, domain_set, renderer);
@@ -947,7 +962,55 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
       }*/
 
 
-      for (int k=1; k<numImages; k++) {
+      if (cacheFrames) { //TEXTURE TILE CACHE: frames > 0 are rendered on demand
+        final Field field = (Field) data;
+        final Object colorKey = makeColorKey(cmap, cmaps, imageType, color_length, constant_alpha);
+        final Set first_domain = imgFlatField.getDomainSet();
+        final CoordinateSystem first_dcs = dataCoordinateSystem;
+        final ScalarMap f_cmap = cmap;
+        final ScalarMap[] f_cmaps = cmaps;
+        final float f_alpha = constant_alpha;
+        final ShadowRealType[] f_range = RangeComponents;
+        final int f_color_length = color_length;
+        final int f_domain_length = domain_length;
+        final int[] f_permute = permute;
+        final int f_width = data_width;
+        final int f_height = data_height;
+        final int f_imageType = imageType;
+        final VisADImageNode f_node = imgNode;
+        final DataRenderer f_renderer = renderer;
+
+        ImageTileCache.FrameRenderer frameRenderer = new ImageTileCache.FrameRenderer() {
+          public ImageTileCache.Key getKey(int index) {
+            return new ImageTileCache.Key(field, index, colorKey);
+          }
+          public BufferedImage[] renderFrame(int index) throws VisADException, RemoteException {
+            return makeFrameImages(field, index, first_domain, first_dcs, f_cmap, f_cmaps, f_alpha,
+                                   f_range, f_color_length, f_domain_length, f_permute,
+                                   f_width, f_height, f_imageType, f_node);
+          }
+          public void renderFailed(int index, Exception error) {
+            // shown by the DisplayRenderer like a failure of doTransform
+            f_renderer.addException(error);
+          }
+        };
+
+        tileCache.setRenderer(imgNode, frameRenderer, numImages);
+        int ntiles = imgNode.getNumTiles();
+        BufferedImage[] frame0 = new BufferedImage[ntiles];
+        for (int t=0; t<ntiles; t++) {
+          VisADImageTile tile = imgNode.getTile(t);
+          frame0[t] = tile.getImage(0);
+          for (int k=1; k<numImages; k++) {
+            tile.setImage(k, null);
+          }
+        }
+        tileCache.put(0, frame0);
+        imgNode.setTileCache(tileCache);
+        imgNode.setCurrent(animControl.getCurrent());
+      }
+
+      for (int k=1; k<numImages && !cacheFrames; k++) {
         FlatField ff = (FlatField) ((Field)data).getSample(k);
         CoordinateSystem dcs = ff.getDomainCoordinateSystem();
         GriddedSet domSet = (GriddedSet) ff.getDomainSet();
@@ -1040,7 +1103,7 @@ public void makeColorBytesDriver(Data imgFlatField, ScalarMap cmap, ScalarMap[]
         int texture_width = textureWidth(tile_width);
         int texture_height = textureHeight(tile_height);
 
-       if (!reuseImages) {
+       if (!reuseImages || cacheFrames) { //cached images must never be overwritten in place
          image = createImageByRef(texture_width, texture_height, imageType);
          tile.setImage(image_index, image);
        } else {
@@ -2222,6 +2285,72 @@ throws VisADException, RemoteException {
 
   }
 
+  //TEXTURE TILE CACHE: key for everything besides the FlatField that determines the colour bytes
+  private Object makeColorKey(ScalarMap cmap, ScalarMap[] cmaps, int imageType, int color_length,
+                              float constant_alpha) {
+    ScalarMap[] maps = (cmap != null) ? new ScalarMap[] {cmap} : cmaps;
+    long[] longs = new long[3 + 2 * maps.length];
+    double[] doubles = new double[2 * maps.length];
+    longs[0] = imageType;
+    longs[1] = color_length;
+    longs[2] = Float.floatToIntBits(constant_alpha);
+    for (int i=0; i<maps.length; i++) {
+      Object control = maps[i].getControl();
+      if (control instanceof BaseColorControl) {
+        longs[3 + 2*i] = System.identityHashCode(control);
+        longs[4 + 2*i] = ((BaseColorControl) control).getTableVersion();
+      }
+      double[] range = maps[i].getRange();
+      doubles[2*i] = range[0];
+      doubles[2*i + 1] = range[1];
+    }
+    return new ImageTileCache.ColorKey(longs, doubles);
+  }
+
+  //TEXTURE TILE CACHE: render the tile images of frame k of an animation into new BufferedImages.
+  //Called from the ImageTileCache thread, hence synchronized with doTransform.
+  private synchronized BufferedImage[] makeFrameImages(Field field, int k, Set first_domain,
+              CoordinateSystem dataCoordinateSystem, ScalarMap cmap, ScalarMap[] cmaps,
+              float constant_alpha, ShadowRealType[] RangeComponents, int color_length,
+              int domain_length, int[] permute, int data_width, int data_height, int imageType,
+              VisADImageNode node) throws VisADException, RemoteException {
+    FlatField ff = (FlatField) field.getSample(k);
+    CoordinateSystem dcs = ff.getDomainCoordinateSystem();
+    int[] lens = ((GriddedSet) ff.getDomainSet()).getLengths();
+    if ( (lens[0] != data_width || lens[1] != data_height) ||
+         (dcs != null && !dcs.equals(dataCoordinateSystem))) {
+      ff = (FlatField) ff.resample(first_domain, Data.NEAREST_NEIGHBOR, Data.NO_ERRORS);
+    }
+
+    int ntiles = node.getNumTiles();
+    BufferedImage[] images = new BufferedImage[ntiles];
+    first_time = true;
+    try {
+      for (int t=0; t<ntiles; t++) {
+        VisADImageTile tile = node.getTile(t);
+        int texture_width = textureWidth(tile.width);
+        int texture_height = textureHeight(tile.height);
+        images[t] = createImageByRef(texture_width, texture_height, imageType);
+        byte[] byteData = ((DataBufferByte) images[t].getRaster().getDataBuffer()).getData();
+        makeColorBytes(ff, cmap, cmaps, constant_alpha, RangeComponents, color_length, domain_length,
+                       permute, byteData, data_width, data_height, tile.width, tile.height,
+                       tile.xStart, tile.yStart, texture_width, texture_height);
+        first_time = false;
+      }
+    }
+    finally {
+      first_time = true;
+      scaled_Bytes = null;
+      scaled_Floats = null;
+      fast_table = null;
+      rset_scalarmap_lookup = null;
+      itable = null;
+      threeD_itable = null;
+      color_values = null;
+    }
+    return images;
+  }
+
   //public CachedBufferedByteImage createImageByRef(final int texture_width, final int texture_height, final int imageType) {
   public BufferedImage createImageByRef(final int texture_width, final int texture_height, final int imageType) {
       return new BufferedImage(texture_width, texture_height, imageType);
@@ -52,6 +52,7 @@ import java.awt.image.BufferedImage;
 public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
 
   private static final int MISSING1 = Byte.MIN_VALUE;      // least byte
+  private static final int MISSING2 = Short.MIN_VALUE;     // least short
 
   public ShadowImageFunctionTypeJ3D(MathType t, DataDisplayLink link,
                                 ShadowType parent)
@@ -233,12 +234,15 @@ public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
         BaseColorControl control = (BaseColorControl) cmap.getControl();
         float[][] table = control.getTable();
         byte[][] bytes = null;
+        short[][] shorts = null;
         Set rset = null;
         boolean is_default_unit = false;
         if (data instanceof FlatField) {
           // for fast byte color lookup, need:
           // 1. range data values are packed in bytes
           bytes = ((FlatField) data).grabBytes();
+          //    or shorts
+          shorts = ((FlatField) data).grabShorts();
           // 2. range set is Linear1DSet
           Set[] rsets = ((FlatField) data). getRangeSets();
           if (rsets != null) rset = rsets[0];
@@ -344,6 +348,43 @@ public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
             }
             bytes = null; // take out the garbage
           }
+          else if (shorts != null && shorts[0] != null && is_default_unit &&
+              rset != null && rset instanceof Linear1DSet) {
+            // as for bytes, for FlatField with shorts
+            double first = ((Linear1DSet) rset).getFirst();
+            double step = ((Linear1DSet) rset).getStep();
+            double[] so = new double[2];
+            double[] da = new double[2];
+            double[] di = new double[2];
+            cmap.getScale(so, da, di);
+            double scale = so[0];
+            double offset = so[1];
+            float mult = (float) (table_scale * scale * step);
+            float add = (float) (table_scale * (offset + scale * first));
+
+            // build table for fast color lookup; missing values are
+            // left transparent black, as by the medium speed way
+            byte[][] fast_table = new byte[rset.getLength() + 1][];
+            fast_table[0] = new byte[4];
+            for (int j=1; j<fast_table.length; j++) {
+              int k = (int) (add + mult * (j - 1));
+              // clip to table
+              int ndx = k < 0 ? 0 : (k > tblEnd ? tblEnd : k);
+              fast_table[j] = itable[ndx];
+            }
+
+            // now do fast lookup from short values to color bytes
+            color_bytes = new byte[4][domain_length];
+            short[] shorts0 = shorts[0];
+            for (int i=0; i<domain_length; i++) {
+              byte[] color = fast_table[((int) shorts0[i]) - MISSING2];
+              color_bytes[0][i] = color[0];
+              color_bytes[1][i] = color[1];
+              color_bytes[2][i] = color[2];
+              color_bytes[3][i] = color[3];
+            }
+            shorts = null; // take out the garbage
+          }
           else {
             // medium speed way to build texture colors
             bytes = null; // take out the garbage
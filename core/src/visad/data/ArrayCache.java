@@ -1,5 +1,5 @@
 //
-// CachingCoordinateSystem.java
+// ArrayCache.java
 //
 
 /*
@@ -26,18 +26,45 @@ MA 02111-1307, USA
 
 package visad.data;
 
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import visad.util.Tracer;
 import visad.util.Util;
 
 /**
- * This class is used by the CachingCoordinateSystem to do the actual caching mapping one array to another one
+ * This class is used by the CachingCoordinateSystem to do the actual caching
+ * mapping one array to another one.
+ * <p>
+ * Any number of input/output pairs are kept, up to a byte budget, and the
+ * least recently used pairs are dropped first.  An input made of the sample
+ * arrays of SampledSets is keyed on their version tags (see {@link
+ * visad.SampledSet#getSampleVersion(float[])}), so a hit needs neither a
+ * hash nor a comparison of the values.  Other inputs are found through a
+ * hash of a fixed number of samples of the input, so a lookup does not
+ * depend on how many entries are cached, and a candidate entry is
+ * confirmed by a full comparison of the input.  Setting the system property
+ * visad.data.arraycache.trustidentity to true skips the comparison when the
+ * input is made of the very same arrays the entry was computed from; that
+ * is only safe if no caller refills its arrays in place (scratch arrays such
+ * as those of TransformBuffers are refilled), since the cached output would
+ * then be returned for the old values.
+ * <p>
+ * All methods may be called from several threads at once.
  * @version $Revision: 1.5 $ $Date: 2010-01-05 21:02:43 $
  */
 public class ArrayCache {
 
+  /** number of samples per input component used for the hash */
+  private static final int HASH_SAMPLES = 64;
+
+  /** Tracer probes counting cache hits and misses */
+  private static final int TRACE_HIT = Tracer.register("ArrayCache.hit");
+  private static final int TRACE_MISS = Tracer.register("ArrayCache.miss");
+
   /** Do we cache */
   private boolean enabled =
     Boolean.parseBoolean(System.getProperty("visad.data.arraycache.enabled",
@@ -54,17 +81,30 @@ public class ArrayCache {
     Integer.parseInt(System.getProperty("visad.data.arraycache.upperthreshold",
                                         "1000000"));
 
+  /** maximum number of bytes of inputs and outputs to keep */
+  private long maxBytes =
+    Long.parseLong(System.getProperty("visad.data.arraycache.maxbytes",
+                                      "67108864"));
+
+  /** skip the full comparison when the input arrays are the cached ones;
+      off by default since arrays may be refilled in place */
+  private boolean trustIdentity =
+    Boolean.parseBoolean(System.getProperty("visad.data.arraycache.trustidentity",
+                                            "false"));
 
-  private boolean useDataCacheManager = 
+  private boolean useDataCacheManager =
       Boolean.parseBoolean(System.getProperty("visad.data.arraycache.usedatacachemanager",
                                               "false"));
 
+  /** entries in least recently used order */
+  private final LinkedHashMap<EntryKey, Entry> map =
+    new LinkedHashMap<EntryKey, Entry>(16, 0.75f, true);
 
-
-  private Hashtable<String,Integer>  misses = new Hashtable<String,Integer>();
-
-
-
+  private long totalBytes = 0;
+  private long hits = 0;
+  private long identityHits = 0;
+  private long misses = 0;
+  private long evictions = 0;
 
 
   /**
@@ -82,9 +122,26 @@ public class ArrayCache {
     this.enabled = enabled;
   }
 
-   private String getKey(String key, int size) {
-       return key +"_" + size;
-   }
+
+  /**
+   * Set the maximum number of bytes of inputs and outputs to keep
+   *
+   * @param maxBytes the byte budget
+   */
+  public void setMaxBytes(long maxBytes) {
+    synchronized (map) {
+      this.maxBytes = maxBytes;
+      evict();
+    }
+  }
+
+  /**
+   * @return the maximum number of bytes of inputs and outputs to keep
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
 
   /**
    * Get the converted value for the specified key and input pairs
@@ -94,39 +151,32 @@ public class ArrayCache {
    *
    * @return value for supplied key
    */
-   
+
   public FloatResult get(String key, float[][] input) {
     if (!shouldHandle(input)) {
         return new FloatResult(false);
     }
-    return getInner(key, input);
-  }
-
-
-   private synchronized FloatResult getInner(String key, float[][] input) {
-    key = getKey(key, input[0].length);
-    float[][][] pair = getFloatValue(key);
-    if (pair == null) {
-      return handleCacheMiss(key, input);
-    }
-
-    float[][] lastInput = pair[0];
-    float[][] lastOutput = pair[1];
-    if (lastInput.length != input.length) return null;
-    for (int i = 0; i < input.length; i++) {
-      if (!Arrays.equals(input[i], lastInput[i])) {
-          return handleCacheMiss(key, input);
+    long[] versions = sampleVersions(input);
+    EntryKey ekey = (versions != null)
+      ? new EntryKey(key, input.length, input[0].length, versions)
+      : new EntryKey(key, input.length, input[0].length, sampleHash(input));
+    Entry entry = lookup(ekey);
+    if (entry != null) {
+      float[][][] pair = getFloatValue(entry);
+      if (pair != null &&
+          (versions != null ? versionHit() : matches(entry, input, pair[0]))) {
+        //?? should we clone the output
+        return new FloatResult(Util.clone(pair[1]));
       }
     }
-    misses.remove(key);
-    //?? should we clone the output
-    return new FloatResult(Util.clone(lastOutput));
+    miss();
+    FloatResult result = new FloatResult(true);
+    result.source = input;
+    result.versions = versions;
+    return result;
   }
 
 
-
-
-
   /**
    * Get the converted value for the specified key and input pairs
    *
@@ -135,69 +185,27 @@ public class ArrayCache {
    *
    * @return value for the supplied key
    */
-   
+
   public DoubleResult get(String key, double[][] input) {
-      if (!shouldHandle(input)) {
-         return new DoubleResult(false);
+    if (!shouldHandle(input)) {
+      return new DoubleResult(false);
     }
-      return getInner(key, input);
-  }
-
-
-
- private synchronized  DoubleResult getInner(String key, double[][] input) {
-
-    key = getKey(key, input[0].length);
-    double[][][] pair = getDoubleValue(key);
-    if (pair == null) {
-        return handleCacheMiss(key, input);
-    }        
-
-    double[][] lastInput = pair[0];
-    double[][] lastOutput = pair[1];
-    if (lastInput.length != input.length) return null;
-    for (int i = 0; i < input.length; i++) {
-       if (!Arrays.equals(input[i], lastInput[i])) {
-         return handleCacheMiss(key, input);
+    EntryKey ekey = new EntryKey(key, input.length, input[0].length,
+                                 sampleHash(input));
+    Entry entry = lookup(ekey);
+    if (entry != null) {
+      double[][][] pair = getDoubleValue(entry);
+      if (pair != null && matches(entry, input, pair[0])) {
+        return new DoubleResult(Util.clone(pair[1]));
       }
     }
-    misses.remove(key);
-    return new DoubleResult(Util.clone(lastOutput));
+    miss();
+    DoubleResult result = new DoubleResult(true);
+    result.source = input;
+    return result;
   }
 
 
-
-  private DoubleResult handleCacheMiss(String key, double[][]input) {
-        Integer numMisses = misses.get(key);
-        if(numMisses==null) {
-            misses.put(key, numMisses = new Integer(1));
-        } else {
-            misses.put(key, new Integer(numMisses.intValue()+1));
-        }
-        if(numMisses.intValue()>3) {
-            removeValue(key);
-        }
-        return new DoubleResult(numMisses.intValue()<=1);
-  }
-
-
-  private FloatResult handleCacheMiss(String key, float[][]input) {
-        Integer numMisses = misses.get(key);
-        if(numMisses==null) {
-            misses.put(key, numMisses = new Integer(1));
-        } else {
-            misses.put(key, new Integer(numMisses.intValue()+1));
-        }
-        if(numMisses.intValue()>3) {
-            removeValue(key);
-        }
-        return new FloatResult(numMisses.intValue()<=1);
-  }
-
-
-
-
-
     private boolean shouldHandle(double[][]input) {
         if(input == null) return false;
         if(input.length==0) return false;
@@ -231,23 +239,20 @@ public class ArrayCache {
    */
   public void put(String key, double[][] input, DoubleResult results) {
     if(!shouldHandle(input)) return;
-    putInner(key, input, results);
-  }
-
-
-  private synchronized void putInner(String key, double[][] input, DoubleResult results) {
     if(!results.shouldCache || results.values==null) return;
-    key = getKey(key, input[0].length);
-    storeValue(key,
-             new double[][][] {
-                 (double[][])Util.clone(input), (double[][])Util.clone(results.values)
-    });
-
+    // the copy made by cloneForCache belongs to us already
+    double[][] in = (input == results.copy) ? input : Util.clone(input);
+    double[][][] pair = new double[][][] {in, Util.clone(results.values)};
+    Object value = pair;
+    if (useDataCacheManager) {
+      value = DataCacheManager.getCacheManager().addToCache("ArrayCache", pair, true);
+    }
+    store(new EntryKey(key, in.length, in[0].length, sampleHash(in)),
+          value, 16L * in.length * in[0].length, results.source,
+          results.values);
   }
 
 
-
-
   /**
    * Put the converted value for the specified key and input pairs
    *
@@ -257,104 +262,359 @@ public class ArrayCache {
    */
   public  void put(String key, float[][] input, FloatResult results) {
     if(!shouldHandle(input)) return;
-    putInner(key, input, results);
+    if(!results.shouldCache || results.values==null) return;
+    float[][] in = (input == results.copy) ? input : Util.clone(input);
+    float[][][] pair = new float[][][] {in, Util.clone(results.values)};
+    Object value = pair;
+    if (useDataCacheManager) {
+      value = DataCacheManager.getCacheManager().addToCache("ArrayCache", pair, true);
+    }
+    EntryKey ekey =
+      unchangedSamples(results.versions, results.source, in, results.values)
+      ? new EntryKey(key, in.length, in[0].length, results.versions)
+      : new EntryKey(key, in.length, in[0].length, sampleHash(in));
+    store(ekey, value, 8L * in.length * in[0].length, results.source,
+          results.values);
   }
 
-  private synchronized void putInner(String key, float[][] input, FloatResult results) {
-    if(!results.shouldCache || results.values==null) return;
-    key = getKey(key, input[0].length);
-    storeValue(key, new float[][][] {
-      (float[][])Util.clone(input), (float[][])Util.clone(results.values)
-    });
 
+  /**
+   * remove all entries
+   */
+  public void clear() {
+    synchronized (map) {
+      for (Iterator<Entry> it = map.values().iterator(); it.hasNext();) {
+        release(it.next());
+      }
+      map.clear();
+      totalBytes = 0;
+    }
   }
 
+  /** @return number of lookups answered from the cache */
+  public long getHits() {
+    synchronized (map) {
+      return hits;
+    }
+  }
 
+  /** @return number of hits confirmed by sample version tags or input
+      identity alone, without comparing the input */
+  public long getIdentityHits() {
+    synchronized (map) {
+      return identityHits;
+    }
+  }
 
+  /** @return number of lookups not answered from the cache */
+  public long getMisses() {
+    synchronized (map) {
+      return misses;
+    }
+  }
 
+  /** @return number of entries dropped to stay within the byte budget */
+  public long getEvictions() {
+    synchronized (map) {
+      return evictions;
+    }
+  }
 
-    /** holds float arrays or DataCacheManager ids */
-    private Hashtable<Object, Object> map = new Hashtable<Object, Object>();
+  /** @return number of bytes of inputs and outputs currently kept */
+  public long getBytes() {
+    synchronized (map) {
+      return totalBytes;
+    }
+  }
 
-    private void storeValue(String key, double[][][]value) {
-        checkCache();
-        Object object = value;
-        if(useDataCacheManager) {
-            removeValue(key);
-            object = DataCacheManager.getCacheManager().addToCache("ArrayCache", value, true);
-        }
-        map.put(key, object);
+  /** @return number of input/output pairs currently kept */
+  public int getEntryCount() {
+    synchronized (map) {
+      return map.size();
     }
+  }
 
-    private void storeValue(String key, float[][][]value) {
-        checkCache();
-        Object object = value;
-        if(useDataCacheManager) {
-            removeValue(key);
-            object = DataCacheManager.getCacheManager().addToCache("ArrayCache", value, true);
-        }
-        map.put(key, object);
+  /** set the hit, miss and eviction counts to zero */
+  public void resetStatistics() {
+    synchronized (map) {
+      hits = 0;
+      identityHits = 0;
+      misses = 0;
+      evictions = 0;
+    }
+  }
+
+  /**
+   * @return a one line summary of the cache statistics
+   */
+  public String getStatistics() {
+    synchronized (map) {
+      return "hits:" + hits + " (identity:" + identityHits + ")" +
+             " misses:" + misses + " evictions:" + evictions +
+             " entries:" + map.size() + " bytes:" + totalBytes +
+             " max bytes:" + maxBytes;
     }
+  }
+
+  public String toString() {
+    return "ArrayCache " + getStatistics();
+  }
 
     public void finalize() throws Throwable {
         super.finalize();
         if(useDataCacheManager) {
             //            System.err.println ("arraycache finalize");
-            clearCache();
+            clear();
         }
     }
 
 
-    private void checkCache() {
-        if(map.size()>4) {
-            clearCache();
-        }
+  private Entry lookup(EntryKey key) {
+    synchronized (map) {
+      return map.get(key);
     }
+  }
+
+  // a hit on the version tags of SampledSet samples
+  private boolean versionHit() {
+    synchronized (map) {
+      hits++;
+      identityHits++;
+    }
+    Tracer.count(TRACE_HIT);
+    return true;
+  }
+
+  // the version tags of the arrays of input if all are SampledSet samples,
+  // otherwise null
+  private static long[] sampleVersions(float[][] input) {
+    long[] versions = new long[input.length];
+    for (int i=0; i<input.length; i++) {
+      versions[i] = visad.SampledSet.getSampleVersion(input[i]);
+      if (versions[i] == 0) return null;
+    }
+    return versions;
+  }
 
-    private void removeValue(Object key) {
-        Object object  = map.get(key);
-        if(object!=null) {
-            if(useDataCacheManager)
-                DataCacheManager.getCacheManager().removeFromCache(object);
-            map.remove(key);
+  // true if the SampledSet samples a result was computed from still have
+  // their version tags and values, and the output is not written over
+  // them; only then may the result be keyed on the tags
+  private static boolean unchangedSamples(long[] versions, float[][] source,
+                                          float[][] copy, float[][] output) {
+    if (versions == null || source == null || copy == null ||
+        !Arrays.equals(versions, sampleVersions(source))) {
+      return false;
+    }
+    for (int i=0; i<source.length; i++) {
+      if (i < output.length && source[i] == output[i]) return false;
+      if (!Arrays.equals(source[i], copy[i])) return false;
+    }
+    return true;
+  }
+
+  private void miss() {
+    synchronized (map) {
+      misses++;
+    }
+    Tracer.count(TRACE_MISS);
+  }
+
+  // confirm a candidate entry; the comparison is done without the lock,
+  // cached arrays are never modified
+  private boolean matches(Entry entry, Object[] input, Object[] cached) {
+    boolean same = true;
+    if (cached.length != input.length) {
+      same = false;
+    }
+    else if (trustIdentity && entry.isSource(input)) {
+      synchronized (map) {
+        hits++;
+        identityHits++;
+      }
+      Tracer.count(TRACE_HIT);
+      return true;
+    }
+    else {
+      for (int i=0; i<input.length && same; i++) {
+        if (input[i] instanceof float[]) {
+          same = Arrays.equals((float[]) input[i], (float[]) cached[i]);
+        }
+        else {
+          same = Arrays.equals((double[]) input[i], (double[]) cached[i]);
         }
+      }
     }
+    if (same) {
+      synchronized (map) {
+        hits++;
+      }
+      Tracer.count(TRACE_HIT);
+    }
+    return same;
+  }
 
-    private void clearCache() {
-        for(Enumeration keys= map.keys();keys.hasMoreElements(); ) {
-            Object key= keys.nextElement();
-            Object object  = map.get(key);
-            if(useDataCacheManager) {
-                DataCacheManager.getCacheManager().removeFromCache(object);
-            }
+  private void store(EntryKey key, Object value, long bytes, Object[] source,
+                     Object[] output) {
+    if (bytes > maxBytes) {
+      release(new Entry(value, bytes, null));
+      return;
+    }
+    // an input modified in place by the transform cannot vouch for itself
+    if (source != null) {
+      for (int i=0; i<source.length && i<output.length; i++) {
+        if (source[i] == output[i]) {
+          source = null;
+          break;
         }
-        map = new Hashtable<Object, Object>();
+      }
     }
+    Entry entry = new Entry(value, bytes, source);
+    synchronized (map) {
+      Entry old = map.put(key, entry);
+      if (old != null) {
+        totalBytes -= old.bytes;
+        release(old);
+      }
+      totalBytes += bytes;
+      evict();
+    }
+  }
 
+  // drop least recently used entries until within budget; lock held
+  private void evict() {
+    Iterator<Map.Entry<EntryKey, Entry>> it = map.entrySet().iterator();
+    while (totalBytes > maxBytes && it.hasNext()) {
+      Entry entry = it.next().getValue();
+      it.remove();
+      totalBytes -= entry.bytes;
+      evictions++;
+      release(entry);
+    }
+  }
 
-    private double[][][] getDoubleValue(String key) {
-        Object object = map.get(key);
-        if(object==null) {
-            return null;
-        }
+  private void release(Entry entry) {
+    if (useDataCacheManager) {
+      DataCacheManager.getCacheManager().removeFromCache(entry.value);
+    }
+  }
+
+    private double[][][] getDoubleValue(Entry entry) {
+        Object object = entry.value;
         if(useDataCacheManager)
             return DataCacheManager.getCacheManager().getDoubleArray3D(object);
         return (double[][][])object;
     }
 
-    private float[][][] getFloatValue(String key) {
-        Object object = map.get(key);
-        if(object==null) {
-            return null;
-        }
+    private float[][][] getFloatValue(Entry entry) {
+        Object object = entry.value;
         if(useDataCacheManager)
             return DataCacheManager.getCacheManager().getFloatArray3D(object);
         return (float[][][])object;
     }
 
+  // hash of the lengths and of up to HASH_SAMPLES evenly spaced samples
+  // (including the first and last) of every component
+  private static int sampleHash(float[][] input) {
+    int h = input.length;
+    for (int i=0; i<input.length; i++) {
+      float[] a = input[i];
+      int n = a.length;
+      h = 31 * h + n;
+      int step = Math.max(1, (n - 1) / (HASH_SAMPLES - 1));
+      for (int j=0; j<n; j+=step) {
+        h = 31 * h + Float.floatToIntBits(a[j]);
+      }
+      if (n > 0) h = 31 * h + Float.floatToIntBits(a[n - 1]);
+    }
+    return h;
+  }
+
+  private static int sampleHash(double[][] input) {
+    int h = input.length;
+    for (int i=0; i<input.length; i++) {
+      double[] a = input[i];
+      int n = a.length;
+      h = 31 * h + n;
+      int step = Math.max(1, (n - 1) / (HASH_SAMPLES - 1));
+      for (int j=0; j<n; j+=step) {
+        long bits = Double.doubleToLongBits(a[j]);
+        h = 31 * h + (int) (bits ^ (bits >>> 32));
+      }
+      if (n > 0) {
+        long bits = Double.doubleToLongBits(a[n - 1]);
+        h = 31 * h + (int) (bits ^ (bits >>> 32));
+      }
+    }
+    return h;
+  }
+
+
+  private static class EntryKey {
+    final String key;
+    final int dimension;
+    final int length;
+    final int hash;
+    /** version tags of SampledSet samples, or null for a content hash */
+    final long[] versions;
+
+    EntryKey(String key, int dimension, int length, int hash) {
+      this.key = key;
+      this.dimension = dimension;
+      this.length = length;
+      this.hash = hash;
+      this.versions = null;
+    }
+
+    EntryKey(String key, int dimension, int length, long[] versions) {
+      this.key = key;
+      this.dimension = dimension;
+      this.length = length;
+      this.hash = Arrays.hashCode(versions);
+      this.versions = versions;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof EntryKey)) return false;
+      EntryKey k = (EntryKey) o;
+      return hash == k.hash && length == k.length &&
+             dimension == k.dimension && key.equals(k.key) &&
+             Arrays.equals(versions, k.versions);
+    }
 
+    public int hashCode() {
+      return 31 * (31 * key.hashCode() + length) + hash;
+    }
+  }
 
+  private static class Entry {
+    /** input/output pair, or a DataCacheManager id */
+    final Object value;
+    final long bytes;
+    /** the arrays the caller passed to get when the pair was computed */
+    final WeakReference[] source;
+
+    Entry(Object value, long bytes, Object[] source) {
+      this.value = value;
+      this.bytes = bytes;
+      if (source == null) {
+        this.source = null;
+      }
+      else {
+        this.source = new WeakReference[source.length];
+        for (int i=0; i<source.length; i++) {
+          this.source[i] = new WeakReference(source[i]);
+        }
+      }
+    }
 
+    boolean isSource(Object[] input) {
+      if (source == null || source.length != input.length) return false;
+      for (int i=0; i<input.length; i++) {
+        if (source[i].get() != input[i]) return false;
+      }
+      return true;
+    }
+  }
 
 
 
@@ -362,6 +622,11 @@ public class ArrayCache {
         public boolean shouldCache = true;
         public double[][]values;
 
+        /** the input passed to get, for identity checks */
+        private double[][] source;
+        /** the copy made by cloneForCache */
+        private double[][] copy;
+
         public DoubleResult() {
             shouldCache = false;
             values = null;
@@ -379,7 +644,8 @@ public class ArrayCache {
 
         public double[][]cloneForCache(double[][]a) {
             if(!shouldCache) return null;
-            return Util.clone(a);
+            copy = Util.clone(a);
+            return copy;
         }
 
         public boolean getShouldCache() {
@@ -395,6 +661,13 @@ public class ArrayCache {
         public boolean shouldCache = true;
         public float[][]values;
 
+        /** the input passed to get, for identity checks */
+        private float[][] source;
+        /** the version tags of source, if it is SampledSet samples */
+        private long[] versions;
+        /** the copy made by cloneForCache */
+        private float[][] copy;
+
         public FloatResult() {
             shouldCache = false;
             values = null;
@@ -411,7 +684,8 @@ public class ArrayCache {
 
         public float[][]cloneForCache(float[][]a) {
             if(!shouldCache) return null;
-            return Util.clone(a);
+            copy = Util.clone(a);
+            return copy;
         }
 
         public boolean getShouldCache() {
@@ -420,11 +694,4 @@ public class ArrayCache {
 
     }
 
-
-
-
-
-
-
 }
-
@@ -29,6 +29,7 @@ package visad.data;
 
 import visad.*;
 import visad.util.DataUtility;
+import visad.util.Reductions;
 import java.rmi.RemoteException;
 
 
@@ -386,20 +387,8 @@ public class CachedFlatField extends FlatField {
         }
         ranges = new DataRange[values.length];
         for (int rangeIdx = 0; rangeIdx < values.length; rangeIdx++) {
-            float   pMin         = Float.POSITIVE_INFINITY;
-            float   pMax         = Float.NEGATIVE_INFINITY;
-            float[] values_range = values[rangeIdx];
-            int     length       = values_range.length;
-            for (int i = 0; i < length; i++) {
-                float value = values_range[i];
-                if (pMax < value) {
-                    pMax = value;
-                }
-                if (pMin > value) {
-                    pMin = value;
-                }
-            }
-            ranges[rangeIdx] = new DataRange(pMin, pMax);
+            float[] minMax = Reductions.minMax(values[rangeIdx]);
+            ranges[rangeIdx] = new DataRange(minMax[0], minMax[1]);
         }
         //        msg("done making ranges");
         return ranges;
@@ -502,6 +502,18 @@ public class FileFlatField extends FlatField {
     return fld.unpackFloats();
   }
 
+  /** unpack the float values of samples start ... start+length-1 of
+      one range component; returns a copy */
+  public float[] unpackFloats(int comp, int start, int length)
+         throws VisADException {
+    FlatField fld = getAdaptedFlatField();
+    if (fld == null) {
+      throw new VisADException("Cannot get cached FlatField");
+    }
+
+    return fld.unpackFloats(comp, start, length);
+  }
+
   public Field extract( int component )
          throws VisADException, RemoteException
   {
@@ -37,10 +37,14 @@ import java.util.Enumeration;
 import visad.Data;
 import visad.DataImpl;
 import visad.VisADException;
+import visad.util.Tracer;
 
 public class FunctionFormFamily
 	extends FormFamily
 {
+  /** Tracer probe for open() calls */
+  private static final int TRACE_OPEN = Tracer.register("FormFamily.open");
+
   public FunctionFormFamily(String name)
   {
     super(name);
@@ -378,63 +382,67 @@ public class FunctionFormFamily
     if (id == null) {
       return null;
     }
-
-    // try to build a URL from the string
-    URL url;
-    try {
-      url = new URL(id);
-    } catch (MalformedURLException mue) {
-      url = null;
-    }
-
     DataImpl data = null;
+    String file = null;
+    long traceStart = Tracer.begin();
+    try {
+      // try to build a URL from the string
+      URL url;
+      try {
+        url = new URL(id);
+      } catch (MalformedURLException mue) {
+        url = null;
+      }
 
-    // if we got a URL, try to extract a Data object from it
-    if (url != null) {
-      OpenURLForm u = new OpenURLForm(url);
+      // if we got a URL, try to extract a Data object from it
+      if (url != null) {
+        OpenURLForm u = new OpenURLForm(url);
 
-      try {
-        if (!u.run()) {
+        try {
+          if (!u.run()) {
+            data = null;
+          } else {
+            data = u.getData();
+          }
+        } catch (Exception e) {
           data = null;
-        } else {
-          data = u.getData();
         }
-      } catch (Exception e) {
-        data = null;
       }
-    }
 
-    // if we didn't get a Data object, look for a filename
-    String file = null;
-    if (data == null) {
-      if (url == null) {
-        file = id;
-      } else if (url.getProtocol() == "file") {
-        file = url.getFile();
-
-        // if file looks like it starts with a Windows drive spec...
-        if (file.length() > 2 && file.charAt(2) == ':' &&
-            file.charAt(0) == '/')
-        {
-          file = file.substring(1);
+      // if we didn't get a Data object, look for a filename
+      if (data == null) {
+        if (url == null) {
+          file = id;
+        } else if (url.getProtocol() == "file") {
+          file = url.getFile();
+
+          // if file looks like it starts with a Windows drive spec...
+          if (file.length() > 2 && file.charAt(2) == ':' &&
+              file.charAt(0) == '/')
+          {
+            file = file.substring(1);
+          }
         }
       }
-    }
 
-    // if we found a filename, try to open it
-    if (file != null) {
-      OpenStringForm o = new OpenStringForm(file);
+      // if we found a filename, try to open it
+      if (file != null) {
+        OpenStringForm o = new OpenStringForm(file);
 
-      try {
-        if (!o.run()) {
+        try {
+          if (!o.run()) {
+            data = null;
+          } else {
+            data = o.getData();
+          }
+        } catch (IOException ioe) {
           data = null;
-        } else {
-          data = o.getData();
         }
-      } catch (IOException ioe) {
-        data = null;
       }
     }
+    finally {
+      Tracer.end(TRACE_OPEN, traceStart);
+    }
 
     // puke if we didn't find a data object
     if (data == null) {
@@ -456,7 +464,15 @@ public class FunctionFormFamily
 	throws BadFormException, IOException, VisADException
   {
     OpenURLForm o = new OpenURLForm(url);
-    if (!o.run()) {
+    long traceStart = Tracer.begin();
+    boolean ok;
+    try {
+      ok = o.run();
+    }
+    finally {
+      Tracer.end(TRACE_OPEN, traceStart);
+    }
+    if (!ok) {
       throw new BadFormException("Data object \"" + url +
 				 "\" not compatible with \"" + getName() +
 				 "\" data family");
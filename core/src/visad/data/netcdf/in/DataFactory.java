@@ -134,12 +134,48 @@ DataFactory
                 rangeSets,
                 rangeUnits);
 
-        double[][]      values = new double[componentCount][];
+        boolean         packed = true;
 
         for (int i = 0; i < componentCount; ++i)
-            values[i] = ((VirtualScalar)rangeTuple.get(i)).getDoubles(context);
+        {
+            Object      component = rangeTuple.get(i);
+
+            if (!(component instanceof VirtualReal) ||
+                !((VirtualReal)component).isPacked())
+            {
+                packed = false;
+            }
+        }
+
+        if (packed)
+        {
+            /*
+             * Byte and short values are stored as they are, without
+             * unpacking them to doubles.
+             */
+            for (int i = 0; i < componentCount; ++i)
+            {
+                Object  values =
+                    ((VirtualReal)rangeTuple.get(i)).getPackedValues(context);
+
+                if (values instanceof byte[])
+                    field.setPackedSamples(i, (byte[])values, false,
+                                           Byte.MIN_VALUE+1, Byte.MIN_VALUE);
+                else
+                    field.setPackedSamples(i, (short[])values, false,
+                                           Short.MIN_VALUE+1, Short.MIN_VALUE);
+            }
+        }
+        else
+        {
+            double[][]  values = new double[componentCount][];
+
+            for (int i = 0; i < componentCount; ++i)
+                values[i] =
+                    ((VirtualScalar)rangeTuple.get(i)).getDoubles(context);
 
-        field.setSamples(values, /*copy=*/false);
+            field.setSamples(values, /*copy=*/false);
+        }
 
         return field;
     }
@@ -60,6 +60,22 @@ Vetter
      */
     private double		fill;
 
+    /**
+     * The scale factor of packed values.
+     */
+    private double		scale = 1;
+
+    /**
+     * The offset of packed values.
+     */
+    private double		offset = 0;
+
+    /**
+     * Whether or not each byte or short value is valid, indexed by the
+     * value less the least value of its type.  Built when first needed.
+     */
+    private boolean[]		validPacked;
+
 
     /**
      * Constructs from nothing.  Protected to ensure use by subclasses
@@ -167,11 +183,11 @@ Vetter
 	 */
 	{
 	    attr = var.getAttribute("scale_factor");
-	    double	scale =
-		attr == null ? 1 : attr.getNumericValue().doubleValue();
+	    if (attr != null)
+		scale = attr.getNumericValue().doubleValue();
 	    attr = var.getAttribute("add_offset");
-	    double	offset =
-		attr == null ? 0 : attr.getNumericValue().doubleValue();
+	    if (attr != null)
+		offset = attr.getNumericValue().doubleValue();
 	    if (scale == scale && scale != 1 && offset == offset && offset != 0)
 	    {
 		unpacker = ScaleAndOffsetUnpacker.scaleAndOffsetUnpacker(
@@ -243,6 +259,30 @@ Vetter
     }
 
 
+    /**
+     * Returns the scale factor of packed values.
+     *
+     * @return	The value of the "scale_factor" attribute or 1.
+     */
+    double
+    scale()
+    {
+	return scale == scale ? scale : 1;
+    }
+
+
+    /**
+     * Returns the offset of packed values.
+     *
+     * @return	The value of the "add_offset" attribute or 0.
+     */
+    double
+    offset()
+    {
+	return offset == offset ? offset : 0;
+    }
+
+
     /**
      * Vets the given float values.
      *
@@ -269,4 +309,63 @@ Vetter
     {
 	ranger.process(unpacker.process(vetter.process(values)));
     }
+
+
+    /**
+     * Vets the given packed byte values without unpacking them.
+     *
+     * @param values	The values to be vetted.
+     * @postcondition	All invalid values in <code>values</code> have been
+     *			replaced with <code>Byte.MIN_VALUE</code>.
+     */
+    void
+    vetPacked(byte[] values)
+    {
+	boolean[]	valid = getValidPacked(Byte.MIN_VALUE, 1 << 8);
+	for (int i = 0; i < values.length; ++i)
+	    if (!valid[values[i] - Byte.MIN_VALUE])
+		values[i] = Byte.MIN_VALUE;
+    }
+
+
+    /**
+     * Vets the given packed short values without unpacking them.
+     *
+     * @param values	The values to be vetted.
+     * @postcondition	All invalid values in <code>values</code> have been
+     *			replaced with <code>Short.MIN_VALUE</code>.
+     */
+    void
+    vetPacked(short[] values)
+    {
+	boolean[]	valid = getValidPacked(Short.MIN_VALUE, 1 << 16);
+	for (int i = 0; i < values.length; ++i)
+	    if (!valid[values[i] - Short.MIN_VALUE])
+		values[i] = Short.MIN_VALUE;
+    }
+
+
+    /**
+     * Returns the validity of every packed value, found by vetting each
+     * of them once.
+     *
+     * @param min	The least value of the packed type.
+     * @param count	The number of values of the packed type.
+     * @return		Whether or not value <code>min + i</code> is valid.
+     */
+    private synchronized boolean[]
+    getValidPacked(int min, int count)
+    {
+	if (validPacked == null)
+	{
+	    double[]	values = new double[count];
+	    for (int i = 0; i < count; ++i)
+		values[i] = min + i;
+	    vet(values);
+	    validPacked = new boolean[count];
+	    for (int i = 0; i < count; ++i)
+		validPacked[i] = values[i] == values[i];
+	}
+	return validPacked;
+    }
 }
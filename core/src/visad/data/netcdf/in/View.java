@@ -24,6 +24,7 @@ import visad.data.netcdf.QuantityDB;
 import visad.data.units.Parser;
 import visad.DoubleSet;
 import visad.ErrorEstimate;
+import visad.FlatField;
 import visad.FloatSet;
 import visad.Gridded1DDoubleSet;
 import visad.Gridded1DSet;
@@ -632,15 +633,21 @@ public abstract class View
             RealType    type = getRealType(var);
             if (cl.equals(byte.class))
             {
-                set = new Linear1DSet(type,
+                /*
+                 * The set is of the unpacked values so that the FlatField
+                 * can keep the packed values (see VirtualReal.isPacked()).
+                 */
+                Vetter  vetter = getVetter(var);
+                set = FlatField.makePackedRangeSet(type,
                                       Byte.MIN_VALUE+1, Byte.MAX_VALUE,
-                                      Byte.MAX_VALUE - Byte.MIN_VALUE);
+                                      vetter.scale(), vetter.offset());
             }
             else if (cl.equals(short.class))
             {
-                set = new Linear1DSet(type,
+                Vetter  vetter = getVetter(var);
+                set = FlatField.makePackedRangeSet(type,
                                       Short.MIN_VALUE+1, Short.MAX_VALUE,
-                                      Short.MAX_VALUE - Short.MIN_VALUE);
+                                      vetter.scale(), vetter.offset());
             }
             else if (cl.equals(int.class))
             {
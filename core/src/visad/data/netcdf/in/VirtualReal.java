@@ -140,6 +140,85 @@ VirtualReal
         int     rank = lengths.length;
         int[]   ioOrigin = new int[rank];
         int[]   ioShape = new int[rank];
+        double[]        values = new double[getIOShape(context, ioOrigin,
+                                                       ioShape)];
+
+        toArray(getVariable(), values, ioOrigin, ioShape);
+
+        vetter.vet(values);
+
+        return values;
+    }
+
+
+    /**
+     * Determines if the values are bytes or shorts that a FlatField can
+     * keep packed, i.e. if the range set is of all their unpacked values.
+     *
+     * @return true if {@link #getPackedValues(Context)} may be used
+     */
+    public boolean
+    isPacked()
+    {
+        Class   cl = getVariable().getComponentType();
+
+        return lengths.length > 0 && rangeSet instanceof Linear1DSet &&
+            (cl.equals(byte.class) || cl.equals(short.class));
+    }
+
+
+    /**
+     * Gets the packed values corresponding to this virtual, data object
+     * at a given context.  Invalid values are replaced with the least
+     * value of their type.  Only valid if {@link #isPacked()}.
+     *
+     * @return                  The values as a <code>byte[]</code> or
+     *                          <code>short[]</code>.
+     * throws IOException       I/O failure.
+     */
+    public Object
+    getPackedValues(Context context)
+        throws IOException
+    {
+        int     rank = lengths.length;
+        int[]   ioOrigin = new int[rank];
+        int[]   ioShape = new int[rank];
+        int     total = getIOShape(context, ioOrigin, ioShape);
+        Object  values;
+
+        if (getVariable().getComponentType().equals(byte.class))
+        {
+            byte[]      bytes = new byte[total];
+
+            getVariable().toArray(bytes, ioOrigin, ioShape);
+            vetter.vetPacked(bytes);
+            values = bytes;
+        }
+        else
+        {
+            short[]     shorts = new short[total];
+
+            getVariable().toArray(shorts, ioOrigin, ioShape);
+            vetter.vetPacked(shorts);
+            values = shorts;
+        }
+
+        return values;
+    }
+
+
+    /**
+     * Sets the origin and shape of the I/O transfer for a given context.
+     *
+     * @param context           The indicial context.
+     * @param ioOrigin          The origin vector to be set.
+     * @param ioShape           The shape vector to be set.
+     * @return                  The number of values in the transfer.
+     */
+    private int
+    getIOShape(Context context, int[] ioOrigin, int[] ioShape)
+    {
+        int     rank = lengths.length;
         int[]   ioContext = context.getContext();
 
         System.arraycopy(ioContext, 0, ioOrigin, 0, ioContext.length);
@@ -156,13 +235,7 @@ VirtualReal
             total *= lengths[i];
         }
 
-        double[]        values = new double[total];
-
-        toArray(getVariable(), values, ioOrigin, ioShape);
-
-        vetter.vet(values);
-
-        return values;
+        return total;
     }
 
 
@@ -29,7 +29,7 @@ public class Parser
   extends visad.data.units.Parser
 {
   /** @deprecated Use <tt>visad.data.units.Parser.parse(spec)</tt> instead */
-  public static synchronized Unit parse(String spec)
+  public static Unit parse(String spec)
     throws ParseException, NoSuchUnitException
   {
     try {
@@ -28,7 +28,6 @@ package visad.data.text;
 
 import java.io.IOException;
 import java.io.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import visad.Set;
 
@@ -1343,7 +1342,13 @@ public class TextAdapter {
                                 null, null, rangeSets, rangeUnits);
 
     } catch (FieldException fe) {
-      field = new FieldImpl((FunctionType) mt, domain);
+      // ranges with Text components are stored in columns when possible
+      if (TupleFieldImpl.isTupleRange(((FunctionType) mt).getRange())) {
+        field = new TupleFieldImpl((FunctionType) mt, domain);
+      }
+      else {
+        field = new FieldImpl((FunctionType) mt, domain);
+      }
     } catch (UnitException fe) {
       System.out.println("####  Problem with Units; attempting to make Field anyway");
       field = new FieldImpl((FunctionType) mt, domain);
@@ -1522,17 +1527,7 @@ public class TextAdapter {
           }
        }
 
-      String key = format+"__" + tz;
-      SimpleDateFormat sdf = (SimpleDateFormat) formats.get(key);
-      if(sdf == null) {
-          sdf = new SimpleDateFormat();
-          sdf.setTimeZone(TimeZone.getTimeZone(tz));
-          sdf.applyPattern(format);
-          formats.put(key,sdf);
-      }
-      Date d = sdf.parse(string);
-      dt = new DateTime(d);
-      //       dt = visad.DateTime.createDateTime(string, format, TimeZone.getTimeZone(tz));
+      dt = visad.DateTime.createDateTime(string, format, TimeZone.getTimeZone(tz));
     } catch (VisADException e) {}
     if (dt==null) {
       throw new java.text.ParseException("Couldn't parse visad.DateTime from \""
@@ -1543,9 +1538,6 @@ public class TextAdapter {
   }
 
 
-  /**  A set of cached simpledateformats  */
-  private static Hashtable formats = new Hashtable();
-
   /** This list of DateFormatter-s will be checked when we are making a DateTime wiht a given format */
   private static List dateParsers;
 
@@ -1602,8 +1594,18 @@ public class TextAdapter {
       // a format was specified: only support DateTime format 
       // so try to parse as a DateTime
       try{
+        if (dateParsers == null) {
+          // compiled, thread-safe parser; no DateTime per value
+          if (info.dateFormat == null) {
+            info.dateFormat = DateTimeFormat.getInstance(info.formatString,
+                                        TimeZone.getTimeZone(info.tzString));
+          }
+          return info.dateFormat.parse(s);
+        }
         visad.DateTime dt = makeDateTimeFromString(s, info.formatString, info.tzString);
         return dt.getReal().getValue();
+      } catch (VisADException ve) {
+        System.out.println("Invalid number/time format for "+s);
       } catch (java.text.ParseException pe) {
         System.out.println("Invalid number/time format for "+s);
       }
@@ -1706,6 +1708,7 @@ public class TextAdapter {
         String  missingString;
         String  formatString; 
         String  tzString = "GMT";
+        DateTimeFormat dateFormat;
         int     isInterval = 0;
         double  errorEstimate=0;
         double  scale=1.0;
@@ -8,6 +8,7 @@
 package visad.data.units;
 
 import java.io.ByteArrayInputStream;
+import java.util.concurrent.ConcurrentHashMap;
 
 import visad.Unit;
 import visad.UnitException;
@@ -21,6 +22,18 @@ public class Parser {
      */
     protected static final UnitParser   unitParser  = new UnitParser(System.in);
 
+    /**
+     * Maximum number of parsed specifications to remember.
+     */
+    private static final int            MAX_CACHED  = 1024;
+
+    /**
+     * Previously parsed units, keyed by trimmed specification. Units are
+     * immutable, so they can be shared between callers.
+     */
+    private static final ConcurrentHashMap<String, Unit> cache =
+        new ConcurrentHashMap<String, Unit>();
+
     /**
      * The singleton instance of this class.
      */
@@ -41,7 +54,9 @@ public class Parser {
     }
 
     /**
-     * Parse a string unit-specification.
+     * Parse a string unit-specification. Successfully parsed specifications
+     * are remembered, so parsing the same specification again (as data
+     * adapters do for every variable) does not invoke the parser.
      * 
      * @param spec
      *            The string unit-specification.
@@ -51,9 +66,33 @@ public class Parser {
      * @throws UnitException
      *             if {@code spec} requires an unsupported operation.
      */
-    public static synchronized Unit parse(final String spec)
+    public static Unit parse(final String spec)
+            throws ParseException, NoSuchUnitException {
+        final String trimmed = spec.trim();
+        Unit unit = cache.get(trimmed);
+        if (unit == null) {
+            unit = parseUncached(trimmed);
+            if (unit != null) {
+                if (cache.size() >= MAX_CACHED) {
+                    cache.clear();
+                }
+                cache.put(trimmed, unit);
+            }
+        }
+        return unit;
+    }
+
+    /**
+     * Forget all previously parsed specifications, e.g. after units have
+     * been added to the unit database.
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    private static synchronized Unit parseUncached(final String spec)
             throws ParseException, NoSuchUnitException {
-        unitParser.ReInit(new ByteArrayInputStream(spec.trim().getBytes()));
+        unitParser.ReInit(new ByteArrayInputStream(spec.getBytes()));
 
         try {
             return unitParser.unitSpec();
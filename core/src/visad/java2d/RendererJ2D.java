@@ -27,6 +27,7 @@ MA 02111-1307, USA
 package visad.java2d;
 
 import visad.*;
+import visad.util.Tracer;
 
 import java.rmi.*;
 
@@ -134,6 +135,8 @@ public abstract class RendererJ2D extends DataRenderer {
     if (all_feasible && (any_changed || any_transform_control)) {
       // exceptionVector.removeAllElements();
       clearAVControls();
+      getTransformBuffers().beginTransform();
+      long traceStart = Tracer.begin();
       try {
         // doTransform creates a VisADGroup from a Data object
         branch = doTransform();
@@ -180,6 +183,10 @@ public abstract class RendererJ2D extends DataRenderer {
       catch (DisplayInterruptException e) {
         branch = null;
       }
+      finally {
+        Tracer.end(TRACE_TRANSFORM, traceStart);
+        getTransformBuffers().endTransform(this);
+      }
 
       if (branch != null) {
         swParent.setChild(branch, 0);
@@ -28,6 +28,7 @@ package visad.java2d;
 
 import visad.*;
 import visad.util.Delay;
+import visad.util.ThreadManager;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -88,6 +89,13 @@ public class VisADCanvasJ2D extends JPanel
   // flag set if images not created
   boolean timeout = false;
 
+  /** maximum number of threads rendering the tiles of a frame */
+  public static int tileThreads = Runtime.getRuntime().availableProcessors();
+
+  // edge length in pixels of the screen tiles rendered concurrently,
+  // 0 to render frames on one thread
+  private int tileSize = Integer.getInteger("visad.java2d.tileSize", 0).intValue();
+
   public VisADCanvasJ2D(DisplayRendererJ2D renderer, Component c) {
     displayRenderer = renderer;
     display = (DisplayImplJ2D) renderer.getDisplay();
@@ -448,8 +456,10 @@ System.out.println("VisADCanvasJ2D.paint: current_image = " + current_image +
         }
         try {
           if (animate_control != null) animate_control.init();
-          render(g2, ggg, root, 0, null);
-          render(g2, ggg, root, 1, null);
+          if (!renderTiles(image, root, tsave, w, h)) {
+            render(g2, ggg, root, 0, null, null, null);
+            render(g2, ggg, root, 1, null, null, null);
+          }
           // draw Animation string in upper right corner of screen
           String[] animation_string = displayRenderer.getAnimationString();
           if (animation_string[0] != null) {
@@ -561,15 +571,158 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
     return;
   }
 
+  /**
+   * Set the edge length of the square screen tiles into which frames
+   * are split for rendering on up to tileThreads concurrent threads.
+   * Each tile renders the scene clipped to the tile, skipping the
+   * appearances whose screen bounds miss the tile; the images of
+   * appearances are drawn directly, clipped to the tile.  The default
+   * is the value of the system property visad.java2d.tileSize, or 0.
+   * @param size edge length in pixels, or 0 to render frames on one
+   *             thread
+   */
+  public void setTileSize(int size) {
+    tileSize = Math.max(0, size);
+  }
+
+  /**
+   * @return edge length in pixels of the screen tiles rendered
+   *         concurrently, or 0 if frames are rendered on one thread
+   */
+  public int getTileSize() {
+    return tileSize;
+  }
+
+  /**
+   * Render both passes of the scene into image in tiles, if tiled
+   * rendering is on and there is more than one tile.
+   * @return false if the scene was not rendered
+   */
+  private boolean renderTiles(final BufferedImage image,
+                              final VisADGroup root,
+                              final AffineTransform trans, int w, int h)
+          throws VisADException {
+    int size = tileSize;
+    int nthreads = Math.min(tileThreads, ThreadManager.MAX_THREADS);
+    if (size <= 0 || nthreads < 2 || (w <= size && h <= size)) return false;
+
+    // screen bounds of the appearances, to skip them in other tiles
+    final IdentityHashMap<VisADAppearance, Rectangle> bounds =
+      new IdentityHashMap<VisADAppearance, Rectangle>();
+    collectBounds(root, trans, bounds);
+
+    ThreadManager threadManager = new ThreadManager("VisADCanvasJ2D tiles");
+    for (int y=0; y<h; y+=size) {
+      for (int x=0; x<w; x+=size) {
+        final Rectangle tile =
+          new Rectangle(x, y, Math.min(size, w - x), Math.min(size, h - y));
+        threadManager.addRunnable(new ThreadManager.MyRunnable() {
+          public void run() throws Exception {
+            Graphics ggg = image.createGraphics();
+            Graphics2D g2 = image.createGraphics();
+            try {
+              g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                                  RenderingHints.VALUE_RENDER_SPEED);
+              g2.setTransform(trans);
+              render(g2, ggg, root, 0, null, tile, bounds);
+              render(g2, ggg, root, 1, null, tile, bounds);
+            }
+            finally {
+              g2.dispose();
+              ggg.dispose();
+            }
+          }
+        });
+      }
+    }
+    try {
+      threadManager.runInParallel(nthreads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("VisADCanvasJ2D.renderTiles: " + e.toString());
+    }
+    return true;
+  }
+
+  /**
+   * Enter into bounds the screen bounds (a Rectangle) of the
+   * appearances under scene, or null for those that may draw
+   * anywhere.
+   */
+  private void collectBounds(VisADSceneGraphObject scene, AffineTransform t,
+      IdentityHashMap<VisADAppearance, Rectangle> bounds) {
+    if (scene == null) return;
+    if (scene instanceof VisADSwitch) {
+      collectBounds(((VisADSwitch) scene).getSelectedChild(), t, bounds);
+    }
+    else if (scene instanceof VisADGroup) {
+      Vector children = ((VisADGroup) scene).getChildren();
+      for (int i=children.size()-1; i>=0; i--) {
+        collectBounds((VisADSceneGraphObject) children.elementAt(i), t,
+                      bounds);
+      }
+    }
+    else {
+      VisADAppearance appearance = (VisADAppearance) scene;
+      VisADGeometryArray array = appearance.array;
+      if (array == null || bounds.containsKey(appearance)) return;
+      float[] coordinates = array.coordinates;
+      int count = (appearance.image != null) ? 4 : array.vertexCount;
+      if (coordinates == null || coordinates.length < 3 * count) {
+        bounds.put(appearance, null);
+        return;
+      }
+      float[] points = new float[2 * count];
+      for (int i=0; i<count; i++) {
+        points[2*i] = coordinates[3*i];
+        points[2*i+1] = coordinates[3*i+1];
+      }
+      t.transform(points, 0, points, 0, count);
+      float xmin = Float.POSITIVE_INFINITY, xmax = Float.NEGATIVE_INFINITY;
+      float ymin = Float.POSITIVE_INFINITY, ymax = Float.NEGATIVE_INFINITY;
+      for (int i=0; i<2*count; i+=2) {
+        float x = points[i];
+        float y = points[i+1];
+        if (x != x || y != y) {
+          // missing coordinates may be drawn at the origin
+          bounds.put(appearance, null);
+          return;
+        }
+        if (x < xmin) xmin = x;
+        if (x > xmax) xmax = x;
+        if (y < ymin) ymin = y;
+        if (y > ymax) ymax = y;
+      }
+      if (count == 0) {
+        bounds.put(appearance, new Rectangle());
+        return;
+      }
+      // room for line widths, point sizes, and rounding
+      int pad = (int) Math.ceil(Math.max(appearance.lineWidth,
+                                         appearance.pointSize)) + 2;
+      int x0 = (int) Math.floor(xmin) - pad;
+      int y0 = (int) Math.floor(ymin) - pad;
+      bounds.put(appearance,
+        new Rectangle(x0, y0, (int) Math.ceil(xmax) + pad - x0 + 1,
+                      (int) Math.ceil(ymax) + pad - y0 + 1));
+    }
+  }
+
+  /**
+   * Render one pass of scene.
+   * @param tile screen tile to which rendering is clipped, or null
+   * @param bounds screen bounds of the appearances, used with tile
+   */
   private void render(Graphics2D g2, Graphics ggg,
                       VisADSceneGraphObject scene, int pass,
-                      Rectangle2D.Float clip)
+                      Rectangle2D.Float clip, Rectangle tile,
+                      IdentityHashMap<VisADAppearance, Rectangle> bounds)
           throws VisADException {
     if (scene == null) return;
     if (scene instanceof VisADSwitch) {
       VisADSceneGraphObject child =
         ((VisADSwitch) scene).getSelectedChild();
-      if (child != null) render(g2, ggg, child, pass, clip);
+      if (child != null) render(g2, ggg, child, pass, clip, tile, bounds);
     }
     else if (scene instanceof VisADGroup) {
       if (clip_rectangle != null &&
@@ -580,13 +733,24 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
       for (int i=children.size()-1; i>=0; i--) {
         VisADSceneGraphObject child =
           (VisADSceneGraphObject) children.elementAt(i);
-        if (child != null) render(g2, ggg, child, pass, clip);
+        if (child != null) render(g2, ggg, child, pass, clip, tile, bounds);
       }
     }
     else { // scene instanceof VisADAppearance
-      g2.setClip(clip);
       VisADAppearance appearance = (VisADAppearance) scene;
       VisADGeometryArray array = appearance.array;
+      if (tile != null && bounds.containsKey(appearance)) {
+        Rectangle box = bounds.get(appearance);
+        if (box != null && !box.intersects(tile)) return;
+      }
+      g2.setClip(clip);
+      if (tile != null) {
+        // intersect with the tile in screen coordinates
+        AffineTransform tc = g2.getTransform();
+        g2.setTransform(new AffineTransform());
+        g2.clip(tile);
+        g2.setTransform(tc);
+      }
       if (array == null) return;
       BufferedImage image = (BufferedImage) appearance.image;
       AffineTransform tg = g2.getTransform();
@@ -706,7 +870,7 @@ System.out.println("dsize = " + dsize + " size = " + size + " xx, yy = " +
 */
           if (array instanceof VisADPointArray) {
             if (Math.abs(fsize - 1.0f) < 0.1f) {
-              drawAppearance(ggg, appearance, tg, clip);
+              drawAppearance(ggg, appearance, tg, clip, tile);
             }
             else {
               g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -745,7 +909,7 @@ System.out.println("dsize = " + dsize + " size = " + size + " xx, yy = " +
           }
           else if (array instanceof VisADLineArray) {
             if (Math.abs(fsize - 1.0f) < 0.1f) {
-              drawAppearance(ggg, appearance, tg, clip);
+              drawAppearance(ggg, appearance, tg, clip, tile);
             }
             else {
               g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
@@ -1119,6 +1283,20 @@ System.out.println(i + " " + oldx + " " + oldy + " " + lastx + " " + lasty +
    */
   public static void drawAppearance(Graphics graphics, VisADAppearance appearance,
                                     AffineTransform t, Rectangle2D.Float clip) {
+    drawAppearance(graphics, appearance, t, clip, null);
+  }
+
+  /**
+   * This assumes only VisADPointArray or VisADLineArray.
+   * @param graphics
+   * @param appearance
+   * @param t
+   * @param clip
+   * @param tile screen tile to which drawing is clipped, or null
+   */
+  public static void drawAppearance(Graphics graphics, VisADAppearance appearance,
+                                    AffineTransform t, Rectangle2D.Float clip,
+                                    Rectangle tile) {
     VisADGeometryArray array = appearance.array;
     if (array == null) return;
     byte[] colors = array.colors;
@@ -1167,6 +1345,9 @@ System.out.println("drawAppearance: color = " + appearance.red + " " +
       path.closePath();
       graphics.setClip(path);
     }
+    if (tile != null) {
+      graphics.clipRect(tile.x, tile.y, tile.width, tile.height);
+    }
 
     if (array instanceof VisADPointArray) {
 /*
@@ -0,0 +1,652 @@
+//
+// BatchRendererJ3D.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.java3d;
+
+import java.rmi.RemoteException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+
+import javax.media.j3d.Appearance;
+import javax.media.j3d.BranchGroup;
+import javax.media.j3d.ColoringAttributes;
+import javax.media.j3d.Geometry;
+import javax.media.j3d.GeometryArray;
+import javax.media.j3d.GeometryUpdater;
+import javax.media.j3d.Group;
+import javax.media.j3d.Shape3D;
+import javax.media.j3d.TransparencyAttributes;
+
+import visad.BadMappingException;
+import visad.Data;
+import visad.DataDisplayLink;
+import visad.DisplayException;
+import visad.DisplayImpl;
+import visad.GraphicsModeControl;
+import visad.MathType;
+import visad.VisADException;
+import visad.VisADGeometryArray;
+import visad.VisADLineArray;
+import visad.VisADLineStripArray;
+import visad.VisADPointArray;
+import visad.VisADTriangleArray;
+
+/**
+   BatchRendererJ3D is the VisAD class for rendering many small Data
+   objects of the same MathType and ConstantMaps (fronts, station
+   markers, track points, annotations) with a single DataRenderer
+   under Java3D.<P>
+
+   Rather than one DataRenderer and scene graph branch per
+   DataReference, the point, line, line strip and triangle geometries
+   of all linked Data are merged into shared buffers, one Shape3D per
+   distinct geometry type and appearance.  Each Data object owns a
+   slice of those buffers; when it changes only it is re-transformed,
+   and its slice is overwritten in place if its vertex count is
+   unchanged, or the buffers it shares are re-assembled otherwise.
+   Geometry that cannot be merged (text, textures, nested groups
+   such as those for Animation) stays in a branch per Data object.
+   Changes of ScalarMaps or Controls re-transform all Data.<P>
+
+   Use it with <CODE>DisplayImpl.addReferences(new BatchRendererJ3D(),
+   refs, constant_maps)</CODE>.  As for other DataRenderers with
+   several links, removing any of the DataReferences from the
+   Display removes all of them.<P>
+*/
+public class BatchRendererJ3D extends RendererJ3D {
+
+  /** root of the depiction, returned by every doTransform */
+  private BranchGroup root = null;
+
+  /** transform results by DataDisplayLink */
+  private IdentityHashMap<DataDisplayLink, Slot> slots =
+    new IdentityHashMap<DataDisplayLink, Slot>();
+
+  /** merged geometries by Collector key */
+  private LinkedHashMap<String, Bucket> buckets =
+    new LinkedHashMap<String, Bucket>();
+
+  /** MathType shared by all linked Data */
+  private MathType batchType = null;
+
+  public BatchRendererJ3D() {
+    super();
+  }
+
+  public void setLinks(DataDisplayLink[] links, DisplayImpl d)
+       throws VisADException {
+    if (links == null || links.length == 0) {
+      throw new DisplayException("BatchRendererJ3D.setLinks: must be " +
+                                 "at least one DataDisplayLink");
+    }
+    Vector maps = links[0].getConstantMaps();
+    for (int i=1; i<links.length; i++) {
+      Vector other = links[i].getConstantMaps();
+      if (maps.size() != other.size() || !maps.containsAll(other) ||
+          !other.containsAll(maps)) {
+        throw new DisplayException("BatchRendererJ3D.setLinks: all " +
+                                   "DataReferences must have the same " +
+                                   "ConstantMaps");
+      }
+    }
+    super.setLinks(links, d);
+  }
+
+  /** create or update the BranchGroup scene graph for Data in links;
+      only the Data that changed are transformed, unless a ScalarMap
+      or Control changed */
+  public BranchGroup doTransform() throws VisADException, RemoteException {
+    DataDisplayLink[] links = getLinks();
+    if (links == null || links.length == 0) return null;
+
+    boolean all = (root == null || get_any_transform_control());
+    if (root == null) {
+      root = new BranchGroup();
+      root.setCapability(BranchGroup.ALLOW_DETACH);
+      root.setCapability(Group.ALLOW_CHILDREN_READ);
+      root.setCapability(Group.ALLOW_CHILDREN_WRITE);
+      root.setCapability(Group.ALLOW_CHILDREN_EXTEND);
+      ShadowTypeJ3D.ensureNotEmpty(root, getDisplay());
+    }
+    if (all) {
+      batchType = null;
+      // a GraphicsModeControl change (e.g. line width) is only
+      // applied through new Appearances
+      for (Iterator<Bucket> it=buckets.values().iterator(); it.hasNext(); ) {
+        it.next().restyle = true;
+      }
+    }
+    boolean mode2d = getDisplayRenderer().getMode2D();
+
+    // forget Data whose links were removed since the last transform
+    IdentityHashMap<DataDisplayLink, Object> current =
+      new IdentityHashMap<DataDisplayLink, Object>();
+    for (int i=0; i<links.length; i++) current.put(links[i], links[i]);
+    Vector<DataDisplayLink> gone = new Vector<DataDisplayLink>();
+    for (Iterator<DataDisplayLink> it=slots.keySet().iterator(); it.hasNext(); ) {
+      DataDisplayLink link = it.next();
+      if (!current.containsKey(link)) gone.addElement(link);
+    }
+    for (int i=0; i<gone.size(); i++) {
+      DataDisplayLink link = gone.elementAt(i);
+      replaceSlot(link, slots.get(link), null, mode2d);
+    }
+
+    for (int i=0; i<links.length; i++) {
+      DataDisplayLink link = links[i];
+      Slot old = slots.get(link);
+      if (!all && old != null && !get_changed(i)) {
+        link.clearData();
+        continue;
+      }
+      replaceSlot(link, old, transformLink(link), mode2d);
+    }
+
+    // re-assemble the buffers whose slices changed size
+    DisplayImplJ3D display = (DisplayImplJ3D) getDisplay();
+    for (Iterator<Bucket> it=buckets.values().iterator(); it.hasNext(); ) {
+      Bucket bucket = it.next();
+      if (bucket.dirty) {
+        if (!bucket.rebuild(getLinks(), display, root)) it.remove();
+      }
+      else if (bucket.restyle) {
+        bucket.restyle();
+      }
+    }
+    return root;
+  }
+
+  /** transform the Data in link into a new Slot; return null if
+      link was removed because its remote Data is disconnected */
+  private Slot transformLink(DataDisplayLink link)
+          throws VisADException, RemoteException {
+    Slot slot = new Slot();
+    Data data;
+    try {
+      data = link.getData();
+    } catch (RemoteException re) {
+      if (visad.collab.CollabUtil.isDisconnectException(re)) {
+        getDisplay().connectionFailed(this, link);
+        removeLink(link);
+        return null;
+      }
+      throw re;
+    }
+
+    if (data == null) {
+      addException(
+        new DisplayException("Data is null: BatchRendererJ3D.doTransform"));
+      return slot;
+    }
+    MathType type = data.getType();
+    if (batchType == null) {
+      batchType = type;
+    }
+    else if (!batchType.equals(type)) {
+      addException(
+        new BadMappingException("BatchRendererJ3D.doTransform: all Data " +
+                                "must have the same MathType"));
+      link.clearData();
+      return slot;
+    }
+
+    // initialize valueArray to missing
+    float[] valueArray = new float[getDisplay().getValueArrayLength()];
+    Arrays.fill(valueArray, Float.NaN);
+
+    ShadowTypeJ3D shadow = (ShadowTypeJ3D) link.getShadow();
+    Collector group = new Collector();
+    link.start_time = System.currentTimeMillis();
+    link.time_flag = false;
+    shadow.preProcess();
+    boolean post_process;
+    try {
+      post_process =
+        shadow.doTransform(group, data, valueArray,
+                           link.getDefaultValues(), this);
+    } catch (RemoteException re) {
+      if (visad.collab.CollabUtil.isDisconnectException(re)) {
+        getDisplay().connectionFailed(this, link);
+        removeLink(link);
+        return null;
+      }
+      throw re;
+    }
+    if (post_process) shadow.postProcess(group);
+    link.clearData();
+
+    if (group.numChildren() > 0) slot.group = group;
+    for (Iterator<String> it=group.arrays.keySet().iterator(); it.hasNext(); ) {
+      String key = it.next();
+      VisADGeometryArray array = concat(group.arrays.get(key));
+      if (array != null) {
+        slot.slices.put(key, array);
+        slot.styles.put(key, group.styles.get(key));
+      }
+    }
+    return slot;
+  }
+
+  /** replace the transform results of link; slot may be null
+      to remove them */
+  private void replaceSlot(DataDisplayLink link, Slot old, Slot slot,
+                           boolean mode2d) {
+    if (old != null && old.group != null) old.group.detach();
+    if (slot != null && slot.group != null) root.addChild(slot.group);
+
+    HashSet<String> keys = new HashSet<String>();
+    if (old != null) keys.addAll(old.slices.keySet());
+    if (slot != null) keys.addAll(slot.slices.keySet());
+    for (Iterator<String> it=keys.iterator(); it.hasNext(); ) {
+      String key = it.next();
+      VisADGeometryArray array = (slot == null) ? null : slot.slices.get(key);
+      Bucket bucket = buckets.get(key);
+      if (bucket == null) {
+        if (array == null) continue;
+        bucket = new Bucket(slot.styles.get(key));
+        buckets.put(key, bucket);
+      }
+      if (array == null) {
+        if (bucket.slices.remove(link) != null) bucket.dirty = true;
+        continue;
+      }
+      bucket.style = slot.styles.get(key);
+      if (bucket.dirty || !bucket.patch(link, array, mode2d)) {
+        bucket.slices.put(link, array);
+        bucket.dirty = true;
+      }
+    }
+
+    if (slot == null) {
+      slots.remove(link);
+    }
+    else {
+      slots.put(link, slot);
+    }
+  }
+
+  /** forget all merged geometry; the next doTransform starts over */
+  private void resetBatch() {
+    root = null;
+    slots.clear();
+    buckets.clear();
+    batchType = null;
+  }
+
+  public void clearBranch() {
+    super.clearBranch();
+    resetBatch();
+  }
+
+  public void addSwitch(DisplayRendererJ3D displayRenderer,
+                        BranchGroup branch) {
+    displayRenderer.addSceneGraphComponent(branch);
+  }
+
+  public void clearScene() {
+    resetBatch();
+    super.clearScene();
+  }
+
+  public Object clone() throws CloneNotSupportedException {
+    return new BatchRendererJ3D();
+  }
+
+  /**
+   * @return a new VisADGeometryArray of the same class as array
+   */
+  private static VisADGeometryArray newArray(VisADGeometryArray array) {
+    if (array instanceof VisADPointArray) return new VisADPointArray();
+    if (array instanceof VisADLineStripArray) return new VisADLineStripArray();
+    if (array instanceof VisADTriangleArray) return new VisADTriangleArray();
+    return new VisADLineArray();
+  }
+
+  /**
+   * Concatenate arrays, which must be of the same class and format,
+   * into a new array.
+   *
+   * @return the new array, or null if arrays is empty
+   */
+  static VisADGeometryArray concat(Vector<VisADGeometryArray> arrays) {
+    int n = arrays.size();
+    if (n == 0) return null;
+    VisADGeometryArray first = arrays.elementAt(0);
+    int colorLength = (first.colors == null) ? 0 :
+                      first.colors.length / first.vertexCount;
+    int count = 0;
+    int nstrips = 0;
+    for (int i=0; i<n; i++) {
+      VisADGeometryArray array = arrays.elementAt(i);
+      count += array.vertexCount;
+      if (array instanceof VisADLineStripArray) {
+        nstrips += ((VisADLineStripArray) array).stripVertexCounts.length;
+      }
+    }
+
+    VisADGeometryArray merged = newArray(first);
+    merged.vertexCount = count;
+    merged.vertexFormat = first.vertexFormat;
+    merged.coordinates = new float[3 * count];
+    if (colorLength > 0) merged.colors = new byte[colorLength * count];
+    if (first.normals != null) merged.normals = new float[3 * count];
+    int[] strips = null;
+    if (merged instanceof VisADLineStripArray) {
+      strips = new int[nstrips];
+      ((VisADLineStripArray) merged).stripVertexCounts = strips;
+    }
+
+    int v = 0;
+    int s = 0;
+    for (int i=0; i<n; i++) {
+      VisADGeometryArray array = arrays.elementAt(i);
+      int m = array.vertexCount;
+      System.arraycopy(array.coordinates, 0, merged.coordinates, 3 * v, 3 * m);
+      if (merged.colors != null) {
+        System.arraycopy(array.colors, 0, merged.colors, colorLength * v,
+                         colorLength * m);
+      }
+      if (merged.normals != null) {
+        System.arraycopy(array.normals, 0, merged.normals, 3 * v, 3 * m);
+      }
+      if (strips != null) {
+        int[] counts = ((VisADLineStripArray) array).stripVertexCounts;
+        System.arraycopy(counts, 0, strips, s, counts.length);
+        s += counts.length;
+      }
+      v += m;
+    }
+    return merged;
+  }
+
+  /**
+   * Collector is the Group passed to ShadowTypeJ3D.doTransform by
+   * BatchRendererJ3D.  ShadowTypeJ3D.addToGroup hands it the
+   * geometries that can be merged, sorted by a key of their class,
+   * format and constant color and alpha; anything else is added to
+   * it as usual.
+   */
+  static final class Collector extends BranchGroup {
+
+    /** geometries by key */
+    final LinkedHashMap<String, Vector<VisADGeometryArray>> arrays =
+      new LinkedHashMap<String, Vector<VisADGeometryArray>>();
+
+    /** {GraphicsModeControl, TransparencyAttributes, ColoringAttributes}
+        by key */
+    final HashMap<String, Object[]> styles = new HashMap<String, Object[]>();
+
+    Collector() {
+      setCapability(BranchGroup.ALLOW_DETACH);
+      setCapability(Group.ALLOW_CHILDREN_READ);
+    }
+
+    /**
+     * Keep array for merging, if it is a point, line, line strip or
+     * triangle array without texture coordinates.
+     *
+     * @return true if array was kept, false if it should be added
+     *         to this Group as usual
+     */
+    boolean collect(VisADGeometryArray array, GraphicsModeControl mode,
+                    TransparencyAttributes c_alpha, ColoringAttributes c_color,
+                    float constant_alpha, float[] constant_color) {
+      Class c = array.getClass();
+      if (c != VisADPointArray.class && c != VisADLineArray.class &&
+          c != VisADLineStripArray.class && c != VisADTriangleArray.class) {
+        return false;
+      }
+      int n = array.vertexCount;
+      if (array.coordinates == null || array.coordinates.length < 3 * n ||
+          array.texCoords != null) {
+        return false;
+      }
+      if (c == VisADLineStripArray.class &&
+          ((VisADLineStripArray) array).stripVertexCounts == null) {
+        return false;
+      }
+      int colorLength = 0;
+      if (array.colors != null) {
+        colorLength = array.colors.length / n;
+        if ((colorLength != 3 && colorLength != 4) ||
+            array.colors.length != colorLength * n) {
+          return false;
+        }
+      }
+      if (array.normals != null && array.normals.length < 3 * n) {
+        return false;
+      }
+
+      StringBuffer key = new StringBuffer(c.getName());
+      key.append('_').append(colorLength);
+      key.append('_').append(array.normals != null);
+      key.append('_').append(constant_alpha);
+      if (constant_color != null && constant_color.length == 3) {
+        key.append('_').append(constant_color[0]);
+        key.append(',').append(constant_color[1]);
+        key.append(',').append(constant_color[2]);
+      }
+      // the per-link GraphicsModeControl carries ConstantMaps such as
+      // LineWidth and PointSize, which go into the Appearance
+      if (mode != null) {
+        key.append('_').append(mode.getLineWidth());
+        key.append(',').append(mode.getPointSize());
+        key.append(',').append(mode.getLineStyle());
+        key.append(',').append(mode.getPolygonMode());
+        key.append(',').append(mode.getPolygonOffset());
+        key.append(',').append(mode.getPolygonOffsetFactor());
+      }
+      String k = key.toString();
+      Vector<VisADGeometryArray> list = arrays.get(k);
+      if (list == null) {
+        list = new Vector<VisADGeometryArray>();
+        arrays.put(k, list);
+        styles.put(k, new Object[] {mode, c_alpha, c_color});
+      }
+      list.addElement(array);
+      return true;
+    }
+  }
+
+  /** transform results of one Data object */
+  private static final class Slot {
+    /** non-mergeable part of the depiction, or null */
+    Collector group = null;
+    /** mergeable part of the depiction, by Collector key */
+    final HashMap<String, VisADGeometryArray> slices =
+      new HashMap<String, VisADGeometryArray>();
+    /** Collector styles, by Collector key */
+    final HashMap<String, Object[]> styles = new HashMap<String, Object[]>();
+  }
+
+  /** merged geometry of one Collector key, and its Shape3D */
+  private static final class Bucket {
+    /** GraphicsModeControl, TransparencyAttributes and ColoringAttributes
+        of the Appearance */
+    Object[] style;
+    /** true if the Appearance must be made again from style */
+    boolean restyle = false;
+    final IdentityHashMap<DataDisplayLink, VisADGeometryArray> slices =
+      new IdentityHashMap<DataDisplayLink, VisADGeometryArray>();
+    /** first vertex of each slice in merged */
+    final IdentityHashMap<DataDisplayLink, Integer> offsets =
+      new IdentityHashMap<DataDisplayLink, Integer>();
+    /** true if merged must be re-assembled from slices */
+    boolean dirty = true;
+    VisADGeometryArray merged = null;
+    GeometryArray geometry = null;
+    Shape3D shape = null;
+    BranchGroup branch = null;
+
+    Bucket(Object[] style) {
+      this.style = style;
+    }
+
+    /**
+     * Re-assemble merged from slices in links order and replace the
+     * geometry of shape, creating it under root if needed.
+     *
+     * @return false if there are no slices left
+     */
+    boolean rebuild(DataDisplayLink[] links, DisplayImplJ3D display,
+                    BranchGroup root) throws VisADException {
+      dirty = false;
+      offsets.clear();
+      Vector<VisADGeometryArray> list = new Vector<VisADGeometryArray>();
+      int v = 0;
+      for (int i=0; i<links.length; i++) {
+        VisADGeometryArray array = slices.get(links[i]);
+        if (array != null) {
+          offsets.put(links[i], Integer.valueOf(v));
+          list.addElement(array);
+          v += array.vertexCount;
+        }
+      }
+      merged = concat(list);
+      geometry = (merged == null) ? null : display.makeGeometry(merged);
+      if (geometry == null) {
+        if (branch != null) branch.detach();
+        branch = null;
+        shape = null;
+        return false;
+      }
+      geometry.setCapability(GeometryArray.ALLOW_COORDINATE_WRITE);
+      geometry.setCapability(GeometryArray.ALLOW_COLOR_WRITE);
+      geometry.setCapability(GeometryArray.ALLOW_NORMAL_WRITE);
+      geometry.setCapability(GeometryArray.ALLOW_REF_DATA_READ);
+      geometry.setCapability(GeometryArray.ALLOW_REF_DATA_WRITE);
+
+      if (shape == null) {
+        Appearance appearance = ShadowTypeJ3D.staticMakeAppearance(
+          (GraphicsModeControl) style[0], (TransparencyAttributes) style[1],
+          (ColoringAttributes) style[2], geometry, false);
+        shape = new Shape3D(geometry, appearance);
+        shape.setCapability(Shape3D.ALLOW_GEOMETRY_READ);
+        shape.setCapability(Shape3D.ALLOW_GEOMETRY_WRITE);
+        shape.setCapability(Shape3D.ALLOW_APPEARANCE_READ);
+        shape.setCapability(Shape3D.ALLOW_APPEARANCE_WRITE);
+        branch = new BranchGroup();
+        branch.setCapability(BranchGroup.ALLOW_DETACH);
+        branch.setCapability(Group.ALLOW_CHILDREN_READ);
+        branch.addChild(shape);
+        root.addChild(branch);
+      }
+      else {
+        shape.setGeometry(geometry);
+      }
+      if (restyle) restyle();
+      return true;
+    }
+
+    /** replace the Appearance of shape by one made from style */
+    void restyle() {
+      restyle = false;
+      if (shape == null || geometry == null) return;
+      shape.setAppearance(ShadowTypeJ3D.staticMakeAppearance(
+        (GraphicsModeControl) style[0], (TransparencyAttributes) style[1],
+        (ColoringAttributes) style[2], geometry, false));
+    }
+
+    /**
+     * Overwrite the slice of link with array, if they have the same
+     * vertex count.
+     *
+     * @return false if the slice cannot be overwritten in place
+     */
+    boolean patch(DataDisplayLink link, VisADGeometryArray array,
+                  boolean mode2d) {
+      VisADGeometryArray old = slices.get(link);
+      Integer offset = offsets.get(link);
+      if (old == null || offset == null || geometry == null ||
+          old.vertexCount != array.vertexCount) {
+        return false;
+      }
+      if (array instanceof VisADLineStripArray &&
+          !Arrays.equals(((VisADLineStripArray) old).stripVertexCounts,
+                         ((VisADLineStripArray) array).stripVertexCounts)) {
+        return false;
+      }
+      slices.put(link, array);
+
+      final VisADGeometryArray a = array;
+      final int v = offset.intValue();
+      // DisplayImplJ3D.makeGeometry flattens triangles in 2-D mode
+      final boolean flat = mode2d && array instanceof VisADTriangleArray;
+      if (DisplayImplJ3D.GEOMETRY_BY_REF) {
+        geometry.updateData(new GeometryUpdater() {
+          public void updateData(Geometry g) {
+            write(a, v, flat, true);
+          }
+        });
+      }
+      else {
+        write(a, v, flat, false);
+      }
+      return true;
+    }
+
+    /** copy array into merged and geometry, starting at vertex v */
+    private void write(VisADGeometryArray array, int v, boolean flat,
+                       boolean byRef) {
+      int n = array.vertexCount;
+      int colorLength = (merged.colors == null) ? 0 :
+                        merged.colors.length / merged.vertexCount;
+      System.arraycopy(array.coordinates, 0, merged.coordinates, 3 * v, 3 * n);
+      if (colorLength > 0) {
+        System.arraycopy(array.colors, 0, merged.colors, colorLength * v,
+                         colorLength * n);
+      }
+      if (merged.normals != null) {
+        System.arraycopy(array.normals, 0, merged.normals, 3 * v, 3 * n);
+      }
+
+      float[] coordinates = array.coordinates;
+      if (flat) {
+        coordinates = new float[3 * n];
+        System.arraycopy(array.coordinates, 0, coordinates, 0, 3 * n);
+        for (int i=2; i<3*n; i+=3) coordinates[i] = DisplayImplJ3D.BACK2D;
+      }
+      if (byRef) {
+        // geometry references merged, except for flattened coordinates
+        float[] ref = geometry.getCoordRefFloat();
+        if (ref != null && ref != merged.coordinates) {
+          System.arraycopy(coordinates, 0, ref, 3 * v, 3 * n);
+        }
+      }
+      else {
+        geometry.setCoordinates(v, coordinates, 0, n);
+        if (colorLength > 0) geometry.setColors(v, array.colors, 0, n);
+        if (merged.normals != null) geometry.setNormals(v, array.normals, 0, n);
+      }
+    }
+  }
+
+}
@@ -33,6 +33,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.rmi.RemoteException;
 import java.util.Enumeration;
+import java.util.Hashtable;
 import java.util.Vector;
 
 import javax.media.j3d.Appearance;
@@ -123,6 +124,14 @@ public abstract class DisplayRendererJ3D
 
   private Object not_destroyed = new Object();
 
+  /** asks for another frame once screen based scales have been remade */
+  private final Runnable scaleRepaint = new Runnable() {
+    public void run() {
+      View v = view;
+      if (v != null && not_destroyed != null) v.repaint();
+    }
+  };
+
   // for screen locked
   private OrderedGroup screen_locked = null;
   private TransformGroup locked_trans = null;
@@ -185,6 +194,18 @@ public abstract class DisplayRendererJ3D
   private BranchGroup scale_on = null, scale_off = null;
   /** Vector of screen based AxisScales */
   private Vector axis_vector = new Vector();
+  /** geometry made for the scale and label arrays of screen based
+      AxisScales: AxisScale -> {VisADLineArray, GeometryArray,
+      VisADTriangleArray, GeometryArray, Appearance} */
+  private Hashtable axis_geometry = new Hashtable();
+
+  /**
+   * If true, screen based AxisScales are remade in the background
+   * after a zoom or pan, and drawn when ready, rather than during the
+   * frame.  Offscreen and captured frames always wait for the scales.
+   */
+  public static final boolean ASYNC_AXIS_SCALES =
+    Boolean.parseBoolean(System.getProperty("visad.axisscale.async", "true"));
 
   /** on / off state of cursor in GraphicsModeControl */
 
@@ -222,6 +243,7 @@ public abstract class DisplayRendererJ3D
     }
 
     axis_vector.removeAllElements();
+    axis_geometry.clear();
     directs.removeAllElements();
 
     screen_locked = null;
@@ -1168,32 +1190,50 @@ public abstract class DisplayRendererJ3D
       double XTMIN = positionn.x;
       double YTMIN = positionn.y;
 
+      // while zooming, remake the scales off the render thread and
+      // draw the previous ones until the new ones are ready
+      boolean async = ASYNC_AXIS_SCALES && !canvas.getOffscreen() &&
+                      !canvas.captureFlag;
       Enumeration axes = axis_vector.elements();
       while (axes.hasMoreElements()) {
         AxisScale axisScale = (AxisScale) axes.nextElement();
         try {
-          boolean success =
-            axisScale.makeScreenBasedScale(XMIN, YMIN, XMAX, YMAX,
-                                           XTMIN, YTMIN, XTMAX, YTMAX);
+          boolean success = async
+            ? axisScale.makeScreenBasedScaleLater(XMIN, YMIN, XMAX, YMAX,
+                                                  XTMIN, YTMIN, XTMAX, YTMAX,
+                                                  scaleRepaint)
+            : axisScale.makeScreenBasedScale(XMIN, YMIN, XMAX, YMAX,
+                                             XTMIN, YTMIN, XTMAX, YTMAX);
           if (success) {
 // System.out.println("makeScreenBasedScale success");
-            int axis = axisScale.getAxis();
-            int axis_ordinal = axisScale.getAxisOrdinal();
             VisADLineArray array = axisScale.getScaleArray();
             VisADTriangleArray labels = axisScale.getLabelArray();
-            float[] scale_color = axisScale.getColor().getColorComponents(null);
-  
-            // set cursor color, if possible
-            Appearance appearance = new Appearance();
-            ColoringAttributes color = new ColoringAttributes();
-            color.setColor(new Color3f(scale_color));
-            appearance.setColoringAttributes(color);
-            graphics.setAppearance(appearance);
-            graphics.draw(((DisplayImplJ3D) getDisplay()).makeGeometry(array));
-
-            if (labels != null) {
+            Object[] geometry = (Object[]) axis_geometry.get(axisScale);
+            if (geometry == null || geometry[0] != array) {
+              float[] scale_color =
+                axisScale.getColor().getColorComponents(null);
+              // set cursor color, if possible
+              Appearance appearance = new Appearance();
+              ColoringAttributes color = new ColoringAttributes();
+              color.setColor(new Color3f(scale_color));
+              appearance.setColoringAttributes(color);
+              geometry = new Object[] {array,
+                ((DisplayImplJ3D) getDisplay()).makeGeometry(array),
+                null, null, appearance};
+            }
+            if (labels != null && geometry[2] != labels) {
               GeometryArray labelGeometry = 
                 ((DisplayImplJ3D) getDisplay()).makeGeometry(labels);
+              geometry[2] = labels;
+              geometry[3] = labelGeometry;
+            }
+            axis_geometry.put(axisScale, geometry);
+
+            graphics.setAppearance((Appearance) geometry[4]);
+            graphics.draw((GeometryArray) geometry[1]);
+
+            if (labels != null) {
+              GeometryArray labelGeometry = (GeometryArray) geometry[3];
               Appearance labelAppearance =
                 ShadowTypeJ3D.staticMakeAppearance(
                     getDisplay().getGraphicsModeControl(), null, null, 
@@ -1428,6 +1468,7 @@ public abstract class DisplayRendererJ3D
       }
     }
     axis_vector.removeAllElements();
+    axis_geometry.clear();
   }
 
   /**
@@ -0,0 +1,450 @@
+//
+// ImageTileCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.java3d;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+   ImageTileCache is a byte-budgeted cache of the rendered texture
+   images of an image animation, used by VisADImageNode.  Each frame
+   is stored as one BufferedImage per VisADImageTile, keyed by the
+   identity of the animation's data, the frame index and a colour key
+   that captures everything else the colour bytes depend on (colour
+   table versions, ScalarMap ranges, image type, alpha).  The cache
+   must be cleared when the samples of the data change.<P>
+
+   Frames that are not cached are rendered by a FrameRenderer on a
+   background thread; after each step of the animation the next frames
+   in the direction of the animation are prefetched.  When the byte
+   budget is exceeded, the frames furthest (cyclically) from the current
+   index are evicted first.<P>
+*/
+public class ImageTileCache {
+
+  /** default number of frames rendered ahead of the current frame */
+  public static final int DEFAULT_PREFETCH = 2;
+
+  /**
+     renders the tile images of one frame of an animation
+  */
+  public interface FrameRenderer {
+
+    /**
+     * @param index the frame index
+     * @return the key identifying the colour bytes of frame index
+     */
+    Key getKey(int index);
+
+    /**
+     * render the colour bytes of frame index
+     * @param index the frame index
+     * @return one image per tile of the VisADImageNode, in tile order
+     */
+    BufferedImage[] renderFrame(int index) throws Exception;
+
+    /**
+     * report a failure of renderFrame on the background thread; the
+     * frame is not rendered again until the next setRenderer or clear
+     * @param index the frame index
+     * @param error the failure
+     */
+    void renderFailed(int index, Exception error);
+  }
+
+  /**
+     identifies the colour bytes of one frame: the data object of the
+     animation (by identity), the frame index and an arbitrary colour key
+  */
+  public static class Key {
+    private final WeakReference<Object> data;
+    private final int dataHash;
+    private final int index;
+    private final Object colorKey;
+
+    /**
+     * @param data the data object of the animation, compared by identity
+     *             and only weakly referenced
+     * @param index the frame index
+     * @param colorKey an object whose equals() and hashCode()
+     *             reflect everything else the colour bytes depend on
+     */
+    public Key(Object data, int index, Object colorKey) {
+      this.data = new WeakReference<Object>(data);
+      this.dataHash = System.identityHashCode(data);
+      this.index = index;
+      this.colorKey = colorKey;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key k = (Key) o;
+      Object d = data.get();
+      return d != null && d == k.data.get() && dataHash == k.dataHash &&
+             index == k.index &&
+             (colorKey == null ? k.colorKey == null : colorKey.equals(k.colorKey));
+    }
+
+    public int hashCode() {
+      return (dataHash * 31 + index) ^
+             (colorKey == null ? 0 : colorKey.hashCode());
+    }
+  }
+
+  /**
+     a convenience colour key built from arrays of numbers
+  */
+  public static class ColorKey {
+    private final long[] longs;
+    private final double[] doubles;
+
+    public ColorKey(long[] longs, double[] doubles) {
+      this.longs = longs;
+      this.doubles = doubles;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof ColorKey)) return false;
+      ColorKey k = (ColorKey) o;
+      return Arrays.equals(longs, k.longs) && Arrays.equals(doubles, k.doubles);
+    }
+
+    public int hashCode() {
+      return 31 * Arrays.hashCode(longs) + Arrays.hashCode(doubles);
+    }
+  }
+
+  private static class Entry {
+    BufferedImage[] images;
+    int index;
+    long bytes;
+  }
+
+  private final Object lock = new Object();
+  private final Map<Key, Entry> entries = new HashMap<Key, Entry>();
+  private final java.util.Set<Integer> pending = new HashSet<Integer>();
+  // frames whose render failed in this generation
+  private final java.util.Set<Integer> failed = new HashSet<Integer>();
+
+  private long maxBytes;
+  private long totalBytes = 0;
+  private int prefetch = DEFAULT_PREFETCH;
+
+  private VisADImageNode node = null;
+  private FrameRenderer renderer = null;
+  private int numFrames = 0;
+  private int current = 0;
+  private int lastCurrent = -1;
+  private boolean forward = true;
+
+  // bumped by setRenderer, so stale background renders are discarded
+  private long generation = 0;
+
+  private ExecutorService worker = null;
+
+  /**
+   * @param maxBytes the maximum number of bytes of tile images to keep
+   */
+  public ImageTileCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  public void setMaxBytes(long maxBytes) {
+    synchronized (lock) {
+      this.maxBytes = maxBytes;
+      evict();
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @return number of bytes of tile images currently cached
+   */
+  public long getTotalBytes() {
+    synchronized (lock) {
+      return totalBytes;
+    }
+  }
+
+  /**
+   * set the number of frames rendered ahead of the current frame
+   */
+  public void setPrefetch(int prefetch) {
+    this.prefetch = (prefetch < 0) ? 0 : prefetch;
+  }
+
+  public int getPrefetch() {
+    return prefetch;
+  }
+
+  /**
+   * attach this cache to an image node and the renderer for its frames;
+   * called by the shadow type on every doTransform.  Tile image slots of
+   * the node are filled from the cache when they are needed.
+   * @param node the node whose tiles receive the frame images
+   * @param renderer renders frames not found in the cache
+   * @param numFrames the number of frames in the animation
+   */
+  public void setRenderer(VisADImageNode node, FrameRenderer renderer,
+                          int numFrames) {
+    synchronized (lock) {
+      this.node = node;
+      this.renderer = renderer;
+      this.numFrames = numFrames;
+      generation++;
+      pending.clear();
+      failed.clear();
+      // frames indices may have moved; drop stale tile assignments
+      for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+        it.next().index = -1;
+      }
+    }
+  }
+
+  /**
+   * store the already rendered images of frame index
+   */
+  public void put(int index, BufferedImage[] images) {
+    FrameRenderer r = renderer;
+    if (r == null) return;
+    Key key = r.getKey(index);
+    synchronized (lock) {
+      Entry e = entries.get(key);
+      if (e == null) {
+        e = new Entry();
+        entries.put(key, e);
+      }
+      else {
+        totalBytes -= e.bytes;
+      }
+      e.images = images;
+      e.bytes = sizeOf(images);
+      e.index = index;
+      totalBytes += e.bytes;
+      evict();
+    }
+  }
+
+  /**
+   * called when the animation moves to frame index: install the frame
+   * from the cache if present, otherwise render it in the background,
+   * then prefetch the following frames in the animation direction
+   * @return true if the frame images were installed immediately
+   */
+  public boolean setCurrent(int index) {
+    boolean installed = false;
+    synchronized (lock) {
+      if (renderer == null || index < 0 || index >= numFrames) return false;
+      if (lastCurrent >= 0 && index != lastCurrent) {
+        int step = index - lastCurrent;
+        if (Math.abs(step) > numFrames / 2) step = -step;
+        forward = (step > 0);
+      }
+      lastCurrent = index;
+      current = index;
+      installed = install(index);
+      if (!installed) request(index);
+      for (int i=1; i<=prefetch && i<numFrames; i++) {
+        int k = forward ? index + i : index - i;
+        k = ((k % numFrames) + numFrames) % numFrames;
+        if (!install(k)) request(k);
+      }
+    }
+    return installed;
+  }
+
+  /**
+   * remove all entries and cancel pending renders
+   */
+  public void clear() {
+    synchronized (lock) {
+      for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+        uninstall(it.next());
+      }
+      entries.clear();
+      pending.clear();
+      failed.clear();
+      totalBytes = 0;
+      generation++;
+    }
+  }
+
+  // put cached images for index into the tile slots; lock held
+  private boolean install(int index) {
+    Key key = renderer.getKey(index);
+    Entry e = entries.get(key);
+    if (e == null) return false;
+    if (e.index != index) {
+      e.index = index;
+      setTileImages(index, e.images);
+    }
+    return true;
+  }
+
+  private void setTileImages(int index, BufferedImage[] images) {
+    VisADImageNode n = node;
+    if (n == null) return;
+    int ntiles = n.getNumTiles();
+    for (int t=0; t<ntiles && t<images.length; t++) {
+      VisADImageTile tile = n.getTile(t);
+      if (index < tile.numImages) tile.setImage(index, images[t]);
+    }
+  }
+
+  // release tile slots still pointing at the entry's images; lock held
+  private void uninstall(Entry e) {
+    VisADImageNode n = node;
+    if (n == null || e.index < 0) return;
+    int ntiles = n.getNumTiles();
+    for (int t=0; t<ntiles && t<e.images.length; t++) {
+      VisADImageTile tile = n.getTile(t);
+      if (e.index < tile.numImages && tile.getImage(e.index) == e.images[t]) {
+        tile.setImage(e.index, null);
+      }
+    }
+    e.index = -1;
+  }
+
+  // schedule a background render of frame index; lock held
+  private void request(final int index) {
+    Integer i = Integer.valueOf(index);
+    if (failed.contains(i) || !pending.add(i)) return;
+    final long gen = generation;
+    final FrameRenderer r = renderer;
+    if (worker == null) {
+      worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable run) {
+          Thread t = new Thread(run, "ImageTileCache");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    worker.execute(new Runnable() {
+      public void run() {
+        render(r, index, gen);
+      }
+    });
+  }
+
+  private void render(FrameRenderer r, int index, long gen) {
+    synchronized (lock) {
+      if (gen != generation || !pending.contains(Integer.valueOf(index))) return;
+    }
+    BufferedImage[] images = null;
+    Exception error = null;
+    try {
+      images = r.renderFrame(index);
+    }
+    catch (Exception e) {
+      error = e;
+    }
+    boolean show = false;
+    synchronized (lock) {
+      pending.remove(Integer.valueOf(index));
+      if (gen != generation) return;
+      if (error != null) failed.add(Integer.valueOf(index));
+    }
+    if (error != null) {
+      r.renderFailed(index, error);
+      return;
+    }
+    synchronized (lock) {
+      if (images == null || gen != generation) return;
+      Key key = r.getKey(index);
+      Entry e = entries.get(key);
+      if (e == null) {
+        e = new Entry();
+        e.images = images;
+        e.bytes = sizeOf(images);
+        entries.put(key, e);
+        totalBytes += e.bytes;
+      }
+      e.index = index;
+      setTileImages(index, e.images);
+      show = (index == current);
+      evict();
+    }
+    if (show && node != null) {
+      node.setCurrent(index);
+    }
+  }
+
+  // evict frames furthest from the current frame until within budget;
+  // the current frame is never evicted; lock held
+  private void evict() {
+    while (totalBytes > maxBytes && entries.size() > 1) {
+      Key worst = null;
+      int worstDist = -1;
+      for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+           it.hasNext();) {
+        Map.Entry<Key, Entry> me = it.next();
+        Entry e = me.getValue();
+        int dist;
+        if (e.index < 0 || numFrames == 0) {
+          dist = Integer.MAX_VALUE;
+        }
+        else {
+          dist = forward ? e.index - current : current - e.index;
+          dist = ((dist % numFrames) + numFrames) % numFrames;
+          if (dist == 0) continue;
+        }
+        if (dist > worstDist) {
+          worstDist = dist;
+          worst = me.getKey();
+        }
+      }
+      if (worst == null) break;
+      Entry e = entries.remove(worst);
+      uninstall(e);
+      totalBytes -= e.bytes;
+    }
+  }
+
+  private static long sizeOf(BufferedImage[] images) {
+    long bytes = 0;
+    for (int i=0; i<images.length; i++) {
+      if (images[i] == null) continue;
+      DataBuffer db = images[i].getRaster().getDataBuffer();
+      bytes += (long) db.getSize() * db.getNumBanks() *
+               (DataBuffer.getDataTypeSize(db.getDataType()) / 8);
+    }
+    return bytes;
+  }
+}
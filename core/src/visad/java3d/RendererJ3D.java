@@ -28,6 +28,7 @@ package visad.java3d;
 
 import visad.*;
 import visad.util.Delay;
+import visad.util.Tracer;
 
 import javax.media.j3d.*;
 
@@ -177,6 +178,8 @@ System.out.println("doAction " + getDisplay().getName() + " " +
 */
       // exceptionVector.removeAllElements();
       clearAVControls();
+      getTransformBuffers().beginTransform();
+      long traceStart = Tracer.begin();
       try {
         // doTransform creates a BranchGroup from a Data object
         branch = doTransform();
@@ -222,6 +225,10 @@ System.out.println("doAction " + getDisplay().getName() + " " +
       catch (DisplayInterruptException e) {
         branch = null;
       }
+      finally {
+        Tracer.end(TRACE_TRANSFORM, traceStart);
+        getTransformBuffers().endTransform(this);
+      }
 
       if (branch != null) {
         synchronized (this) {
@@ -1244,6 +1244,9 @@ public abstract class ShadowTypeJ3D extends ShadowType {
     Group group = (Group) obj;
     if (group.numChildren() > 0)
       return;
+    // BatchRendererJ3D only adds non-empty Collectors to the scene graph
+    if (group instanceof BatchRendererJ3D.Collector)
+      return;
     GeometryArray geometry = new PointArray(1, GeometryArray.COORDINATES
         | GeometryArray.COLOR_3);
     geometry.setCapability(GeometryArray.ALLOW_COLOR_READ);
@@ -1352,6 +1355,13 @@ public abstract class ShadowTypeJ3D extends ShadowType {
         }
 
       }
+      // a BatchRendererJ3D merges simple geometries of many Data objects
+      if (group instanceof BatchRendererJ3D.Collector
+          && ((BatchRendererJ3D.Collector) group).collect(array, mode,
+              c_alpha, c_color, constant_alpha, constant_color)) {
+        return true;
+      }
+
       // MEM - for coordinates if mode2d
       GeometryArray geometry = display.makeGeometry(array);
       Appearance appearance = makeCachedAppearance(mode, c_alpha, c_color,
@@ -36,6 +36,9 @@ public class VisADImageNode {
 
    AnimateBehavior animate = null; 
 
+   // optional cache of rendered frames, see setTileCache
+   private ImageTileCache tileCache = null;
+
    public VisADImageNode() {
    }
 
@@ -71,9 +74,26 @@ public class VisADImageNode {
    **/
 
 
+   /**
+    * When a tile cache is set, frame images are obtained from the
+    * cache (and rendered in the background if missing) as the
+    * animation steps, rather than all being held in the tiles.
+    */
+   public void setTileCache(ImageTileCache cache) {
+     tileCache = cache;
+   }
+
+   public ImageTileCache getTileCache() {
+     return tileCache;
+   }
+
    public void setCurrent(int idx) {
      current_index = idx;
 
+     if (tileCache != null) {
+       tileCache.setCurrent(idx);
+     }
+
      //images[i].setCurrent(idx);
      for (int i=0; i<numChildren; i++) {
        imageTiles.get(i).setCurrent(idx);
@@ -28,6 +28,7 @@ package visad.math;
 
 import visad.*;
 import visad.java3d.*;
+import visad.util.Reductions;
 
 import java.rmi.*;
 import java.awt.*;
@@ -98,13 +99,10 @@ public class Histogram {
                                 " does not occur in " + ftype);
       }
     }
-    int[] indices = set.valueToIndex(set_values);
+    int[] counts = Reductions.histogram(set_values, set);
     int len = set.getLength();
     float[][] hist_values = new float[1][len];
-    for (int i=0; i<len; i++) hist_values[0][i] = 0.0f;
-    for (int j=0; j<indices.length; j++) {
-      if (indices[j] >= 0) hist_values[0][indices[j]]++;
-    }
+    for (int i=0; i<len; i++) hist_values[0][i] = counts[i];
 
     FlatField result = new FlatField(htype, set);
     result.setSamples(hist_values, false);
@@ -47,6 +47,7 @@ import visad.matrix.*;
 import visad.data.*;
 import visad.data.netcdf.Plain;
 import visad.ss.*;
+import visad.util.Reductions;
 import ucar.netcdf.NetcdfFile;
 import visad.data.netcdf.QuantityDBManager;
 import visad.data.netcdf.in.DefaultView;
@@ -74,6 +75,11 @@ public abstract class JPythonMethods {
   /** TODO */
   private static final String[] ops_sym = {">",">=","<","<=","==","!=","<>","=>","=<"};
 
+  /** Reductions operator for each entry of ops and ops_sym */
+  private static final int[] ops_code = {Reductions.GT, Reductions.GE,
+    Reductions.LT, Reductions.LE, Reductions.EQ, Reductions.NE,
+    Reductions.NE, Reductions.GE, Reductions.LE};
+
   /** Make a Hashtable available for everyone */
   public static Hashtable JyVars = new Hashtable();
 
@@ -1818,13 +1824,9 @@ public static void plot(final String name, final float[][] data)
     double[][] data_ranges = new double[dim][2];
     for (int i=0; i<dim; i++) {
       if (0 <= ranges[i] && ranges[i] < nn) {
-        data_ranges[i][0] = Double.MAX_VALUE;
-        data_ranges[i][1] = -Double.MAX_VALUE;
-        float[] v = values[ranges[i]];
-        for (int j=0; j<v.length; j++) {
-          if (v[j] < data_ranges[i][0]) data_ranges[i][0] = v[j];
-          if (v[j] > data_ranges[i][1]) data_ranges[i][1] = v[j];
-        }
+        float[] minmax = Reductions.minMax(values[ranges[i]]);
+        data_ranges[i][0] = Math.min(Double.MAX_VALUE, minmax[0]);
+        data_ranges[i][1] = Math.max(-Double.MAX_VALUE, minmax[1]);
       }
       else {
         throw new VisADException("range index out of range " + ranges[i]);
@@ -2903,9 +2905,7 @@ public static void plot(final String name, final float[][] data)
       ff = (FlatField)((FlatField)f.getSample(0)).clone();
     }
     float [][] dv = ff.getFloats(false);
-    for (int i=0; i<dv[0].length; i++) {
-      if (dv[0][i] != dv[0][i]) dv[0][i] = (float)v;
-    }
+    Reductions.replaceMissing(dv[0], (float)v);
 
     ff.setSamples(dv,false);
     return ff;
@@ -3017,10 +3017,9 @@ public static void plot(final String name, final float[][] data)
       }
 
       for (int i=0; i<dv.length; i++) {
-        for (int k=0; k<dv[i].length; k++) {
-          if (dv[i][k] < minmax[0]) minmax[0] = dv[i][k];
-          if (dv[i][k] > minmax[1]) minmax[1] = dv[i][k];
-        }
+        float[] mm = Reductions.minMax(dv[i]);
+        if (mm[0] < minmax[0]) minmax[0] = mm[0];
+        if (mm[1] > minmax[1]) minmax[1] = mm[1];
       }
     }
 
@@ -3376,11 +3375,7 @@ public static void plot(final String name, final float[][] data)
 
     float [][] dv = f.getFloats(false);
 
-    double sum = 0.0;
-    for (int i=0; i<list.length; i++) {
-      if (!Float.isNaN(dv[0][list[i]])) sum = sum + dv[0][list[i]];
-    }
-    return sum;
+    return Reductions.sum(dv[0], list);
   }
 
   /** Compute the average of each point named in the list (see
@@ -3400,20 +3395,7 @@ public static void plot(final String name, final float[][] data)
 
     float [][] dv = f.getFloats(false);
 
-    double sum = 0.0;
-    double count =0.0;
-    for (int i=0; i<list.length; i++) {
-      if (!Float.isNaN(dv[0][list[i]])) {
-        sum = sum + dv[0][list[i]];
-        count = count + 1;
-      }
-    }
-
-    if (count > 0.0) {
-      return (sum/count);
-    } else {
-      return Double.NaN;
-    }
+    return Reductions.mean(dv[0], list);
   }
 
   /**
@@ -3608,52 +3590,16 @@ public static void plot(final String name, final float[][] data)
 
       }
 
-      // get copy of values for comparison...will replace with results.
-      dv = ff.getFloats(true);
+      // compare the values without a copy...results go to a new array.
+      dv = ff.getFloats(false);
+      float[][] mv = new float[dv.length][];
 
       for (int i=0; i<dv.length; i++) {
-        for (int k=0; k<dv[i].length; k++) {
-          if (oper == 0) {
-            if (dv[i][k] > vv) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          } else if (oper == 1 || oper == 7) {
-            if (dv[i][k] >= vv) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          } else if (oper == 2) {
-            if (dv[i][k] < vv) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          } else if (oper == 3 || oper == 8) {
-            if (dv[i][k] <= vv) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          } else if (oper == 4) {
-            if (dv[i][k] == vv) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          } else {  // only 5 or 6 are left
-            if (dv[i][k] != vv) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          }
-        }
+        mv[i] = new float[dv[i].length];
+        Reductions.mask(dv[i], ops_code[oper], vv, 1.0f, fail, mv[i]);
       }
 
-      field.setSamples(dv,false);
+      field.setSamples(mv,false);
 
       if (isFI) {
         fi.setSample(m, field);
@@ -3780,34 +3726,21 @@ public static void plot(final String name, final float[][] data)
     for (int m=0; m<numItems; m++) {
       
       if (isFI) {
-        dv = ((FlatField)(f.getSample(m))).getFloats(true);
+        dv = ((FlatField)(f.getSample(m))).getFloats(false);
 
       } else {
-        dv = ((FlatField)f).getFloats(true);
+        dv = ((FlatField)f).getFloats(false);
       }
 
-      // get copy of values for comparison...will replace with results.
+      // compare the values without a copy...results go to a new array.
+      float[][] mv = new float[dv.length][];
 
       for (int i=0; i<dv.length; i++) {
-        for (int k=0; k<dv[i].length; k++) {
-          if (doWithin) {
-            if (dv[i][k] > vmin && dv[i][k] < vmax) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-
-          } else {
-            if (dv[i][k] < vmin || dv[i][k] > vmax) {
-              dv[i][k] = 1.0f;
-            } else {
-              dv[i][k] = fail;
-            }
-          }
-        }
+        mv[i] = new float[dv[i].length];
+        Reductions.maskRange(dv[i], vmin, vmax, doWithin, 1.0f, fail, mv[i]);
       }
 
-      field.setSamples(dv,false);
+      field.setSamples(mv,false);
       if (isFI) {
         fi.setSample(m, field);
       }
@@ -3874,7 +3807,6 @@ public static void plot(final String name, final float[][] data)
       fv = (FlatField) (((FieldImpl)f).getSample(0)).subtract(v);
     }
     float [][] dv = fv.getFloats(false);
-    List<Integer> zz = new ArrayList<Integer>(fv.getLength());
     int oper = -1;
     for (int i=0; i<ops.length; i++) {
       if (ops[i].equalsIgnoreCase(op)) oper = i;
@@ -3882,31 +3814,7 @@ public static void plot(final String name, final float[][] data)
     }
     if (oper < 0) throw new VisADException("Invalid operator: "+op);
 
-    for (int i=0; i<1; i++) {
-      for (int k=0; k<dv[i].length; k++) {
-
-        if (oper == 0) {
-          if (dv[i][k] > 0.0f) zz.add(Integer.valueOf(k));
-        } else if (oper == 1 || oper == 7) {
-          if (dv[i][k] >= 0.0f) zz.add(Integer.valueOf(k));
-        } else if (oper == 2) {
-          if (dv[i][k] < 0.0f) zz.add(Integer.valueOf(k));
-        } else if (oper == 3 || oper == 8) {
-          if (dv[i][k] <= 0.0f) zz.add(Integer.valueOf(k));
-        } else if (oper == 4) {
-          if (dv[i][k] == 0.0f) zz.add(Integer.valueOf(k));
-        } else {  // only 5,6 are left
-          if (dv[i][k] != 0.0f) zz.add(Integer.valueOf(k));
-        }
-      }
-    }
-
-    int m = zz.size();
-    int[] rv = new int[m];
-    for (int i=0; i<m; i++) {
-      rv[i] = zz.get(i).intValue();
-    }
-    return rv;
+    return Reductions.find(dv[0], ops_code[oper], 0.0f);
   }
 
   /**
@@ -3980,24 +3888,7 @@ public static void plot(final String name, final float[][] data)
     } else {
       dv = ((FlatField)(f.getSample(0))).getFloats(false);
     }
-    List<Integer> zz = new ArrayList<Integer>(dv[0].length);
-
-    for (int i=0; i<1; i++) {
-      for (int k=0; k<dv[i].length; k++) {
-        if (doWithin) {
-          if (dv[i][k] > vmin && dv[i][k] < vmax) zz.add(Integer.valueOf(k));
-        } else {
-          if (dv[i][k] < vmin || dv[i][k] > vmax) zz.add(Integer.valueOf(k));
-        }
-      }
-    }
-
-    int m = zz.size();
-    int[] rv = new int[m];
-    for (int i=0; i<m; i++) {
-      rv[i] = zz.get(i).intValue();
-    }
-    return rv;
+    return Reductions.findRange(dv[0], vmin, vmax, doWithin);
   }
 
   /** resample the data field into the defined domain set
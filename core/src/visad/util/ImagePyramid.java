@@ -0,0 +1,318 @@
+//
+// ImagePyramid.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import java.lang.ref.SoftReference;
+
+import visad.CoordinateSystem;
+import visad.FlatField;
+import visad.FunctionType;
+import visad.Gridded2DSet;
+import visad.GriddedSet;
+import visad.Linear1DSet;
+import visad.Linear2DSet;
+import visad.Set;
+import visad.Unit;
+import visad.VisADException;
+
+/**
+ * A lazily built multi-resolution pyramid of a 2-D image
+ * <code>FlatField</code>.  Level 0 is the image itself; each further
+ * level halves the number of samples along both axes by averaging 2x2
+ * blocks of the previous level (ignoring missing values).  Levels are
+ * computed on first use and held through <code>SoftReference</code>s,
+ * so they may be rebuilt after memory pressure.
+ * <p>
+ * Sub-regions of any level can be extracted with
+ * {@link #getRegion(int, int, int, int, int)}, so a renderer can show a
+ * coarse level of the whole image and full resolution only for the
+ * visible part of a zoomed view.
+ */
+public class ImagePyramid {
+
+  /** levels stop once both dimensions are at most this size */
+  public static final int MIN_LEVEL_SIZE = 256;
+
+  private final FlatField image;
+  private final FunctionType type;
+  private final int width;
+  private final int height;
+  private final int numLevels;
+  private final SoftReference<FlatField>[] levels;
+
+  private final CoordinateSystem rangeCoordSys;
+  private final Set[] rangeSets;
+  private final Unit[] rangeUnits;
+  private final boolean[] integral;
+
+  /**
+   * @param image a FlatField with a 2-D GriddedSet domain and a
+   *              RealType or RealTupleType range
+   * @throws VisADException the image is not a suitable FlatField
+   */
+  public ImagePyramid(FlatField image) throws VisADException {
+    Set domain = image.getDomainSet();
+    if (!(domain instanceof GriddedSet) || domain.getDimension() != 2 ||
+        domain.getManifoldDimension() != 2) {
+      throw new VisADException("ImagePyramid: domain must be a 2-D GriddedSet");
+    }
+    type = (FunctionType) image.getType();
+    if (!type.getReal()) {
+      throw new VisADException("ImagePyramid: range must be Real");
+    }
+    this.image = image;
+    int[] lengths = ((GriddedSet) domain).getLengths();
+    width = lengths[0];
+    height = lengths[1];
+
+    int n = 1;
+    while (Math.max(levelSize(width, n - 1), levelSize(height, n - 1)) >
+           MIN_LEVEL_SIZE) {
+      n++;
+    }
+    numLevels = n;
+    levels = new SoftReference[numLevels];
+
+    rangeCoordSys = image.getRangeCoordinateSystem()[0];
+    rangeSets = image.getRangeSets();
+    Unit[][] units = image.getRangeUnits();
+    rangeUnits = new Unit[units.length];
+    integral = new boolean[units.length];
+    for (int i=0; i<units.length; i++) {
+      rangeUnits[i] = units[i][0];
+      // keep integer-valued (e.g. byte packed) ranges integral
+      if (rangeSets[i] instanceof Linear1DSet) {
+        Linear1DSet rs = (Linear1DSet) rangeSets[i];
+        integral[i] = rs.getStep() == 1.0 && rs.getFirst() == Math.rint(rs.getFirst());
+      }
+    }
+  }
+
+  private static int levelSize(int size, int level) {
+    return (size + (1 << level) - 1) >> level;
+  }
+
+  /** @return the FlatField this pyramid was built from */
+  public FlatField getImage() {
+    return image;
+  }
+
+  /** @return number of levels, including the full resolution level 0 */
+  public int getNumLevels() {
+    return numLevels;
+  }
+
+  /** @return number of samples along the first domain axis of level */
+  public int getWidth(int level) {
+    return levelSize(width, level);
+  }
+
+  /** @return number of samples along the second domain axis of level */
+  public int getHeight(int level) {
+    return levelSize(height, level);
+  }
+
+  /**
+   * Choose the coarsest level that still has at least one sample per
+   * screen pixel.
+   * @param pixelsX number of screen pixels the full width of the image
+   *                covers
+   * @param pixelsY number of screen pixels the full height of the image
+   *                covers
+   * @return level index in [0, getNumLevels()-1]
+   */
+  public int chooseLevel(double pixelsX, double pixelsY) {
+    int level = 0;
+    while (level + 1 < numLevels &&
+           getWidth(level + 1) >= pixelsX && getHeight(level + 1) >= pixelsY) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * @param level the level index
+   * @return the whole image at the given level
+   * @throws VisADException problem building the level
+   */
+  public synchronized FlatField getLevel(int level) throws VisADException {
+    if (level <= 0) return image;
+    if (level >= numLevels) level = numLevels - 1;
+    FlatField ff = (levels[level] == null) ? null : levels[level].get();
+    if (ff == null) {
+      ff = reduce(getLevel(level - 1));
+      levels[level] = new SoftReference<FlatField>(ff);
+    }
+    return ff;
+  }
+
+  /**
+   * Extract a rectangular sub-region of a level.
+   * @param level the level index
+   * @param x0 first sample index along the first axis, in level samples
+   * @param y0 first sample index along the second axis, in level samples
+   * @param w number of samples along the first axis
+   * @param h number of samples along the second axis
+   * @return a new FlatField, or the whole level if the region covers it
+   * @throws VisADException problem building the region
+   */
+  public FlatField getRegion(int level, int x0, int y0, int w, int h)
+         throws VisADException {
+    FlatField ff = getLevel(level);
+    int lw = getWidth(level);
+    int lh = getHeight(level);
+    x0 = Math.max(0, Math.min(x0, lw - 1));
+    y0 = Math.max(0, Math.min(y0, lh - 1));
+    w = Math.max(1, Math.min(w, lw - x0));
+    h = Math.max(1, Math.min(h, lh - y0));
+    if (x0 == 0 && y0 == 0 && w == lw && h == lh) return ff;
+
+    GriddedSet domain = (GriddedSet) ff.getDomainSet();
+    Set set;
+    if (domain instanceof Linear2DSet) {
+      Linear1DSet sx = ((Linear2DSet) domain).getX();
+      Linear1DSet sy = ((Linear2DSet) domain).getY();
+      double fx = sx.getFirst() + x0 * sx.getStep();
+      double fy = sy.getFirst() + y0 * sy.getStep();
+      set = new Linear2DSet(domain.getType(),
+                            fx, fx + (w - 1) * sx.getStep(), w,
+                            fy, fy + (h - 1) * sy.getStep(), h,
+                            domain.getCoordinateSystem(),
+                            domain.getSetUnits(), null);
+    }
+    else {
+      float[][] samples = domain.getSamples(false);
+      float[][] sub = new float[2][w * h];
+      for (int j=0; j<h; j++) {
+        int src = (y0 + j) * lw + x0;
+        System.arraycopy(samples[0], src, sub[0], j * w, w);
+        System.arraycopy(samples[1], src, sub[1], j * w, w);
+      }
+      set = new Gridded2DSet(domain.getType(), sub, w, h,
+                             domain.getCoordinateSystem(),
+                             domain.getSetUnits(), null, false);
+    }
+
+    float[][] values = ff.getFloats(false);
+    float[][] region = new float[values.length][w * h];
+    for (int c=0; c<values.length; c++) {
+      for (int j=0; j<h; j++) {
+        System.arraycopy(values[c], (y0 + j) * lw + x0, region[c], j * w, w);
+      }
+    }
+    return makeField(set, region);
+  }
+
+  // centre of the k-th pair of samples of s
+  private static double blockCentre(Linear1DSet s, int k) {
+    return s.getFirst() + (2 * k + 0.5) * s.getStep();
+  }
+
+  // build the next coarser level by 2x2 averaging
+  private FlatField reduce(FlatField ff) throws VisADException {
+    GriddedSet domain = (GriddedSet) ff.getDomainSet();
+    int[] lengths = domain.getLengths();
+    int lw = lengths[0];
+    int lh = lengths[1];
+    int nw = (lw + 1) / 2;
+    int nh = (lh + 1) / 2;
+
+    Set set;
+    if (domain instanceof Linear2DSet) {
+      Linear1DSet sx = ((Linear2DSet) domain).getX();
+      Linear1DSet sy = ((Linear2DSet) domain).getY();
+      // new samples sit at the centres of the 2x2 blocks, at twice the
+      // step; a single last source column or row of an odd size is a
+      // block padded with missing samples, so the grid stays uniform
+      set = new Linear2DSet(domain.getType(),
+                            blockCentre(sx, 0), blockCentre(sx, nw - 1), nw,
+                            blockCentre(sy, 0), blockCentre(sy, nh - 1), nh,
+                            domain.getCoordinateSystem(),
+                            domain.getSetUnits(), null);
+    }
+    else {
+      float[][] samples = domain.getSamples(false);
+      float[][] sub = new float[2][nw * nh];
+      for (int j=0; j<nh; j++) {
+        for (int i=0; i<nw; i++) {
+          int src = 2 * j * lw + 2 * i;
+          sub[0][j * nw + i] = samples[0][src];
+          sub[1][j * nw + i] = samples[1][src];
+        }
+      }
+      set = new Gridded2DSet(domain.getType(), sub, nw, nh,
+                             domain.getCoordinateSystem(),
+                             domain.getSetUnits(), null, false);
+    }
+
+    float[][] values = ff.getFloats(false);
+    float[][] reduced = new float[values.length][nw * nh];
+    for (int c=0; c<values.length; c++) {
+      float[] v = values[c];
+      float[] r = reduced[c];
+      for (int j=0; j<nh; j++) {
+        int j0 = 2 * j * lw;
+        int j1 = (2 * j + 1 < lh) ? j0 + lw : j0;
+        for (int i=0; i<nw; i++) {
+          int i0 = 2 * i;
+          int i1 = (i0 + 1 < lw) ? i0 + 1 : i0;
+          float sum = 0f;
+          int cnt = 0;
+          float a = v[j0 + i0];
+          float b = v[j0 + i1];
+          float d = v[j1 + i0];
+          float e = v[j1 + i1];
+          if (a == a) { sum += a; cnt++; }
+          if (b == b) { sum += b; cnt++; }
+          if (d == d) { sum += d; cnt++; }
+          if (e == e) { sum += e; cnt++; }
+          if (cnt == 0) {
+            r[j * nw + i] = Float.NaN;
+          }
+          else {
+            float avg = sum / cnt;
+            r[j * nw + i] = integral[c] ? (float) Math.rint(avg) : avg;
+          }
+        }
+      }
+    }
+    return makeField(set, reduced);
+  }
+
+  private FlatField makeField(Set set, float[][] values)
+          throws VisADException {
+    FlatField ff = new FlatField(type, set, rangeCoordSys, rangeSets,
+                                 rangeUnits);
+    try {
+      ff.setSamples(values, false);
+    }
+    catch (java.rmi.RemoteException e) {
+      throw new VisADException("ImagePyramid: " + e.getMessage());
+    }
+    return ff;
+  }
+}
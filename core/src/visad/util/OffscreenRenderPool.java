@@ -0,0 +1,497 @@
+//
+// OffscreenRenderPool.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import visad.ConstantMap;
+import visad.Data;
+import visad.DataReference;
+import visad.DataReferenceImpl;
+import visad.DisplayImpl;
+import visad.ScalarMap;
+import visad.VisADException;
+
+/**
+   OffscreenRenderPool renders batches of image products through a
+   pool of pre-configured offscreen displays.<P>
+
+   The displays (e.g. offscreen DisplayImplJ2D or DisplayImplJ3D),
+   with their ScalarMaps and DataReferences, are built once by a
+   {@link Factory}.  Each product is a {@link Job} that swaps the
+   Data of the named references and the ranges of the named
+   ScalarMaps of an idle display; the display is then transformed
+   and rendered once, and its image captured (and, if a format is
+   given, encoded by ImageIO).  Jobs run in parallel, one per
+   display, on threads of the pool, so that DisplayImpl.getImage()
+   may be called from them.<P>
+
+   Each {@link Result} has the time spent waiting for a display and
+   in each stage of the job.<P>
+*/
+public class OffscreenRenderPool {
+
+  /**
+   * Builds the pooled displays.
+   */
+  public interface Factory {
+    /**
+     * Create an offscreen display, add its ScalarMaps and
+     * DataReferences to it (through the add methods of
+     * PooledDisplay, so that jobs may find them by name) and
+     * return it.
+     *
+     * @param index index of the display in the pool
+     * @return the display
+     * @throws VisADException  a VisAD error occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    PooledDisplay createDisplay(int index)
+           throws VisADException, RemoteException;
+  }
+
+  /**
+   * A product: the Data and ScalarMap ranges of a pooled display.
+   */
+  public interface Job {
+    /**
+     * Set the Data and ScalarMap ranges of display for this product;
+     * the display does not transform until the job returns.
+     *
+     * @param display the pooled display
+     * @throws VisADException  a VisAD error occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    void prepare(PooledDisplay display)
+         throws VisADException, RemoteException;
+  }
+
+  /**
+   * An offscreen display with its ScalarMaps and DataReferences,
+   * by name.
+   */
+  public static class PooledDisplay {
+
+    private final DisplayImpl display;
+    private final Map<String, ScalarMap> maps =
+      new HashMap<String, ScalarMap>();
+    private final Map<String, DataReference> refs =
+      new HashMap<String, DataReference>();
+
+    /**
+     * @param display an offscreen display
+     */
+    public PooledDisplay(DisplayImpl display) {
+      this.display = display;
+    }
+
+    /**
+     * @return the display
+     */
+    public DisplayImpl getDisplay() {
+      return display;
+    }
+
+    /**
+     * add map to the display
+     * @param name name of the map for jobs
+     * @param map ScalarMap to add
+     * @throws VisADException  a VisAD error occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    public void addMap(String name, ScalarMap map)
+           throws VisADException, RemoteException {
+      display.addMap(map);
+      maps.put(name, map);
+    }
+
+    /**
+     * link a new DataReference to the display
+     * @param name name of the reference for jobs
+     * @param constant_maps ConstantMaps of the reference, may be null
+     * @return the reference
+     * @throws VisADException  a VisAD error occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    public DataReference addReference(String name,
+                                      ConstantMap[] constant_maps)
+           throws VisADException, RemoteException {
+      DataReference ref = new DataReferenceImpl(name);
+      display.addReference(ref, constant_maps);
+      refs.put(name, ref);
+      return ref;
+    }
+
+    /**
+     * @param name name of a map
+     * @return the ScalarMap, or null if there is none with name
+     */
+    public ScalarMap getMap(String name) {
+      return maps.get(name);
+    }
+
+    /**
+     * @param name name of a reference
+     * @return the DataReference, or null if there is none with name
+     */
+    public DataReference getReference(String name) {
+      return refs.get(name);
+    }
+
+    /**
+     * set the Data of a reference
+     * @param name name of the reference
+     * @param data new Data
+     * @throws VisADException  no reference with name, or a VisAD
+     *                         error occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    public void setData(String name, Data data)
+           throws VisADException, RemoteException {
+      DataReference ref = refs.get(name);
+      if (ref == null) {
+        throw new VisADException("OffscreenRenderPool: no reference " + name);
+      }
+      ref.setData(data);
+    }
+
+    /**
+     * set the range of a map
+     * @param name name of the map
+     * @param low value mapped to the low end of the display range
+     * @param hi value mapped to the high end of the display range
+     * @throws VisADException  no map with name, or a VisAD error
+     *                         occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    public void setRange(String name, double low, double hi)
+           throws VisADException, RemoteException {
+      ScalarMap map = maps.get(name);
+      if (map == null) {
+        throw new VisADException("OffscreenRenderPool: no map " + name);
+      }
+      map.setRange(low, hi);
+    }
+  }
+
+  /**
+   * The image of a job, with the time of each stage.
+   */
+  public static class Result {
+    private final BufferedImage image;
+    private final byte[] bytes;
+    private final long waitNanos;
+    private final long prepareNanos;
+    private final long renderNanos;
+    private final long encodeNanos;
+
+    Result(BufferedImage image, byte[] bytes, long waitNanos,
+           long prepareNanos, long renderNanos, long encodeNanos) {
+      this.image = image;
+      this.bytes = bytes;
+      this.waitNanos = waitNanos;
+      this.prepareNanos = prepareNanos;
+      this.renderNanos = renderNanos;
+      this.encodeNanos = encodeNanos;
+    }
+
+    /** @return the captured image */
+    public BufferedImage getImage() {
+      return image;
+    }
+
+    /** @return the encoded image, or null if no format was given */
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+    /** @return nanoseconds spent waiting for an idle display */
+    public long getWaitNanos() {
+      return waitNanos;
+    }
+
+    /** @return nanoseconds spent in Job.prepare() */
+    public long getPrepareNanos() {
+      return prepareNanos;
+    }
+
+    /** @return nanoseconds spent transforming, rendering and capturing */
+    public long getRenderNanos() {
+      return renderNanos;
+    }
+
+    /** @return nanoseconds spent encoding, 0 if no format was given */
+    public long getEncodeNanos() {
+      return encodeNanos;
+    }
+
+    /** @return a String with the time of each stage */
+    public String toString() {
+      return "OffscreenRenderPool.Result: wait " + waitNanos / 1000000 +
+             " ms, prepare " + prepareNanos / 1000000 + " ms, render " +
+             renderNanos / 1000000 + " ms, encode " + encodeNanos / 1000000 +
+             " ms";
+    }
+  }
+
+  private final PooledDisplay[] displays;
+  private final BlockingQueue<PooledDisplay> idle;
+  private final ExecutorService executor;
+  private boolean closed = false;
+
+  /**
+   * construct a pool of size displays built by factory
+   * @param size number of displays, and of jobs rendered in parallel
+   * @param factory builds the displays
+   * @throws VisADException  a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public OffscreenRenderPool(int size, Factory factory)
+         throws VisADException, RemoteException {
+    if (size < 1) {
+      throw new VisADException("OffscreenRenderPool: size must be positive");
+    }
+    displays = new PooledDisplay[size];
+    idle = new LinkedBlockingQueue<PooledDisplay>();
+    try {
+      for (int i=0; i<size; i++) {
+        displays[i] = factory.createDisplay(i);
+        idle.add(displays[i]);
+      }
+    }
+    catch (VisADException e) {
+      destroyDisplays();
+      throw e;
+    }
+    catch (RemoteException e) {
+      destroyDisplays();
+      throw e;
+    }
+    executor = Executors.newFixedThreadPool(size, new ThreadFactory() {
+      private int count = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "OffscreenRenderPool-" + (++count));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * @return number of displays in the pool
+   */
+  public int getSize() {
+    return displays.length;
+  }
+
+  /**
+   * queue a job for rendering
+   * @param job the product
+   * @param format ImageIO format name (e.g. "png") of the encoded
+   *        bytes, or null for only the image
+   * @return the Result of the job
+   */
+  public Future<Result> submit(final Job job, final String format) {
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("OffscreenRenderPool is closed");
+      }
+    }
+    final long queued = System.nanoTime();
+    return executor.submit(new Callable<Result>() {
+      public Result call() throws Exception {
+        return run(job, format, queued);
+      }
+    });
+  }
+
+  /**
+   * render a job and wait for its Result
+   * @param job the product
+   * @param format ImageIO format name (e.g. "png") of the encoded
+   *        bytes, or null for only the image
+   * @return the Result of the job
+   * @throws VisADException  the job failed
+   * @throws RemoteException an RMI error occurred
+   */
+  public Result render(Job job, String format)
+         throws VisADException, RemoteException {
+    return get(submit(job, format));
+  }
+
+  /**
+   * render jobs in parallel and wait for their Results
+   * @param jobs the products
+   * @param format ImageIO format name (e.g. "png") of the encoded
+   *        bytes, or null for only the images
+   * @return the Results, in the order of jobs
+   * @throws VisADException  a job failed
+   * @throws RemoteException an RMI error occurred
+   */
+  public List<Result> renderAll(List<? extends Job> jobs, String format)
+         throws VisADException, RemoteException {
+    List<Future<Result>> futures = new ArrayList<Future<Result>>(jobs.size());
+    for (int i=0; i<jobs.size(); i++) {
+      futures.add(submit(jobs.get(i), format));
+    }
+    List<Result> results = new ArrayList<Result>(jobs.size());
+    try {
+      for (int i=0; i<futures.size(); i++) {
+        results.add(get(futures.get(i)));
+      }
+    }
+    finally {
+      if (results.size() < futures.size()) {
+        for (int i=results.size(); i<futures.size(); i++) {
+          futures.get(i).cancel(false);
+        }
+      }
+    }
+    return results;
+  }
+
+  private static Result get(Future<Result> future)
+          throws VisADException, RemoteException {
+    try {
+      return future.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new VisADException("OffscreenRenderPool: interrupted");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof VisADException) throw (VisADException) cause;
+      if (cause instanceof RemoteException) throw (RemoteException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new VisADException("OffscreenRenderPool: " + cause);
+    }
+  }
+
+  private Result run(Job job, String format, long queued)
+          throws VisADException, RemoteException, InterruptedException {
+    PooledDisplay pooled = idle.take();
+    long start = System.nanoTime();
+    long prepared;
+    BufferedImage image;
+    try {
+      DisplayImpl display = pooled.getDisplay();
+      // hold the transforms of the job's changes for the one
+      // synchronized redisplay of getImage(true)
+      display.disableAction();
+      try {
+        job.prepare(pooled);
+      }
+      catch (VisADException e) {
+        display.enableAction();
+        throw e;
+      }
+      catch (RemoteException e) {
+        display.enableAction();
+        throw e;
+      }
+      catch (RuntimeException e) {
+        display.enableAction();
+        throw e;
+      }
+      prepared = System.nanoTime();
+      image = display.getImage(true);
+    }
+    finally {
+      // the image is a copy, so it may be encoded while the display
+      // renders the next job
+      idle.add(pooled);
+    }
+    long rendered = System.nanoTime();
+    byte[] bytes = null;
+    if (format != null) bytes = encode(image, format);
+    long encoded = System.nanoTime();
+    return new Result(image, bytes, start - queued, prepared - start,
+                      rendered - prepared, encoded - rendered);
+  }
+
+  private static byte[] encode(BufferedImage image, String format)
+          throws VisADException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      if (!ImageIO.write(image, format, out)) {
+        throw new VisADException("OffscreenRenderPool: no writer for " +
+                                 format);
+      }
+    }
+    catch (IOException e) {
+      throw new VisADException("OffscreenRenderPool: " + e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * stop accepting jobs, wait for the queued jobs and destroy the
+   * displays
+   * @throws VisADException  a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public void close() throws VisADException, RemoteException {
+    synchronized (this) {
+      if (closed) return;
+      closed = true;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    destroyDisplays();
+  }
+
+  private void destroyDisplays() throws VisADException, RemoteException {
+    for (int i=0; i<displays.length; i++) {
+      if (displays[i] != null) displays[i].getDisplay().destroy();
+    }
+  }
+}
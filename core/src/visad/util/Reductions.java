@@ -0,0 +1,555 @@
+//
+// Reductions.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import java.rmi.RemoteException;
+
+import visad.Set;
+import visad.VisADException;
+
+/**
+   Reductions provides the reductions (min and max, sum, count, mean,
+   histogram) and the predicate masks and searches that the statistics
+   of visad.python.JPythonMethods, visad.math.Histogram and the range
+   computations of FlatField and CachedFlatField apply to the range
+   values of a Field.<P>
+
+   The kernels work directly on the float[] or double[] arrays given
+   to them, such as those returned by FlatField.getFloats(false), so
+   no copy of the values is made.  Arrays are processed in chunks of
+   CHUNK_SIZE values, split between up to reductionThreads threads for
+   large arrays.  Partial results are kept for each chunk and combined
+   in chunk order, so that results (in particular floating point sums)
+   do not depend on the number of threads.<P>
+
+   Missing values (NaN) are ignored by all reductions.<P>
+*/
+public final class Reductions {
+
+  /** predicate operators for mask and find */
+  public static final int GT = 0;
+  public static final int GE = 1;
+  public static final int LT = 2;
+  public static final int LE = 3;
+  public static final int EQ = 4;
+  public static final int NE = 5;
+
+  /** number of values in each chunk */
+  public static final int CHUNK_SIZE = 65536;
+
+  /** maximum number of threads used by a reduction */
+  public static int reductionThreads =
+    Runtime.getRuntime().availableProcessors();
+
+  /** minimum number of chunks for each thread */
+  static final int MIN_CHUNKS_PER_THREAD = 4;
+
+  private Reductions() {
+  }
+
+  /** work done on the values first ... last-1 of one chunk */
+  private abstract static class ChunkTask {
+    /**
+     * @param thread index of the thread running the chunk,
+     *        0 ... numThreads(length)-1
+     * @param chunk index of the chunk
+     * @param first first value of the chunk
+     * @param last one past the last value of the chunk
+     */
+    abstract void run(int thread, int chunk, int first, int last)
+      throws VisADException;
+  }
+
+  private static int numChunks(int length) {
+    return (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+  }
+
+  private static int numThreads(int length) {
+    int n = Math.min(reductionThreads,
+                     numChunks(length) / MIN_CHUNKS_PER_THREAD);
+    return Math.max(1, Math.min(n, ThreadManager.MAX_THREADS));
+  }
+
+  /** run task over all chunks of an array of length values,
+      giving each thread a contiguous run of chunks */
+  private static void forEachChunk(String name, final int length,
+                                   final ChunkTask task)
+          throws VisADException {
+    final int nchunks = numChunks(length);
+    int nthreads = numThreads(length);
+    if (nthreads < 2) {
+      for (int c=0; c<nchunks; c++) {
+        task.run(0, c, c * CHUNK_SIZE, Math.min((c + 1) * CHUNK_SIZE, length));
+      }
+      return;
+    }
+    ThreadManager threadManager = new ThreadManager("Reductions." + name);
+    int perThread = (nchunks + nthreads - 1) / nthreads;
+    int t = 0;
+    for (int first=0; first<nchunks; first+=perThread) {
+      final int thread = t++;
+      final int c0 = first;
+      final int c1 = Math.min(first + perThread, nchunks);
+      threadManager.addRunnable(new ThreadManager.MyRunnable() {
+        public void run() throws Exception {
+          for (int c=c0; c<c1; c++) {
+            task.run(thread, c, c * CHUNK_SIZE,
+                     Math.min((c + 1) * CHUNK_SIZE, length));
+          }
+        }
+      });
+    }
+    try {
+      threadManager.runInParallel(nthreads);
+    }
+    catch (RemoteException e) {
+      throw new VisADException("Reductions." + name + ": " + e.toString());
+    }
+  }
+
+  /**
+   * Return the minimum and maximum of values, ignoring NaNs.
+   *
+   * @param values values
+   * @return {min, max}; {POSITIVE_INFINITY, NEGATIVE_INFINITY} if
+   *         values has no non-missing values
+   * @throws VisADException if a thread fails
+   */
+  public static float[] minMax(final float[] values) throws VisADException {
+    int nchunks = numChunks(values.length);
+    final float[] mins = new float[nchunks];
+    final float[] maxs = new float[nchunks];
+    forEachChunk("minMax", values.length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i=first; i<last; i++) {
+          float v = values[i];
+          if (v < min) min = v;
+          if (v > max) max = v;
+        }
+        mins[chunk] = min;
+        maxs[chunk] = max;
+      }
+    });
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (int c=0; c<nchunks; c++) {
+      if (mins[c] < min) min = mins[c];
+      if (maxs[c] > max) max = maxs[c];
+    }
+    return new float[] {min, max};
+  }
+
+  /**
+   * Return the minimum and maximum of values, ignoring NaNs.
+   *
+   * @param values values
+   * @return {min, max}; {POSITIVE_INFINITY, NEGATIVE_INFINITY} if
+   *         values has no non-missing values
+   * @throws VisADException if a thread fails
+   */
+  public static double[] minMax(final double[] values) throws VisADException {
+    int nchunks = numChunks(values.length);
+    final double[] mins = new double[nchunks];
+    final double[] maxs = new double[nchunks];
+    forEachChunk("minMax", values.length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i=first; i<last; i++) {
+          double v = values[i];
+          if (v < min) min = v;
+          if (v > max) max = v;
+        }
+        mins[chunk] = min;
+        maxs[chunk] = max;
+      }
+    });
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (int c=0; c<nchunks; c++) {
+      if (mins[c] < min) min = mins[c];
+      if (maxs[c] > max) max = maxs[c];
+    }
+    return new double[] {min, max};
+  }
+
+  /** return {sum, count} of the non-missing values[list[i]],
+      or of all non-missing values if list is null */
+  private static double[] sumCount(final float[] values, final int[] list)
+          throws VisADException {
+    int length = (list == null) ? values.length : list.length;
+    int nchunks = numChunks(length);
+    final double[] sums = new double[nchunks];
+    final int[] counts = new int[nchunks];
+    forEachChunk("sum", length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        double sum = 0.0;
+        int count = 0;
+        if (list == null) {
+          for (int i=first; i<last; i++) {
+            float v = values[i];
+            if (v == v) {
+              sum += v;
+              count++;
+            }
+          }
+        }
+        else {
+          for (int i=first; i<last; i++) {
+            float v = values[list[i]];
+            if (v == v) {
+              sum += v;
+              count++;
+            }
+          }
+        }
+        sums[chunk] = sum;
+        counts[chunk] = count;
+      }
+    });
+    double sum = 0.0;
+    double count = 0.0;
+    for (int c=0; c<nchunks; c++) {
+      sum += sums[c];
+      count += counts[c];
+    }
+    return new double[] {sum, count};
+  }
+
+  /**
+   * Return the sum of values, ignoring NaNs.
+   *
+   * @param values values
+   * @return sum of the non-missing values, 0 if there are none
+   * @throws VisADException if a thread fails
+   */
+  public static double sum(float[] values) throws VisADException {
+    return sumCount(values, null)[0];
+  }
+
+  /**
+   * Return the sum of values[list[i]], ignoring NaNs.
+   *
+   * @param values values
+   * @param list indices of the values to sum
+   * @return sum of the non-missing values, 0 if there are none
+   * @throws VisADException if a thread fails
+   */
+  public static double sum(float[] values, int[] list) throws VisADException {
+    return sumCount(values, list)[0];
+  }
+
+  /**
+   * Return the number of non-missing values.
+   *
+   * @param values values
+   * @return number of values that are not NaN
+   * @throws VisADException if a thread fails
+   */
+  public static int count(float[] values) throws VisADException {
+    return (int) sumCount(values, null)[1];
+  }
+
+  /**
+   * Return the number of non-missing values[list[i]].
+   *
+   * @param values values
+   * @param list indices of the values to count
+   * @return number of values that are not NaN
+   * @throws VisADException if a thread fails
+   */
+  public static int count(float[] values, int[] list) throws VisADException {
+    return (int) sumCount(values, list)[1];
+  }
+
+  /**
+   * Return the mean of values, ignoring NaNs.
+   *
+   * @param values values
+   * @return mean of the non-missing values, NaN if there are none
+   * @throws VisADException if a thread fails
+   */
+  public static double mean(float[] values) throws VisADException {
+    return mean(values, null);
+  }
+
+  /**
+   * Return the mean of values[list[i]], ignoring NaNs.
+   *
+   * @param values values
+   * @param list indices of the values to average; null for all values
+   * @return mean of the non-missing values, NaN if there are none
+   * @throws VisADException if a thread fails
+   */
+  public static double mean(float[] values, int[] list) throws VisADException {
+    double[] sc = sumCount(values, list);
+    return (sc[1] > 0.0) ? sc[0] / sc[1] : Double.NaN;
+  }
+
+  /**
+   * Return the number of points falling in each sample of set (as
+   * located by Set.valueToIndex).  Points are values[0][i] ...
+   * values[dim-1][i] for dim the dimension of set; points that
+   * valueToIndex does not locate (including missing points) are
+   * not counted.
+   *
+   * @param values points, values[j][i] for component j of point i
+   * @param set histogram bins
+   * @return counts, one for each sample of set
+   * @throws VisADException if set.valueToIndex fails
+   */
+  public static int[] histogram(final float[][] values, final Set set)
+         throws VisADException {
+    final int dim = values.length;
+    final int len = set.getLength();
+    int length = values[0].length;
+    final int[][] counts = new int[numThreads(length)][];
+    forEachChunk("histogram", length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last)
+           throws VisADException {
+        float[][] slice = new float[dim][];
+        for (int j=0; j<dim; j++) {
+          if (first == 0 && last == values[j].length) {
+            slice[j] = values[j];
+          }
+          else {
+            slice[j] = new float[last - first];
+            System.arraycopy(values[j], first, slice[j], 0, last - first);
+          }
+        }
+        int[] indices = set.valueToIndex(slice);
+        int[] count = counts[thread];
+        if (count == null) {
+          count = new int[len];
+          counts[thread] = count;
+        }
+        for (int i=0; i<indices.length; i++) {
+          if (indices[i] >= 0) count[indices[i]]++;
+        }
+      }
+    });
+    int[] count = counts[0];
+    if (count == null) count = new int[len];
+    for (int t=1; t<counts.length; t++) {
+      if (counts[t] == null) continue;
+      for (int i=0; i<len; i++) count[i] += counts[t][i];
+    }
+    return count;
+  }
+
+  /**
+   * Set out[i] to pass where (values[i] op v) holds and to fail
+   * elsewhere.  values and out may be the same array.
+   *
+   * @param values values
+   * @param op one of GT, GE, LT, LE, EQ or NE
+   * @param v operand
+   * @param pass value for values that satisfy the predicate
+   * @param fail value for values that do not
+   * @param out result, of the length of values
+   * @throws VisADException for an unknown op, or if a thread fails
+   */
+  public static void mask(final float[] values, final int op, final float v,
+                          final float pass, final float fail,
+                          final float[] out) throws VisADException {
+    checkOp(op);
+    forEachChunk("mask", values.length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        switch (op) {
+          case GT:
+            for (int i=first; i<last; i++) out[i] = (values[i] > v) ? pass : fail;
+            break;
+          case GE:
+            for (int i=first; i<last; i++) out[i] = (values[i] >= v) ? pass : fail;
+            break;
+          case LT:
+            for (int i=first; i<last; i++) out[i] = (values[i] < v) ? pass : fail;
+            break;
+          case LE:
+            for (int i=first; i<last; i++) out[i] = (values[i] <= v) ? pass : fail;
+            break;
+          case EQ:
+            for (int i=first; i<last; i++) out[i] = (values[i] == v) ? pass : fail;
+            break;
+          default:
+            for (int i=first; i<last; i++) out[i] = (values[i] != v) ? pass : fail;
+            break;
+        }
+      }
+    });
+  }
+
+  /**
+   * Set out[i] to pass where values[i] is within (min &lt; values[i]
+   * &lt; max) or outside (values[i] &lt; min or values[i] &gt; max) the
+   * given range, and to fail elsewhere.  values and out may be the
+   * same array.
+   *
+   * @param values values
+   * @param min low end of the range
+   * @param max high end of the range
+   * @param within true to test within the range, false outside it
+   * @param pass value for values that satisfy the test
+   * @param fail value for values that do not
+   * @param out result, of the length of values
+   * @throws VisADException if a thread fails
+   */
+  public static void maskRange(final float[] values, final double min,
+                               final double max, final boolean within,
+                               final float pass, final float fail,
+                               final float[] out) throws VisADException {
+    forEachChunk("maskRange", values.length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        if (within) {
+          for (int i=first; i<last; i++) {
+            out[i] = (values[i] > min && values[i] < max) ? pass : fail;
+          }
+        }
+        else {
+          for (int i=first; i<last; i++) {
+            out[i] = (values[i] < min || values[i] > max) ? pass : fail;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Return the indices i, in increasing order, for which
+   * (values[i] op v) holds.
+   *
+   * @param values values
+   * @param op one of GT, GE, LT, LE, EQ or NE
+   * @param v operand
+   * @return indices of the values that satisfy the predicate
+   * @throws VisADException for an unknown op, or if a thread fails
+   */
+  public static int[] find(final float[] values, final int op, final float v)
+         throws VisADException {
+    checkOp(op);
+    return select("find", values.length, new Selector() {
+      boolean test(int i) {
+        return Reductions.test(op, values[i], v);
+      }
+    });
+  }
+
+  /**
+   * Return the indices i, in increasing order, for which values[i]
+   * is within (min &lt; values[i] &lt; max) or outside (values[i] &lt;
+   * min or values[i] &gt; max) the given range.
+   *
+   * @param values values
+   * @param min low end of the range
+   * @param max high end of the range
+   * @param within true to test within the range, false outside it
+   * @return indices of the values that satisfy the test
+   * @throws VisADException if a thread fails
+   */
+  public static int[] findRange(final float[] values, final double min,
+                                final double max, final boolean within)
+         throws VisADException {
+    return select("findRange", values.length, new Selector() {
+      boolean test(int i) {
+        float x = values[i];
+        return within ? (x > min && x < max) : (x < min || x > max);
+      }
+    });
+  }
+
+  /**
+   * Replace the missing values (NaNs) in values with v, in place.
+   *
+   * @param values values
+   * @param v replacement value
+   * @throws VisADException if a thread fails
+   */
+  public static void replaceMissing(final float[] values, final float v)
+         throws VisADException {
+    forEachChunk("replaceMissing", values.length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        for (int i=first; i<last; i++) {
+          if (values[i] != values[i]) values[i] = v;
+        }
+      }
+    });
+  }
+
+  private static void checkOp(int op) throws VisADException {
+    if (op < GT || op > NE) {
+      throw new VisADException("Reductions: unknown operator " + op);
+    }
+  }
+
+  private static boolean test(int op, float x, float v) {
+    switch (op) {
+      case GT: return x > v;
+      case GE: return x >= v;
+      case LT: return x < v;
+      case LE: return x <= v;
+      case EQ: return x == v;
+      default: return x != v;
+    }
+  }
+
+  /** test on the value of one index, for select */
+  private abstract static class Selector {
+    abstract boolean test(int i);
+  }
+
+  /** return the indices i, in increasing order, for which
+      selector.test(i) holds: count the indices of each chunk,
+      then fill each chunk's part of the result */
+  private static int[] select(String name, int length,
+                              final Selector selector)
+          throws VisADException {
+    int nchunks = numChunks(length);
+    final int[] offsets = new int[nchunks + 1];
+    forEachChunk(name, length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        int n = 0;
+        for (int i=first; i<last; i++) {
+          if (selector.test(i)) n++;
+        }
+        offsets[chunk + 1] = n;
+      }
+    });
+    for (int c=0; c<nchunks; c++) offsets[c + 1] += offsets[c];
+    final int[] selected = new int[offsets[nchunks]];
+    forEachChunk(name, length, new ChunkTask() {
+      void run(int thread, int chunk, int first, int last) {
+        int n = offsets[chunk];
+        for (int i=first; i<last; i++) {
+          if (selector.test(i)) selected[n++] = i;
+        }
+      }
+    });
+    return selected;
+  }
+}
@@ -78,6 +78,15 @@ public class ThreadManager {
   /**           */
   private int myMaxThreads;
 
+  /** pool kept between runs when keepThreads is set */
+  private ThreadPool pool;
+
+  /** number of threads of pool */
+  private int poolSize;
+
+  /**           */
+  private boolean keepThreads = false;
+
   /**           */
   private static Hashtable<Integer, Integer[]> times = new Hashtable<Integer,
                                                          Integer[]>();
@@ -187,6 +196,30 @@ public class ThreadManager {
   }
 
 
+  /**
+   * Keep the threads of runInParallel between runs, so that the same
+   * runnables can be run repeatedly without starting new threads.
+   * {@link #stopThreads()} must be called when done.
+   *
+   * @param keep true to keep the threads
+   */
+  public void setKeepThreads(boolean keep) {
+    keepThreads = keep;
+    if (!keep) stopThreads();
+  }
+
+  /**
+   * Stop the threads kept by {@link #setKeepThreads(boolean)}, if any
+   */
+  public void stopThreads() {
+    if (pool != null) {
+      try {
+        pool.stopThreads();
+      } catch (Exception ignoreThis) {}
+      pool = null;
+    }
+  }
+
   /**
    * 
    *
@@ -277,11 +310,16 @@ public class ThreadManager {
                 checkErrors();
             }
         } else {
-            ThreadPool pool;
-            try {
-                pool = new ThreadPool("thread util", min, max);
-            } catch (Exception exc) {
-                throw new RuntimeException(exc);
+            if (pool != null && poolSize != max) {
+                stopThreads();
+            }
+            if (pool == null) {
+                try {
+                    pool = new ThreadPool("thread util", min, max);
+                } catch (Exception exc) {
+                    throw new RuntimeException(exc);
+                }
+                poolSize = max;
             }
             for (MyRunnable myRunnable : runnables) {
                 runnableStarted();
@@ -304,9 +342,9 @@ public class ThreadManager {
                 pool.waitForTasks();
                 checkErrors();
             }  finally {
-                try {
-                    pool.stopThreads();
-                } catch (Exception ignoreThis) {}
+                if (!keepThreads) {
+                    stopThreads();
+                }
             }
 
         }
@@ -22,12 +22,21 @@ MA 02111-1307, USA
 
 package visad.util;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A pool of threads which can be used to execute any Runnable tasks. Internally
@@ -37,14 +46,56 @@ import java.util.concurrent.ThreadPoolExecutor;
  * original API. Note that a java.util.concurrent.ThreadPoolExecutor does not
  * support the notion of minimum and maximum threads so minimum threads is
  * ignored, and maximum threads is simply the size of the thread pool.
+ * <p>
+ * A pool may instead be built around any ExecutorService, see
+ * {@link #ThreadPool(String, ExecutorService)} and
+ * {@link #create(String, String, int)}, which also offers a work-stealing
+ * pool and, on JVMs that support them, one virtual thread per task.
+ * <p>
+ * Every pool keeps simple statistics of the tasks it runs: the number
+ * of tasks waiting to start, and the time they waited.
  */
 public class ThreadPool {
 
+	/** Mode for a fixed-size ThreadPoolExecutor (the default) */
+	public static final String MODE_FIXED = "fixed";
+
+	/** Mode for a work-stealing ForkJoinPool */
+	public static final String MODE_WORK_STEALING = "workstealing";
+
+	/**
+	 * Mode for one virtual thread per task; falls back to
+	 * {@link #MODE_WORK_STEALING} on JVMs without virtual threads
+	 */
+	public static final String MODE_VIRTUAL = "virtual";
+
+	/** Mode of a pool around any other ExecutorService */
+	public static final String MODE_CUSTOM = "custom";
+
+	/**
+	 * ForkJoinPool, loaded by reflection since it is new in Java 7; null on
+	 * older JVMs
+	 */
+	private static final Class<?> FORK_JOIN_POOL = loadClass("java.util.concurrent.ForkJoinPool");
+
 	/** Default prefix */
 	private static final String DEFAULT_PREFIX = ThreadPool.class.toString();
 
 	/** Thread pool from core Java */
-	private final ThreadPoolExecutor exec;
+	private final ExecutorService exec;
+
+	/** The mode of exec, one of the MODE_ constants */
+	private final String mode;
+
+	/** Number of tasks queued but not yet started */
+	private final AtomicInteger queued = new AtomicInteger();
+
+	/** Number of tasks started */
+	private final AtomicLong started = new AtomicLong();
+
+	/** Total and maximum time tasks waited before starting, in nanoseconds */
+	private final AtomicLong totalWait = new AtomicLong();
+	private final AtomicLong maxWait = new AtomicLong();
 
 	/**
 	 * We just need a thread-safe, lock-free, high-performance bag. It does not
@@ -132,6 +183,194 @@ public class ThreadPool {
 
 		// Could check for this: exec = (ThreadPoolExecutor) Executors.newFixedThreadPool(max < PROCESSORS ? PROCESSORS : max);
 		exec = (ThreadPoolExecutor) Executors.newFixedThreadPool(max);
+		mode = MODE_FIXED;
+	}
+
+	/**
+	 * Build a thread pool that runs its tasks on the given executor.
+	 * 
+	 * @param prefix
+	 * @param executor
+	 *          the executor; it is shut down by {@link #stopThreads()}
+	 */
+	public ThreadPool(String prefix, ExecutorService executor) {
+		this(prefix, executor, (executor instanceof ThreadPoolExecutor) ? MODE_FIXED
+				: (FORK_JOIN_POOL != null && FORK_JOIN_POOL.isInstance(executor)) ? MODE_WORK_STEALING
+						: MODE_CUSTOM);
+	}
+
+	private ThreadPool(String prefix, ExecutorService executor, String mode) {
+		this.prefix = prefix;
+		exec = executor;
+		this.mode = mode;
+	}
+
+	/**
+	 * Build a thread pool of the given mode.
+	 * 
+	 * @param prefix
+	 *          thread name prefix
+	 * @param mode
+	 *          one of {@link #MODE_FIXED}, {@link #MODE_WORK_STEALING} or
+	 *          {@link #MODE_VIRTUAL}; <tt>null</tt> or anything else means
+	 *          {@link #MODE_FIXED}, as does work stealing on JVMs without a
+	 *          ForkJoinPool
+	 * @param max
+	 *          the number of threads of a fixed pool, or the parallelism of a
+	 *          work-stealing pool; ignored for virtual threads
+	 * @return the new pool
+	 * @throws Exception
+	 */
+	public static ThreadPool create(String prefix, String mode, int max)
+			throws Exception {
+		if (MODE_VIRTUAL.equalsIgnoreCase(mode)) {
+			ExecutorService virtual = newVirtualThreadExecutor();
+			if (virtual != null) {
+				return new ThreadPool(prefix, virtual, MODE_VIRTUAL);
+			}
+			mode = MODE_WORK_STEALING;
+		}
+		if (MODE_WORK_STEALING.equalsIgnoreCase(mode)) {
+			ExecutorService pool = newWorkStealingPool(prefix, max);
+			if (pool != null) {
+				return new ThreadPool(prefix, pool, MODE_WORK_STEALING);
+			}
+		}
+		return new ThreadPool(prefix, 0, max);
+	}
+
+	/**
+	 * Build a thread pool of the given mode with the default number of threads.
+	 * 
+	 * @param prefix
+	 * @param mode
+	 * @return the new pool
+	 * @throws Exception
+	 */
+	public static ThreadPool create(String prefix, String mode)
+			throws Exception {
+		return create(prefix, mode, PROCESSORS);
+	}
+
+	/**
+	 * @return an executor starting a virtual thread per task, or <tt>null</tt>
+	 *         if this JVM has no virtual threads
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the named class, or <tt>null</tt> if this JVM does not have it
+	 */
+	private static Class<?> loadClass(String name) {
+		try {
+			return Class.forName(name);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return a FIFO work-stealing ForkJoinPool with named daemon threads, or
+	 *         <tt>null</tt> if this JVM has no ForkJoinPool
+	 */
+	private static ExecutorService newWorkStealingPool(final String prefix,
+			int max) {
+		if (FORK_JOIN_POOL == null) {
+			return null;
+		}
+		try {
+			Class<?> factoryClass = Class
+					.forName("java.util.concurrent.ForkJoinPool$ForkJoinWorkerThreadFactory");
+			final Object defaultFactory = FORK_JOIN_POOL.getField(
+					"defaultForkJoinWorkerThreadFactory").get(null);
+			final Method newThread = factoryClass.getMethod("newThread",
+					FORK_JOIN_POOL);
+			final AtomicInteger count = new AtomicInteger();
+			Object factory = Proxy.newProxyInstance(factoryClass.getClassLoader(),
+					new Class<?>[] { factoryClass }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method m, Object[] args)
+								throws Throwable {
+							if (!m.equals(newThread)) {
+								// equals, hashCode and toString of the proxy
+								return m.invoke(this, args);
+							}
+							Thread t;
+							try {
+								t = (Thread) newThread.invoke(defaultFactory, args);
+							} catch (InvocationTargetException e) {
+								throw e.getCause();
+							}
+							t.setName(prefix + "-" + count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			return (ExecutorService) FORK_JOIN_POOL.getConstructor(int.class,
+					factoryClass, Thread.UncaughtExceptionHandler.class,
+					boolean.class).newInstance(Integer.valueOf(Math.max(1, max)),
+					factory, null, Boolean.TRUE);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return the mode of this pool, one of the MODE_ constants
+	 */
+	public String getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the number of tasks queued but not yet started
+	 */
+	public int getQueueDepth() {
+		if (exec.isTerminated()) {
+			// tasks dropped by a shutdownNow() will never start
+			for (Future<?> f : bagOfFutures) {
+				f.cancel(false);
+			}
+		}
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of tasks started since creation or the last
+	 *         {@link #resetStatistics()}
+	 */
+	public long getStartedCount() {
+		return started.get();
+	}
+
+	/**
+	 * @return the mean time tasks waited in the queue, in milliseconds
+	 */
+	public double getMeanQueueLatency() {
+		long n = started.get();
+		return (n == 0) ? 0.0 : totalWait.get() / (n * 1.0e6);
+	}
+
+	/**
+	 * @return the longest time a task waited in the queue, in milliseconds
+	 */
+	public double getMaxQueueLatency() {
+		return maxWait.get() / 1.0e6;
+	}
+
+	/**
+	 * Reset the started count and queue latencies.
+	 */
+	public void resetStatistics() {
+		started.set(0);
+		totalWait.set(0);
+		maxWait.set(0);
 	}
 
 	/**
@@ -160,7 +399,9 @@ public class ThreadPool {
 	 *          the runnable to remove from the queue
 	 */
 	public void remove(Runnable r) {
-		exec.remove(r);
+		if (exec instanceof ThreadPoolExecutor) {
+			((ThreadPoolExecutor) exec).remove(r);
+		}
 	}
 
 	/**
@@ -198,9 +439,16 @@ public class ThreadPool {
 	 * @param r
 	 *          the runnable that will be executed by this thread pool.
 	 */
-	public void queue(Runnable r) {
-		Future<?> submit = exec.submit(r);
-		bagOfFutures.add(submit);
+	public void queue(final Runnable r) {
+		Task task = new Task(r);
+		queued.incrementAndGet();
+		try {
+			exec.execute(task);
+		} catch (RuntimeException e) {
+			task.dequeue();
+			throw e;
+		}
+		bagOfFutures.add(task);
 
 		// While we are at it, clean out the bag of completed tasks.
 		for (Future<?> f : bagOfFutures) {
@@ -248,11 +496,65 @@ public class ThreadPool {
 	 * @throws Exception
 	 */
 	public void setThreadMaximum(int num) throws Exception {
-		exec.setCorePoolSize(num);
+		if (exec instanceof ThreadPoolExecutor) {
+			ThreadPoolExecutor tpe = (ThreadPoolExecutor) exec;
+			if (num > tpe.getMaximumPoolSize()) {
+				tpe.setMaximumPoolSize(num);
+			}
+			tpe.setCorePoolSize(num);
+		}
 	}
 
 	/** Shut down this thread pool. */
 	public void stopThreads() {
 		exec.shutdown();
 	}
+
+	/**
+	 * A queued task, which leaves the queue statistics exactly once: when it
+	 * starts, or when it is cancelled before starting.
+	 */
+	private final class Task extends FutureTask<Object> {
+
+		private final Runnable runnable;
+
+		private final long queuedAt = System.nanoTime();
+
+		private final AtomicBoolean dequeued = new AtomicBoolean();
+
+		Task(Runnable r) {
+			super(r, null);
+			runnable = r;
+		}
+
+		public void run() {
+			if (dequeue()) {
+				long wait = System.nanoTime() - queuedAt;
+				started.incrementAndGet();
+				totalWait.addAndGet(wait);
+				long max = maxWait.get();
+				while (wait > max && !maxWait.compareAndSet(max, wait)) {
+					max = maxWait.get();
+				}
+			}
+			super.run();
+		}
+
+		protected void done() {
+			dequeue();
+		}
+
+		/** @return true if this call took the task off the queue */
+		boolean dequeue() {
+			if (dequeued.compareAndSet(false, true)) {
+				queued.decrementAndGet();
+				return true;
+			}
+			return false;
+		}
+
+		public String toString() {
+			return runnable.toString();
+		}
+	}
 }
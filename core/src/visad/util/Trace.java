@@ -55,6 +55,9 @@ import java.lang.reflect.Method;
  * The first column is the elapsed time since the last print line. The second column is the 
  * memory delta (note: GC can make this negative). For the call1/call2 pairs the ms:... shows
  * the time spent in the block.
+ * <p>
+ * When {@link Tracer} is enabled, call1/call2 blocks and msg lines are also recorded there,
+ * as timed and instant events named by their label.
  *
  */
 
@@ -110,6 +113,7 @@ public  class Trace
      *  Append extra to the end of the line
      */
     public static void call1(String msg, String extra) {
+        Tracer.push(msg);
         if(!checkReflection()) return;
         try {
             call1Method.invoke(null, new Object[]{msg,extra});
@@ -153,6 +157,7 @@ public  class Trace
 
     /** Close the call */
     public static void call2(String msg, String extra) {
+        Tracer.pop(msg);
         if(!checkReflection()) return;
         try {
             call2Method.invoke(null, new Object[]{msg,extra});
@@ -164,6 +169,7 @@ public  class Trace
 
     /** Print out a line */
     public static void msg(String msg) {
+        Tracer.mark(msg);
         if(!checkReflection()) return;
         try {
             msgMethod.invoke(null, new Object[]{msg});
@@ -0,0 +1,536 @@
+//
+// Tracer.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2017 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Low overhead timers and counters for the hot paths of VisAD.
+ * <p>
+ * Each instrumented operation is a <i>probe</i>, registered once by name:
+ * <pre>
+ *   private static final int RESAMPLE = Tracer.register("FlatField.resample");
+ *   ...
+ *   long t = Tracer.begin();
+ *   try {
+ *     ... code
+ *   }
+ *   finally {
+ *     Tracer.end(RESAMPLE, t);
+ *   }
+ * </pre>
+ * and counters are bumped with {@link #count(int)}. While tracing is
+ * disabled (the default) <code>begin()</code> returns 0 and the other
+ * calls return after reading one volatile flag. While enabled, timed
+ * events are written without locks or allocation into a fixed size ring
+ * buffer, keeping the most recent events, and per-probe call counts and
+ * total times are accumulated.
+ * <p>
+ * Tracing is enabled by {@link #setEnabled(boolean)} or the system
+ * property <code>visad.trace</code>; <code>visad.trace.buffer</code> sets
+ * the number of events kept (default 65536), and if
+ * <code>visad.trace.file</code> is set the events are written there on
+ * exit. Events can be read with {@link #getEvents()}, probe totals with
+ * {@link #getCalls(String)}, {@link #getTotalTime(String)} and
+ * {@link #getCount(String)}, and everything can be written in the Chrome
+ * trace event format (loadable by chrome://tracing, Perfetto and other
+ * trace viewers) by {@link #writeChromeTrace(Writer)}.
+ * <p>
+ * Probe names should be constants: the probe table is fixed, so names
+ * built at run time would fill it.  The labels of
+ * {@link Trace#call1(String)}/{@link Trace#call2(String)} are recorded
+ * here too, as probes of the same name, up to {@link #MAX_LABELS} of
+ * them; later labels are recorded under the probe
+ * <code>Trace.other</code>.  The messages of {@link Trace#msg(String)},
+ * which usually include run time values, are recorded under the probe
+ * <code>Trace.msg</code>.
+ */
+public class Tracer {
+
+  /** maximum number of probes */
+  public static final int MAX_PROBES = 1024;
+
+  /** maximum number of probes registered for Trace.call1() labels */
+  public static final int MAX_LABELS = 256;
+
+  /** maximum number of open Trace.call1() blocks per thread; beyond
+      it the outermost block, most likely never closed, is dropped */
+  public static final int MAX_DEPTH = 256;
+
+  private static volatile boolean enabled =
+    Boolean.getBoolean("visad.trace");
+
+  private static final int capacity;
+  private static final int mask;
+  static {
+    int c = Integer.getInteger("visad.trace.buffer", 65536).intValue();
+    int p = 1024;
+    while (p < c && p < (1 << 24)) p <<= 1;
+    capacity = p;
+    mask = p - 1;
+  }
+
+  // ring buffer of events; seq[slot] is the event index + 1 once the
+  // slot is completely written, 0 while it is being written
+  private static final AtomicLong cursor = new AtomicLong();
+  private static final AtomicLongArray seq = new AtomicLongArray(capacity);
+  private static final int[] eventProbe = new int[capacity];
+  private static final long[] eventThread = new long[capacity];
+  private static final long[] eventStart = new long[capacity];
+  private static final long[] eventDuration = new long[capacity];
+
+  // per-probe totals
+  private static final AtomicLongArray calls = new AtomicLongArray(MAX_PROBES);
+  private static final AtomicLongArray nanos = new AtomicLongArray(MAX_PROBES);
+  private static final AtomicLongArray counts = new AtomicLongArray(MAX_PROBES);
+
+  private static final String[] names = new String[MAX_PROBES];
+  private static final Map<String, Integer> ids =
+    new ConcurrentHashMap<String, Integer>();
+  private static int numProbes = 0;
+  private static int numLabels = 0;
+
+  private static final int TRACE_OTHER = register("Trace.other");
+  private static final int TRACE_MSG = register("Trace.msg");
+
+  private static final Map<Long, String> threadNames =
+    new ConcurrentHashMap<Long, String>();
+
+  private static final long baseNanos = System.nanoTime();
+
+  // per-thread stack of open Trace.call1() labels
+  private static class Stack {
+    boolean named = false;
+    int depth = 0;
+    int[] probes = new int[32];
+    long[] starts = new long[32];
+  }
+
+  private static final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+    protected Stack initialValue() {
+      return new Stack();
+    }
+  };
+
+  static {
+    final String file = System.getProperty("visad.trace.file");
+    if (file != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread("Tracer") {
+        public void run() {
+          try {
+            writeChromeTrace(file);
+          }
+          catch (IOException e) {
+            System.err.println("Tracer: " + e);
+          }
+        }
+      });
+    }
+  }
+
+  /** a recorded event */
+  public static class Event {
+    /** probe name */
+    public final String name;
+    /** id of the thread that recorded the event */
+    public final long threadId;
+    /** start time, in nanoseconds since the Tracer class was loaded */
+    public final long start;
+    /** duration in nanoseconds, or -1 for an instant event */
+    public final long duration;
+
+    Event(String name, long threadId, long start, long duration) {
+      this.name = name;
+      this.threadId = threadId;
+      this.start = start;
+      this.duration = duration;
+    }
+
+    public String toString() {
+      return name + " [" + threadId + "] " + (start / 1000) + "us" +
+             ((duration < 0) ? "" : " " + (duration / 1000) + "us");
+    }
+  }
+
+  private Tracer() {
+  }
+
+  /**
+   * @param e true to record events and totals
+   */
+  public static void setEnabled(boolean e) {
+    enabled = e;
+  }
+
+  /**
+   * @return true if events and totals are being recorded
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param name the probe name
+   * @return the id of the probe with this name, registering it if
+   *         necessary, or -1 if there are already MAX_PROBES probes
+   */
+  public static int register(String name) {
+    Integer id = ids.get(name);
+    if (id != null) return id.intValue();
+    synchronized (names) {
+      id = ids.get(name);
+      if (id != null) return id.intValue();
+      if (numProbes >= MAX_PROBES) return -1;
+      int i = numProbes++;
+      names[i] = name;
+      ids.put(name, Integer.valueOf(i));
+      return i;
+    }
+  }
+
+  /**
+   * @return the start time for a later end(), or 0 if tracing is
+   *         disabled
+   */
+  public static long begin() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * record the end of a timed operation
+   * @param probe the probe id
+   * @param start the value returned by begin()
+   */
+  public static void end(int probe, long start) {
+    if (start == 0L || probe < 0 || !enabled) return;
+    long now = System.nanoTime();
+    long duration = now - start;
+    calls.incrementAndGet(probe);
+    nanos.addAndGet(probe, duration);
+    record(probe, start - baseNanos, duration);
+  }
+
+  /**
+   * record an instant event
+   * @param probe the probe id
+   */
+  public static void mark(int probe) {
+    if (probe < 0 || !enabled) return;
+    calls.incrementAndGet(probe);
+    record(probe, System.nanoTime() - baseNanos, -1L);
+  }
+
+  /**
+   * increment the counter of a probe
+   * @param probe the probe id
+   */
+  public static void count(int probe) {
+    if (probe < 0 || !enabled) return;
+    counts.incrementAndGet(probe);
+  }
+
+  /**
+   * add to the counter of a probe
+   * @param probe the probe id
+   * @param delta the amount to add
+   */
+  public static void count(int probe, long delta) {
+    if (probe < 0 || !enabled) return;
+    counts.addAndGet(probe, delta);
+  }
+
+  private static void record(int probe, long start, long duration) {
+    long index = cursor.getAndIncrement();
+    int slot = (int) (index & mask);
+    seq.set(slot, 0L);
+    Thread thread = Thread.currentThread();
+    long tid = thread.getId();
+    eventProbe[slot] = probe;
+    eventThread[slot] = tid;
+    eventStart[slot] = start;
+    eventDuration[slot] = duration;
+    seq.set(slot, index + 1);
+    Stack s = stacks.get();
+    if (!s.named) {
+      s.named = true;
+      threadNames.put(Long.valueOf(tid), thread.getName());
+    }
+  }
+
+  /**
+   * open a labelled block, for Trace.call1()
+   * @param name the label
+   */
+  static void push(String name) {
+    if (!enabled) return;
+    Stack s = stacks.get();
+    if (s.depth == MAX_DEPTH) {
+      System.arraycopy(s.probes, 1, s.probes, 0, s.depth - 1);
+      System.arraycopy(s.starts, 1, s.starts, 0, s.depth - 1);
+      s.depth--;
+    }
+    else if (s.depth == s.probes.length) {
+      int n = Math.min(2 * s.depth, MAX_DEPTH);
+      s.probes = Arrays.copyOf(s.probes, n);
+      s.starts = Arrays.copyOf(s.starts, n);
+    }
+    s.probes[s.depth] = labelProbe(name);
+    s.starts[s.depth] = System.nanoTime();
+    s.depth++;
+  }
+
+  /**
+   * close the innermost open block with the given label, for Trace.call2()
+   * @param name the label
+   */
+  static void pop(String name) {
+    if (!enabled) return;
+    Stack s = stacks.get();
+    int probe = labelProbe(name);
+    for (int i=s.depth-1; i>=0; i--) {
+      if (s.probes[i] == probe) {
+        end(probe, s.starts[i]);
+        s.depth = i;
+        return;
+      }
+    }
+  }
+
+  /**
+   * record an instant event, for Trace.msg()
+   * @param name the label
+   */
+  static void mark(String name) {
+    if (!enabled) return;
+    mark(TRACE_MSG);
+  }
+
+  /** the probe for a Trace.call1() label; Trace.other once MAX_LABELS
+      labels have been registered */
+  private static int labelProbe(String name) {
+    Integer id = ids.get(name);
+    if (id != null) return id.intValue();
+    synchronized (names) {
+      if (numLabels >= MAX_LABELS) return TRACE_OTHER;
+      int probe = register(name);
+      if (probe < 0) return TRACE_OTHER;
+      numLabels++;
+      return probe;
+    }
+  }
+
+  private static int probe(String name) {
+    Integer id = ids.get(name);
+    return (id == null) ? -1 : id.intValue();
+  }
+
+  /**
+   * @param name a probe name
+   * @return number of timed or instant events recorded for the probe
+   */
+  public static long getCalls(String name) {
+    int p = probe(name);
+    return (p < 0) ? 0L : calls.get(p);
+  }
+
+  /**
+   * @param name a probe name
+   * @return total time of the timed events of the probe, in milliseconds
+   */
+  public static double getTotalTime(String name) {
+    int p = probe(name);
+    return (p < 0) ? 0.0 : nanos.get(p) / 1.0e6;
+  }
+
+  /**
+   * @param name a probe name
+   * @return the counter of the probe
+   */
+  public static long getCount(String name) {
+    int p = probe(name);
+    return (p < 0) ? 0L : counts.get(p);
+  }
+
+  /**
+   * @return the names of all registered probes
+   */
+  public static String[] getProbeNames() {
+    synchronized (names) {
+      String[] n = new String[numProbes];
+      System.arraycopy(names, 0, n, 0, numProbes);
+      return n;
+    }
+  }
+
+  /**
+   * @return the events currently in the ring buffer, oldest first
+   */
+  public static Event[] getEvents() {
+    long end = cursor.get();
+    long first = Math.max(0L, end - capacity);
+    List<Event> list = new ArrayList<Event>();
+    for (long index=first; index<end; index++) {
+      int slot = (int) (index & mask);
+      long s1 = seq.get(slot);
+      if (s1 != index + 1) continue;
+      int probe = eventProbe[slot];
+      long tid = eventThread[slot];
+      long start = eventStart[slot];
+      long duration = eventDuration[slot];
+      if (seq.get(slot) != s1) continue;
+      list.add(new Event(names[probe], tid, start, duration));
+    }
+    Event[] events = list.toArray(new Event[list.size()]);
+    Arrays.sort(events, new Comparator<Event>() {
+      public int compare(Event a, Event b) {
+        return (a.start < b.start) ? -1 : ((a.start > b.start) ? 1 : 0);
+      }
+    });
+    return events;
+  }
+
+  /**
+   * discard all events and reset all probe totals
+   */
+  public static void reset() {
+    for (int i=0; i<capacity; i++) seq.set(i, 0L);
+    cursor.set(0L);
+    for (int i=0; i<MAX_PROBES; i++) {
+      calls.set(i, 0L);
+      nanos.set(i, 0L);
+      counts.set(i, 0L);
+    }
+  }
+
+  /**
+   * @return one line per probe with its calls, total time and counter
+   */
+  public static String getSummary() {
+    StringBuffer buf = new StringBuffer();
+    String[] n = getProbeNames();
+    for (int i=0; i<n.length; i++) {
+      long c = calls.get(i);
+      long k = counts.get(i);
+      if (c == 0 && k == 0) continue;
+      buf.append(n[i]).append(": calls=").append(c)
+         .append(" ms=").append(nanos.get(i) / 1.0e6);
+      if (k != 0) buf.append(" count=").append(k);
+      buf.append('\n');
+    }
+    return buf.toString();
+  }
+
+  /**
+   * write the events and counters in the Chrome trace event format
+   * @param file the file name
+   */
+  public static void writeChromeTrace(String file) throws IOException {
+    Writer w = new BufferedWriter(new FileWriter(file));
+    try {
+      writeChromeTrace(w);
+    }
+    finally {
+      w.close();
+    }
+  }
+
+  /**
+   * write the events and counters in the Chrome trace event format
+   * @param w the writer; not closed
+   */
+  public static void writeChromeTrace(Writer w) throws IOException {
+    Event[] events = getEvents();
+    w.write("{\"traceEvents\":[\n");
+    boolean first = true;
+    for (Map.Entry<Long, String> e : threadNames.entrySet()) {
+      if (!first) w.write(",\n");
+      first = false;
+      w.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" +
+              e.getKey() + ",\"args\":{\"name\":" + quote(e.getValue()) + "}}");
+    }
+    long last = 0L;
+    for (int i=0; i<events.length; i++) {
+      Event e = events[i];
+      if (!first) w.write(",\n");
+      first = false;
+      w.write("{\"name\":" + quote(e.name) + ",\"cat\":\"visad\",\"pid\":1," +
+              "\"tid\":" + e.threadId + ",\"ts\":" + micros(e.start));
+      if (e.duration < 0) {
+        w.write(",\"ph\":\"i\",\"s\":\"t\"}");
+      }
+      else {
+        w.write(",\"ph\":\"X\",\"dur\":" + micros(e.duration) + "}");
+      }
+      last = Math.max(last, e.start + Math.max(0L, e.duration));
+    }
+    String[] n = getProbeNames();
+    for (int i=0; i<n.length; i++) {
+      long k = counts.get(i);
+      if (k == 0) continue;
+      if (!first) w.write(",\n");
+      first = false;
+      w.write("{\"name\":" + quote(n[i]) + ",\"ph\":\"C\",\"pid\":1," +
+              "\"ts\":" + micros(last) + ",\"args\":{\"count\":" + k + "}}");
+    }
+    w.write("\n]}\n");
+    w.flush();
+  }
+
+  private static String micros(long nanos) {
+    return Double.toString(nanos / 1000.0);
+  }
+
+  private static String quote(String s) {
+    StringBuffer buf = new StringBuffer(s.length() + 2);
+    buf.append('"');
+    for (int i=0; i<s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        buf.append('\\').append(c);
+      }
+      else if (c < 0x20) {
+        buf.append(String.format("\\u%04x", Integer.valueOf(c)));
+      }
+      else {
+        buf.append(c);
+      }
+    }
+    buf.append('"');
+    return buf.toString();
+  }
+}